@@ -24,7 +24,15 @@ import com.cling.model.Namespace;
 import com.cling.model.message.UpnpHeaders;
 import com.cling.model.meta.RemoteDeviceIdentity;
 import com.cling.model.meta.RemoteService;
+import com.cling.model.types.DeviceType;
 import com.cling.model.types.ServiceType;
+import com.cling.protocol.DatagramFilter;
+import com.cling.protocol.DatagramFilterImpl;
+import com.cling.protocol.RemoteDescriptorCache;
+import com.cling.protocol.ReceivingAsync;
+import com.cling.protocol.RetrieveRemoteDescriptors;
+import com.cling.protocol.sync.QueuedLocalGENASubscription;
+import com.cling.protocol.sync.SendingEvent;
 import com.cling.transport.impl.DatagramIOConfigurationImpl;
 import com.cling.transport.impl.DatagramIOImpl;
 import com.cling.transport.impl.DatagramProcessorImpl;
@@ -45,17 +53,26 @@ import com.cling.transport.spi.NetworkAddressFactory;
 import com.cling.transport.spi.SOAPActionProcessor;
 import com.cling.transport.spi.StreamClient;
 import com.cling.transport.spi.StreamServer;
+import com.cling.transport.spi.UpnpStream;
 
 import org.seamless.util.Exceptions;
 
+import java.util.List;
 import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.SynchronousQueue;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import javax.enterprise.inject.Alternative;
@@ -71,12 +88,17 @@ import javax.enterprise.inject.Alternative;
  * {@link com.cling.binding.xml}.
  * </p>
  * <p>
- * The thread <code>Executor</code> is an <code>Executors.newCachedThreadPool()</code> with
- * a custom {@link ClingThreadFactory} (it only sets a thread name).
+ * The long-running listening threads of the transport and the registry maintainer are
+ * started with an <code>Executors.newCachedThreadPool()</code> with a custom
+ * {@link ClingThreadFactory} (it only sets a thread name).
  * </p>
  * <p>
- * Note that this pool is effectively unlimited, so the number of threads will
- * grow (and shrink) as needed - or restricted by your JVM.
+ * Protocol work runs on separate {@link BoundedClingExecutor} pools with a limited number
+ * of threads: asynchronous (discovery) protocols, synchronous (description, control, GENA)
+ * protocols, and registry listener notifications. Within a pool, GENA event delivery and
+ * incoming requests run ahead of descriptor retrieval. When the discovery pool is saturated,
+ * received datagrams and descriptor retrievals are dropped, all other work is executed by
+ * the submitting thread.
  * </p>
  * <p>
  * The default {@link com.cling.model.Namespace} is configured without any
@@ -93,8 +115,13 @@ public class DefaultUpnpServiceConfiguration implements UpnpServiceConfiguration
     final private int streamListenPort;
 
     final private ExecutorService defaultExecutorService;
+    final private ExecutorService asyncProtocolExecutorService;
+    final private ExecutorService syncProtocolExecutorService;
+    final private ExecutorService registryListenerExecutorService;
+    final private ScheduledExecutorService scheduledExecutorService;
 
     final private DatagramProcessor datagramProcessor;
+    final private DatagramFilter datagramFilter;
     final private SOAPActionProcessor soapActionProcessor;
     final private GENAEventProcessor genaEventProcessor;
 
@@ -126,8 +153,13 @@ public class DefaultUpnpServiceConfiguration implements UpnpServiceConfiguration
         this.streamListenPort = streamListenPort;
 
         defaultExecutorService = createDefaultExecutorService();
+        asyncProtocolExecutorService = createAsyncProtocolExecutorService();
+        syncProtocolExecutorService = createSyncProtocolExecutorService();
+        registryListenerExecutorService = createRegistryListenerExecutorService();
+        scheduledExecutorService = createScheduledExecutorService();
 
         datagramProcessor = createDatagramProcessor();
+        datagramFilter = createDatagramFilter();
         soapActionProcessor = createSOAPActionProcessor();
         genaEventProcessor = createGENAEventProcessor();
 
@@ -141,6 +173,17 @@ public class DefaultUpnpServiceConfiguration implements UpnpServiceConfiguration
         return datagramProcessor;
     }
 
+    public DatagramFilter getDatagramFilter() {
+        return datagramFilter;
+    }
+
+    /**
+     * @return <code>null</code>, override to store remote descriptors on disk.
+     */
+    public RemoteDescriptorCache getRemoteDescriptorCache() {
+        return null;
+    }
+
     public SOAPActionProcessor getSoapActionProcessor() {
         return soapActionProcessor;
     }
@@ -150,9 +193,10 @@ public class DefaultUpnpServiceConfiguration implements UpnpServiceConfiguration
     }
 
     public StreamClient createStreamClient() {
+        // Requests block a protocol thread until the response arrives, they can't share its pool
         return new StreamClientImpl(
                 new StreamClientConfigurationImpl(
-                        getSyncProtocolExecutorService()
+                        getDefaultExecutorService()
                 )
         );
     }
@@ -202,6 +246,10 @@ public class DefaultUpnpServiceConfiguration implements UpnpServiceConfiguration
         return new ServiceType[0];
     }
 
+    public DeviceType[] getExclusiveDeviceTypes() {
+        return new DeviceType[0];
+    }
+
     /**
      * @return Defaults to <code>false</code>.
      */
@@ -236,11 +284,15 @@ public class DefaultUpnpServiceConfiguration implements UpnpServiceConfiguration
     }
 
     public Executor getAsyncProtocolExecutor() {
-        return getDefaultExecutorService();
+        return asyncProtocolExecutorService;
     }
 
     public ExecutorService getSyncProtocolExecutorService() {
-        return getDefaultExecutorService();
+        return syncProtocolExecutorService;
+    }
+
+    public ScheduledExecutorService getScheduledExecutorService() {
+        return scheduledExecutorService;
     }
 
     public Namespace getNamespace() {
@@ -252,7 +304,7 @@ public class DefaultUpnpServiceConfiguration implements UpnpServiceConfiguration
     }
 
     public Executor getRegistryListenerExecutor() {
-        return getDefaultExecutorService();
+        return registryListenerExecutorService;
     }
 
     public NetworkAddressFactory createNetworkAddressFactory() {
@@ -260,6 +312,11 @@ public class DefaultUpnpServiceConfiguration implements UpnpServiceConfiguration
     }
 
     public void shutdown() {
+        log.fine("Shutting down protocol executor services");
+        scheduledExecutorService.shutdownNow();
+        asyncProtocolExecutorService.shutdownNow();
+        syncProtocolExecutorService.shutdownNow();
+        registryListenerExecutorService.shutdownNow();
         log.fine("Shutting down default executor service");
         getDefaultExecutorService().shutdownNow();
     }
@@ -288,6 +345,10 @@ public class DefaultUpnpServiceConfiguration implements UpnpServiceConfiguration
         return new UDA10ServiceDescriptorBinderImpl();
     }
 
+    protected DatagramFilter createDatagramFilter() {
+        return new DatagramFilterImpl();
+    }
+
     protected Namespace createNamespace() {
         return new Namespace();
     }
@@ -300,6 +361,37 @@ public class DefaultUpnpServiceConfiguration implements UpnpServiceConfiguration
         return new ClingExecutor();
     }
 
+    /**
+     * @return Defaults to 4 threads and 128 queued tasks, saturation drops received datagrams. Delays
+     * between discovery messages are scheduled, they don't occupy a thread.
+     */
+    protected ExecutorService createAsyncProtocolExecutorService() {
+        return new BoundedClingExecutor("cling-async-", 4, 128);
+    }
+
+    /**
+     * @return Defaults to 16 threads and 64 queued tasks, saturation hands HTTP requests and
+     * GENA events to 8 overflow threads with another 64 queued tasks. Beyond that, HTTP requests
+     * are answered with 503 and GENA events are retried later.
+     */
+    protected ExecutorService createSyncProtocolExecutorService() {
+        return new BoundedClingExecutor("cling-sync-", 16, 64);
+    }
+
+    /**
+     * @return Defaults to 4 threads and no limit of queued notifications.
+     */
+    protected ExecutorService createRegistryListenerExecutorService() {
+        return new BoundedClingExecutor("cling-listener-", 4, Integer.MAX_VALUE);
+    }
+
+    /**
+     * @return Defaults to a single thread, scheduled tasks only hand work to the protocol executors.
+     */
+    protected ScheduledExecutorService createScheduledExecutorService() {
+        return new ScheduledThreadPoolExecutor(1, new ClingThreadFactory("cling-scheduler-"));
+    }
+
     public static class ClingExecutor extends ThreadPoolExecutor {
 
         public ClingExecutor() {
@@ -346,14 +438,253 @@ public class DefaultUpnpServiceConfiguration implements UpnpServiceConfiguration
         }
     }
 
+    /**
+     * A thread pool with a fixed maximum number of threads and a bounded priority queue.
+     * <p>
+     * Tasks are ordered by {@link #getPriority(Runnable)}, in submission order within the same
+     * priority. Idle threads terminate after 60 seconds. When the queue is full,
+     * {@link #isDroppable(Runnable)} tasks are discarded, others are handed to an overflow pool
+     * with half the threads and the same queue capacity. If that is full too, <code>execute()</code>
+     * throws a <code>RejectedExecutionException</code>, the submitter decides how to back off. The
+     * submitting thread never runs a task, it might hold the registry or a subscription lock.
+     * </p>
+     * <p>
+     * Queue depth and rejection counters can be read at runtime, e.g. to tune the pool sizes
+     * of a {@link DefaultUpnpServiceConfiguration} subclass.
+     * </p>
+     */
+    public static class BoundedClingExecutor extends ThreadPoolExecutor {
+
+        public enum Priority {
+            HIGH, NORMAL, LOW
+        }
+
+        protected static class PrioritizedTask implements Runnable, Comparable<PrioritizedTask> {
+
+            final Runnable task;
+            final Priority priority;
+            final long sequence;
+
+            PrioritizedTask(Runnable task, Priority priority, long sequence) {
+                this.task = task;
+                this.priority = priority;
+                this.sequence = sequence;
+            }
+
+            public void run() {
+                task.run();
+            }
+
+            public int compareTo(PrioritizedTask that) {
+                int result = priority.compareTo(that.priority);
+                if (result != 0) return result;
+                return sequence < that.sequence ? -1 : (sequence == that.sequence ? 0 : 1);
+            }
+
+            @Override
+            public String toString() {
+                return task.toString();
+            }
+        }
+
+        final protected int queueCapacity;
+        final protected AtomicLong sequence = new AtomicLong();
+        final protected AtomicInteger peakQueueDepth = new AtomicInteger();
+        final protected AtomicLong droppedCount = new AtomicLong();
+        final protected AtomicLong overflowCount = new AtomicLong();
+        final protected AtomicLong rejectedCount = new AtomicLong();
+        final protected ExecutorService overflowExecutor;
+
+        public BoundedClingExecutor(String namePrefix, int maxThreads, int queueCapacity) {
+            this(new ClingThreadFactory(namePrefix), new ClingThreadFactory(namePrefix + "overflow-"),
+                    maxThreads, queueCapacity);
+        }
+
+        public BoundedClingExecutor(ThreadFactory threadFactory, int maxThreads, int queueCapacity) {
+            this(threadFactory, new ClingThreadFactory("cling-overflow-"), maxThreads, queueCapacity);
+        }
+
+        public BoundedClingExecutor(ThreadFactory threadFactory, ThreadFactory overflowThreadFactory,
+                                    int maxThreads, int queueCapacity) {
+            super(maxThreads,
+                    maxThreads,
+                    60L,
+                    TimeUnit.SECONDS,
+                    new PriorityBlockingQueue<Runnable>(),
+                    threadFactory
+            );
+            this.queueCapacity = queueCapacity;
+            this.overflowExecutor = createOverflowExecutor(
+                    overflowThreadFactory, Math.max(1, maxThreads / 2), queueCapacity
+            );
+            allowCoreThreadTimeOut(true);
+            setRejectedExecutionHandler(new RejectedExecutionHandler() {
+                public void rejectedExecution(Runnable runnable, ThreadPoolExecutor executor) {
+                    rejected(runnable);
+                }
+            });
+        }
+
+        @Override
+        public void execute(Runnable runnable) {
+            if (runnable == null) throw new NullPointerException();
+            int queueDepth = getQueue().size();
+            if (queueDepth >= queueCapacity) {
+                rejected(runnable);
+                return;
+            }
+            if (queueDepth >= peakQueueDepth.get())
+                peakQueueDepth.set(queueDepth + 1);
+            super.execute(new PrioritizedTask(runnable, getPriority(runnable), sequence.getAndIncrement()));
+        }
+
+        public int getQueueCapacity() {
+            return queueCapacity;
+        }
+
+        public int getQueueDepth() {
+            return getQueue().size();
+        }
+
+        public int getPeakQueueDepth() {
+            return peakQueueDepth.get();
+        }
+
+        /**
+         * @return The number of discarded tasks, see {@link #isDroppable(Runnable)}.
+         */
+        public long getDroppedCount() {
+            return droppedCount.get();
+        }
+
+        /**
+         * @return The number of tasks executed by the overflow pool because the queue was full.
+         */
+        public long getOverflowCount() {
+            return overflowCount.get();
+        }
+
+        /**
+         * @return The number of tasks rejected because the queue and the overflow pool were full.
+         */
+        public long getRejectedCount() {
+            return rejectedCount.get();
+        }
+
+        @Override
+        public void shutdown() {
+            overflowExecutor.shutdown();
+            super.shutdown();
+        }
+
+        @Override
+        public List<Runnable> shutdownNow() {
+            overflowExecutor.shutdownNow();
+            return super.shutdownNow();
+        }
+
+        /**
+         * @return A pool with a fixed maximum number of threads and a bounded queue, its threads
+         * terminate when the saturation is over. It must throw a <code>RejectedExecutionException</code>
+         * when it is full.
+         */
+        protected ExecutorService createOverflowExecutor(ThreadFactory threadFactory,
+                                                         int maxThreads, int queueCapacity) {
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                    maxThreads,
+                    maxThreads,
+                    60L,
+                    TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(queueCapacity),
+                    threadFactory,
+                    new AbortPolicy()
+            );
+            executor.allowCoreThreadTimeOut(true);
+            return executor;
+        }
+
+        protected Priority getPriority(Runnable runnable) {
+            if (runnable instanceof SendingEvent
+                    || runnable instanceof QueuedLocalGENASubscription.Delivery
+                    || runnable instanceof UpnpStream)
+                return Priority.HIGH;
+            if (runnable instanceof RetrieveRemoteDescriptors)
+                return Priority.LOW;
+            return Priority.NORMAL;
+        }
+
+        /**
+         * @return <code>true</code> for received discovery messages and descriptor retrieval, the
+         * remote device will advertise itself again.
+         */
+        protected boolean isDroppable(Runnable runnable) {
+            return runnable instanceof ReceivingAsync || runnable instanceof RetrieveRemoteDescriptors;
+        }
+
+        protected void rejected(Runnable runnable) {
+            if (runnable instanceof PrioritizedTask)
+                runnable = ((PrioritizedTask) runnable).task;
+            if (isShutdown()) {
+                log.info("Thread pool rejected execution of " + runnable.getClass());
+            } else if (isDroppable(runnable)) {
+                long dropped = droppedCount.incrementAndGet();
+                if (log.isLoggable(Level.FINE))
+                    log.fine("Thread pool saturated, dropped " + dropped + " tasks, dropping: " + runnable);
+            } else {
+                try {
+                    overflowExecutor.execute(runnable);
+                } catch (RejectedExecutionException ex) {
+                    long rejectedTotal = rejectedCount.incrementAndGet();
+                    if (log.isLoggable(Level.FINE))
+                        log.fine("Thread pool and overflow saturated, rejected " + rejectedTotal + " tasks: " + runnable);
+                    throw new RejectedExecutionException("Thread pool and overflow saturated: " + runnable);
+                }
+                long overflow = overflowCount.incrementAndGet();
+                if (log.isLoggable(Level.FINE))
+                    log.fine("Thread pool saturated, " + overflow + " tasks handed to overflow pool: " + runnable);
+            }
+        }
+
+        @Override
+        protected void afterExecute(Runnable runnable, Throwable throwable) {
+            super.afterExecute(runnable, throwable);
+            if (throwable != null) {
+                Throwable cause = Exceptions.unwrap(throwable);
+                if (cause instanceof InterruptedException) {
+                    // Ignore this, might happen when we shutdownNow() the executor
+                    return;
+                }
+                // Log only
+                log.warning("Thread terminated " + runnable + " abruptly with exception: " + throwable);
+                log.warning("Root cause: " + cause);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "(" + getClass().getSimpleName() + ")"
+                    + " Threads: " + getPoolSize() + "/" + getMaximumPoolSize()
+                    + " Queued: " + getQueueDepth() + " (peak " + getPeakQueueDepth() + ")"
+                    + " Completed: " + getCompletedTaskCount()
+                    + " Dropped: " + getDroppedCount()
+                    + " Overflow: " + getOverflowCount()
+                    + " Rejected: " + getRejectedCount();
+        }
+    }
+
     // Executors.DefaultThreadFactory is package visibility (...no touching, you unworthy JDK user!)
     public static class ClingThreadFactory implements ThreadFactory {
 
         protected final ThreadGroup group;
         protected final AtomicInteger threadNumber = new AtomicInteger(1);
-        protected final String namePrefix = "cling-";
+        protected final String namePrefix;
 
         public ClingThreadFactory() {
+            this("cling-");
+        }
+
+        public ClingThreadFactory(String namePrefix) {
+            this.namePrefix = namePrefix;
             SecurityManager s = System.getSecurityManager();
             group = (s != null) ? s.getThreadGroup() : Thread.currentThread().getThreadGroup();
         }
@@ -24,7 +24,11 @@ import com.cling.model.Namespace;
 import com.cling.model.message.UpnpHeaders;
 import com.cling.model.meta.RemoteDeviceIdentity;
 import com.cling.model.meta.RemoteService;
+import com.cling.model.types.DeviceType;
 import com.cling.model.types.ServiceType;
+import com.cling.protocol.DatagramFilter;
+import com.cling.protocol.DatagramFilterImpl;
+import com.cling.protocol.RemoteDescriptorCache;
 import com.cling.transport.impl.DatagramIOConfigurationImpl;
 import com.cling.transport.impl.DatagramIOImpl;
 import com.cling.transport.impl.GENAEventProcessorImpl;
@@ -47,6 +51,8 @@ import com.cling.transport.spi.StreamServer;
 
 import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.logging.Logger;
 
 import javax.annotation.PostConstruct;
@@ -66,8 +72,10 @@ public class ManagedUpnpServiceConfiguration implements UpnpServiceConfiguration
     // TODO: All of these fields should be injected so users can provide values through CDI
     @Inject
     protected DatagramProcessor datagramProcessor;
+    private DatagramFilter datagramFilter;
     private int streamListenPort;
     private ExecutorService defaultExecutorService;
+    private ScheduledExecutorService scheduledExecutorService;
     private SOAPActionProcessor soapActionProcessor;
     private GENAEventProcessor genaEventProcessor;
 
@@ -86,7 +94,9 @@ public class ManagedUpnpServiceConfiguration implements UpnpServiceConfiguration
         this.streamListenPort = NetworkAddressFactoryImpl.DEFAULT_TCP_HTTP_LISTEN_PORT;
 
         defaultExecutorService = createDefaultExecutorService();
+        scheduledExecutorService = createScheduledExecutorService();
 
+        datagramFilter = createDatagramFilter();
         soapActionProcessor = createSOAPActionProcessor();
         genaEventProcessor = createGENAEventProcessor();
 
@@ -100,6 +110,17 @@ public class ManagedUpnpServiceConfiguration implements UpnpServiceConfiguration
         return datagramProcessor;
     }
 
+    public DatagramFilter getDatagramFilter() {
+        return datagramFilter;
+    }
+
+    /**
+     * @return <code>null</code>, override to store remote descriptors on disk.
+     */
+    public RemoteDescriptorCache getRemoteDescriptorCache() {
+        return null;
+    }
+
     public SOAPActionProcessor getSoapActionProcessor() {
         return soapActionProcessor;
     }
@@ -161,6 +182,10 @@ public class ManagedUpnpServiceConfiguration implements UpnpServiceConfiguration
         return new ServiceType[0];
     }
 
+    public DeviceType[] getExclusiveDeviceTypes() {
+        return new DeviceType[0];
+    }
+
     /**
      * @return Defaults to <code>false</code>.
      */
@@ -202,6 +227,10 @@ public class ManagedUpnpServiceConfiguration implements UpnpServiceConfiguration
         return getDefaultExecutorService();
     }
 
+    public ScheduledExecutorService getScheduledExecutorService() {
+        return scheduledExecutorService;
+    }
+
     public Namespace getNamespace() {
         return namespace;
     }
@@ -219,6 +248,8 @@ public class ManagedUpnpServiceConfiguration implements UpnpServiceConfiguration
     }
 
     public void shutdown() {
+        log.fine("Shutting down scheduled executor service");
+        getScheduledExecutorService().shutdownNow();
         log.fine("Shutting down default executor service");
         getDefaultExecutorService().shutdownNow();
     }
@@ -243,6 +274,10 @@ public class ManagedUpnpServiceConfiguration implements UpnpServiceConfiguration
         return new UDA10ServiceDescriptorBinderImpl();
     }
 
+    protected DatagramFilter createDatagramFilter() {
+        return new DatagramFilterImpl();
+    }
+
     protected Namespace createNamespace() {
         return new Namespace();
     }
@@ -254,4 +289,10 @@ public class ManagedUpnpServiceConfiguration implements UpnpServiceConfiguration
     protected ExecutorService createDefaultExecutorService() {
         return new DefaultUpnpServiceConfiguration.ClingExecutor();
     }
+
+    protected ScheduledExecutorService createScheduledExecutorService() {
+        return new ScheduledThreadPoolExecutor(
+                1, new DefaultUpnpServiceConfiguration.ClingThreadFactory("cling-scheduler-")
+        );
+    }
 }
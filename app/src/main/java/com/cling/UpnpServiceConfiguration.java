@@ -21,7 +21,10 @@ import com.cling.model.Namespace;
 import com.cling.model.message.UpnpHeaders;
 import com.cling.model.meta.RemoteDeviceIdentity;
 import com.cling.model.meta.RemoteService;
+import com.cling.model.types.DeviceType;
 import com.cling.model.types.ServiceType;
+import com.cling.protocol.DatagramFilter;
+import com.cling.protocol.RemoteDescriptorCache;
 import com.cling.transport.spi.DatagramIO;
 import com.cling.transport.spi.DatagramProcessor;
 import com.cling.transport.spi.GENAEventProcessor;
@@ -33,6 +36,7 @@ import com.cling.transport.spi.StreamServer;
 
 import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
 
 /**
  * Shared configuration data of the UPnP stack..
@@ -60,6 +64,19 @@ public interface UpnpServiceConfiguration {
      */
     public DatagramProcessor getDatagramProcessor();
 
+    /**
+     * @return The shared implementation of {@link com.cling.protocol.DatagramFilter}, or <code>null</code>
+     * if all received datagrams should be handed to the protocol factory. Note that the filter
+     * applies the {@link #getExclusiveServiceTypes()} and {@link #getExclusiveDeviceTypes()}.
+     */
+    public DatagramFilter getDatagramFilter();
+
+    /**
+     * @return The on-disk store of remote device and service descriptors, or <code>null</code>
+     * if descriptors of discovered devices should always be retrieved.
+     */
+    public RemoteDescriptorCache getRemoteDescriptorCache();
+
     /**
      * @return The shared implementation of {@link com.cling.transport.spi.SOAPActionProcessor}.
      */
@@ -139,6 +156,20 @@ public interface UpnpServiceConfiguration {
      */
     public ServiceType[] getExclusiveServiceTypes();
 
+    /**
+     * Returns device types that can be handled by this UPnP stack, in addition to the
+     * {@link #getExclusiveServiceTypes()}.
+     * <p>
+     * If any exclusive device or service types are returned, only advertisements of matching
+     * devices and services are accepted. As with service types, a discovered device type with
+     * a higher version will match an exclusive device type with a lower version.
+     * </p>
+     *
+     * @return An array of device types that are exclusively discovered. An empty array or
+     * <code>null</code> means the device type is not restricted.
+     */
+    public DeviceType[] getExclusiveDeviceTypes();
+
     /**
      * @return The time in milliseconds to wait between each registry maintenance operation.
      */
@@ -232,6 +263,12 @@ public interface UpnpServiceConfiguration {
      */
     public ExecutorService getSyncProtocolExecutorService();
 
+    /**
+     * @return The executor which runs delayed steps of the discovery protocols, such as the random
+     *         <em>MX</em> wait before search responses and the interval between repeated messages.
+     */
+    public ScheduledExecutorService getScheduledExecutorService();
+
     /**
      * @return An instance of {@link com.cling.model.Namespace} for this UPnP stack.
      */
@@ -21,23 +21,30 @@ import com.cling.binding.xml.RecoveringUDA10DeviceDescriptorBinderImpl;
 import com.cling.binding.xml.ServiceDescriptorBinder;
 import com.cling.binding.xml.UDA10ServiceDescriptorBinderSAXImpl;
 import com.cling.model.Namespace;
-import com.cling.transport.impl.AsyncServletStreamServerConfigurationImpl;
-import com.cling.transport.impl.AsyncServletStreamServerImpl;
+import com.cling.protocol.RemoteDescriptorCache;
+import com.cling.transport.impl.NioStreamServerConfigurationImpl;
+import com.cling.transport.impl.NioStreamServerImpl;
+import com.cling.transport.impl.PooledStreamClientConfigurationImpl;
+import com.cling.transport.impl.PooledStreamClientImpl;
 import com.cling.transport.impl.RecoveringGENAEventProcessorImpl;
 import com.cling.transport.impl.RecoveringSOAPActionProcessorImpl;
-import com.cling.transport.impl.jetty.JettyServletContainer;
+import com.cling.transport.impl.ScanningDatagramProcessorImpl;
+import com.cling.transport.spi.DatagramProcessor;
 import com.cling.transport.spi.GENAEventProcessor;
 import com.cling.transport.spi.NetworkAddressFactory;
 import com.cling.transport.spi.SOAPActionProcessor;
 import com.cling.transport.spi.StreamClient;
 import com.cling.transport.spi.StreamServer;
 
+import java.io.File;
+
 /**
  * Configuration settings for deployment on Android.
  * <p>
- * This configuration utilizes the Jetty transport implementation
- * found in {@link com.cling.transport.impl.jetty} for TCP/HTTP networking, as
- * client and server. The servlet context path for UPnP is set to <code>/upnp</code>.
+ * This configuration receives HTTP requests with the selector-based {@link NioStreamServerImpl},
+ * which serves persistent connections of many control points on a single thread. The path
+ * of UPnP resources starts with <code>/upnp</code>. Outgoing HTTP requests are sent by
+ * {@link PooledStreamClientImpl}, which keeps connections to each host open for reuse.
  * </p>
  * <p>
  * The kxml2 implementation of <code>org.xmlpull</code> is available Android, therefore
@@ -49,23 +56,49 @@ import com.cling.transport.spi.StreamServer;
  * <code>org.xml.sax.driver</code> is set to  <code>org.xmlpull.v1.sax2.Driver</code>.
  * </p>
  * <p>
+ * SSDP datagrams are read with {@link ScanningDatagramProcessorImpl}, unsupported
+ * datagrams are dropped before any message is created.
+ * </p>
+ * <p>
  * To preserve battery, the {@link com.cling.registry.Registry} will only
  * be maintained every 3 seconds.
  * </p>
+ * <p>
+ * If a cache directory is given, descriptors of remote devices are stored there with a
+ * {@link RemoteDescriptorCache}, and known devices are available right after a restart.
+ * </p>
  *
  * @author Christian Bauer
  */
 public class AndroidUpnpServiceConfiguration extends DefaultUpnpServiceConfiguration {
 
+    final private RemoteDescriptorCache remoteDescriptorCache;
+
     public AndroidUpnpServiceConfiguration() {
         this(0); // Ephemeral port
     }
 
     public AndroidUpnpServiceConfiguration(int streamListenPort) {
+        this(streamListenPort, null);
+    }
+
+    /**
+     * @param cacheDirectory The application's cache directory, or <code>null</code> to disable the descriptor cache.
+     */
+    public AndroidUpnpServiceConfiguration(int streamListenPort, File cacheDirectory) {
         super(streamListenPort, false);
 
         // This should be the default on Android 2.1 but it's not set by default
         System.setProperty("org.xml.sax.driver", "org.xmlpull.v1.sax2.Driver");
+
+        remoteDescriptorCache = cacheDirectory != null
+                ? new RemoteDescriptorCache(new File(cacheDirectory, "upnp-descriptors"))
+                : null;
+    }
+
+    @Override
+    public RemoteDescriptorCache getRemoteDescriptorCache() {
+        return remoteDescriptorCache;
     }
 
     @Override
@@ -75,21 +108,20 @@ public class AndroidUpnpServiceConfiguration extends DefaultUpnpServiceConfigura
 
     @Override
     protected Namespace createNamespace() {
-        // For the Jetty server, this is the servlet context path
         return new Namespace("/upnp");
     }
 
     @Override
     public StreamClient createStreamClient() {
-       return null;
+        return new PooledStreamClientImpl(
+                new PooledStreamClientConfigurationImpl(getDefaultExecutorService())
+        );
     }
 
     @Override
     public StreamServer createStreamServer(NetworkAddressFactory networkAddressFactory) {
-        // Use Jetty, start/stop a new shared instance of JettyServletContainer
-        return new AsyncServletStreamServerImpl(
-                new AsyncServletStreamServerConfigurationImpl(
-                        JettyServletContainer.INSTANCE,
+        return new NioStreamServerImpl(
+                new NioStreamServerConfigurationImpl(
                         networkAddressFactory.getStreamListenPort()
                 )
         );
@@ -105,6 +137,11 @@ public class AndroidUpnpServiceConfiguration extends DefaultUpnpServiceConfigura
         return new UDA10ServiceDescriptorBinderSAXImpl();
     }
 
+    @Override
+    protected DatagramProcessor createDatagramProcessor() {
+        return new ScanningDatagramProcessorImpl();
+    }
+
     @Override
     protected SOAPActionProcessor createSOAPActionProcessor() {
         return new RecoveringSOAPActionProcessorImpl();
@@ -27,6 +27,7 @@ import com.cling.UpnpServiceConfiguration;
 import com.cling.UpnpServiceImpl;
 import com.cling.controlpoint.ControlPoint;
 import com.cling.protocol.ProtocolFactory;
+import com.cling.registry.ConcurrentRegistryImpl;
 import com.cling.registry.Registry;
 import com.cling.transport.Router;
 
@@ -56,6 +57,11 @@ public class AndroidUpnpServiceImpl extends Service {
 
         upnpService = new UpnpServiceImpl(createConfiguration()) {
 
+            @Override
+            protected Registry createRegistry(ProtocolFactory protocolFactory) {
+                return new ConcurrentRegistryImpl(this);
+            }
+
             @Override
             protected Router createRouter(ProtocolFactory protocolFactory, Registry registry) {
                 return AndroidUpnpServiceImpl.this.createRouter(
@@ -80,7 +86,7 @@ public class AndroidUpnpServiceImpl extends Service {
     }
 
     protected UpnpServiceConfiguration createConfiguration() {
-        return new AndroidUpnpServiceConfiguration(UPNP_STREAM_PORT);
+        return new AndroidUpnpServiceConfiguration(UPNP_STREAM_PORT, getCacheDir());
     }
 
     protected AndroidRouter createRouter(UpnpServiceConfiguration configuration,
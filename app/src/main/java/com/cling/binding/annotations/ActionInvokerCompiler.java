@@ -0,0 +1,290 @@
+/*
+ * Copyright (C) 2013 4th Line GmbH, Switzerland
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * Lesser General Public License Version 2 or later ("LGPL") or the
+ * Common Development and Distribution License Version 1 or later
+ * ("CDDL") (collectively, the "License"). You may not use this file
+ * except in compliance with the License. See LICENSE.txt for more
+ * information.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+
+package com.cling.binding.annotations;
+
+import com.cling.model.state.FieldStateVariableAccessor;
+import com.cling.model.state.GetterStateVariableAccessor;
+import com.cling.model.state.StateVariableAccessor;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Resolves the methods, constructors, and accessors of an action once, when the service is bound.
+ * <p>
+ * If the runtime supports <code>java.lang.invoke</code>, members are compiled to method handles
+ * with a fixed <code>(Object, Object[])Object</code> type, otherwise (Android before API 26)
+ * the made-accessible reflection objects are cached. Either way no member lookup or access
+ * check is repeated for an action invocation.
+ * </p>
+ *
+ * @author Christian Bauer
+ */
+public class ActionInvokerCompiler {
+
+    private static Logger log = Logger.getLogger(ActionInvokerCompiler.class.getName());
+
+    /**
+     * Calls a compiled method or constructor; exceptions thrown by the target are not wrapped.
+     */
+    public interface Invoker {
+
+        Object invoke(Object target, Object[] arguments) throws Exception;
+
+    }
+
+    static final protected boolean METHOD_HANDLES_AVAILABLE;
+
+    static {
+        boolean available;
+        try {
+            Class.forName("java.lang.invoke.MethodHandles");
+            available = true;
+        } catch (Throwable t) {
+            available = false;
+        }
+        METHOD_HANDLES_AVAILABLE = available;
+    }
+
+    protected boolean useMethodHandles;
+
+    public ActionInvokerCompiler() {
+        this(METHOD_HANDLES_AVAILABLE);
+    }
+
+    /**
+     * @param useMethodHandles Set to <code>false</code> to always use cached reflection.
+     */
+    public ActionInvokerCompiler(boolean useMethodHandles) {
+        this.useMethodHandles = useMethodHandles && METHOD_HANDLES_AVAILABLE;
+    }
+
+    public boolean isUseMethodHandles() {
+        return useMethodHandles;
+    }
+
+    public Invoker compile(Method method) {
+        makeAccessible(method);
+        if (isUseMethodHandles()) {
+            try {
+                return new MethodHandleInvoker(
+                        MethodHandles.lookup().unreflect(method),
+                        method.getParameterTypes().length,
+                        method.toString()
+                );
+            } catch (Throwable t) {
+                logFallback(method.toString(), t);
+            }
+        }
+        return new MethodInvoker(method);
+    }
+
+    /**
+     * @return An invoker which ignores the target and calls the constructor with the arguments.
+     */
+    public Invoker compile(Constructor<?> constructor) {
+        makeAccessible(constructor);
+        if (isUseMethodHandles()) {
+            try {
+                MethodHandle handle = MethodHandles.lookup().unreflectConstructor(constructor);
+                // Accept and drop the target, so all invokers have the same type
+                handle = MethodHandles.dropArguments(handle, 0, Object.class);
+                return new MethodHandleInvoker(
+                        handle,
+                        constructor.getParameterTypes().length,
+                        constructor.toString()
+                );
+            } catch (Throwable t) {
+                logFallback(constructor.toString(), t);
+            }
+        }
+        return new ConstructorInvoker(constructor);
+    }
+
+    /**
+     * @return An invoker which returns the value of the field on the target, ignoring any arguments.
+     */
+    public Invoker compile(Field field) {
+        makeAccessible(field);
+        if (isUseMethodHandles()) {
+            try {
+                return new MethodHandleInvoker(
+                        MethodHandles.lookup().unreflectGetter(field),
+                        0,
+                        field.toString()
+                );
+            } catch (Throwable t) {
+                logFallback(field.toString(), t);
+            }
+        }
+        return new FieldInvoker(field);
+    }
+
+    /**
+     * @return An invoker reading the state variable accessor's value from the target, or
+     * <code>null</code> if the given accessor is <code>null</code>.
+     */
+    public Invoker compile(final StateVariableAccessor accessor) {
+        if (accessor == null) return null;
+        if (accessor instanceof GetterStateVariableAccessor)
+            return compile(((GetterStateVariableAccessor) accessor).getGetter());
+        if (accessor instanceof FieldStateVariableAccessor)
+            return compile(((FieldStateVariableAccessor) accessor).getField());
+        return new Invoker() {
+            public Object invoke(Object target, Object[] arguments) throws Exception {
+                return accessor.read(target);
+            }
+        };
+    }
+
+    /**
+     * @return An invoker calling the public <code>String</code> constructor of the given type; if there
+     * is no such constructor, the invoker throws the <code>NoSuchMethodException</code> when called.
+     */
+    public Invoker compileStringConstructor(Class<?> type) {
+        try {
+            return compile(type.getConstructor(String.class));
+        } catch (final NoSuchMethodException ex) {
+            return new Invoker() {
+                public Object invoke(Object target, Object[] arguments) throws Exception {
+                    throw ex;
+                }
+            };
+        }
+    }
+
+    protected void makeAccessible(java.lang.reflect.AccessibleObject member) {
+        try {
+            member.setAccessible(true);
+        } catch (SecurityException ex) {
+            log.finer("Can't make member accessible, access checks apply: " + member);
+        }
+    }
+
+    protected void logFallback(String member, Throwable t) {
+        if (log.isLoggable(Level.FINE))
+            log.fine("Can't create method handle, falling back to reflection for: " + member + " - " + t);
+    }
+
+    static protected Exception unwrap(InvocationTargetException ex) throws Exception {
+        if (ex.getCause() instanceof Exception)
+            return (Exception) ex.getCause();
+        if (ex.getCause() instanceof Error)
+            throw (Error) ex.getCause();
+        return ex;
+    }
+
+    static protected class MethodHandleInvoker implements Invoker {
+
+        final protected MethodHandle handle;
+        final protected String member;
+
+        protected MethodHandleInvoker(MethodHandle handle, int parameterCount, String member) {
+            // Spread the arguments array and erase all types, the call site is then always exact
+            this.handle = handle
+                    .asSpreader(Object[].class, parameterCount)
+                    .asType(MethodType.methodType(Object.class, Object.class, Object[].class));
+            this.member = member;
+        }
+
+        public Object invoke(Object target, Object[] arguments) throws Exception {
+            try {
+                return (Object) handle.invokeExact(target, arguments);
+            } catch (Exception ex) {
+                throw ex;
+            } catch (Error err) {
+                throw err;
+            } catch (Throwable t) {
+                throw new InvocationTargetException(t);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "(MethodHandle) " + member;
+        }
+    }
+
+    static protected class MethodInvoker implements Invoker {
+
+        final protected Method method;
+
+        protected MethodInvoker(Method method) {
+            this.method = method;
+        }
+
+        public Object invoke(Object target, Object[] arguments) throws Exception {
+            try {
+                return method.invoke(target, arguments);
+            } catch (InvocationTargetException ex) {
+                throw unwrap(ex);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "(Method) " + method;
+        }
+    }
+
+    static protected class ConstructorInvoker implements Invoker {
+
+        final protected Constructor<?> constructor;
+
+        protected ConstructorInvoker(Constructor<?> constructor) {
+            this.constructor = constructor;
+        }
+
+        public Object invoke(Object target, Object[] arguments) throws Exception {
+            try {
+                return constructor.newInstance(arguments);
+            } catch (InvocationTargetException ex) {
+                throw unwrap(ex);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "(Constructor) " + constructor;
+        }
+    }
+
+    static protected class FieldInvoker implements Invoker {
+
+        final protected Field field;
+
+        protected FieldInvoker(Field field) {
+            this.field = field;
+        }
+
+        public Object invoke(Object target, Object[] arguments) throws Exception {
+            return field.get(target);
+        }
+
+        @Override
+        public String toString() {
+            return "(Field) " + field;
+        }
+    }
+
+}
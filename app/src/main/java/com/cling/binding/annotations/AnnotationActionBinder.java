@@ -47,6 +47,8 @@ public class AnnotationActionBinder {
 
     private static Logger log = Logger.getLogger(AnnotationLocalServiceBinder.class.getName());
 
+    static final protected ActionInvokerCompiler INVOKER_COMPILER = new ActionInvokerCompiler();
+
     protected UpnpAction annotation;
     protected Method method;
     protected Map<StateVariable, StateVariableAccessor> stateVariables;
@@ -100,9 +102,20 @@ public class AnnotationActionBinder {
         return action;
     }
 
+    /**
+     * @return The compiler resolving the action method and accessors of the executor, shared by all binders.
+     */
+    protected ActionInvokerCompiler getInvokerCompiler() {
+        return INVOKER_COMPILER;
+    }
+
     protected ActionExecutor createExecutor(Map<ActionArgument<LocalService>, StateVariableAccessor> outputArguments) {
         // TODO: Invent an annotation for this configuration
-        return new MethodActionExecutor(outputArguments, getMethod());
+        MethodActionExecutor executor = new CompiledActionExecutor(
+                getInvokerCompiler(), outputArguments, getMethod(), getStringConvertibleTypes()
+        );
+        executor.setReadOnly(getAnnotation().readOnly());
+        return executor;
     }
 
     protected List<ActionArgument> createInputArguments() throws LocalServiceBindingException {
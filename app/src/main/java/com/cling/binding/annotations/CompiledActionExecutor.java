@@ -0,0 +1,181 @@
+/*
+ * Copyright (C) 2013 4th Line GmbH, Switzerland
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * Lesser General Public License Version 2 or later ("LGPL") or the
+ * Common Development and Distribution License Version 1 or later
+ * ("CDDL") (collectively, the "License"). You may not use this file
+ * except in compliance with the License. See LICENSE.txt for more
+ * information.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+
+package com.cling.binding.annotations;
+
+import com.cling.model.ModelUtil;
+import com.cling.model.action.ActionArgumentValue;
+import com.cling.model.action.ActionException;
+import com.cling.model.action.ActionInvocation;
+import com.cling.model.action.MethodActionExecutor;
+import com.cling.model.action.RemoteActionInvocation;
+import com.cling.model.action.StreamedValue;
+import com.cling.model.meta.Action;
+import com.cling.model.meta.ActionArgument;
+import com.cling.model.meta.LocalService;
+import com.cling.model.profile.RemoteClientInfo;
+import com.cling.model.state.StateVariableAccessor;
+import com.cling.model.types.ErrorCode;
+
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Invokes methods on a service implementation instance with invokers compiled at binding time.
+ * <p>
+ * The action method, the <code>String</code> constructors of string-convertible parameter types,
+ * and the output argument accessors are resolved once by the {@link ActionInvokerCompiler}.
+ * An invocation only converts the input values into an argument array of the method's arity and
+ * calls the compiled invokers; error handling is the same as in {@link MethodActionExecutor}.
+ * </p>
+ *
+ * @author Christian Bauer
+ */
+public class CompiledActionExecutor extends MethodActionExecutor {
+
+    private static Logger log = Logger.getLogger(CompiledActionExecutor.class.getName());
+
+    static final protected Object[] NO_ARGUMENTS = new Object[0];
+
+    final protected ActionInvokerCompiler.Invoker invoker;
+    final protected Class<?>[] parameterTypes;
+    final protected ActionInvokerCompiler.Invoker[] stringConstructors;
+    final protected boolean remoteClientInfoParameter;
+    final protected ActionInvokerCompiler.Invoker[] outputAccessors;
+    final protected boolean useOutputArgumentAccessors;
+
+    public CompiledActionExecutor(ActionInvokerCompiler compiler,
+                                  Map<ActionArgument<LocalService>, StateVariableAccessor> outputArgumentAccessors,
+                                  Method method,
+                                  Set<Class> stringConvertibleTypes) {
+        super(outputArgumentAccessors, method);
+
+        this.invoker = compiler.compile(method);
+        this.parameterTypes = method.getParameterTypes();
+
+        this.remoteClientInfoParameter = parameterTypes.length > 0
+                && RemoteClientInfo.class.isAssignableFrom(parameterTypes[parameterTypes.length - 1]);
+
+        this.stringConstructors = new ActionInvokerCompiler.Invoker[parameterTypes.length];
+        for (int i = 0; i < parameterTypes.length; i++) {
+            Class<?> type = parameterTypes[i];
+            if (!type.isEnum() && ModelUtil.isStringConvertibleType(stringConvertibleTypes, type))
+                stringConstructors[i] = compiler.compileStringConstructor(type);
+        }
+
+        // Insertion order of the map is the order of the output arguments of the action
+        this.outputAccessors = new ActionInvokerCompiler.Invoker[outputArgumentAccessors.size()];
+        boolean useAccessors = false;
+        int i = 0;
+        for (StateVariableAccessor accessor : outputArgumentAccessors.values()) {
+            // If there is one output argument for which we have an accessor, all arguments need accessors
+            if (accessor != null) useAccessors = true;
+            outputAccessors[i++] = compiler.compile(accessor);
+        }
+        this.useOutputArgumentAccessors = useAccessors;
+    }
+
+    @Override
+    protected Object invoke(Object serviceImpl, Object[] inputArgumentValues) throws Exception {
+        return invoker.invoke(serviceImpl, inputArgumentValues);
+    }
+
+    @Override
+    protected boolean isUseOutputArgumentAccessors(ActionInvocation<LocalService> actionInvocation) {
+        return useOutputArgumentAccessors;
+    }
+
+    @Override
+    protected Object[] createInputArgumentValues(ActionInvocation<LocalService> actionInvocation, Method method) throws ActionException {
+
+        if (parameterTypes.length == 0) return NO_ARGUMENTS;
+
+        Object[] values = new Object[parameterTypes.length];
+        int i = 0;
+        for (ActionArgument<LocalService> argument : actionInvocation.getAction().getInputArguments()) {
+
+            Class<?> methodParameterType = parameterTypes[i];
+
+            ActionArgumentValue<LocalService> inputValue = actionInvocation.getInput(argument);
+
+            // If it's a primitive argument, we need a value
+            if (methodParameterType.isPrimitive() && (inputValue == null || inputValue.toString().length() == 0))
+                throw new ActionException(
+                        ErrorCode.ARGUMENT_VALUE_INVALID,
+                        "Primitive action method argument '" + argument.getName() + "' requires input value, can't be null or empty string"
+                );
+
+            // It's not primitive and we have no value, that's fine too
+            if (inputValue == null) {
+                i++;
+                continue;
+            }
+
+            // If it's not null, maybe it was a string-convertible type, if so, instantiate it
+            String inputCallValueString = inputValue.toString();
+            ActionInvokerCompiler.Invoker constructor = stringConstructors[i];
+            // Empty string means null and we can't instantiate Enums!
+            if (inputCallValueString.length() > 0 && constructor != null) {
+                try {
+                    values[i++] = constructor.invoke(null, new Object[]{inputCallValueString});
+                } catch (Exception ex) {
+                    log.warning("Error preparing action method call: " + method);
+                    log.warning("Can't convert input argument string to desired type of '" + argument.getName() + "': " + ex);
+                    throw new ActionException(
+                            ErrorCode.ARGUMENT_VALUE_INVALID, "Can't convert input argument string to desired type of '" + argument.getName() + "': " + ex
+                    );
+                }
+            } else {
+                // Or if it wasn't, just use the value without any conversion
+                values[i++] = inputValue.getValue();
+            }
+        }
+
+        if (remoteClientInfoParameter
+                && actionInvocation instanceof RemoteActionInvocation) {
+            // Local calls have no client info, the value stays null
+            values[parameterTypes.length - 1] = ((RemoteActionInvocation) actionInvocation).getRemoteClientInfo();
+        }
+
+        return values;
+    }
+
+    @Override
+    protected Object readOutputArgumentValues(Action<LocalService> action, Object instance) throws Exception {
+        Object[] results = new Object[outputAccessors.length];
+        if (log.isLoggable(Level.FINE))
+            log.fine("Attempting to retrieve output argument values using compiled accessors: " + results.length);
+
+        for (int i = 0; i < outputAccessors.length; i++) {
+            StreamedValue streamedValue = getStreamedValue(action.getOutputArguments()[i], instance);
+            if (streamedValue != null) {
+                results[i] = streamedValue;
+                continue;
+            }
+            if (outputAccessors[i] == null)
+                throw new IllegalStateException("No accessor bound for: " + action.getOutputArguments()[i]);
+            results[i] = outputAccessors[i].invoke(instance, NO_ARGUMENTS);
+        }
+
+        if (results.length == 1) {
+            return results[0];
+        }
+        return results.length > 0 ? results : null;
+    }
+
+}
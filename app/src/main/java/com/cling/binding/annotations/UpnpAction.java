@@ -28,4 +28,10 @@ public @interface UpnpAction {
     String name() default "";
 
     UpnpOutputArgument[] out() default {};
+
+    /**
+     * The action only reads the state of the service, it is executed concurrently with
+     * other read-only actions and state variable queries.
+     */
+    boolean readOnly() default false;
 }
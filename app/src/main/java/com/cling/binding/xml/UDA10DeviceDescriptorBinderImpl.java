@@ -24,6 +24,7 @@ import com.cling.binding.staging.MutableService;
 import com.cling.binding.xml.Descriptor.Device.ELEMENT;
 import com.cling.model.Namespace;
 import com.cling.model.ValidationException;
+import com.cling.model.XMLPool;
 import com.cling.model.XMLUtil;
 import com.cling.model.meta.Device;
 import com.cling.model.meta.DeviceDetails;
@@ -47,18 +48,13 @@ import org.w3c.dom.Element;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
 import org.xml.sax.ErrorHandler;
-import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
 import org.xml.sax.SAXParseException;
 
-import java.io.StringReader;
 import java.net.URI;
 import java.net.URL;
 import java.util.logging.Logger;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-
 /**
  * Implementation based on JAXP DOM.
  *
@@ -133,17 +129,8 @@ public class UDA10DeviceDescriptorBinderImpl implements DeviceDescriptorBinder,
 
             // And by the way... try this with JAXB instead of manual DOM processing! And you thought it couldn't get worse....
 
-            DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-            factory.setNamespaceAware(true);
-            DocumentBuilder documentBuilder = factory.newDocumentBuilder();
-            documentBuilder.setErrorHandler(this);
-
-            Document d = documentBuilder.parse(
-                    new InputSource(
-                            // TODO: UPNP VIOLATION: Virgin Media Superhub sends trailing spaces/newlines after last XML element, need to trim()
-                            new StringReader(descriptorXml.trim())
-                    )
-            );
+            // TODO: UPNP VIOLATION: Virgin Media Superhub sends trailing spaces/newlines after last XML element, need to trim()
+            Document d = XMLPool.parse(descriptorXml.trim(), this);
 
             return describe(undescribedDevice, d);
 
@@ -429,10 +416,7 @@ public class UDA10DeviceDescriptorBinderImpl implements DeviceDescriptorBinder,
         try {
             log.fine("Generating DOM from device model: " + deviceModel);
 
-            DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-            factory.setNamespaceAware(true);
-
-            Document d = factory.newDocumentBuilder().newDocument();
+            Document d = XMLPool.newDocument();
             generateRoot(namespace, deviceModel, d, info);
 
             return d;
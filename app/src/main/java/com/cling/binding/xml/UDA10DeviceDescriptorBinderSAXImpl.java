@@ -21,6 +21,7 @@ import com.cling.binding.staging.MutableDevice;
 import com.cling.binding.staging.MutableIcon;
 import com.cling.binding.staging.MutableService;
 import com.cling.binding.staging.MutableUDAVersion;
+import com.cling.model.PooledSAXParser;
 import com.cling.model.ValidationException;
 import com.cling.model.meta.Device;
 import com.cling.model.types.DLNACaps;
@@ -62,7 +63,7 @@ public class UDA10DeviceDescriptorBinderSAXImpl extends UDA10DeviceDescriptorBin
 
             // Read the XML into a mutable descriptor graph
 
-            SAXParser parser = new SAXParser();
+            SAXParser parser = new PooledSAXParser();
 
             MutableDevice descriptor = new MutableDevice();
             new RootHandler(descriptor, parser);
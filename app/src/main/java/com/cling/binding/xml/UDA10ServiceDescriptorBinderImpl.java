@@ -26,6 +26,7 @@ import com.cling.binding.staging.MutableAllowedValueRange;
 import com.cling.binding.staging.MutableService;
 import com.cling.binding.staging.MutableStateVariable;
 import com.cling.model.ValidationException;
+import com.cling.model.XMLPool;
 import com.cling.model.XMLUtil;
 import com.cling.model.meta.Action;
 import com.cling.model.meta.ActionArgument;
@@ -42,19 +43,14 @@ import org.w3c.dom.Element;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
 import org.xml.sax.ErrorHandler;
-import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
 import org.xml.sax.SAXParseException;
 
-import java.io.StringReader;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Locale;
 import java.util.logging.Logger;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-
 /**
  * Implementation based on JAXP DOM.
  *
@@ -72,17 +68,8 @@ public class UDA10ServiceDescriptorBinderImpl implements ServiceDescriptorBinder
         try {
             log.fine("Populating service from XML descriptor: " + undescribedService);
 
-            DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-            factory.setNamespaceAware(true);
-            DocumentBuilder documentBuilder = factory.newDocumentBuilder();
-            documentBuilder.setErrorHandler(this);
-
-            Document d = documentBuilder.parse(
-                    new InputSource(
-                            // TODO: UPNP VIOLATION: Virgin Media Superhub sends trailing spaces/newlines after last XML element, need to trim()
-                            new StringReader(descriptorXml.trim())
-                    )
-            );
+            // TODO: UPNP VIOLATION: Virgin Media Superhub sends trailing spaces/newlines after last XML element, need to trim()
+            Document d = XMLPool.parse(descriptorXml.trim(), this);
 
             return describe(undescribedService, d);
 
@@ -365,10 +352,7 @@ public class UDA10ServiceDescriptorBinderImpl implements ServiceDescriptorBinder
         try {
             log.fine("Generting XML descriptor from service model: " + service);
 
-            DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-            factory.setNamespaceAware(true);
-
-            Document d = factory.newDocumentBuilder().newDocument();
+            Document d = XMLPool.newDocument();
             generateScpd(service, d);
 
             return d;
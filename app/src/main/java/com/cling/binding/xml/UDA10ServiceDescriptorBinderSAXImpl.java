@@ -23,6 +23,7 @@ import com.cling.binding.staging.MutableActionArgument;
 import com.cling.binding.staging.MutableAllowedValueRange;
 import com.cling.binding.staging.MutableService;
 import com.cling.binding.staging.MutableStateVariable;
+import com.cling.model.PooledSAXParser;
 import com.cling.model.ValidationException;
 import com.cling.model.meta.ActionArgument;
 import com.cling.model.meta.Service;
@@ -60,7 +61,7 @@ public class UDA10ServiceDescriptorBinderSAXImpl extends UDA10ServiceDescriptorB
         try {
             log.fine("Reading service from XML descriptor");
 
-            SAXParser parser = new SAXParser();
+            SAXParser parser = new PooledSAXParser();
 
             MutableService descriptor = new MutableService();
 
@@ -31,7 +31,8 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -46,6 +47,12 @@ import java.util.logging.Logger;
  * bean is slow and requires more time for typical action executions or state
  * variable reading.
  * </p>
+ * <p>
+ * Commands are executed exclusively, unless they are a {@link ReadOnlyCommand}: Read-only
+ * actions (see {@link com.cling.binding.annotations.UpnpAction#readOnly()}) and reading the
+ * state of the service share a read lock and run concurrently. Once initialized, the service
+ * implementation and its <code>PropertyChangeSupport</code> are returned without locking.
+ * </p>
  *
  * @author Christian Bauer
  */
@@ -55,11 +62,11 @@ public class DefaultServiceManager<T> implements ServiceManager<T> {
 
     final protected LocalService<T> service;
     final protected Class<T> serviceClass;
-    final protected ReentrantLock lock = new ReentrantLock(true);
+    final protected ReentrantReadWriteLock lock = new ReentrantReadWriteLock(true);
 
-    // Locking!
-    protected T serviceImpl;
-    protected PropertyChangeSupport propertyChangeSupport;
+    // Locking! Written once while holding the write lock
+    protected volatile T serviceImpl;
+    protected volatile PropertyChangeSupport propertyChangeSupport;
 
     protected DefaultServiceManager(LocalService<T> service) {
         this(service, null);
@@ -73,6 +80,25 @@ public class DefaultServiceManager<T> implements ServiceManager<T> {
     // The monitor entry and exit methods
 
     protected void lock() {
+        lock(lock.writeLock());
+    }
+
+    protected void unlock() {
+        unlock(lock.writeLock());
+    }
+
+    /**
+     * Acquires the shared lock, note that it can't be upgraded to the exclusive {@link #lock()}.
+     */
+    protected void readLock() {
+        lock(lock.readLock());
+    }
+
+    protected void readUnlock() {
+        unlock(lock.readLock());
+    }
+
+    protected void lock(Lock lock) {
         try {
             if (lock.tryLock(getLockTimeoutMillis(), TimeUnit.MILLISECONDS)) {
                 if (log.isLoggable(Level.FINEST))
@@ -85,7 +111,7 @@ public class DefaultServiceManager<T> implements ServiceManager<T> {
         }
     }
 
-    protected void unlock() {
+    protected void unlock(Lock lock) {
         if (log.isLoggable(Level.FINEST))
             log.finest("Releasing lock");
         lock.unlock();
@@ -100,30 +126,47 @@ public class DefaultServiceManager<T> implements ServiceManager<T> {
     }
 
     public T getImplementation() {
+        T serviceImpl = this.serviceImpl;
+        if (serviceImpl != null)
+            return serviceImpl;
         lock();
         try {
-            if (serviceImpl == null) {
+            if (this.serviceImpl == null) {
                 init();
             }
-            return serviceImpl;
+            return this.serviceImpl;
         } finally {
             unlock();
         }
     }
 
     public PropertyChangeSupport getPropertyChangeSupport() {
+        PropertyChangeSupport propertyChangeSupport = this.propertyChangeSupport;
+        if (propertyChangeSupport != null)
+            return propertyChangeSupport;
         lock();
         try {
-            if (propertyChangeSupport == null) {
+            if (this.propertyChangeSupport == null) {
                 init();
             }
-            return propertyChangeSupport;
+            return this.propertyChangeSupport;
         } finally {
             unlock();
         }
     }
 
     public void execute(Command<T> cmd) throws Exception {
+        if (cmd instanceof ReadOnlyCommand) {
+            // Initialize outside of the shared lock
+            getImplementation();
+            readLock();
+            try {
+                cmd.execute(this);
+            } finally {
+                readUnlock();
+            }
+            return;
+        }
         lock();
         try {
             cmd.execute(this);
@@ -134,7 +177,8 @@ public class DefaultServiceManager<T> implements ServiceManager<T> {
 
     @Override
     public Collection<StateVariableValue> getCurrentState() throws Exception {
-        lock();
+        getImplementation();
+        readLock();
         try {
             Collection<StateVariableValue> values = readInitialEventedStateVariableValues();
             if (values != null) {
@@ -152,12 +196,13 @@ public class DefaultServiceManager<T> implements ServiceManager<T> {
             }
             return values;
         } finally {
-            unlock();
+            readUnlock();
         }
     }
 
     protected Collection<StateVariableValue> getCurrentState(String[] variableNames) throws Exception {
-        lock();
+        getImplementation();
+        readLock();
         try {
             Collection<StateVariableValue> values = new ArrayList<StateVariableValue>();
             for (String variableName : variableNames) {
@@ -178,7 +223,7 @@ public class DefaultServiceManager<T> implements ServiceManager<T> {
             }
             return values;
         } finally {
-            unlock();
+            readUnlock();
         }
     }
 
@@ -186,12 +231,16 @@ public class DefaultServiceManager<T> implements ServiceManager<T> {
         log.fine("No service implementation instance available, initializing...");
         try {
             // The actual instance we ware going to use and hold a reference to (1:1 instance for manager)
-            serviceImpl = createServiceInstance();
+            T serviceImpl = createServiceInstance();
 
             // How the implementation instance will tell us about property changes
-            propertyChangeSupport = createPropertyChangeSupport(serviceImpl);
+            PropertyChangeSupport propertyChangeSupport = createPropertyChangeSupport(serviceImpl);
             propertyChangeSupport.addPropertyChangeListener(createPropertyChangeListener(serviceImpl));
 
+            // Publish when complete, both are read without locking
+            this.propertyChangeSupport = propertyChangeSupport;
+            this.serviceImpl = serviceImpl;
+
         } catch (Exception ex) {
             throw new RuntimeException("Could not initialize implementation: " + ex, ex);
         }
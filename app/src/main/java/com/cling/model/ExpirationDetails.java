@@ -15,9 +15,14 @@
 
 package com.cling.model;
 
-import java.util.Date;
-
 /**
+ * Expiration of a registered item, measured on the monotonic clock.
+ * <p>
+ * Timestamps are taken from {@link System#nanoTime()} and are therefore not affected
+ * when the wall clock of the system is adjusted. They are only meaningful when compared
+ * to other timestamps of this class, see {@link #getCurrentTimestampMillis()}.
+ * </p>
+ *
  * @author Christian Bauer
  */
 public class ExpirationDetails {
@@ -26,7 +31,7 @@ public class ExpirationDetails {
     // Performance optimization on Android
     private static String simpleName = ExpirationDetails.class.getSimpleName();
     private int maxAgeSeconds = UNLIMITED_AGE;
-    private long lastRefreshTimestampSeconds = getCurrentTimestampSeconds();
+    private long lastRefreshTimestampMillis = getCurrentTimestampMillis();
 
     public ExpirationDetails() {
     }
@@ -35,20 +40,27 @@ public class ExpirationDetails {
         this.maxAgeSeconds = maxAgeSeconds;
     }
 
+    /**
+     * @return The current time of the monotonic clock used for all expiration timestamps, in milliseconds.
+     */
+    public static long getCurrentTimestampMillis() {
+        return System.nanoTime() / 1000000L;
+    }
+
     public int getMaxAgeSeconds() {
         return maxAgeSeconds;
     }
 
     public long getLastRefreshTimestampSeconds() {
-        return lastRefreshTimestampSeconds;
+        return lastRefreshTimestampMillis / 1000;
     }
 
     public void setLastRefreshTimestampSeconds(long lastRefreshTimestampSeconds) {
-        this.lastRefreshTimestampSeconds = lastRefreshTimestampSeconds;
+        this.lastRefreshTimestampMillis = lastRefreshTimestampSeconds * 1000;
     }
 
     public void stampLastRefresh() {
-        setLastRefreshTimestampSeconds(getCurrentTimestampSeconds());
+        lastRefreshTimestampMillis = getCurrentTimestampMillis();
     }
 
     public boolean hasExpired() {
@@ -62,18 +74,24 @@ public class ExpirationDetails {
     public boolean hasExpired(boolean halfTime) {
         // Note: Uses direct field access for performance reasons on Android
         return maxAgeSeconds != UNLIMITED_AGE &&
-                (lastRefreshTimestampSeconds + (maxAgeSeconds / (halfTime ? 2 : 1))) < getCurrentTimestampSeconds();
+                getExpirationTimestampMillis(halfTime) < getCurrentTimestampMillis();
     }
 
-    public long getSecondsUntilExpiration() {
-        // Note: Uses direct field access for performance reasons on Android
+    /**
+     * @param halfTime If <code>true</code> then half maximum age is used to determine expiration.
+     * @return The monotonic timestamp at which the maximum age will be reached, or <code>Long.MAX_VALUE</code>
+     * if the age is unlimited.
+     */
+    public long getExpirationTimestampMillis(boolean halfTime) {
         return maxAgeSeconds == UNLIMITED_AGE
-                ? Integer.MAX_VALUE
-                : (lastRefreshTimestampSeconds + maxAgeSeconds) - getCurrentTimestampSeconds();
+                ? Long.MAX_VALUE
+                : lastRefreshTimestampMillis + (maxAgeSeconds * 1000L / (halfTime ? 2 : 1));
     }
 
-    protected long getCurrentTimestampSeconds() {
-        return new Date().getTime() / 1000;
+    public long getSecondsUntilExpiration() {
+        return maxAgeSeconds == UNLIMITED_AGE
+                ? Integer.MAX_VALUE
+                : (getExpirationTimestampMillis(false) - getCurrentTimestampMillis()) / 1000;
     }
 
     @Override
@@ -0,0 +1,50 @@
+/*
+ * Copyright (C) 2013 4th Line GmbH, Switzerland
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * Lesser General Public License Version 2 or later ("LGPL") or the
+ * Common Development and Distribution License Version 1 or later
+ * ("CDDL") (collectively, the "License"). You may not use this file
+ * except in compliance with the License. See LICENSE.txt for more
+ * information.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+
+package com.cling.model;
+
+import org.seamless.xml.SAXParser;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * Creates its <code>XMLReader</code> with the factory of the {@link XMLPool}, instead of
+ * looking up a SAX provider for every new parser.
+ * <p>
+ * Parsers with schema validation are still created by the superclass.
+ * </p>
+ *
+ * @author Christian Bauer
+ */
+public class PooledSAXParser extends SAXParser {
+
+    public PooledSAXParser() {
+    }
+
+    public PooledSAXParser(DefaultHandler handler) {
+        super(handler);
+    }
+
+    @Override
+    protected XMLReader create() {
+        if (getSchemaSources() != null)
+            return super.create();
+        try {
+            return XMLPool.createXMLReader();
+        } catch (Exception ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+}
@@ -0,0 +1,29 @@
+/*
+ * Copyright (C) 2013 4th Line GmbH, Switzerland
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * Lesser General Public License Version 2 or later ("LGPL") or the
+ * Common Development and Distribution License Version 1 or later
+ * ("CDDL") (collectively, the "License"). You may not use this file
+ * except in compliance with the License. See LICENSE.txt for more
+ * information.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+
+package com.cling.model;
+
+/**
+ * A procedure which only reads the state of the service implementation.
+ * <p>
+ * The {@link com.cling.model.DefaultServiceManager} executes read-only commands concurrently,
+ * they only exclude commands which might modify the service implementation.
+ * </p>
+ *
+ * @author Christian Bauer
+ */
+public interface ReadOnlyCommand<T> extends Command<T> {
+
+}
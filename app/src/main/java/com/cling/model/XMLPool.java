@@ -0,0 +1,210 @@
+/*
+ * Copyright (C) 2013 4th Line GmbH, Switzerland
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * Lesser General Public License Version 2 or later ("LGPL") or the
+ * Common Development and Distribution License Version 1 or later
+ * ("CDDL") (collectively, the "License"). You may not use this file
+ * except in compliance with the License. See LICENSE.txt for more
+ * information.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+
+package com.cling.model;
+
+import org.seamless.xml.XmlPullParserUtils;
+import org.w3c.dom.Document;
+import org.xml.sax.ErrorHandler;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParserFactory;
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+
+/**
+ * Configured XML parsers and transformers, reused by the SOAP, GENA, descriptor, DIDL and LastChange processors.
+ * <p>
+ * Looking up a JAXP factory scans the classpath for a provider, which is expensive on Android
+ * and was done for every message. The factories are now looked up once, and every thread keeps
+ * its own namespace-aware <code>DocumentBuilder</code>, <code>Transformer</code> and
+ * <code>XmlPullParser</code>, none of these are thread-safe.
+ * </p>
+ * <p>
+ * A SAX <code>XMLReader</code> is owned by its {@link org.seamless.xml.SAXParser} for the lifetime of
+ * that parser, so it is not shared; {@link #createXMLReader()} only avoids the provider lookup.
+ * </p>
+ *
+ * @author Christian Bauer
+ */
+public class XMLPool {
+
+    static protected class ThreadResources {
+        DocumentBuilder documentBuilder;
+        Transformer transformer;
+        XmlPullParser pullParser;
+        boolean pullParserInUse;
+    }
+
+    static final protected ThreadLocal<ThreadResources> resources = new ThreadLocal<ThreadResources>() {
+        @Override
+        protected ThreadResources initialValue() {
+            return new ThreadResources();
+        }
+    };
+
+    static protected DocumentBuilderFactory documentBuilderFactory;
+    static protected TransformerFactory transformerFactory;
+    static protected SAXParserFactory saxParserFactory;
+    static protected Class<?> saxDriverClass;
+
+    synchronized static protected DocumentBuilderFactory getDocumentBuilderFactory() {
+        if (documentBuilderFactory == null) {
+            DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+            factory.setNamespaceAware(true);
+            documentBuilderFactory = factory;
+        }
+        return documentBuilderFactory;
+    }
+
+    synchronized static protected TransformerFactory getTransformerFactory() {
+        if (transformerFactory == null)
+            transformerFactory = TransformerFactory.newInstance();
+        return transformerFactory;
+    }
+
+    synchronized static protected SAXParserFactory getSAXParserFactory() {
+        if (saxParserFactory == null) {
+            SAXParserFactory factory = SAXParserFactory.newInstance();
+            factory.setNamespaceAware(true);
+            saxParserFactory = factory;
+        }
+        return saxParserFactory;
+    }
+
+    // The driver XMLReaderFactory would load, see AndroidUpnpServiceConfiguration
+    synchronized static protected Class<?> getSAXDriverClass() throws SAXException {
+        String driver = System.getProperty("org.xml.sax.driver");
+        if (driver == null) return null;
+        if (saxDriverClass == null || !saxDriverClass.getName().equals(driver)) {
+            try {
+                saxDriverClass = Class.forName(driver);
+            } catch (ClassNotFoundException ex) {
+                throw new SAXException("SAX driver not found: " + driver, ex);
+            }
+        }
+        return saxDriverClass;
+    }
+
+    static protected DocumentBuilder getDocumentBuilder() throws ParserConfigurationException {
+        ThreadResources r = resources.get();
+        if (r.documentBuilder == null) {
+            DocumentBuilderFactory factory = getDocumentBuilderFactory();
+            synchronized (factory) {
+                r.documentBuilder = factory.newDocumentBuilder();
+            }
+        }
+        return r.documentBuilder;
+    }
+
+    /**
+     * @return A new empty, namespace-aware DOM document.
+     */
+    public static Document newDocument() throws ParserConfigurationException {
+        return getDocumentBuilder().newDocument();
+    }
+
+    /**
+     * Parses with the current thread's namespace-aware <code>DocumentBuilder</code>.
+     *
+     * @param errorHandler Receives the parser warnings and errors, can be <code>null</code>.
+     */
+    public static Document parse(String xml, ErrorHandler errorHandler)
+            throws ParserConfigurationException, SAXException, IOException {
+        DocumentBuilder documentBuilder = getDocumentBuilder();
+        documentBuilder.setErrorHandler(errorHandler);
+        try {
+            return documentBuilder.parse(new InputSource(new StringReader(xml)));
+        } finally {
+            // Don't hold on to the caller
+            documentBuilder.setErrorHandler(null);
+        }
+    }
+
+    /**
+     * Prints the document with the current thread's <code>Transformer</code>.
+     *
+     * @param omitProlog <code>true</code> if no XML declaration should be printed.
+     */
+    public static String transform(Document document, boolean omitProlog) throws TransformerException {
+        ThreadResources r = resources.get();
+        if (r.transformer == null) {
+            TransformerFactory factory = getTransformerFactory();
+            synchronized (factory) {
+                r.transformer = factory.newTransformer();
+            }
+        }
+        r.transformer.setOutputProperty(OutputKeys.OMIT_XML_DECLARATION, omitProlog ? "yes" : "no");
+        StringWriter out = new StringWriter();
+        r.transformer.transform(new DOMSource(document), new StreamResult(out));
+        return out.toString();
+    }
+
+    /**
+     * @return A new namespace-aware SAX reader, an instance of the <code>org.xml.sax.driver</code>
+     *         system property class if set, otherwise created with the shared factory.
+     */
+    public static XMLReader createXMLReader() throws ParserConfigurationException, SAXException {
+        Class<?> driverClass = getSAXDriverClass();
+        if (driverClass != null) {
+            try {
+                return (XMLReader) driverClass.getDeclaredConstructor().newInstance();
+            } catch (Exception ex) {
+                throw new SAXException("Can't instantiate SAX driver: " + driverClass.getName(), ex);
+            }
+        }
+        SAXParserFactory factory = getSAXParserFactory();
+        synchronized (factory) {
+            return factory.newSAXParser().getXMLReader();
+        }
+    }
+
+    /**
+     * Returns the current thread's pull parser reading the given XML, or a new parser if the
+     * thread's parser is still in use. Call {@link #releasePullParser(XmlPullParser)} when done.
+     */
+    public static XmlPullParser acquirePullParser(String xml) throws XmlPullParserException {
+        ThreadResources r = resources.get();
+        if (r.pullParserInUse)
+            return XmlPullParserUtils.createParser(xml);
+        if (r.pullParser == null)
+            r.pullParser = XmlPullParserUtils.createParser();
+        r.pullParser.setInput(new StringReader(xml));
+        r.pullParserInUse = true;
+        return r.pullParser;
+    }
+
+    public static void releasePullParser(XmlPullParser xpp) {
+        ThreadResources r = resources.get();
+        if (xpp == r.pullParser)
+            r.pullParserInUse = false;
+    }
+
+}
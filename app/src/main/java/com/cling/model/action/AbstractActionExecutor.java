@@ -16,6 +16,7 @@
 package com.cling.model.action;
 
 import com.cling.model.Command;
+import com.cling.model.ReadOnlyCommand;
 import com.cling.model.ServiceManager;
 import com.cling.model.meta.Action;
 import com.cling.model.meta.ActionArgument;
@@ -43,6 +44,8 @@ public abstract class AbstractActionExecutor implements ActionExecutor {
     protected Map<ActionArgument<LocalService>, StateVariableAccessor> outputArgumentAccessors =
             new HashMap<ActionArgument<LocalService>, StateVariableAccessor>();
 
+    protected boolean readOnly;
+
     protected AbstractActionExecutor() {
     }
 
@@ -54,6 +57,17 @@ public abstract class AbstractActionExecutor implements ActionExecutor {
         return outputArgumentAccessors;
     }
 
+    /**
+     * @return <code>true</code> if the action is executed as a {@link com.cling.model.ReadOnlyCommand}.
+     */
+    public boolean isReadOnly() {
+        return readOnly;
+    }
+
+    public void setReadOnly(boolean readOnly) {
+        this.readOnly = readOnly;
+    }
+
     /**
      * Obtains the service implementation instance from the {@link com.cling.model.ServiceManager}, handles exceptions.
      */
@@ -69,7 +83,7 @@ public abstract class AbstractActionExecutor implements ActionExecutor {
                 throw new IllegalStateException("Service has no implementation factory, can't get service instance");
             }
 
-            service.getManager().execute(new Command() {
+            class ActionCommand implements Command {
                 public void execute(ServiceManager serviceManager) throws Exception {
                     AbstractActionExecutor.this.execute(
                             actionInvocation,
@@ -81,7 +95,12 @@ public abstract class AbstractActionExecutor implements ActionExecutor {
                 public String toString() {
                     return "Action invocation: " + actionInvocation.getAction();
                 }
-            });
+            }
+
+            class ReadOnlyActionCommand extends ActionCommand implements ReadOnlyCommand {
+            }
+
+            service.getManager().execute(isReadOnly() ? new ReadOnlyActionCommand() : new ActionCommand());
 
         } catch (ActionException ex) {
             if (log.isLoggable(Level.FINE)) {
@@ -130,6 +149,12 @@ public abstract class AbstractActionExecutor implements ActionExecutor {
         for (ActionArgument outputArgument : action.getOutputArguments()) {
             log.finer("Calling acccessor method for: " + outputArgument);
 
+            StreamedValue streamedValue = getStreamedValue(outputArgument, instance);
+            if (streamedValue != null) {
+                results[i++] = streamedValue;
+                continue;
+            }
+
             StateVariableAccessor accessor = getOutputArgumentAccessors().get(outputArgument);
             if (accessor != null) {
                 log.fine("Calling accessor to read output argument value: " + accessor);
@@ -145,6 +170,19 @@ public abstract class AbstractActionExecutor implements ActionExecutor {
         return results.length > 0 ? results : null;
     }
 
+    /**
+     * @return The streamed value of the output argument if the instance is a {@link StreamedValue.Source},
+     *         the accessor is then not called.
+     */
+    protected StreamedValue getStreamedValue(ActionArgument outputArgument, Object instance) {
+        if (!(instance instanceof StreamedValue.Source))
+            return null;
+        StreamedValue streamedValue = ((StreamedValue.Source) instance).getStreamedValue(outputArgument.getName());
+        if (streamedValue != null)
+            log.fine("Output argument value is streamed, not calling accessor: " + outputArgument);
+        return streamedValue;
+    }
+
     /**
      * Sets the output argument value on the {@link com.cling.model.action.ActionInvocation}, considers string conversion.
      */
@@ -155,7 +193,10 @@ public abstract class AbstractActionExecutor implements ActionExecutor {
 
         if (result != null) {
             try {
-                if (service.isStringConvertibleType(result)) {
+                if (result instanceof StreamedValue) {
+                    log.fine("Result of invocation is streamed, setting streamed output argument value");
+                    actionInvocation.setOutput(new StreamedArgumentValue(argument, (StreamedValue) result));
+                } else if (service.isStringConvertibleType(result)) {
                     log.fine("Result of invocation matches convertible type, setting toString() single output argument value");
                     actionInvocation.setOutput(new ActionArgumentValue(argument, result.toString()));
                 } else {
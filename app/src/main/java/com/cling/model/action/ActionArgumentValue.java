@@ -18,6 +18,7 @@ package com.cling.model.action;
 import com.cling.model.VariableValue;
 import com.cling.model.meta.ActionArgument;
 import com.cling.model.meta.Service;
+import com.cling.model.types.Datatype;
 import com.cling.model.types.InvalidValueException;
 
 /**
@@ -34,6 +35,14 @@ public class ActionArgumentValue<S extends Service> extends VariableValue {
         this.argument = argument;
     }
 
+    /**
+     * @param datatype The datatype of the argument, if it has already been resolved.
+     */
+    public ActionArgumentValue(ActionArgument<S> argument, Datatype datatype, Object value) throws InvalidValueException {
+        super(datatype, value != null && value.getClass().isEnum() ? value.toString() : value);
+        this.argument = argument;
+    }
+
     public ActionArgument<S> getArgument() {
         return argument;
     }
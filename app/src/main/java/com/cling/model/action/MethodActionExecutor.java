@@ -28,6 +28,7 @@ import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
@@ -69,32 +70,34 @@ public class MethodActionExecutor extends AbstractActionExecutor {
 
         // Simple case: no output arguments
         if (!actionInvocation.getAction().hasOutputArguments()) {
-            log.fine("Calling local service method with no output arguments: " + method);
-            Reflections.invoke(method, serviceImpl, inputArgumentValues);
+            if (log.isLoggable(Level.FINE))
+                log.fine("Calling local service method with no output arguments: " + method);
+            invoke(serviceImpl, inputArgumentValues);
             return;
         }
 
         boolean isVoid = method.getReturnType().equals(Void.TYPE);
 
-        log.fine("Calling local service method with output arguments: " + method);
+        if (log.isLoggable(Level.FINE))
+            log.fine("Calling local service method with output arguments: " + method);
         Object result;
         boolean isArrayResultProcessed = true;
         if (isVoid) {
 
             log.fine("Action method is void, calling declared accessors(s) on service instance to retrieve ouput argument(s)");
-            Reflections.invoke(method, serviceImpl, inputArgumentValues);
+            invoke(serviceImpl, inputArgumentValues);
             result = readOutputArgumentValues(actionInvocation.getAction(), serviceImpl);
 
         } else if (isUseOutputArgumentAccessors(actionInvocation)) {
 
             log.fine("Action method is not void, calling declared accessor(s) on returned instance to retrieve ouput argument(s)");
-            Object returnedInstance = Reflections.invoke(method, serviceImpl, inputArgumentValues);
+            Object returnedInstance = invoke(serviceImpl, inputArgumentValues);
             result = readOutputArgumentValues(actionInvocation.getAction(), returnedInstance);
 
         } else {
 
             log.fine("Action method is not void, using returned value as (single) output argument");
-            result = Reflections.invoke(method, serviceImpl, inputArgumentValues);
+            result = invoke(serviceImpl, inputArgumentValues);
             isArrayResultProcessed = false; // We never want to process e.g. byte[] as individual variable values
         }
 
@@ -117,6 +120,13 @@ public class MethodActionExecutor extends AbstractActionExecutor {
 
     }
 
+    /**
+     * Calls the action method on the given instance, exceptions thrown by the method are not wrapped.
+     */
+    protected Object invoke(Object serviceImpl, Object[] inputArgumentValues) throws Exception {
+        return Reflections.invoke(method, serviceImpl, inputArgumentValues);
+    }
+
     protected boolean isUseOutputArgumentAccessors(ActionInvocation<LocalService> actionInvocation) {
         for (ActionArgument argument : actionInvocation.getAction().getOutputArguments()) {
             // If there is one output argument for which we have an accessor, all arguments need accessors
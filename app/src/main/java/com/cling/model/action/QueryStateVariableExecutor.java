@@ -28,6 +28,11 @@ import com.cling.model.types.ErrorCode;
  */
 public class QueryStateVariableExecutor extends AbstractActionExecutor {
 
+    @Override
+    public boolean isReadOnly() {
+        return true;
+    }
+
     @Override
     protected void execute(ActionInvocation<LocalService> actionInvocation, Object serviceImpl) throws Exception {
 
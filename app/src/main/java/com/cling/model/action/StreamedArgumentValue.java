@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2013 4th Line GmbH, Switzerland
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * Lesser General Public License Version 2 or later ("LGPL") or the
+ * Common Development and Distribution License Version 1 or later
+ * ("CDDL") (collectively, the "License"). You may not use this file
+ * except in compliance with the License. See LICENSE.txt for more
+ * information.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+
+package com.cling.model.action;
+
+import com.cling.model.meta.ActionArgument;
+import com.cling.model.meta.Service;
+import com.cling.model.types.InvalidValueException;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+
+/**
+ * The value of a string output argument which is written by a {@link StreamedValue}.
+ * <p>
+ * A SOAP processor which can stream the value calls {@link #writeTo(java.io.Writer)}. Any other
+ * access, such as {@link #toString()}, reads the whole value into memory the first time and then
+ * returns the same string.
+ * </p>
+ *
+ * @author Christian Bauer
+ */
+public class StreamedArgumentValue<S extends Service> extends ActionArgumentValue<S> {
+
+    protected StreamedValue streamedValue;
+    protected String value;
+
+    public StreamedArgumentValue(ActionArgument<S> argument, StreamedValue streamedValue) throws InvalidValueException {
+        super(argument, null);
+        this.streamedValue = streamedValue;
+    }
+
+    /**
+     * @return <code>true</code> if the value has not been written or read yet.
+     */
+    public synchronized boolean isStreamed() {
+        return streamedValue != null;
+    }
+
+    /**
+     * Writes the unescaped characters of the value.
+     *
+     * @throws IllegalStateException If the value has already been written.
+     */
+    public void writeTo(Writer writer) throws IOException {
+        StreamedValue streamed;
+        synchronized (this) {
+            if (value != null) {
+                writer.write(value);
+                return;
+            }
+            if (streamedValue == null)
+                throw new IllegalStateException("Value has already been written: " + getArgument());
+            streamed = streamedValue;
+            streamedValue = null;
+        }
+        streamed.writeTo(writer);
+    }
+
+    @Override
+    public Object getValue() {
+        return toString();
+    }
+
+    @Override
+    public synchronized String toString() {
+        // Also called by the superclass constructor, before the streamed value has been set
+        if (value == null && streamedValue != null) {
+            StringWriter writer = new StringWriter();
+            try {
+                streamedValue.writeTo(writer);
+            } catch (IOException ex) {
+                throw new RuntimeException("Can't read streamed value of " + getArgument() + ": " + ex, ex);
+            }
+            streamedValue = null;
+            value = writer.toString();
+        }
+        return value != null ? value : "";
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright (C) 2013 4th Line GmbH, Switzerland
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * Lesser General Public License Version 2 or later ("LGPL") or the
+ * Common Development and Distribution License Version 1 or later
+ * ("CDDL") (collectively, the "License"). You may not use this file
+ * except in compliance with the License. See LICENSE.txt for more
+ * information.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+
+package com.cling.model.action;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * The string value of an output argument, written when the response message is sent.
+ * <p>
+ * Instead of returning a large value from its accessor, an instance returned by an action
+ * method can implement {@link Source} and supply the value as a <code>StreamedValue</code>.
+ * The value then does not have to be kept in memory as a whole, the SOAP processor and the
+ * transport write it in pieces, while it is produced.
+ * </p>
+ *
+ * @author Christian Bauer
+ */
+public interface StreamedValue {
+
+    /**
+     * Writes the unescaped characters of the value, this method is only called once.
+     * <p>
+     * This is usually called after the action method returned, on the thread which sends
+     * the response message.
+     * </p>
+     */
+    public void writeTo(Writer writer) throws IOException;
+
+    /**
+     * Implemented by an instance returned from an action method, which streams some of its output
+     * argument values.
+     */
+    public interface Source {
+
+        /**
+         * @return The value of the output argument, or <code>null</code> if its accessor should be called.
+         */
+        public StreamedValue getStreamedValue(String outputArgumentName);
+    }
+}
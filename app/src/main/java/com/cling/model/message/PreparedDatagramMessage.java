@@ -0,0 +1,58 @@
+/*
+ * Copyright (C) 2013 4th Line GmbH, Switzerland
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * Lesser General Public License Version 2 or later ("LGPL") or the
+ * Common Development and Distribution License Version 1 or later
+ * ("CDDL") (collectively, the "License"). You may not use this file
+ * except in compliance with the License. See LICENSE.txt for more
+ * information.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+
+package com.cling.model.message;
+
+import java.net.InetAddress;
+
+/**
+ * An outgoing datagram message which has already been encoded.
+ * <p>
+ * The {@link com.cling.transport.spi.DatagramProcessor} writes the encoded data as is, the
+ * headers of the original message are only retained for logging. Use
+ * {@link #withDestination(InetAddress, int)} to send the same data to another receiver.
+ * </p>
+ *
+ * @author Christian Bauer
+ */
+public class PreparedDatagramMessage<O extends UpnpOperation> extends OutgoingDatagramMessage<O> {
+
+    final private byte[] data;
+
+    public PreparedDatagramMessage(OutgoingDatagramMessage<O> message, byte[] data) {
+        this(message, data, message.getDestinationAddress(), message.getDestinationPort());
+    }
+
+    protected PreparedDatagramMessage(UpnpMessage<O> message, byte[] data,
+                                      InetAddress destinationAddress, int destinationPort) {
+        super(message.getOperation(), destinationAddress, destinationPort);
+        this.data = data;
+        setHeaders(message.getHeaders());
+        setUdaMajorVersion(message.getUdaMajorVersion());
+        setUdaMinorVersion(message.getUdaMinorVersion());
+    }
+
+    /**
+     * @return The encoded message, do not modify.
+     */
+    public byte[] getData() {
+        return data;
+    }
+
+    public PreparedDatagramMessage<O> withDestination(InetAddress destinationAddress, int destinationPort) {
+        return new PreparedDatagramMessage<O>(this, data, destinationAddress, destinationPort);
+    }
+
+}
@@ -18,7 +18,13 @@ package com.cling.model.message;
 import com.cling.model.message.header.ContentTypeHeader;
 import com.cling.model.message.header.UpnpHeader;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.IllegalCharsetNameException;
 
 /**
  * A non-streaming message, the interface between the transport layer and the protocols.
@@ -31,6 +37,18 @@ import java.io.UnsupportedEncodingException;
  * messages, for example, what headers a particular message requires.
  * </p>
  * <p>
+ * Transports set and read the body as encoded bytes, see {@link #setBodyCharacters(ByteBuffer)}
+ * and {@link #getBodyBuffer()}. A string body received as bytes is only decoded when a protocol
+ * reads it, and a string body is encoded once, in the charset of the <code>Content-Type</code>
+ * header or UTF-8, no matter how often its length or bytes are read afterwards.
+ * </p>
+ * <p>
+ * A response body can also be set as a {@link StreamedBody}, its length is not known before
+ * it has been written. Transports which support it write such a body with chunked transfer
+ * coding through {@link #writeBody(java.io.OutputStream)}, for any other access the body is
+ * written into memory first.
+ * </p>
+ * <p>
  * Messages are not thread-safe.
  * </p>
  *
@@ -44,11 +62,20 @@ public abstract class UpnpMessage<O extends UpnpOperation> {
     private UpnpHeaders headers = new UpnpHeaders();
     private Object body;
     private BodyType bodyType = BodyType.STRING;
+    // The encoded body, received by a transport or cached after encoding a string body
+    private ByteBuffer bodyBuffer;
+    private String bodyBufferCharset;
+    // Written once, when the message is sent
+    private StreamedBody streamedBody;
+
     protected UpnpMessage(UpnpMessage<O> source) {
         this.operation = source.getOperation();
         this.headers = source.getHeaders();
-        this.body = source.getBody();
+        this.body = source.body;
         this.bodyType = source.getBodyType();
+        this.bodyBuffer = source.bodyBuffer;
+        this.bodyBufferCharset = source.bodyBufferCharset;
+        this.streamedBody = source.streamedBody;
         this.udaMajorVersion = source.getUdaMajorVersion();
         this.udaMinorVersion = source.getUdaMinorVersion();
     }
@@ -59,8 +86,7 @@ public abstract class UpnpMessage<O extends UpnpOperation> {
 
     protected UpnpMessage(O operation, BodyType bodyType, Object body) {
         this.operation = operation;
-        this.bodyType = bodyType;
-        this.body = body;
+        setBody(bodyType, body);
     }
 
     public int getUdaMajorVersion() {
@@ -87,34 +113,81 @@ public abstract class UpnpMessage<O extends UpnpOperation> {
         this.headers = headers;
     }
 
+    /**
+     * @return A <code>String</code> or a <code>byte[]</code>, depending on the body type. A body
+     *         set as encoded bytes is decoded or copied on the first call.
+     */
     public Object getBody() {
+        readStreamedBody();
+        if (body == null && bodyBuffer != null) {
+            body = bodyType.equals(BodyType.STRING)
+                    ? decode(bodyBuffer, bodyBufferCharset)
+                    : toByteArray(bodyBuffer);
+        }
         return body;
     }
 
     public void setBody(String string) {
-        this.bodyType = BodyType.STRING;
-        this.body = string;
+        setBody(BodyType.STRING, string);
     }
 
+    /**
+     * @param body A <code>String</code>, a <code>byte[]</code>, or a <code>ByteBuffer</code> with the
+     *             encoded body between its position and limit.
+     */
     public void setBody(BodyType bodyType, Object body) {
         this.bodyType = bodyType;
-        this.body = body;
+        this.streamedBody = null;
+        if (body instanceof ByteBuffer) {
+            this.body = null;
+            this.bodyBuffer = ((ByteBuffer) body).slice();
+            this.bodyBufferCharset = getBodyCharset();
+        } else {
+            this.body = body;
+            this.bodyBuffer = null;
+            this.bodyBufferCharset = null;
+        }
     }
 
     public void setBodyCharacters(byte[] characterData) throws UnsupportedEncodingException {
-        setBody(
-                UpnpMessage.BodyType.STRING,
-                new String(
-                        characterData,
-                        getContentTypeCharset() != null
-                                ? getContentTypeCharset()
-                                : "UTF-8"
-                )
-        );
+        setBodyCharacters(ByteBuffer.wrap(characterData));
+    }
+
+    /**
+     * Sets a string body without decoding it, this happens when the body is first read as a string.
+     *
+     * @param characterData The body encoded in the charset of the <code>Content-Type</code> header
+     *                      or UTF-8, between the position and limit of the buffer.
+     * @throws UnsupportedEncodingException If the charset of the <code>Content-Type</code> header is unknown.
+     */
+    public void setBodyCharacters(ByteBuffer characterData) throws UnsupportedEncodingException {
+        String charset = getBodyCharset();
+        try {
+            if (!Charset.isSupported(charset))
+                throw new UnsupportedEncodingException(charset);
+        } catch (IllegalCharsetNameException ex) {
+            throw new UnsupportedEncodingException(charset);
+        }
+        setBody(BodyType.STRING, characterData);
+    }
+
+    /**
+     * Sets a body of unknown length, which will be written by the transport.
+     */
+    public void setBody(BodyType bodyType, StreamedBody streamedBody) {
+        setBody(bodyType, (Object) null);
+        this.streamedBody = streamedBody;
+    }
+
+    /**
+     * @return <code>true</code> if the body has not been written or read yet, and its length is unknown.
+     */
+    public boolean isBodyStreamed() {
+        return streamedBody != null;
     }
 
     public boolean hasBody() {
-        return getBody() != null;
+        return body != null || bodyBuffer != null || streamedBody != null;
     }
 
     public BodyType getBodyType() {
@@ -126,28 +199,97 @@ public abstract class UpnpMessage<O extends UpnpOperation> {
     }
 
     public String getBodyString() {
-        try {
-            return !hasBody() ? null :
-                    getBodyType().equals(BodyType.STRING)
-                            ? getBody().toString()
-                            : new String((byte[]) getBody(), "UTF-8"
-                    );
-        } catch (Exception ex) {
-            throw new RuntimeException(ex);
-        }
+        if (!hasBody())
+            return null;
+        readStreamedBody();
+        if (getBodyType().equals(BodyType.STRING))
+            return getBody().toString();
+        return body == null ? decode(bodyBuffer, "UTF-8") : decode(ByteBuffer.wrap((byte[]) body), "UTF-8");
     }
 
+    /**
+     * @return The encoded body, a string body is encoded in the charset of the
+     *         <code>Content-Type</code> header or UTF-8.
+     */
     public byte[] getBodyBytes() {
-        try {
-            return !hasBody() ? null :
-                    getBodyType().equals(BodyType.STRING)
-                            ? ((String) getBody()).getBytes("UTF-8")
-                            : (byte[]) getBody();
-        } catch (Exception ex) {
-            throw new RuntimeException(ex);
+        if (!hasBody())
+            return null;
+        if (getBodyType().equals(BodyType.BYTES))
+            return (byte[]) getBody();
+        getBodyBuffer();
+        return toByteArray(bodyBuffer);
+    }
+
+    /**
+     * Transports write the body from this buffer, it is not copied if the body was set as bytes or
+     * a string body has already been encoded.
+     *
+     * @return A read-only buffer of the encoded body, or <code>null</code> if there is no body.
+     */
+    public ByteBuffer getBodyBuffer() {
+        if (!hasBody())
+            return null;
+        readStreamedBody();
+        if (bodyBuffer == null || (bodyType.equals(BodyType.STRING) && !getBodyCharset().equals(bodyBufferCharset))) {
+            if (bodyType.equals(BodyType.STRING)) {
+                String string = getBody().toString();
+                bodyBufferCharset = getBodyCharset();
+                bodyBuffer = encode(string, bodyBufferCharset);
+            } else {
+                bodyBuffer = ByteBuffer.wrap((byte[]) body);
+            }
+        }
+        return bodyBuffer.asReadOnlyBuffer();
+    }
+
+    /**
+     * @return The number of bytes of the encoded body, the value of the <code>Content-Length</code> header,
+     *         or <code>-1</code> if the body is streamed.
+     */
+    public int getBodyLength() {
+        if (streamedBody != null)
+            return -1;
+        ByteBuffer buffer = getBodyBuffer();
+        return buffer != null ? buffer.remaining() : 0;
+    }
+
+    /**
+     * Writes the encoded body, without copying it if the buffer is backed by an array.
+     * <p>
+     * A streamed body is written while it is produced, it can only be written once.
+     * </p>
+     */
+    public void writeBody(OutputStream out) throws IOException {
+        if (streamedBody != null) {
+            StreamedBody streamed = streamedBody;
+            streamedBody = null;
+            streamed.writeTo(out);
+            return;
+        }
+        ByteBuffer buffer = getBodyBuffer();
+        if (buffer == null)
+            return;
+        if (bodyBuffer.hasArray()) {
+            // The read-only view has no accessible array
+            out.write(bodyBuffer.array(), bodyBuffer.arrayOffset() + bodyBuffer.position(), bodyBuffer.remaining());
+        } else {
+            byte[] chunk = new byte[Math.min(8192, buffer.remaining())];
+            while (buffer.hasRemaining()) {
+                int length = Math.min(chunk.length, buffer.remaining());
+                buffer.get(chunk, 0, length);
+                out.write(chunk, 0, length);
+            }
         }
     }
 
+    /**
+     * @return The charset of the <code>Content-Type</code> header, or UTF-8.
+     */
+    public String getBodyCharset() {
+        String charset = getContentTypeCharset();
+        return charset != null ? charset : "UTF-8";
+    }
+
     public O getOperation() {
         return operation;
     }
@@ -188,9 +330,55 @@ public abstract class UpnpMessage<O extends UpnpOperation> {
     }
 
     public boolean isBodyNonEmptyString() {
-        return hasBody()
-                && getBodyType().equals(UpnpMessage.BodyType.STRING)
-                && getBodyString().length() > 0;
+        if (!hasBody() || !getBodyType().equals(UpnpMessage.BodyType.STRING))
+            return false;
+        readStreamedBody();
+        // Don't decode the body just to check this
+        return body == null ? bodyBuffer.hasRemaining() : getBodyString().length() > 0;
+    }
+
+    /**
+     * Writes a streamed body into memory, for access other than {@link #writeBody(java.io.OutputStream)}.
+     */
+    protected void readStreamedBody() {
+        if (streamedBody == null)
+            return;
+        StreamedBody streamed = streamedBody;
+        streamedBody = null;
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            streamed.writeTo(out);
+        } catch (IOException ex) {
+            throw new RuntimeException("Can't write streamed body: " + ex, ex);
+        }
+        setBody(bodyType, ByteBuffer.wrap(out.toByteArray()));
+    }
+
+    static protected String decode(ByteBuffer buffer, String charset) {
+        try {
+            if (buffer.hasArray())
+                return new String(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining(), charset);
+            return Charset.forName(charset).decode(buffer.duplicate()).toString();
+        } catch (UnsupportedEncodingException ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+    static protected ByteBuffer encode(String string, String charset) {
+        try {
+            return ByteBuffer.wrap(string.getBytes(charset));
+        } catch (UnsupportedEncodingException ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+    static protected byte[] toByteArray(ByteBuffer buffer) {
+        if (buffer.hasArray() && buffer.arrayOffset() == 0 && buffer.position() == 0
+                && buffer.remaining() == buffer.array().length)
+            return buffer.array();
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.duplicate().get(bytes);
+        return bytes;
     }
 
     @Override
@@ -201,4 +389,12 @@ public abstract class UpnpMessage<O extends UpnpOperation> {
     public static enum BodyType {
         STRING, BYTES
     }
+
+    /**
+     * Writes an encoded body of unknown length.
+     */
+    public interface StreamedBody {
+
+        public void writeTo(OutputStream out) throws IOException;
+    }
 }
\ No newline at end of file
@@ -64,13 +64,15 @@ public class UpnpResponse extends UpnpOperation {
     public static enum Status {
 
         OK(200, "OK"),
+        NOT_MODIFIED(304, "Not Modified"),
         BAD_REQUEST(400, "Bad Request"),
         NOT_FOUND(404, "Not Found"),
         METHOD_NOT_SUPPORTED(405, "Method Not Supported"),
         PRECONDITION_FAILED(412, "Precondition Failed"),
         UNSUPPORTED_MEDIA_TYPE(415, "Unsupported Media Type"),
         INTERNAL_SERVER_ERROR(500, "Internal Server Error"),
-        NOT_IMPLEMENTED(501, "Not Implemented");
+        NOT_IMPLEMENTED(501, "Not Implemented"),
+        SERVICE_UNAVAILABLE(503, "Service Unavailable");
 
         private int statusCode;
         private String statusMsg;
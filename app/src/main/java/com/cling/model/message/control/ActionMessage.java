@@ -15,6 +15,8 @@
 
 package com.cling.model.message.control;
 
+import com.cling.model.message.UpnpMessage;
+
 /**
  * A narrowing interface for action request/response messages.
  *
@@ -30,4 +32,10 @@ public interface ActionMessage {
 
     public void setBody(String string);
 
+    public void setBody(UpnpMessage.BodyType bodyType, Object body);
+
+    public void setBody(UpnpMessage.BodyType bodyType, UpnpMessage.StreamedBody body);
+
+    public boolean isBodyStreamed();
+
 }
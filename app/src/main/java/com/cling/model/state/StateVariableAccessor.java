@@ -15,7 +15,7 @@
 
 package com.cling.model.state;
 
-import com.cling.model.Command;
+import com.cling.model.ReadOnlyCommand;
 import com.cling.model.ServiceManager;
 import com.cling.model.meta.LocalService;
 import com.cling.model.meta.StateVariable;
@@ -32,7 +32,7 @@ public abstract class StateVariableAccessor {
 
     public StateVariableValue read(final StateVariable<LocalService> stateVariable, final Object serviceImpl) throws Exception {
 
-        class AccessCommand implements Command {
+        class AccessCommand implements ReadOnlyCommand {
             Object result;
 
             public void execute(ServiceManager serviceManager) throws Exception {
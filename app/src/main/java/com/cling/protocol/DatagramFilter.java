@@ -0,0 +1,44 @@
+/*
+ * Copyright (C) 2013 4th Line GmbH, Switzerland
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * Lesser General Public License Version 2 or later ("LGPL") or the
+ * Common Development and Distribution License Version 1 or later
+ * ("CDDL") (collectively, the "License"). You may not use this file
+ * except in compliance with the License. See LICENSE.txt for more
+ * information.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+
+package com.cling.protocol;
+
+import com.cling.UpnpService;
+import com.cling.model.message.IncomingDatagramMessage;
+
+/**
+ * Decides if a received datagram is handed to the {@link ProtocolFactory}.
+ * <p>
+ * The {@link com.cling.transport.Router} calls this filter on the receiving thread of
+ * the multicast receiver or datagram I/O service, before a protocol is created and
+ * scheduled on the asynchronous protocol executor. A rejected datagram costs no
+ * further thread or registry work, so discovery storms can be absorbed here.
+ * </p>
+ * <p>
+ * An implementation has to be thread-safe and fast, it blocks the receiving thread.
+ * </p>
+ *
+ * @author Christian Bauer
+ */
+public interface DatagramFilter {
+
+    /**
+     * @param upnpService The UPnP service which received the message.
+     * @param message     The received and parsed datagram message.
+     * @return <code>false</code> if the message should be dropped.
+     */
+    public boolean accept(UpnpService upnpService, IncomingDatagramMessage message);
+
+}
@@ -0,0 +1,289 @@
+/*
+ * Copyright (C) 2013 4th Line GmbH, Switzerland
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * Lesser General Public License Version 2 or later ("LGPL") or the
+ * Common Development and Distribution License Version 1 or later
+ * ("CDDL") (collectively, the "License"). You may not use this file
+ * except in compliance with the License. See LICENSE.txt for more
+ * information.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+
+package com.cling.protocol;
+
+import com.cling.UpnpService;
+import com.cling.model.ExpirationDetails;
+import com.cling.model.message.IncomingDatagramMessage;
+import com.cling.model.message.UpnpRequest;
+import com.cling.model.message.UpnpResponse;
+import com.cling.model.message.header.UpnpHeader;
+import com.cling.model.types.DeviceType;
+import com.cling.model.types.InvalidValueException;
+import com.cling.model.types.NamedDeviceType;
+import com.cling.model.types.NamedServiceType;
+import com.cling.model.types.NotificationSubtype;
+import com.cling.model.types.ServiceType;
+import com.cling.model.types.UDN;
+
+import java.net.InetAddress;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Default implementation of the pre-dispatch datagram filter pipeline.
+ * <p>
+ * Received datagrams pass these stages in order, each stage can be disabled or
+ * customized by overriding its method:
+ * </p>
+ * <ol>
+ * <li>{@link #isRateLimited(IncomingDatagramMessage)} - drops all datagrams of a source
+ * address exceeding the configured rate (a token bucket per address).</li>
+ * <li>{@link #isLocalAdvertisement(UpnpService, IncomingDatagramMessage)} - drops our own
+ * NOTIFY messages and search responses, received through multicast loopback.</li>
+ * <li>{@link #isSupportedAdvertisement(UpnpService, IncomingDatagramMessage)} - applies the
+ * exclusive device and service types of the {@link com.cling.UpnpServiceConfiguration}.</li>
+ * <li>{@link #isDuplicate(IncomingDatagramMessage)} - drops repeated ALIVE and BYEBYE
+ * messages (and search responses) of the same USN and location within a time window.</li>
+ * </ol>
+ * <p>
+ * Only raw header strings are inspected, no typed headers are parsed.
+ * </p>
+ *
+ * @author Christian Bauer
+ */
+public class DatagramFilterImpl implements DatagramFilter {
+
+    private static Logger log = Logger.getLogger(DatagramFilter.class.getName());
+
+    public static final int DEFAULT_DUPLICATE_WINDOW_MILLIS = 2000;
+    public static final int DEFAULT_MAX_DATAGRAMS_PER_SECOND = 50;
+
+    // Tracked USNs and source addresses are pruned when this size is exceeded
+    protected static final int MAX_TRACKED_ENTRIES = 1024;
+
+    protected static class Advertisement {
+
+        final boolean byebye;
+        final String location;
+        final long timestampMillis;
+
+        Advertisement(boolean byebye, String location, long timestampMillis) {
+            this.byebye = byebye;
+            this.location = location;
+            this.timestampMillis = timestampMillis;
+        }
+
+        boolean isDuplicateOf(Advertisement that, long windowMillis) {
+            return byebye == that.byebye
+                    && (location == null ? that.location == null : location.equals(that.location))
+                    && timestampMillis - that.timestampMillis < windowMillis;
+        }
+    }
+
+    protected static class TokenBucket {
+
+        final double capacity;
+        final double tokensPerMillis;
+        double tokens;
+        long lastRefillMillis;
+
+        TokenBucket(int tokensPerSecond, long nowMillis) {
+            this.capacity = tokensPerSecond * 2;
+            this.tokensPerMillis = tokensPerSecond / 1000d;
+            this.tokens = capacity;
+            this.lastRefillMillis = nowMillis;
+        }
+
+        synchronized boolean take(long nowMillis) {
+            refill(nowMillis);
+            if (tokens < 1) return false;
+            tokens--;
+            return true;
+        }
+
+        synchronized boolean isFull(long nowMillis) {
+            refill(nowMillis);
+            return tokens >= capacity;
+        }
+
+        private void refill(long nowMillis) {
+            if (nowMillis > lastRefillMillis) {
+                tokens = Math.min(capacity, tokens + (nowMillis - lastRefillMillis) * tokensPerMillis);
+                lastRefillMillis = nowMillis;
+            }
+        }
+    }
+
+    final protected int duplicateWindowMillis;
+    final protected int maxDatagramsPerSecond;
+
+    final protected Map<String, Advertisement> advertisements = new ConcurrentHashMap<String, Advertisement>();
+    final protected Map<InetAddress, TokenBucket> sources = new ConcurrentHashMap<InetAddress, TokenBucket>();
+
+    public DatagramFilterImpl() {
+        this(DEFAULT_DUPLICATE_WINDOW_MILLIS, DEFAULT_MAX_DATAGRAMS_PER_SECOND);
+    }
+
+    /**
+     * @param duplicateWindowMillis Repeated advertisements within this time are dropped, <code>0</code>
+     *                              disables duplicate detection.
+     * @param maxDatagramsPerSecond Sustained rate of accepted datagrams per source address, twice
+     *                              this number is accepted in a burst. <code>0</code> disables rate limiting.
+     */
+    public DatagramFilterImpl(int duplicateWindowMillis, int maxDatagramsPerSecond) {
+        this.duplicateWindowMillis = duplicateWindowMillis;
+        this.maxDatagramsPerSecond = maxDatagramsPerSecond;
+    }
+
+    public int getDuplicateWindowMillis() {
+        return duplicateWindowMillis;
+    }
+
+    public int getMaxDatagramsPerSecond() {
+        return maxDatagramsPerSecond;
+    }
+
+    public boolean accept(UpnpService upnpService, IncomingDatagramMessage message) {
+        if (isRateLimited(message)) {
+            if (log.isLoggable(Level.FINER))
+                log.finer("Rate limit of source exceeded, dropping: " + message);
+            return false;
+        }
+        if (isLocalAdvertisement(upnpService, message)) {
+            if (log.isLoggable(Level.FINEST))
+                log.finest("Received our own advertisement, dropping: " + message);
+            return false;
+        }
+        if (!isSupportedAdvertisement(upnpService, message)) {
+            if (log.isLoggable(Level.FINER))
+                log.finer("Advertisement not supported, dropping: " + message);
+            return false;
+        }
+        if (isDuplicate(message)) {
+            if (log.isLoggable(Level.FINEST))
+                log.finest("Duplicate advertisement, dropping: " + message);
+            return false;
+        }
+        return true;
+    }
+
+    // DO NOT USE THE PARSED/TYPED MSG HEADERS! THIS WOULD DEFEAT THE PURPOSE OF THIS OPTIMIZATION!
+
+    protected boolean isRateLimited(IncomingDatagramMessage message) {
+        if (maxDatagramsPerSecond <= 0 || message.getSourceAddress() == null) return false;
+
+        long now = ExpirationDetails.getCurrentTimestampMillis();
+        TokenBucket bucket = sources.get(message.getSourceAddress());
+        if (bucket == null) {
+            if (sources.size() >= MAX_TRACKED_ENTRIES) {
+                // A full bucket is the same as no bucket
+                Iterator<TokenBucket> it = sources.values().iterator();
+                while (it.hasNext()) {
+                    if (it.next().isFull(now))
+                        it.remove();
+                }
+            }
+            bucket = new TokenBucket(maxDatagramsPerSecond, now);
+            sources.put(message.getSourceAddress(), bucket);
+        }
+        return !bucket.take(now);
+    }
+
+    protected boolean isLocalAdvertisement(UpnpService upnpService, IncomingDatagramMessage message) {
+        if (!isAdvertisement(message)) return false;
+
+        String usnHeader = message.getHeaders().getFirstHeader(UpnpHeader.Type.USN.getHttpName());
+        if (usnHeader == null || !usnHeader.startsWith(UDN.PREFIX)) return false;
+
+        int end = usnHeader.indexOf("::");
+        String identifier = usnHeader.substring(UDN.PREFIX.length(), end != -1 ? end : usnHeader.length());
+        return identifier.length() > 0
+                && upnpService.getRegistry().getLocalDevice(new UDN(identifier), false) != null;
+    }
+
+    protected boolean isSupportedAdvertisement(UpnpService upnpService, IncomingDatagramMessage message) {
+        if (!isAdvertisement(message)) return true;
+
+        if (isByeBye(message)) return true; // Always remove devices we might know, even if discovery is disabled
+
+        ServiceType[] exclusiveServiceTypes = upnpService.getConfiguration().getExclusiveServiceTypes();
+        if (exclusiveServiceTypes == null) return false; // Discovery is disabled
+
+        DeviceType[] exclusiveDeviceTypes = upnpService.getConfiguration().getExclusiveDeviceTypes();
+        boolean anyDeviceType = exclusiveDeviceTypes == null || exclusiveDeviceTypes.length == 0;
+        if (anyDeviceType && exclusiveServiceTypes.length == 0) return true; // Any advertisement is fine
+
+        String usnHeader = message.getHeaders().getFirstHeader(UpnpHeader.Type.USN.getHttpName());
+        if (usnHeader == null) return false; // Not a type advertisement, drop it
+
+        try {
+            if (usnHeader.contains(":service:")) {
+                ServiceType serviceType = NamedServiceType.valueOf(usnHeader).getServiceType();
+                for (ServiceType exclusiveServiceType : exclusiveServiceTypes) {
+                    if (serviceType.implementsVersion(exclusiveServiceType))
+                        return true;
+                }
+            } else if (usnHeader.contains(":device:") && !anyDeviceType) {
+                DeviceType deviceType = NamedDeviceType.valueOf(usnHeader).getDeviceType();
+                for (DeviceType exclusiveDeviceType : exclusiveDeviceTypes) {
+                    if (deviceType.implementsVersion(exclusiveDeviceType))
+                        return true;
+                }
+            }
+        } catch (InvalidValueException ex) {
+            log.finest("Not a named device or service type header value: " + usnHeader);
+        }
+        return false;
+    }
+
+    protected boolean isDuplicate(IncomingDatagramMessage message) {
+        if (duplicateWindowMillis <= 0 || !isAdvertisement(message)) return false;
+
+        String ntsHeader = message.getHeaders().getFirstHeader(UpnpHeader.Type.NTS.getHttpName());
+        if (ntsHeader != null && ntsHeader.equals(NotificationSubtype.UPDATE.getHeaderString()))
+            return false; // Rare and carries boot ID changes, always handle it
+
+        String usnHeader = message.getHeaders().getFirstHeader(UpnpHeader.Type.USN.getHttpName());
+        if (usnHeader == null) return false;
+
+        long now = ExpirationDetails.getCurrentTimestampMillis();
+        Advertisement advertisement = new Advertisement(
+                isByeBye(message),
+                message.getHeaders().getFirstHeader(UpnpHeader.Type.LOCATION.getHttpName()),
+                now
+        );
+
+        Advertisement previous = advertisements.get(usnHeader);
+        if (previous != null && advertisement.isDuplicateOf(previous, duplicateWindowMillis))
+            return true;
+
+        if (previous == null && advertisements.size() >= MAX_TRACKED_ENTRIES) {
+            Iterator<Advertisement> it = advertisements.values().iterator();
+            while (it.hasNext()) {
+                if (now - it.next().timestampMillis >= duplicateWindowMillis)
+                    it.remove();
+            }
+        }
+        advertisements.put(usnHeader, advertisement);
+        return false;
+    }
+
+    protected boolean isAdvertisement(IncomingDatagramMessage message) {
+        if (message.getOperation() instanceof UpnpResponse) return true;
+        return message.getOperation() instanceof UpnpRequest
+                && ((UpnpRequest) message.getOperation()).getMethod() == UpnpRequest.Method.NOTIFY;
+    }
+
+    protected boolean isByeBye(IncomingDatagramMessage message) {
+        String ntsHeader = message.getHeaders().getFirstHeader(UpnpHeader.Type.NTS.getHttpName());
+        return ntsHeader != null && ntsHeader.equals(NotificationSubtype.BYEBYE.getHeaderString());
+    }
+
+}
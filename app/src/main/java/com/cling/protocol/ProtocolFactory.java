@@ -23,6 +23,8 @@ import com.cling.model.message.IncomingDatagramMessage;
 import com.cling.model.message.StreamRequestMessage;
 import com.cling.model.message.header.UpnpHeader;
 import com.cling.model.meta.LocalDevice;
+import com.cling.model.state.StateVariableValue;
+import com.cling.model.types.UnsignedIntegerFourBytes;
 import com.cling.protocol.async.SendingNotificationAlive;
 import com.cling.protocol.async.SendingNotificationByebye;
 import com.cling.protocol.async.SendingSearch;
@@ -33,6 +35,7 @@ import com.cling.protocol.sync.SendingSubscribe;
 import com.cling.protocol.sync.SendingUnsubscribe;
 
 import java.net.URL;
+import java.util.Collection;
 
 /**
  * Factory for UPnP protocols, the core implementation of the UPnP specification.
@@ -116,4 +119,12 @@ public interface ProtocolFactory {
      * Called by the {@link com.cling.model.gena.GENASubscription}, creates a protocol for sending GENA events.
      */
     public SendingEvent createSendingEvent(LocalGENASubscription subscription);
+
+    /**
+     * Called by the {@link com.cling.protocol.sync.QueuedLocalGENASubscription}, creates a protocol for
+     * sending the given GENA event values with the given sequence.
+     */
+    public SendingEvent createSendingEvent(LocalGENASubscription subscription,
+                                           UnsignedIntegerFourBytes sequence,
+                                           Collection<StateVariableValue> values);
 }
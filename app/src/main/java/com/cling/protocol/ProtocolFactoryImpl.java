@@ -27,10 +27,8 @@ import com.cling.model.message.UpnpRequest;
 import com.cling.model.message.UpnpResponse;
 import com.cling.model.message.header.UpnpHeader;
 import com.cling.model.meta.LocalDevice;
-import com.cling.model.types.InvalidValueException;
-import com.cling.model.types.NamedServiceType;
-import com.cling.model.types.NotificationSubtype;
-import com.cling.model.types.ServiceType;
+import com.cling.model.state.StateVariableValue;
+import com.cling.model.types.UnsignedIntegerFourBytes;
 import com.cling.protocol.async.ReceivingNotification;
 import com.cling.protocol.async.ReceivingSearch;
 import com.cling.protocol.async.ReceivingSearchResponse;
@@ -51,6 +49,7 @@ import com.cling.transport.RouterException;
 
 import java.net.URI;
 import java.net.URL;
+import java.util.Collection;
 import java.util.List;
 import java.util.logging.Logger;
 
@@ -91,8 +90,7 @@ public class ProtocolFactoryImpl implements ProtocolFactory {
 
             switch (incomingRequest.getOperation().getMethod()) {
                 case NOTIFY:
-                    return isByeBye(incomingRequest) || isSupportedServiceAdvertisement(incomingRequest)
-                            ? createReceivingNotification(incomingRequest) : null;
+                    return createReceivingNotification(incomingRequest);
                 case MSEARCH:
                     return createReceivingSearch(incomingRequest);
             }
@@ -100,8 +98,7 @@ public class ProtocolFactoryImpl implements ProtocolFactory {
         } else if (message.getOperation() instanceof UpnpResponse) {
             IncomingDatagramMessage<UpnpResponse> incomingResponse = message;
 
-            return isSupportedServiceAdvertisement(incomingResponse)
-                    ? createReceivingSearchResponse(incomingResponse) : null;
+            return createReceivingSearchResponse(incomingResponse);
         }
 
         throw new ProtocolCreationException("Protocol for incoming datagram message not found: " + message);
@@ -119,34 +116,6 @@ public class ProtocolFactoryImpl implements ProtocolFactory {
         return new ReceivingSearchResponse(getUpnpService(), incomingResponse);
     }
 
-    // DO NOT USE THE PARSED/TYPED MSG HEADERS! THIS WOULD DEFEAT THE PURPOSE OF THIS OPTIMIZATION!
-
-    protected boolean isByeBye(IncomingDatagramMessage message) {
-        String ntsHeader = message.getHeaders().getFirstHeader(UpnpHeader.Type.NTS.getHttpName());
-        return ntsHeader != null && ntsHeader.equals(NotificationSubtype.BYEBYE.getHeaderString());
-    }
-
-    protected boolean isSupportedServiceAdvertisement(IncomingDatagramMessage message) {
-        ServiceType[] exclusiveServiceTypes = getUpnpService().getConfiguration().getExclusiveServiceTypes();
-        if (exclusiveServiceTypes == null) return false; // Discovery is disabled
-        if (exclusiveServiceTypes.length == 0) return true; // Any advertisement is fine
-
-        String usnHeader = message.getHeaders().getFirstHeader(UpnpHeader.Type.USN.getHttpName());
-        if (usnHeader == null) return false; // Not a service advertisement, drop it
-
-        try {
-            NamedServiceType nst = NamedServiceType.valueOf(usnHeader);
-            for (ServiceType exclusiveServiceType : exclusiveServiceTypes) {
-                if (nst.getServiceType().implementsVersion(exclusiveServiceType))
-                    return true;
-            }
-        } catch (InvalidValueException ex) {
-            log.finest("Not a named service type header value: " + usnHeader);
-        }
-        log.fine("Service advertisement not supported, dropping it: " + usnHeader);
-        return false;
-    }
-
     public ReceivingSync createReceivingSync(StreamRequestMessage message) throws ProtocolCreationException {
         log.fine("Creating protocol for incoming synchronous: " + message);
 
@@ -237,6 +206,12 @@ public class ProtocolFactoryImpl implements ProtocolFactory {
         return new SendingEvent(getUpnpService(), subscription);
     }
 
+    public SendingEvent createSendingEvent(LocalGENASubscription subscription,
+                                           UnsignedIntegerFourBytes sequence,
+                                           Collection<StateVariableValue> values) {
+        return new SendingEvent(getUpnpService(), subscription, sequence, values);
+    }
+
     protected ReceivingRetrieval createReceivingRetrieval(StreamRequestMessage message) {
         return new ReceivingRetrieval(getUpnpService(), message);
     }
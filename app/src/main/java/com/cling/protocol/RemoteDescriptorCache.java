@@ -0,0 +1,236 @@
+/*
+ * Copyright (C) 2013 4th Line GmbH, Switzerland
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * Lesser General Public License Version 2 or later ("LGPL") or the
+ * Common Development and Distribution License Version 1 or later
+ * ("CDDL") (collectively, the "License"). You may not use this file
+ * except in compliance with the License. See LICENSE.txt for more
+ * information.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+
+package com.cling.protocol;
+
+import com.cling.model.meta.RemoteDeviceIdentity;
+import com.cling.model.types.UDN;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Stores the descriptors of remote devices on disk, so they don't have to be retrieved again
+ * after a restart.
+ * <p>
+ * {@link RetrieveRemoteDescriptors} hydrates a discovered device from the cached device and
+ * service descriptors, if the device has the same UDN and descriptor URL as when they were
+ * stored. It then retrieves the descriptors again in the background, and replaces the device
+ * in the registry if they changed.
+ * </p>
+ * <p>
+ * Each device is stored in one compressed binary file in the given directory; the oldest
+ * files are deleted if there are more than {@link #MAX_ENTRIES}.
+ * </p>
+ *
+ * @author Christian Bauer
+ */
+public class RemoteDescriptorCache {
+
+    private static Logger log = Logger.getLogger(RemoteDescriptorCache.class.getName());
+
+    protected static final int FORMAT_VERSION = 1;
+    protected static final int MAX_ENTRIES = 128;
+    protected static final String FILE_SUFFIX = ".descriptors";
+    protected static final int MAX_STRING_BYTES = 4 * 1024 * 1024;
+
+    /**
+     * The device descriptor and all service descriptors of a device graph, keyed by their URL.
+     */
+    public static class Descriptors {
+
+        protected String deviceDescriptor;
+        final protected Map<String, String> serviceDescriptors = new ConcurrentHashMap<String, String>();
+
+        public String getDeviceDescriptor() {
+            return deviceDescriptor;
+        }
+
+        public void setDeviceDescriptor(String deviceDescriptor) {
+            this.deviceDescriptor = deviceDescriptor;
+        }
+
+        public String getServiceDescriptor(URL descriptorURL) {
+            return serviceDescriptors.get(descriptorURL.toString());
+        }
+
+        public void putServiceDescriptor(URL descriptorURL, String serviceDescriptor) {
+            serviceDescriptors.put(descriptorURL.toString(), serviceDescriptor);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Descriptors that = (Descriptors) o;
+            if (deviceDescriptor != null ? !deviceDescriptor.equals(that.deviceDescriptor) : that.deviceDescriptor != null)
+                return false;
+            return serviceDescriptors.equals(that.serviceDescriptors);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = deviceDescriptor != null ? deviceDescriptor.hashCode() : 0;
+            result = 31 * result + serviceDescriptors.hashCode();
+            return result;
+        }
+
+        @Override
+        public String toString() {
+            return "(" + getClass().getSimpleName() + ") Services: " + serviceDescriptors.size();
+        }
+    }
+
+    final protected File directory;
+
+    public RemoteDescriptorCache(File directory) {
+        this.directory = directory;
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * @return The stored descriptors of the device, or <code>null</code> if none are stored or the
+     *         device's descriptor URL changed.
+     */
+    synchronized public Descriptors get(RemoteDeviceIdentity identity) {
+        File file = getFile(identity.getUdn());
+        if (!file.exists()) return null;
+
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(new FileInputStream(file))));
+            if (in.readInt() != FORMAT_VERSION
+                    || !identity.getUdn().getIdentifierString().equals(readString(in))
+                    || !identity.getDescriptorURL().toString().equals(readString(in))) {
+                log.fine("Discarding stored descriptors of changed device: " + identity);
+                file.delete();
+                return null;
+            }
+            Descriptors descriptors = new Descriptors();
+            descriptors.setDeviceDescriptor(readString(in));
+            int services = in.readInt();
+            for (int i = 0; i < services; i++) {
+                descriptors.serviceDescriptors.put(readString(in), readString(in));
+            }
+            return descriptors;
+        } catch (IOException ex) {
+            log.warning("Discarding unreadable stored descriptors of: " + identity + ", " + ex);
+            file.delete();
+            return null;
+        } finally {
+            close(in);
+        }
+    }
+
+    synchronized public void put(RemoteDeviceIdentity identity, Descriptors descriptors) {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            log.warning("Can't create descriptor cache directory: " + directory);
+            return;
+        }
+
+        File file = getFile(identity.getUdn());
+        File tempFile = new File(directory, file.getName() + ".tmp");
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(new FileOutputStream(tempFile))));
+            out.writeInt(FORMAT_VERSION);
+            writeString(out, identity.getUdn().getIdentifierString());
+            writeString(out, identity.getDescriptorURL().toString());
+            writeString(out, descriptors.getDeviceDescriptor());
+            Map<String, String> serviceDescriptors = descriptors.serviceDescriptors;
+            out.writeInt(serviceDescriptors.size());
+            for (Map.Entry<String, String> entry : serviceDescriptors.entrySet()) {
+                writeString(out, entry.getKey());
+                writeString(out, entry.getValue());
+            }
+            out.close();
+            out = null;
+            if (!tempFile.renameTo(file))
+                throw new IOException("Can't rename: " + tempFile);
+            log.fine("Stored descriptors of: " + identity);
+        } catch (IOException ex) {
+            log.warning("Could not store descriptors of: " + identity + ", " + ex);
+            tempFile.delete();
+        } finally {
+            close(out);
+        }
+
+        evict();
+    }
+
+    synchronized public void remove(UDN udn) {
+        getFile(udn).delete();
+    }
+
+    protected File getFile(UDN udn) {
+        return new File(directory, udn.getIdentifierString().replaceAll("[^A-Za-z0-9._-]", "_") + FILE_SUFFIX);
+    }
+
+    protected void evict() {
+        File[] files = directory.listFiles();
+        if (files == null || files.length <= MAX_ENTRIES) return;
+        Arrays.sort(files, new Comparator<File>() {
+            public int compare(File a, File b) {
+                long diff = a.lastModified() - b.lastModified();
+                return diff < 0 ? -1 : diff > 0 ? 1 : 0;
+            }
+        });
+        for (int i = 0; i < files.length - MAX_ENTRIES; i++) {
+            files[i].delete();
+        }
+    }
+
+    protected String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0 || length > MAX_STRING_BYTES)
+            throw new IOException("Invalid string length: " + length);
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, "UTF-8");
+    }
+
+    protected void writeString(DataOutputStream out, String string) throws IOException {
+        byte[] bytes = string.getBytes("UTF-8");
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    protected void close(Closeable closeable) {
+        if (closeable == null) return;
+        try {
+            closeable.close();
+        } catch (IOException ex) {
+            // Ignore
+        }
+    }
+}
@@ -38,9 +38,16 @@ import org.seamless.util.Exceptions;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -54,27 +61,54 @@ import java.util.logging.Logger;
  * </p>
  * <p>
  * This protocol implementation will then retrieve the device's XML descriptor, parse it, and retrieve and
- * parse all service descriptors until all device and service metadata has been retrieved. The fully
- * hydrated device is then added to the {@link com.cling.registry.Registry}.
+ * parse all service descriptors of the device and its embedded devices concurrently, until all device and
+ * service metadata has been retrieved. The fully hydrated device is then added to the
+ * {@link com.cling.registry.Registry}.
  * </p>
  * <p>
  * Any descriptor retrieval, parsing, or validation error of the metadata will abort this protocol
  * with a warning message in the log.
  * </p>
+ * <p>
+ * If the configuration provides a {@link RemoteDescriptorCache}, a device is hydrated from its
+ * stored descriptors without any network request. Another instance of this protocol then
+ * validates the stored descriptors in the background, and replaces the device in the registry
+ * if they changed.
+ * </p>
  *
  * @author Christian Bauer
  */
 public class RetrieveRemoteDescriptors implements Runnable {
 
     final private static Logger log = Logger.getLogger(RetrieveRemoteDescriptors.class.getName());
+
+    // Service descriptors of a device graph are retrieved concurrently, but not with more requests per host
+    protected static final int MAX_CONCURRENT_RETRIEVALS_PER_HOST = 4;
+
     private static final Set<URL> activeRetrievals = new CopyOnWriteArraySet();
     private final UpnpService upnpService;
     protected List<UDN> errorsAlreadyLogged = new ArrayList<UDN>();
     private RemoteDevice rd;
 
+    // Validate the stored descriptors of an already hydrated device
+    final protected boolean validation;
+    // Stored descriptors used instead of retrieving them
+    protected RemoteDescriptorCache.Descriptors storedDescriptors;
+    // All descriptors used to hydrate the device
+    final protected RemoteDescriptorCache.Descriptors hydratedDescriptors = new RemoteDescriptorCache.Descriptors();
+
     public RetrieveRemoteDescriptors(UpnpService upnpService, RemoteDevice rd) {
+        this(upnpService, rd, false);
+    }
+
+    /**
+     * @param validation Retrieve the descriptors of a device which was hydrated from the
+     *                   {@link RemoteDescriptorCache}, and replace it if they changed.
+     */
+    public RetrieveRemoteDescriptors(UpnpService upnpService, RemoteDevice rd, boolean validation) {
         this.upnpService = upnpService;
         this.rd = rd;
+        this.validation = validation;
     }
 
     public UpnpService getUpnpService() {
@@ -95,14 +129,17 @@ public class RetrieveRemoteDescriptors implements Runnable {
         }
 
         // Exit if it has been discovered already, could be we have been waiting in the executor queue too long
-        if (getUpnpService().getRegistry().getRemoteDevice(rd.getIdentity().getUdn(), true) != null) {
+        if (!validation && getUpnpService().getRegistry().getRemoteDevice(rd.getIdentity().getUdn(), true) != null) {
             log.finer("Exiting early, already discovered: " + deviceURL);
             return;
         }
 
+        boolean describedStored = false;
         try {
             activeRetrievals.add(deviceURL);
-            describe();
+            describedStored = !validation && describeStored();
+            if (!describedStored)
+                describe();
         } catch (RouterException ex) {
             log.log(Level.WARNING,
                     "Descriptor retrieval failed: " + deviceURL,
@@ -111,6 +148,40 @@ public class RetrieveRemoteDescriptors implements Runnable {
         } finally {
             activeRetrievals.remove(deviceURL);
         }
+
+        if (describedStored) {
+            log.fine("Validating stored descriptors in the background: " + deviceURL);
+            getUpnpService().getConfiguration().getAsyncProtocolExecutor().execute(
+                    new RetrieveRemoteDescriptors(getUpnpService(), rd, true)
+            );
+        }
+    }
+
+    /**
+     * Hydrates the device from the descriptors stored in the {@link RemoteDescriptorCache}.
+     *
+     * @return <code>true</code> if the device has been added to the registry.
+     */
+    protected boolean describeStored() throws RouterException {
+        RemoteDescriptorCache cache = getUpnpService().getConfiguration().getRemoteDescriptorCache();
+        if (cache == null || getUpnpService().getRouter() == null)
+            return false;
+
+        storedDescriptors = cache.get(rd.getIdentity());
+        if (storedDescriptors == null)
+            return false;
+
+        log.fine("Hydrating device from stored descriptors: " + rd.getIdentity().getDescriptorURL());
+        describe(storedDescriptors.getDeviceDescriptor());
+        storedDescriptors = null;
+
+        if (getUpnpService().getRegistry().getRemoteDevice(rd.getIdentity().getUdn(), true) != null)
+            return true;
+
+        log.fine("Hydrating device from stored descriptors failed, retrieving them: " + rd.getIdentity().getDescriptorURL());
+        cache.remove(rd.getIdentity().getUdn());
+        hydratedDescriptors.serviceDescriptors.clear();
+        return false;
     }
 
     protected void describe() throws RouterException {
@@ -188,6 +259,8 @@ public class RetrieveRemoteDescriptors implements Runnable {
 
     protected void describe(String descriptorXML) throws RouterException {
 
+        hydratedDescriptors.setDeviceDescriptor(descriptorXML);
+
         boolean notifiedStart = false;
         RemoteDevice describedDevice = null;
         try {
@@ -218,6 +291,23 @@ public class RetrieveRemoteDescriptors implements Runnable {
                 return;
             }
 
+            RemoteDescriptorCache cache = getUpnpService().getConfiguration().getRemoteDescriptorCache();
+            if (cache != null && storedDescriptors == null) {
+                RemoteDescriptorCache.Descriptors previousDescriptors = validation ? cache.get(rd.getIdentity()) : null;
+                if (validation && hydratedDescriptors.equals(previousDescriptors)) {
+                    log.fine("Stored descriptors are valid: " + rd.getIdentity().getDescriptorURL());
+                    return;
+                }
+                cache.put(rd.getIdentity(), hydratedDescriptors);
+                if (validation) {
+                    // Updated in place, listeners don't see the device disappear
+                    log.fine("Stored descriptors changed, replacing device in registry: " + hydratedDevice);
+                    if (!getUpnpService().getRegistry().replaceDevice(hydratedDevice))
+                        log.fine("Device was removed while its descriptors were validated: " + hydratedDevice);
+                    return;
+                }
+            }
+
             log.fine("Adding fully hydrated remote device to registry: " + hydratedDevice);
             // The registry will do the right thing: A new root device is going to be added, if it's
             // already present or we just received the descriptor again (because we got an embedded
@@ -254,27 +344,114 @@ public class RetrieveRemoteDescriptors implements Runnable {
     protected RemoteDevice describeServices(RemoteDevice currentDevice)
             throws RouterException, DescriptorBindingException, ValidationException {
 
-        List<RemoteService> describedServices = new ArrayList();
+        List<RemoteService> services = new ArrayList();
+        collectServices(currentDevice, services);
+
+        long start = System.currentTimeMillis();
+        Map<RemoteService, RemoteService> describedServices = describeServices(services);
+        if (describedServices == null) { // Something went wrong, bail out
+            return null;
+        }
+        log.fine("Described " + services.size() + " services in "
+                + (System.currentTimeMillis() - start) + "ms: " + currentDevice);
+
+        return hydrateDevice(currentDevice, describedServices);
+    }
+
+    /**
+     * Adds the services of the device and all its embedded devices, in graph order.
+     */
+    protected void collectServices(RemoteDevice currentDevice, List<RemoteService> services) {
         if (currentDevice.hasServices()) {
-            List<RemoteService> filteredServices = filterExclusiveServices(currentDevice.getServices());
-            for (RemoteService service : filteredServices) {
-                RemoteService svc = describeService(service);
-                if (svc == null) { // Something went wrong, bail out
-                    return null;
+            for (RemoteService service : filterExclusiveServices(currentDevice.getServices())) {
+                if (!services.contains(service))
+                    services.add(service);
+            }
+        }
+        if (currentDevice.hasEmbeddedDevices()) {
+            for (RemoteDevice embeddedDevice : currentDevice.getEmbeddedDevices()) {
+                if (embeddedDevice == null) continue;
+                collectServices(embeddedDevice, services);
+            }
+        }
+    }
+
+    /**
+     * Retrieves the service descriptors concurrently on the synchronous protocol executor, with at
+     * most {@link #MAX_CONCURRENT_RETRIEVALS_PER_HOST} requests sent to the same host at a time.
+     * <p>
+     * The calling thread retrieves descriptors as well, so all of them are retrieved even if the
+     * executor has no idle thread. Once a retrieval failed, the remaining services are skipped.
+     * </p>
+     *
+     * @return The described services, keyed by the given services, or <code>null</code> if any of
+     *         them couldn't be described.
+     */
+    protected Map<RemoteService, RemoteService> describeServices(List<RemoteService> services)
+            throws RouterException, DescriptorBindingException, ValidationException {
+
+        Map<String, Queue<RemoteService>> servicesByHost = new LinkedHashMap();
+        for (RemoteService service : services) {
+            String host = getDescriptorHost(service);
+            Queue<RemoteService> hostServices = servicesByHost.get(host);
+            if (hostServices == null) {
+                hostServices = new ConcurrentLinkedQueue<RemoteService>();
+                servicesByHost.put(host, hostServices);
+            }
+            hostServices.add(service);
+        }
+
+        ServiceRetrieval retrieval = new ServiceRetrieval(services.size());
+
+        for (final Queue<RemoteService> hostServices : servicesByHost.values()) {
+            int helpers = Math.min(hostServices.size(), MAX_CONCURRENT_RETRIEVALS_PER_HOST) - 1;
+            for (int i = 0; i < helpers; i++) {
+                try {
+                    getUpnpService().getConfiguration().getSyncProtocolExecutorService().execute(
+                            retrieval.createWorker(hostServices)
+                    );
+                } catch (RejectedExecutionException ex) {
+                    log.fine("Executor rejected service descriptor retrieval, continuing on this thread: " + ex);
+                    break;
                 }
-                describedServices.add(svc);
             }
         }
 
-        List<RemoteDevice> describedEmbeddedDevices = new ArrayList();
+        for (Queue<RemoteService> hostServices : servicesByHost.values()) {
+            retrieval.retrieve(hostServices);
+        }
+
+        return retrieval.getDescribedServices();
+    }
+
+    protected String getDescriptorHost(RemoteService service) {
+        try {
+            URL descriptorURL = service.getDevice().normalizeURI(service.getDescriptorURI());
+            return descriptorURL.getHost() + ":" + descriptorURL.getPort();
+        } catch (IllegalArgumentException e) {
+            // Reported when the descriptor is retrieved
+            return "";
+        }
+    }
+
+    /**
+     * @return A new immutable graph of the device, with the described services.
+     */
+    protected RemoteDevice hydrateDevice(RemoteDevice currentDevice, Map<RemoteService, RemoteService> describedServices)
+            throws ValidationException {
+
+        List<RemoteService> hydratedServices = new ArrayList();
+        if (currentDevice.hasServices()) {
+            for (RemoteService service : filterExclusiveServices(currentDevice.getServices())) {
+                hydratedServices.add(describedServices.get(service));
+            }
+        }
+
+        List<RemoteDevice> hydratedEmbeddedDevices = new ArrayList();
         if (currentDevice.hasEmbeddedDevices()) {
             for (RemoteDevice embeddedDevice : currentDevice.getEmbeddedDevices()) {
                 if (embeddedDevice == null) continue;
-                RemoteDevice describedEmbeddedDevice = describeServices(embeddedDevice);
-                if (describedEmbeddedDevice == null) { // Something was wrong, recursively
-                    return null;
-                }
-                describedEmbeddedDevices.add(describedEmbeddedDevice);
+                hydratedEmbeddedDevices.add(hydrateDevice(embeddedDevice, describedServices));
             }
         }
 
@@ -291,8 +468,8 @@ public class RetrieveRemoteDescriptors implements Runnable {
                 currentDevice.getType(),
                 currentDevice.getDetails(),
                 iconDupes,
-                currentDevice.toServiceArray(describedServices),
-                describedEmbeddedDevices
+                currentDevice.toServiceArray(hydratedServices),
+                hydratedEmbeddedDevices
         );
     }
 
@@ -307,6 +484,25 @@ public class RetrieveRemoteDescriptors implements Runnable {
             return null;
         }
 
+        String descriptorContent = storedDescriptors != null ? storedDescriptors.getServiceDescriptor(descriptorURL) : null;
+        if (descriptorContent == null) {
+            descriptorContent = retrieveServiceDescriptor(service, descriptorURL);
+            if (descriptorContent == null)
+                return null;
+        }
+        hydratedDescriptors.putServiceDescriptor(descriptorURL, descriptorContent);
+
+        ServiceDescriptorBinder serviceDescriptorBinder =
+                getUpnpService().getConfiguration().getServiceDescriptorBinderUDA10();
+
+        return serviceDescriptorBinder.describe(service, descriptorContent);
+    }
+
+    /**
+     * @return The retrieved service descriptor, or <code>null</code> if retrieval failed.
+     */
+    protected String retrieveServiceDescriptor(RemoteService service, URL descriptorURL) throws RouterException {
+
         StreamRequestMessage serviceDescRetrievalMsg = new StreamRequestMessage(UpnpRequest.Method.GET, descriptorURL);
 
         // Extra headers
@@ -343,10 +539,7 @@ public class RetrieveRemoteDescriptors implements Runnable {
         }
 
         log.fine("Received service descriptor, hydrating service model: " + serviceDescMsg);
-        ServiceDescriptorBinder serviceDescriptorBinder =
-                getUpnpService().getConfiguration().getServiceDescriptorBinderUDA10();
-
-        return serviceDescriptorBinder.describe(service, descriptorContent);
+        return descriptorContent;
     }
 
     protected List<RemoteService> filterExclusiveServices(RemoteService[] services) {
@@ -369,4 +562,74 @@ public class RetrieveRemoteDescriptors implements Runnable {
         return exclusiveServices;
     }
 
+    /**
+     * The state of a concurrent retrieval of service descriptors, shared by its worker threads.
+     */
+    protected class ServiceRetrieval {
+
+        final protected Map<RemoteService, RemoteService> describedServices =
+                new ConcurrentHashMap<RemoteService, RemoteService>();
+        final protected CountDownLatch pending;
+        protected volatile boolean failed;
+        protected volatile Exception failure;
+
+        public ServiceRetrieval(int services) {
+            this.pending = new CountDownLatch(services);
+        }
+
+        public Runnable createWorker(final Queue<RemoteService> services) {
+            return new Runnable() {
+                public void run() {
+                    retrieve(services);
+                }
+            };
+        }
+
+        /**
+         * Describes services of the queue until it is empty.
+         */
+        public void retrieve(Queue<RemoteService> services) {
+            RemoteService service;
+            while ((service = services.poll()) != null) {
+                try {
+                    if (failed) continue;
+                    RemoteService describedService = describeService(service);
+                    if (describedService != null) {
+                        describedServices.put(service, describedService);
+                    } else {
+                        failed = true;
+                    }
+                } catch (Exception ex) {
+                    if (failure == null)
+                        failure = ex;
+                    failed = true;
+                } finally {
+                    pending.countDown();
+                }
+            }
+        }
+
+        /**
+         * Waits until all services have been retrieved, rethrows the first failure.
+         */
+        public Map<RemoteService, RemoteService> getDescribedServices()
+                throws RouterException, DescriptorBindingException, ValidationException {
+            try {
+                pending.await();
+            } catch (InterruptedException ex) {
+                throw new RouterException("Interrupted while retrieving service descriptors", ex);
+            }
+            Exception ex = failure;
+            if (ex instanceof RouterException)
+                throw (RouterException) ex;
+            if (ex instanceof DescriptorBindingException)
+                throw (DescriptorBindingException) ex;
+            if (ex instanceof ValidationException)
+                throw (ValidationException) ex;
+            if (ex instanceof RuntimeException)
+                throw (RuntimeException) ex;
+            return failed ? null : describedServices;
+        }
+    }
+
 }
@@ -20,6 +20,8 @@ import com.cling.transport.RouterException;
 
 import org.seamless.util.Exceptions;
 
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -67,6 +69,34 @@ public abstract class SendingAsync implements Runnable {
 
     protected abstract void execute() throws RouterException;
 
+    /**
+     * Runs the task on the asynchronous protocol executor after the delay, no thread is
+     * blocked while waiting.
+     *
+     * @return <code>false</code> if the task was rejected, e.g. on shutdown.
+     */
+    protected boolean executeDelayed(final Runnable task, long delayMillis) {
+        try {
+            getUpnpService().getConfiguration().getScheduledExecutorService().schedule(
+                    new Runnable() {
+                        public void run() {
+                            try {
+                                getUpnpService().getConfiguration().getAsyncProtocolExecutor().execute(task);
+                            } catch (RejectedExecutionException ex) {
+                                log.warning("Protocol executor rejected delayed task: " + task);
+                            }
+                        }
+                    },
+                    delayMillis,
+                    TimeUnit.MILLISECONDS
+            );
+            return true;
+        } catch (RejectedExecutionException ex) {
+            log.fine("Delayed execution rejected (on shutdown?): " + getClass().getSimpleName());
+            return false;
+        }
+    }
+
     @Override
     public String toString() {
         return "(" + getClass().getSimpleName() + ")";
@@ -0,0 +1,173 @@
+/*
+ * Copyright (C) 2013 4th Line GmbH, Switzerland
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * Lesser General Public License Version 2 or later ("LGPL") or the
+ * Common Development and Distribution License Version 1 or later
+ * ("CDDL") (collectively, the "License"). You may not use this file
+ * except in compliance with the License. See LICENSE.txt for more
+ * information.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+
+package com.cling.protocol.async;
+
+import com.cling.model.message.OutgoingDatagramMessage;
+import com.cling.model.message.PreparedDatagramMessage;
+import com.cling.model.meta.LocalDevice;
+import com.cling.model.types.NotificationSubtype;
+import com.cling.model.types.UDN;
+import com.cling.transport.spi.DatagramProcessor;
+
+import java.net.DatagramPacket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
+
+/**
+ * Encoded advertisement and search response messages of local devices.
+ * <p>
+ * The messages of a local root device (and its embedded devices and services) are encoded
+ * once per message type and stream server address, and then sent as is by
+ * {@link SendingNotification} and {@link ReceivingSearch}. Only the destination of a search
+ * response is set per request.
+ * </p>
+ * <p>
+ * The {@link com.cling.registry.Registry} adds a device when it is registered, removes it when
+ * it is unregistered, and invalidates its messages when its {@link com.cling.model.DiscoveryOptions}
+ * change. Messages are only stored for a device instance which is currently added, so a protocol
+ * still running after the device was removed, e.g. an asynchronous byebye, doesn't put it back.
+ * Messages for another stream server address, e.g. after the bind address changed, are encoded
+ * on demand.
+ * </p>
+ *
+ * @author Christian Bauer
+ */
+public class AdvertisementCache {
+
+    private static Logger log = Logger.getLogger(AdvertisementCache.class.getName());
+
+    // Stale addresses of a device are dropped when it has more than this number of entries
+    protected static final int MAX_ENTRIES_PER_DEVICE = 16;
+
+    protected static class Key {
+
+        final NotificationSubtype type;
+        final Object address;
+
+        Key(NotificationSubtype type, Object address) {
+            this.type = type;
+            this.address = address;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Key that = (Key) o;
+            return type == that.type && address.equals(that.address);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * type.hashCode() + address.hashCode();
+        }
+    }
+
+    protected static class DeviceMessages {
+
+        final LocalDevice device;
+        final Map<Key, List<PreparedDatagramMessage>> messages =
+                new ConcurrentHashMap<Key, List<PreparedDatagramMessage>>();
+
+        DeviceMessages(LocalDevice device) {
+            this.device = device;
+        }
+    }
+
+    final protected Map<UDN, DeviceMessages> messages = new ConcurrentHashMap<UDN, DeviceMessages>();
+
+    /**
+     * @param device  A local root device.
+     * @param type    {@link NotificationSubtype#ALIVE} or {@link NotificationSubtype#BYEBYE} for
+     *                notifications, {@link NotificationSubtype#ALL} for search responses.
+     * @param address The {@link com.cling.model.Location} or {@link com.cling.model.NetworkAddress}
+     *                the messages were created for.
+     * @return The encoded messages or <code>null</code> if they have not been prepared yet.
+     */
+    public List<PreparedDatagramMessage> get(LocalDevice device, NotificationSubtype type, Object address) {
+        DeviceMessages deviceMessages = messages.get(device.getIdentity().getUdn());
+        return deviceMessages != null && deviceMessages.device == device
+                ? deviceMessages.messages.get(new Key(type, address))
+                : null;
+    }
+
+    /**
+     * Encodes the given messages, and stores them if the device is still added.
+     *
+     * @return The encoded messages, in the same order.
+     */
+    public List<PreparedDatagramMessage> put(LocalDevice device, NotificationSubtype type, Object address,
+                                             List<? extends OutgoingDatagramMessage> outgoingMessages,
+                                             DatagramProcessor datagramProcessor) {
+        List<PreparedDatagramMessage> prepared = new ArrayList<PreparedDatagramMessage>(outgoingMessages.size());
+        for (OutgoingDatagramMessage outgoingMessage : outgoingMessages) {
+            DatagramPacket packet = datagramProcessor.write(outgoingMessage);
+            byte[] data = Arrays.copyOfRange(
+                    packet.getData(), packet.getOffset(), packet.getOffset() + packet.getLength()
+            );
+            prepared.add(new PreparedDatagramMessage(outgoingMessage, data));
+        }
+        prepared = Collections.unmodifiableList(prepared);
+
+        DeviceMessages deviceMessages = messages.get(device.getIdentity().getUdn());
+        if (deviceMessages == null || deviceMessages.device != device) {
+            log.finer("Prepared " + prepared.size() + " " + type + " messages of unregistered device: " + device);
+            return prepared;
+        }
+        // If the device is removed meanwhile, these messages are dropped with its entry
+        if (deviceMessages.messages.size() >= MAX_ENTRIES_PER_DEVICE) {
+            deviceMessages.messages.clear();
+        }
+        deviceMessages.messages.put(new Key(type, address), prepared);
+        log.finer("Prepared " + prepared.size() + " " + type + " messages of device: " + device);
+        return prepared;
+    }
+
+    /**
+     * Starts caching the messages of the device, replacing any messages of a device with the same UDN.
+     */
+    public void add(LocalDevice device) {
+        messages.put(device.getIdentity().getUdn(), new DeviceMessages(device));
+    }
+
+    /**
+     * Stops caching the messages of the device.
+     */
+    public void remove(UDN udn) {
+        messages.remove(udn);
+    }
+
+    /**
+     * Drops the messages of the device, they are encoded again on demand.
+     */
+    public void invalidate(UDN udn) {
+        DeviceMessages deviceMessages = messages.get(udn);
+        if (deviceMessages != null)
+            deviceMessages.messages.clear();
+    }
+
+    public void invalidateAll() {
+        for (DeviceMessages deviceMessages : messages.values()) {
+            deviceMessages.messages.clear();
+        }
+    }
+
+}
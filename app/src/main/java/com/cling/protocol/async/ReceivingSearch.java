@@ -20,6 +20,7 @@ import com.cling.model.DiscoveryOptions;
 import com.cling.model.Location;
 import com.cling.model.NetworkAddress;
 import com.cling.model.message.IncomingDatagramMessage;
+import com.cling.model.message.PreparedDatagramMessage;
 import com.cling.model.message.UpnpRequest;
 import com.cling.model.message.discovery.IncomingSearchRequest;
 import com.cling.model.message.discovery.OutgoingSearchResponse;
@@ -37,6 +38,7 @@ import com.cling.model.message.header.UpnpHeader;
 import com.cling.model.meta.Device;
 import com.cling.model.meta.LocalDevice;
 import com.cling.model.types.DeviceType;
+import com.cling.model.types.NotificationSubtype;
 import com.cling.model.types.ServiceType;
 import com.cling.model.types.UDN;
 import com.cling.protocol.ReceivingAsync;
@@ -46,13 +48,16 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 import java.util.Random;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Logger;
 
 /**
  * Handles reception of search requests, responds for local registered devices.
  * <p>
  * Waits a random time between 0 and the requested <em>MX</em> (maximum 120 seconds)
- * before executing. Only waits if there are actually any registered local devices.
+ * before executing. Only waits if there are actually any registered local devices. The
+ * wait is scheduled, the protocol is executed again afterwards, no thread sleeps meanwhile.
  * </p>
  * <p>
  * Extracts the <em>search target</em>, builds and sends the dozens of messages
@@ -68,6 +73,8 @@ public class ReceivingSearch extends ReceivingAsync<IncomingSearchRequest> {
 
     final protected Random randomGenerator = new Random();
 
+    protected boolean delayed;
+
     public ReceivingSearch(UpnpService upnpService, IncomingDatagramMessage<UpnpRequest> inputMessage) {
         super(upnpService, new IncomingSearchRequest(inputMessage));
     }
@@ -106,6 +113,9 @@ public class ReceivingSearch extends ReceivingAsync<IncomingSearchRequest> {
     @Override
     protected boolean waitBeforeExecution() throws InterruptedException {
 
+        if (delayed)
+            return true;
+
         Integer mx = getInputMessage().getMX();
 
         if (mx == null) {
@@ -121,8 +131,24 @@ public class ReceivingSearch extends ReceivingAsync<IncomingSearchRequest> {
         // Only wait if there is something to wait for
         if (getUpnpService().getRegistry().getLocalDevices().size() > 0) {
             int sleepTime = randomGenerator.nextInt(mx * 1000);
-            log.fine("Sleeping " + sleepTime + " milliseconds to avoid flooding with search responses");
-            Thread.sleep(sleepTime);
+            log.fine("Delaying " + sleepTime + " milliseconds to avoid flooding with search responses");
+            delayed = true;
+            try {
+                getUpnpService().getConfiguration().getScheduledExecutorService().schedule(
+                        new Runnable() {
+                            public void run() {
+                                getUpnpService().getConfiguration().getAsyncProtocolExecutor().execute(
+                                        ReceivingSearch.this
+                                );
+                            }
+                        },
+                        sleepTime,
+                        TimeUnit.MILLISECONDS
+                );
+            } catch (RejectedExecutionException ex) {
+                log.fine("Delayed search response rejected (on shutdown?): " + getInputMessage());
+            }
+            return false;
         }
 
         return true;
@@ -161,35 +187,46 @@ public class ReceivingSearch extends ReceivingAsync<IncomingSearchRequest> {
             if (isAdvertisementDisabled(localDevice))
                 continue;
 
-            // We are re-using the regular notification messages here but override the NT with the ST header
-            log.finer("Sending root device messages: " + localDevice);
-            List<OutgoingSearchResponse> rootDeviceMsgs =
-                    createDeviceMessages(localDevice, activeStreamServer);
-            for (OutgoingSearchResponse upnpMessage : rootDeviceMsgs) {
-                getUpnpService().getRouter().send(upnpMessage);
+            // The messages are encoded once, only the destination differs for each request
+            AdvertisementCache cache = getUpnpService().getRegistry().getAdvertisementCache();
+            List<PreparedDatagramMessage> msgs =
+                    cache.get(localDevice, NotificationSubtype.ALL, activeStreamServer);
+            if (msgs == null) {
+                msgs = cache.put(
+                        localDevice, NotificationSubtype.ALL, activeStreamServer,
+                        createSearchResponseAllMessages(localDevice, activeStreamServer),
+                        getUpnpService().getConfiguration().getDatagramProcessor()
+                );
             }
 
-            if (localDevice.hasEmbeddedDevices()) {
-                for (LocalDevice embeddedDevice : localDevice.findEmbeddedDevices()) {
-                    log.finer("Sending embedded device messages: " + embeddedDevice);
-                    List<OutgoingSearchResponse> embeddedDeviceMsgs =
-                            createDeviceMessages(embeddedDevice, activeStreamServer);
-                    for (OutgoingSearchResponse upnpMessage : embeddedDeviceMsgs) {
-                        getUpnpService().getRouter().send(upnpMessage);
-                    }
-                }
+            log.finer("Sending " + msgs.size() + " messages of root device: " + localDevice);
+            for (PreparedDatagramMessage upnpMessage : msgs) {
+                getUpnpService().getRouter().send(
+                        upnpMessage.withDestination(
+                                getInputMessage().getSourceAddress(),
+                                getInputMessage().getSourcePort()
+                        )
+                );
             }
+        }
+    }
 
-            List<OutgoingSearchResponse> serviceTypeMsgs =
-                    createServiceTypeMessages(localDevice, activeStreamServer);
-            if (serviceTypeMsgs.size() > 0) {
-                log.finer("Sending service type messages");
-                for (OutgoingSearchResponse upnpMessage : serviceTypeMsgs) {
-                    getUpnpService().getRouter().send(upnpMessage);
-                }
+    /**
+     * @return All messages of the root device, its embedded devices, and service types, in sending order.
+     */
+    protected List<OutgoingSearchResponse> createSearchResponseAllMessages(LocalDevice localDevice,
+                                                                           NetworkAddress activeStreamServer) {
+        // We are re-using the regular notification messages here but override the NT with the ST header
+        List<OutgoingSearchResponse> msgs = createDeviceMessages(localDevice, activeStreamServer);
+
+        if (localDevice.hasEmbeddedDevices()) {
+            for (LocalDevice embeddedDevice : localDevice.findEmbeddedDevices()) {
+                msgs.addAll(createDeviceMessages(embeddedDevice, activeStreamServer));
             }
-
         }
+
+        msgs.addAll(createServiceTypeMessages(localDevice, activeStreamServer));
+        return msgs;
     }
 
     protected List<OutgoingSearchResponse> createDeviceMessages(LocalDevice device,
@@ -345,6 +382,10 @@ public class ReceivingSearch extends ReceivingAsync<IncomingSearchRequest> {
 
     /**
      * Override this to edit the outgoing message, e.g. by adding headers.
+     * <p>
+     * Responses to <code>ssdp:all</code> searches are encoded once per device and stream server
+     * address, this method is only called when they are created.
+     * </p>
      */
     protected void prepareOutgoingSearchResponse(OutgoingSearchResponse message) {
     }
@@ -18,6 +18,7 @@ package com.cling.protocol.async;
 import com.cling.UpnpService;
 import com.cling.model.Location;
 import com.cling.model.NetworkAddress;
+import com.cling.model.message.PreparedDatagramMessage;
 import com.cling.model.message.discovery.OutgoingNotificationRequest;
 import com.cling.model.message.discovery.OutgoingNotificationRequestDeviceType;
 import com.cling.model.message.discovery.OutgoingNotificationRequestRootDevice;
@@ -77,21 +78,32 @@ public abstract class SendingNotification extends SendingAsync {
             );
         }
 
-        for (int i = 0; i < getBulkRepeat(); i++) {
-            try {
+        sendRepetition(descriptorLocations, 0);
+    }
 
-                for (Location descriptorLocation : descriptorLocations) {
-                    sendMessages(descriptorLocation);
-                }
+    /**
+     * Sends one bulk of messages and schedules the next, until {@link #getBulkRepeat()} is reached.
+     */
+    protected void sendRepetition(final List<Location> descriptorLocations,
+                                  final int repetition) throws RouterException {
+        for (Location descriptorLocation : descriptorLocations) {
+            sendMessages(descriptorLocation);
+        }
 
-                // UDA 1.0 is silent about this but UDA 1.1 recomments "a few hundred milliseconds"
-                log.finer("Sleeping " + getBulkIntervalMilliseconds() + " milliseconds");
-                Thread.sleep(getBulkIntervalMilliseconds());
+        if (repetition + 1 >= getBulkRepeat())
+            return;
 
-            } catch (InterruptedException ex) {
-                log.warning("Advertisement thread was interrupted: " + ex);
+        // UDA 1.0 is silent about this but UDA 1.1 recomments "a few hundred milliseconds"
+        log.finer("Sending next bulk in " + getBulkIntervalMilliseconds() + " milliseconds");
+        executeDelayed(new Runnable() {
+            public void run() {
+                try {
+                    sendRepetition(descriptorLocations, repetition + 1);
+                } catch (RouterException ex) {
+                    log.warning("Sending notification messages failed: " + ex);
+                }
             }
-        }
+        }, getBulkIntervalMilliseconds());
     }
 
     protected int getBulkRepeat() {
@@ -103,32 +115,37 @@ public abstract class SendingNotification extends SendingAsync {
     }
 
     public void sendMessages(Location descriptorLocation) throws RouterException {
-        log.finer("Sending root device messages: " + getDevice());
-        List<OutgoingNotificationRequest> rootDeviceMsgs =
-                createDeviceMessages(getDevice(), descriptorLocation);
-        for (OutgoingNotificationRequest upnpMessage : rootDeviceMsgs) {
+        AdvertisementCache cache = getUpnpService().getRegistry().getAdvertisementCache();
+        List<PreparedDatagramMessage> msgs =
+                cache.get(getDevice(), getNotificationSubtype(), descriptorLocation);
+        if (msgs == null) {
+            msgs = cache.put(
+                    getDevice(), getNotificationSubtype(), descriptorLocation,
+                    createMessages(descriptorLocation),
+                    getUpnpService().getConfiguration().getDatagramProcessor()
+            );
+        }
+        log.finer("Sending " + msgs.size() + " messages of root device: " + getDevice());
+        for (PreparedDatagramMessage upnpMessage : msgs) {
             getUpnpService().getRouter().send(upnpMessage);
         }
+    }
+
+    /**
+     * @return All messages of the root device, its embedded devices, and service types, in sending order.
+     */
+    protected List<OutgoingNotificationRequest> createMessages(Location descriptorLocation) {
+        List<OutgoingNotificationRequest> msgs =
+                createDeviceMessages(getDevice(), descriptorLocation);
 
         if (getDevice().hasEmbeddedDevices()) {
             for (LocalDevice embeddedDevice : getDevice().findEmbeddedDevices()) {
-                log.finer("Sending embedded device messages: " + embeddedDevice);
-                List<OutgoingNotificationRequest> embeddedDeviceMsgs =
-                        createDeviceMessages(embeddedDevice, descriptorLocation);
-                for (OutgoingNotificationRequest upnpMessage : embeddedDeviceMsgs) {
-                    getUpnpService().getRouter().send(upnpMessage);
-                }
+                msgs.addAll(createDeviceMessages(embeddedDevice, descriptorLocation));
             }
         }
 
-        List<OutgoingNotificationRequest> serviceTypeMsgs =
-                createServiceTypeMessages(getDevice(), descriptorLocation);
-        if (serviceTypeMsgs.size() > 0) {
-            log.finer("Sending service type messages");
-            for (OutgoingNotificationRequest upnpMessage : serviceTypeMsgs) {
-                getUpnpService().getRouter().send(upnpMessage);
-            }
-        }
+        msgs.addAll(createServiceTypeMessages(getDevice(), descriptorLocation));
+        return msgs;
     }
 
     protected List<OutgoingNotificationRequest> createDeviceMessages(LocalDevice device,
@@ -85,20 +85,30 @@ public class SendingSearch extends SendingAsync {
         OutgoingSearchRequest msg = new OutgoingSearchRequest(searchTarget, getMxSeconds());
         prepareOutgoingSearchRequest(msg);
 
-        for (int i = 0; i < getBulkRepeat(); i++) {
-            try {
-
-                getUpnpService().getRouter().send(msg);
-
-                // UDA 1.0 is silent about this but UDA 1.1 recommends "a few hundred milliseconds"
-                log.finer("Sleeping " + getBulkIntervalMilliseconds() + " milliseconds");
-                Thread.sleep(getBulkIntervalMilliseconds());
+        sendRepetition(msg, 0);
+    }
 
-            } catch (InterruptedException ex) {
-                // Interruption means we stop sending search messages, e.g. on shutdown of thread pool
-                break;
+    /**
+     * Sends the message and schedules the next repetition, until {@link #getBulkRepeat()} is reached.
+     */
+    protected void sendRepetition(final OutgoingSearchRequest msg, final int repetition) throws RouterException {
+        getUpnpService().getRouter().send(msg);
+
+        if (repetition + 1 >= getBulkRepeat())
+            return;
+
+        // UDA 1.0 is silent about this but UDA 1.1 recommends "a few hundred milliseconds"
+        log.finer("Sending next search message in " + getBulkIntervalMilliseconds() + " milliseconds");
+        // A rejection means we stop sending search messages, e.g. on shutdown of thread pool
+        executeDelayed(new Runnable() {
+            public void run() {
+                try {
+                    sendRepetition(msg, repetition + 1);
+                } catch (RouterException ex) {
+                    log.warning("Sending search message failed: " + ex);
+                }
             }
-        }
+        }, getBulkIntervalMilliseconds());
     }
 
     public int getBulkRepeat() {
@@ -0,0 +1,236 @@
+/*
+ * Copyright (C) 2013 4th Line GmbH, Switzerland
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * Lesser General Public License Version 2 or later ("LGPL") or the
+ * Common Development and Distribution License Version 1 or later
+ * ("CDDL") (collectively, the "License"). You may not use this file
+ * except in compliance with the License. See LICENSE.txt for more
+ * information.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+
+package com.cling.protocol.sync;
+
+import com.cling.model.meta.DeviceDetails;
+import com.cling.model.meta.LocalDevice;
+import com.cling.model.meta.LocalService;
+import com.cling.model.meta.ManufacturerDetails;
+import com.cling.model.meta.ModelDetails;
+import com.cling.model.profile.RemoteClientInfo;
+import com.cling.model.types.UDN;
+
+import java.io.UnsupportedEncodingException;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Encoded device and service descriptors of local devices, with validators for conditional requests.
+ * <p>
+ * A device descriptor is cached for each variant of {@link DeviceDetails} the root and embedded
+ * devices provide to a control point, see {@link com.cling.model.profile.DeviceDetailsProvider}.
+ * Service descriptors do not depend on the control point.
+ * </p>
+ * <p>
+ * The {@link com.cling.registry.Registry} invalidates the descriptors of a device when it is
+ * added or removed; descriptors are also never returned for another instance of a device with
+ * the same UDN.
+ * </p>
+ *
+ * @author Christian Bauer
+ */
+public class DescriptorCache {
+
+    // Variants of a device are dropped when it has more than this number of entries
+    protected static final int MAX_ENTRIES_PER_DEVICE = 16;
+
+    /**
+     * An encoded descriptor with its entity tag and modification time.
+     */
+    public static class Descriptor {
+
+        final private byte[] data;
+        final private String entityTag;
+        final private long lastModifiedMillis;
+
+        public Descriptor(String descriptor) {
+            try {
+                this.data = descriptor.getBytes("UTF-8");
+            } catch (UnsupportedEncodingException ex) {
+                throw new RuntimeException(ex);
+            }
+            this.entityTag = "\"" + Integer.toHexString(Arrays.hashCode(data)) + "-" + Integer.toHexString(data.length) + "\"";
+            // HTTP dates have a resolution of seconds
+            this.lastModifiedMillis = System.currentTimeMillis() / 1000 * 1000;
+        }
+
+        /**
+         * @return The UTF-8 encoded descriptor, do not modify.
+         */
+        public byte[] getData() {
+            return data;
+        }
+
+        public String getEntityTag() {
+            return entityTag;
+        }
+
+        public long getLastModifiedMillis() {
+            return lastModifiedMillis;
+        }
+
+        public String getLastModified() {
+            return createDateFormat().format(new Date(lastModifiedMillis));
+        }
+
+        /**
+         * @param ifNoneMatch     The value of an <code>If-None-Match</code> request header, or <code>null</code>.
+         * @param ifModifiedSince The value of an <code>If-Modified-Since</code> request header, or <code>null</code>.
+         * @return <code>true</code> if the client already has this descriptor.
+         */
+        public boolean isNotModified(String ifNoneMatch, String ifModifiedSince) {
+            if (ifNoneMatch != null) {
+                // If-None-Match takes precedence over If-Modified-Since
+                for (String tag : ifNoneMatch.split(",")) {
+                    tag = tag.trim();
+                    if (tag.startsWith("W/")) tag = tag.substring(2);
+                    if (tag.equals("*") || tag.equals(entityTag)) return true;
+                }
+                return false;
+            }
+            if (ifModifiedSince != null) {
+                try {
+                    return createDateFormat().parse(ifModifiedSince.trim()).getTime() >= lastModifiedMillis;
+                } catch (ParseException ex) {
+                    return false;
+                }
+            }
+            return false;
+        }
+    }
+
+    protected static class DeviceDescriptors {
+
+        final LocalDevice device;
+        final Map<Object, Descriptor> descriptors = new ConcurrentHashMap<Object, Descriptor>();
+
+        DeviceDescriptors(LocalDevice device) {
+            this.device = device;
+        }
+    }
+
+    final protected Map<UDN, DeviceDescriptors> devices = new ConcurrentHashMap<UDN, DeviceDescriptors>();
+
+    /**
+     * @return The cached descriptor of the device, as provided to the given client, or <code>null</code>.
+     */
+    public Descriptor get(LocalDevice device, RemoteClientInfo info) {
+        return getDescriptor(device, getVariant(device, info));
+    }
+
+    public Descriptor put(LocalDevice device, RemoteClientInfo info, String descriptor) {
+        return putDescriptor(device, getVariant(device, info), descriptor);
+    }
+
+    /**
+     * @return The cached descriptor of the service, or <code>null</code>.
+     */
+    public Descriptor get(LocalService service) {
+        return getDescriptor((LocalDevice) service.getDevice().getRoot(), service);
+    }
+
+    public Descriptor put(LocalService service, String descriptor) {
+        return putDescriptor((LocalDevice) service.getDevice().getRoot(), service, descriptor);
+    }
+
+    public void invalidate(UDN udn) {
+        devices.remove(udn);
+    }
+
+    public void invalidateAll() {
+        devices.clear();
+    }
+
+    protected Descriptor getDescriptor(LocalDevice root, Object key) {
+        DeviceDescriptors deviceDescriptors = devices.get(root.getIdentity().getUdn());
+        return deviceDescriptors != null && deviceDescriptors.device == root
+                ? deviceDescriptors.descriptors.get(key)
+                : null;
+    }
+
+    protected Descriptor putDescriptor(LocalDevice root, Object key, String descriptor) {
+        UDN udn = root.getIdentity().getUdn();
+        DeviceDescriptors deviceDescriptors = devices.get(udn);
+        if (deviceDescriptors == null || deviceDescriptors.device != root) {
+            deviceDescriptors = new DeviceDescriptors(root);
+            devices.put(udn, deviceDescriptors);
+        } else if (deviceDescriptors.descriptors.size() >= MAX_ENTRIES_PER_DEVICE) {
+            deviceDescriptors.descriptors.clear();
+        }
+        Descriptor result = new Descriptor(descriptor);
+        deviceDescriptors.descriptors.put(key, result);
+        return result;
+    }
+
+    /**
+     * @return The values of the details of the device and all its embedded devices, as provided to
+     * the given client. A provider might create new details for each request, so the values are
+     * the key and not the instances.
+     */
+    protected List<String> getVariant(LocalDevice device, RemoteClientInfo info) {
+        List<String> variant = new ArrayList<String>();
+        addVariant(variant, device.getDetails(info));
+        if (device.hasEmbeddedDevices()) {
+            for (LocalDevice embeddedDevice : device.findEmbeddedDevices()) {
+                addVariant(variant, embeddedDevice.getDetails(info));
+            }
+        }
+        return variant;
+    }
+
+    protected void addVariant(List<String> variant, DeviceDetails details) {
+        if (details == null) {
+            variant.add(null);
+            return;
+        }
+        ManufacturerDetails manufacturerDetails = details.getManufacturerDetails();
+        ModelDetails modelDetails = details.getModelDetails();
+        variant.add(valueOf(details.getBaseURL()));
+        variant.add(details.getFriendlyName());
+        variant.add(manufacturerDetails != null ? manufacturerDetails.getManufacturer() : null);
+        variant.add(manufacturerDetails != null ? valueOf(manufacturerDetails.getManufacturerURI()) : null);
+        variant.add(modelDetails != null ? modelDetails.getModelName() : null);
+        variant.add(modelDetails != null ? modelDetails.getModelDescription() : null);
+        variant.add(modelDetails != null ? modelDetails.getModelNumber() : null);
+        variant.add(modelDetails != null ? valueOf(modelDetails.getModelURI()) : null);
+        variant.add(details.getSerialNumber());
+        variant.add(details.getUpc());
+        variant.add(valueOf(details.getPresentationURI()));
+        variant.add(details.getDlnaDocs() != null ? Arrays.toString(details.getDlnaDocs()) : null);
+        variant.add(valueOf(details.getDlnaCaps()));
+        variant.add(valueOf(details.getSecProductCaps()));
+    }
+
+    // Also for URLs, their equals() resolves the host
+    protected static String valueOf(Object value) {
+        return value != null ? value.toString() : null;
+    }
+
+    protected static SimpleDateFormat createDateFormat() {
+        SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("GMT"));
+        return format;
+    }
+
+}
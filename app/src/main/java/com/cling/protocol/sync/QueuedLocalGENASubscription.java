@@ -0,0 +1,372 @@
+/*
+ * Copyright (C) 2013 4th Line GmbH, Switzerland
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * Lesser General Public License Version 2 or later ("LGPL") or the
+ * Common Development and Distribution License Version 1 or later
+ * ("CDDL") (collectively, the "License"). You may not use this file
+ * except in compliance with the License. See LICENSE.txt for more
+ * information.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+
+package com.cling.protocol.sync;
+
+import com.cling.UpnpService;
+import com.cling.model.ExpirationDetails;
+import com.cling.model.gena.CancelReason;
+import com.cling.model.gena.LocalGENASubscription;
+import com.cling.model.message.StreamResponseMessage;
+import com.cling.model.meta.LocalService;
+import com.cling.model.state.StateVariableValue;
+import com.cling.model.types.UnsignedIntegerFourBytes;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * An incoming subscription which delivers its events in sequence, with at most one NOTIFY in flight.
+ * <p>
+ * State changes received while a NOTIFY is in flight are queued. All queued changes are then sent
+ * as one event, with the latest value of each state variable; moderation of state variables has
+ * already been applied by {@link #propertyChange(java.beans.PropertyChangeEvent)}. The initial
+ * event is queued when the subscription is created and sent on {@link #start()}.
+ * </p>
+ * <p>
+ * A failed NOTIFY is retried with the same SEQ and the same values after an exponential backoff, the
+ * subscriber might have received it and only the response was lost. Changes queued in the meantime
+ * follow in the next event with a new SEQ. After {@link #getMaximumFailures()} consecutive failures the subscription
+ * is removed from the registry and ended with {@link CancelReason#EXPIRED}, so a dead subscriber
+ * doesn't occupy protocol threads until its subscription times out.
+ * </p>
+ * <p>
+ * Queue depth and delivery latency, measured from the oldest queued change to the subscriber's
+ * response, can be read at runtime.
+ * </p>
+ *
+ * @author Christian Bauer
+ */
+public class QueuedLocalGENASubscription extends LocalGENASubscription {
+
+    final private static Logger log = Logger.getLogger(QueuedLocalGENASubscription.class.getName());
+
+    /**
+     * Executes a {@link SendingEvent} and completes its delivery on this subscription.
+     */
+    public class Delivery implements Runnable {
+
+        final protected SendingEvent sendingEvent;
+        final protected UnsignedIntegerFourBytes sequence;
+        final protected Collection<StateVariableValue> values;
+        final protected long queuedMillis;
+
+        protected Delivery(SendingEvent sendingEvent, UnsignedIntegerFourBytes sequence,
+                           Collection<StateVariableValue> values, long queuedMillis) {
+            this.sendingEvent = sendingEvent;
+            this.sequence = sequence;
+            this.values = values;
+            this.queuedMillis = queuedMillis;
+        }
+
+        public void run() {
+            StreamResponseMessage response = null;
+            try {
+                sendingEvent.run();
+                response = sendingEvent.getOutputMessage();
+            } finally {
+                delivered(this, response);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return sendingEvent + " SEQUENCE: " + sequence;
+        }
+    }
+
+    final protected UpnpService upnpService;
+
+    // Locking! All guarded by this subscription's monitor, also held by propertyChange()
+    final protected Map<String, StateVariableValue> pendingValues = new LinkedHashMap();
+    protected int pendingChanges;
+    protected long pendingSinceMillis;
+    protected boolean started;
+    protected boolean ended;
+    protected Delivery inFlight;
+    protected UnsignedIntegerFourBytes retrySequence;
+    protected Collection<StateVariableValue> retryValues;
+    protected long retryQueuedMillis;
+    protected ScheduledFuture<?> retry;
+    protected int consecutiveFailures;
+
+    // Metrics
+    protected int peakQueueDepth;
+    protected long deliveredCount;
+    protected long failedCount;
+    protected long coalescedCount;
+    protected long lastLatencyMillis;
+    protected long maxLatencyMillis;
+    protected long totalLatencyMillis;
+
+    public QueuedLocalGENASubscription(UpnpService upnpService, LocalService service,
+                                       Integer requestedDurationSeconds, List<URL> callbackURLs) throws Exception {
+        super(service, requestedDurationSeconds, callbackURLs);
+        this.upnpService = upnpService;
+        // The initial event, with the state read at subscription time
+        queue(getCurrentValues().values());
+    }
+
+    public UpnpService getUpnpService() {
+        return upnpService;
+    }
+
+    protected ScheduledExecutorService getRetryExecutor() {
+        return getUpnpService().getConfiguration().getScheduledExecutorService();
+    }
+
+    /**
+     * @return The initial delay before the first retry of a failed NOTIFY, doubled for each further retry.
+     */
+    public long getRetryDelayMillis() {
+        return 1000;
+    }
+
+    public long getMaximumRetryDelayMillis() {
+        return 30000;
+    }
+
+    /**
+     * @return The number of consecutive failed deliveries after which the subscription ends.
+     */
+    public int getMaximumFailures() {
+        return 5;
+    }
+
+    @Override
+    public void established() {
+    }
+
+    @Override
+    synchronized public void ended(CancelReason reason) {
+        ended = true;
+        pendingValues.clear();
+        pendingChanges = 0;
+        retrySequence = null;
+        retryValues = null;
+        if (retry != null) {
+            retry.cancel(false);
+            retry = null;
+        }
+    }
+
+    /**
+     * Sends the initial event and all changes queued since the subscription was created.
+     */
+    synchronized public void start() {
+        if (started) return;
+        started = true;
+        sendNext();
+    }
+
+    @Override
+    synchronized public void eventReceived() {
+        if (ended) return;
+        queue(getCurrentValues().values());
+        if (started) sendNext();
+    }
+
+    synchronized protected void queue(Collection<? extends StateVariableValue> values) {
+        if (pendingChanges > 0) {
+            coalescedCount++;
+        } else {
+            pendingSinceMillis = ExpirationDetails.getCurrentTimestampMillis();
+        }
+        pendingChanges++;
+        for (StateVariableValue value : values) {
+            // Latest value wins, but keep the position of the variable in the event
+            pendingValues.put(value.getStateVariable().getName(), value);
+        }
+        if (pendingChanges > peakQueueDepth)
+            peakQueueDepth = pendingChanges;
+    }
+
+    synchronized protected void sendNext() {
+        if (ended || inFlight != null || retry != null) return;
+
+        UnsignedIntegerFourBytes sequence;
+        Collection<StateVariableValue> values;
+        long queuedMillis;
+        if (retrySequence != null) {
+            // Exactly the failed event again, the subscriber ignores it if only the response was lost
+            sequence = retrySequence;
+            values = retryValues;
+            queuedMillis = retryQueuedMillis;
+            retrySequence = null;
+            retryValues = null;
+        } else {
+            if (pendingChanges == 0) return;
+            sequence = new UnsignedIntegerFourBytes(getCurrentSequence().getValue());
+            incrementSequence();
+            values = new ArrayList<StateVariableValue>(pendingValues.values());
+            queuedMillis = pendingSinceMillis;
+            pendingValues.clear();
+            pendingChanges = 0;
+        }
+
+        SendingEvent sendingEvent = getUpnpService().getProtocolFactory().createSendingEvent(this, sequence, values);
+        inFlight = new Delivery(sendingEvent, sequence, values, queuedMillis);
+        try {
+            getUpnpService().getConfiguration().getSyncProtocolExecutorService().execute(inFlight);
+        } catch (RejectedExecutionException ex) {
+            // Keep the event and its SEQ, the subscriber must not see a gap
+            log.fine("Executor rejected event delivery, retrying later: " + this);
+            inFlight = null;
+            retrySequence = sequence;
+            retryValues = values;
+            retryQueuedMillis = queuedMillis;
+            scheduleRetry(Math.max(consecutiveFailures, 1));
+        }
+    }
+
+    protected void delivered(Delivery delivery, StreamResponseMessage response) {
+        boolean expired;
+        synchronized (this) {
+            expired = completed(delivery, response);
+        }
+        // Not holding the subscription's monitor, the registry might call end() while holding its own lock
+        if (expired) {
+            log.info("Subscriber failed to receive " + getMaximumFailures() + " events, removing subscription: " + this);
+            expire();
+        }
+    }
+
+    /**
+     * @return <code>true</code> if the subscriber failed too often and the subscription should expire.
+     */
+    synchronized protected boolean completed(Delivery delivery, StreamResponseMessage response) {
+        if (delivery != inFlight) return false;
+        inFlight = null;
+        if (ended) return false;
+
+        if (response != null && !response.getOperation().isFailed()) {
+            consecutiveFailures = 0;
+            deliveredCount++;
+            lastLatencyMillis = ExpirationDetails.getCurrentTimestampMillis() - delivery.queuedMillis;
+            totalLatencyMillis += lastLatencyMillis;
+            if (lastLatencyMillis > maxLatencyMillis)
+                maxLatencyMillis = lastLatencyMillis;
+            sendNext();
+            return false;
+        }
+
+        failedCount++;
+        consecutiveFailures++;
+        if (consecutiveFailures >= getMaximumFailures())
+            return true;
+
+        // Changes queued since stay pending, they are sent with the next SEQ after the retry
+        retrySequence = delivery.sequence;
+        retryValues = delivery.values;
+        retryQueuedMillis = delivery.queuedMillis;
+
+        if (log.isLoggable(Level.FINE))
+            log.fine("Event delivery failed (" + response + "): " + this);
+        scheduleRetry(consecutiveFailures);
+        return false;
+    }
+
+    synchronized protected void scheduleRetry(int attempt) {
+        long delay = Math.min(
+                getRetryDelayMillis() << Math.min(attempt - 1, 16),
+                getMaximumRetryDelayMillis()
+        );
+        if (log.isLoggable(Level.FINE))
+            log.fine("Retrying event delivery in " + delay + "ms: " + this);
+        try {
+            retry = getRetryExecutor().schedule(new Runnable() {
+                public void run() {
+                    synchronized (QueuedLocalGENASubscription.this) {
+                        retry = null;
+                        sendNext();
+                    }
+                }
+            }, delay, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException ex) {
+            // Shutting down
+            retry = null;
+        }
+    }
+
+    protected void expire() {
+        if (getUpnpService().getRegistry().removeLocalSubscription(this)) {
+            end(CancelReason.EXPIRED);
+        } else {
+            ended(CancelReason.EXPIRED);
+        }
+    }
+
+    /**
+     * @return The number of state changes queued for the next event.
+     */
+    synchronized public int getQueueDepth() {
+        return pendingChanges;
+    }
+
+    synchronized public int getPeakQueueDepth() {
+        return peakQueueDepth;
+    }
+
+    synchronized public boolean isDeliveryInFlight() {
+        return inFlight != null;
+    }
+
+    synchronized public long getDeliveredCount() {
+        return deliveredCount;
+    }
+
+    synchronized public long getFailedCount() {
+        return failedCount;
+    }
+
+    /**
+     * @return The number of state changes merged into an already queued event.
+     */
+    synchronized public long getCoalescedCount() {
+        return coalescedCount;
+    }
+
+    synchronized public long getLastLatencyMillis() {
+        return lastLatencyMillis;
+    }
+
+    synchronized public long getMaximumLatencyMillis() {
+        return maxLatencyMillis;
+    }
+
+    synchronized public long getAverageLatencyMillis() {
+        return deliveredCount > 0 ? totalLatencyMillis / deliveredCount : 0;
+    }
+
+    @Override
+    public String toString() {
+        return super.toString()
+                + " Queued: " + getQueueDepth() + " (peak " + getPeakQueueDepth() + ")"
+                + " Delivered: " + getDeliveredCount()
+                + " Failed: " + getFailedCount()
+                + " Latency: " + getLastLatencyMillis() + "ms (avg " + getAverageLatencyMillis()
+                + "ms, max " + getMaximumLatencyMillis() + "ms)";
+    }
+}
@@ -45,7 +45,10 @@ import java.util.logging.Logger;
  * Handles reception of device/service descriptor and icon retrieval messages.
  *
  * <p>
- * Requested device and service XML descriptors are generated on-the-fly for every request.
+ * Requested device and service XML descriptors are generated on the first request and then
+ * served from the {@link DescriptorCache} of the registry, until the device is added or
+ * removed again. Responses carry <code>ETag</code> and <code>Last-Modified</code> headers,
+ * conditional requests for an unchanged descriptor are answered with <code>304 Not Modified</code>.
  * </p>
  * <p>
  * Descriptor XML is dynamically generated depending on the control point - some control
@@ -95,30 +98,35 @@ public class ReceivingRetrieval extends ReceivingSync<StreamRequestMessage, Stre
                 log.fine("Found local device matching relative request URI: " + requestedURI);
                 LocalDevice device = (LocalDevice) resource.getModel();
 
-                DeviceDescriptorBinder deviceDescriptorBinder =
-                        getUpnpService().getConfiguration().getDeviceDescriptorBinderUDA10();
-                String deviceDescriptor = deviceDescriptorBinder.generate(
-                        device,
-                        getRemoteClientInfo(),
-                        getUpnpService().getConfiguration().getNamespace()
-                );
-                response = new StreamResponseMessage(
-                        deviceDescriptor,
-                        new ContentTypeHeader(ContentTypeHeader.DEFAULT_CONTENT_TYPE)
-                );
+                DescriptorCache cache = getUpnpService().getRegistry().getDescriptorCache();
+                DescriptorCache.Descriptor descriptor = cache.get(device, getRemoteClientInfo());
+                if (descriptor == null) {
+                    DeviceDescriptorBinder deviceDescriptorBinder =
+                            getUpnpService().getConfiguration().getDeviceDescriptorBinderUDA10();
+                    String deviceDescriptor = deviceDescriptorBinder.generate(
+                            device,
+                            getRemoteClientInfo(),
+                            getUpnpService().getConfiguration().getNamespace()
+                    );
+                    descriptor = cache.put(device, getRemoteClientInfo(), deviceDescriptor);
+                }
+                response = createResponse(descriptor);
+
             } else if (ServiceDescriptorResource.class.isAssignableFrom(resource.getClass())) {
 
 
                 log.fine("Found local service matching relative request URI: " + requestedURI);
                 LocalService service = (LocalService) resource.getModel();
 
-                ServiceDescriptorBinder serviceDescriptorBinder =
-                        getUpnpService().getConfiguration().getServiceDescriptorBinderUDA10();
-                String serviceDescriptor = serviceDescriptorBinder.generate(service);
-                response = new StreamResponseMessage(
-                        serviceDescriptor,
-                        new ContentTypeHeader(ContentTypeHeader.DEFAULT_CONTENT_TYPE)
-                );
+                DescriptorCache cache = getUpnpService().getRegistry().getDescriptorCache();
+                DescriptorCache.Descriptor descriptor = cache.get(service);
+                if (descriptor == null) {
+                    ServiceDescriptorBinder serviceDescriptorBinder =
+                            getUpnpService().getConfiguration().getServiceDescriptorBinderUDA10();
+                    String serviceDescriptor = serviceDescriptorBinder.generate(service);
+                    descriptor = cache.put(service, serviceDescriptor);
+                }
+                response = createResponse(descriptor);
 
             } else if (IconResource.class.isAssignableFrom(resource.getClass())) {
 
@@ -143,6 +151,28 @@ public class ReceivingRetrieval extends ReceivingSync<StreamRequestMessage, Stre
         return response;
     }
 
+    /**
+     * @return A <code>304 Not Modified</code> response if the request is conditional and the
+     *         client already has the descriptor, otherwise the descriptor with its validators.
+     */
+    protected StreamResponseMessage createResponse(DescriptorCache.Descriptor descriptor) {
+        StreamResponseMessage response;
+        if (descriptor.isNotModified(
+                getInputMessage().getHeaders().getFirstHeader("If-None-Match"),
+                getInputMessage().getHeaders().getFirstHeader("If-Modified-Since"))) {
+            log.fine("Descriptor not modified, responding without body: " + descriptor.getEntityTag());
+            response = new StreamResponseMessage(UpnpResponse.Status.NOT_MODIFIED);
+        } else {
+            response = new StreamResponseMessage(
+                    descriptor.getData(),
+                    new ContentTypeHeader(ContentTypeHeader.DEFAULT_CONTENT_TYPE)
+            );
+            response.getHeaders().add("Last-Modified", descriptor.getLastModified());
+        }
+        response.getHeaders().add("ETag", descriptor.getEntityTag());
+        return response;
+    }
+
     /**
      * Called if the {@link com.cling.registry.Registry} had no result.
      *
@@ -16,7 +16,6 @@
 package com.cling.protocol.sync;
 
 import com.cling.UpnpService;
-import com.cling.model.gena.CancelReason;
 import com.cling.model.gena.LocalGENASubscription;
 import com.cling.model.message.StreamRequestMessage;
 import com.cling.model.message.StreamResponseMessage;
@@ -32,6 +31,7 @@ import org.seamless.util.Exceptions;
 
 import java.net.URL;
 import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.logging.Logger;
 
 /**
@@ -144,20 +144,8 @@ public class ReceivingSubscribe extends ReceivingSync<StreamRequestMessage, Outg
         }
 
         try {
-            subscription = new LocalGENASubscription(service, timeoutSeconds, callbackURLs) {
-                public void established() {
-                }
-
-                public void ended(CancelReason reason) {
-                }
-
-                public void eventReceived() {
-                    // The only thing we are interested in, sending an event when the state changes
-                    getUpnpService().getConfiguration().getSyncProtocolExecutorService().execute(
-                            getUpnpService().getProtocolFactory().createSendingEvent(this)
-                    );
-                }
-            };
+            // Sends the events of the subscription in order, one at a time
+            subscription = new QueuedLocalGENASubscription(getUpnpService(), service, timeoutSeconds, callbackURLs);
         } catch (Exception ex) {
             log.warning("Couldn't create local subscription to service: " + Exceptions.unwrap(ex));
             return new OutgoingSubscribeResponseMessage(UpnpResponse.Status.INTERNAL_SERVER_ERROR);
@@ -177,19 +165,23 @@ public class ReceivingSubscribe extends ReceivingSync<StreamRequestMessage, Outg
                 && !responseMessage.getOperation().isFailed()
                 && subscription.getCurrentSequence().getValue() == 0) { // Note that renewals should not have 0
 
-            // This is a minor concurrency issue: If we now register on the service and henceforth send a new
-            // event message whenever the state of the service changes, there is still a chance that the initial
-            // event message arrives later than the first on-change event message. Shouldn't be a problem as the
-            // subscriber is supposed to figure out what to do with out-of-sequence messages. I would be
-            // surprised though if actual implementations won't crash!
+            // Changes after registration on the service are queued behind the initial event
             log.fine("Establishing subscription");
             subscription.registerOnService();
             subscription.establish();
 
             log.fine("Response to subscription sent successfully, now sending initial event asynchronously");
-            getUpnpService().getConfiguration().getAsyncProtocolExecutor().execute(
-                    getUpnpService().getProtocolFactory().createSendingEvent(subscription)
-            );
+            if (subscription instanceof QueuedLocalGENASubscription) {
+                ((QueuedLocalGENASubscription) subscription).start();
+            } else {
+                try {
+                    getUpnpService().getConfiguration().getAsyncProtocolExecutor().execute(
+                            getUpnpService().getProtocolFactory().createSendingEvent(subscription)
+                    );
+                } catch (RejectedExecutionException ex) {
+                    log.warning("Protocol executor rejected initial event: " + subscription);
+                }
+            }
 
         } else if (subscription.getCurrentSequence().getValue() == 0) {
             log.fine("Subscription request's response aborted, not sending initial event");
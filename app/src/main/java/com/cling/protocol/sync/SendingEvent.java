@@ -19,11 +19,13 @@ import com.cling.UpnpService;
 import com.cling.model.gena.LocalGENASubscription;
 import com.cling.model.message.StreamResponseMessage;
 import com.cling.model.message.gena.OutgoingEventRequestMessage;
+import com.cling.model.state.StateVariableValue;
 import com.cling.model.types.UnsignedIntegerFourBytes;
 import com.cling.protocol.SendingSync;
 import com.cling.transport.RouterException;
 
 import java.net.URL;
+import java.util.Collection;
 import java.util.logging.Logger;
 
 /**
@@ -68,6 +70,26 @@ public class SendingEvent extends SendingSync<OutgoingEventRequestMessage, Strea
         subscription.incrementSequence();
     }
 
+    /**
+     * Sends the given values with the given sequence, the sequence of the subscription is not incremented.
+     */
+    public SendingEvent(UpnpService upnpService, LocalGENASubscription subscription,
+                        UnsignedIntegerFourBytes sequence, Collection<StateVariableValue> values) {
+        super(upnpService, null);
+
+        subscriptionId = subscription.getSubscriptionId();
+
+        requestMessages = new OutgoingEventRequestMessage[subscription.getCallbackURLs().size()];
+        int i = 0;
+        for (URL url : subscription.getCallbackURLs()) {
+            requestMessages[i] = new OutgoingEventRequestMessage(subscription, url, sequence, values);
+            getUpnpService().getConfiguration().getGenaEventProcessor().writeBody(requestMessages[i]);
+            i++;
+        }
+
+        currentSequence = sequence;
+    }
+
     protected StreamResponseMessage executeSync() throws RouterException {
 
         log.fine("Sending event for subscription: " + subscriptionId);
@@ -86,6 +86,8 @@ public class SendingRenewal extends SendingSync<OutgoingRenewalRequestMessage, I
             );
         } else if (!responseMessage.isValidHeaders()) {
             log.severe("Subscription renewal failed, invalid or missing (SID, Timeout) response headers");
+            // Its renewal was due and won't be scheduled again, don't leave it in the registry
+            getUpnpService().getRegistry().removeRemoteSubscription(subscription);
             getUpnpService().getConfiguration().getRegistryListenerExecutor().execute(
                     new Runnable() {
                         public void run() {
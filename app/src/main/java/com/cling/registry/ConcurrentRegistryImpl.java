@@ -0,0 +1,149 @@
+/*
+ * Copyright (C) 2013 4th Line GmbH, Switzerland
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * Lesser General Public License Version 2 or later ("LGPL") or the
+ * Common Development and Distribution License Version 1 or later
+ * ("CDDL") (collectively, the "License"). You may not use this file
+ * except in compliance with the License. See LICENSE.txt for more
+ * information.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+
+package com.cling.registry;
+
+import com.cling.UpnpService;
+import com.cling.model.DiscoveryOptions;
+import com.cling.model.ServiceReference;
+import com.cling.model.gena.LocalGENASubscription;
+import com.cling.model.gena.RemoteGENASubscription;
+import com.cling.model.meta.Device;
+import com.cling.model.meta.LocalDevice;
+import com.cling.model.meta.RemoteDevice;
+import com.cling.model.meta.Service;
+import com.cling.model.types.DeviceType;
+import com.cling.model.types.ServiceType;
+import com.cling.model.types.UDN;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+
+import javax.enterprise.inject.Alternative;
+import javax.inject.Inject;
+
+/**
+ * A {@link Registry} optimized for concurrent readers.
+ * <p>
+ * All queries, for example the device and subscription lookups performed while
+ * executing actions and GENA messages, are served from the concurrent maps and
+ * copy-on-write device snapshots of the registry items, without acquiring the
+ * registry lock. Additions, removals, and the periodic maintenance remain serialized
+ * on the registry lock, so queries never wait for a maintenance run or an SSDP
+ * notification flood.
+ * </p>
+ * <p>
+ * Enable this implementation by overriding {@link com.cling.UpnpServiceImpl#createRegistry(com.cling.protocol.ProtocolFactory)}.
+ * </p>
+ *
+ * @author Christian Bauer
+ */
+@Alternative
+public class ConcurrentRegistryImpl extends RegistryImpl {
+
+    public ConcurrentRegistryImpl() {
+    }
+
+    /**
+     * Starts background maintenance immediately.
+     */
+    @Inject
+    public ConcurrentRegistryImpl(UpnpService upnpService) {
+        super(upnpService);
+    }
+
+    @Override
+    public Collection<RegistryListener> getListeners() {
+        return Collections.unmodifiableCollection(registryListeners);
+    }
+
+    @Override
+    public DiscoveryOptions getDiscoveryOptions(UDN udn) {
+        return localItems.getDiscoveryOptions(udn);
+    }
+
+    @Override
+    public Device getDevice(UDN udn, boolean rootOnly) {
+        Device device;
+        if ((device = localItems.get(udn, rootOnly)) != null) return device;
+        if ((device = remoteItems.get(udn, rootOnly)) != null) return device;
+        return null;
+    }
+
+    @Override
+    public LocalDevice getLocalDevice(UDN udn, boolean rootOnly) {
+        return localItems.get(udn, rootOnly);
+    }
+
+    @Override
+    public RemoteDevice getRemoteDevice(UDN udn, boolean rootOnly) {
+        return remoteItems.get(udn, rootOnly);
+    }
+
+    @Override
+    public Collection<LocalDevice> getLocalDevices() {
+        return localItems.get();
+    }
+
+    @Override
+    public Collection<RemoteDevice> getRemoteDevices() {
+        return remoteItems.get();
+    }
+
+    @Override
+    public Collection<Device> getDevices() {
+        Collection<Device> all = new HashSet();
+        all.addAll(localItems.get());
+        all.addAll(remoteItems.get());
+        return Collections.unmodifiableCollection(all);
+    }
+
+    @Override
+    public Collection<Device> getDevices(DeviceType deviceType) {
+        Collection<Device> devices = new HashSet();
+        devices.addAll(localItems.get(deviceType));
+        devices.addAll(remoteItems.get(deviceType));
+        return Collections.unmodifiableCollection(devices);
+    }
+
+    @Override
+    public Collection<Device> getDevices(ServiceType serviceType) {
+        Collection<Device> devices = new HashSet();
+        devices.addAll(localItems.get(serviceType));
+        devices.addAll(remoteItems.get(serviceType));
+        return Collections.unmodifiableCollection(devices);
+    }
+
+    @Override
+    public Service getService(ServiceReference serviceReference) {
+        Device device;
+        if ((device = getDevice(serviceReference.getUdn(), false)) != null) {
+            return device.findService(serviceReference.getServiceId());
+        }
+        return null;
+    }
+
+    @Override
+    public LocalGENASubscription getLocalSubscription(String subscriptionId) {
+        return localItems.getSubscription(subscriptionId);
+    }
+
+    @Override
+    public RemoteGENASubscription getRemoteSubscription(String subscriptionId) {
+        return remoteItems.getSubscription(subscriptionId);
+    }
+
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) 2013 4th Line GmbH, Switzerland
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * Lesser General Public License Version 2 or later ("LGPL") or the
+ * Common Development and Distribution License Version 1 or later
+ * ("CDDL") (collectively, the "License"). You may not use this file
+ * except in compliance with the License. See LICENSE.txt for more
+ * information.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+
+package com.cling.registry;
+
+import com.cling.model.ExpirationDetails;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * Internal class, required by {@link RegistryImpl}.
+ * <p>
+ * Orders the registry's maintenance tasks (expiration, renewal, and re-advertisement) by their
+ * deadline on the monotonic clock of {@link ExpirationDetails}. Scheduling and cancellation are
+ * logarithmic, and {@link RegistryMaintainer} sleeps until the earliest deadline instead of
+ * checking every registered item periodically.
+ * </p>
+ *
+ * @author Christian Bauer
+ */
+class ExpirationQueue {
+
+    static class Entry implements Comparable<Entry> {
+
+        final long deadlineMillis;
+        final long sequence;
+        final Runnable task;
+
+        Entry(long deadlineMillis, long sequence, Runnable task) {
+            this.deadlineMillis = deadlineMillis;
+            this.sequence = sequence;
+            this.task = task;
+        }
+
+        @Override
+        public int compareTo(Entry that) {
+            if (deadlineMillis != that.deadlineMillis)
+                return deadlineMillis < that.deadlineMillis ? -1 : 1;
+            return sequence < that.sequence ? -1 : (sequence == that.sequence ? 0 : 1);
+        }
+
+        @Override
+        public String toString() {
+            return "(" + getClass().getSimpleName() + ") DEADLINE: " + deadlineMillis + " TASK: " + task;
+        }
+    }
+
+    private final TreeSet<Entry> entries = new TreeSet<Entry>();
+    private long sequence = 0;
+    private boolean wakeup = false;
+
+    /**
+     * @param deadlineMillis A timestamp of {@link ExpirationDetails#getCurrentTimestampMillis()}.
+     * @return The scheduled entry, <code>null</code> if the deadline is <code>Long.MAX_VALUE</code>.
+     */
+    synchronized Entry schedule(long deadlineMillis, Runnable task) {
+        if (deadlineMillis == Long.MAX_VALUE) return null;
+        Entry entry = new Entry(deadlineMillis, sequence++, task);
+        entries.add(entry);
+        if (entries.first() == entry)
+            notifyAll();
+        return entry;
+    }
+
+    synchronized void cancel(Entry entry) {
+        if (entry != null)
+            entries.remove(entry);
+    }
+
+    synchronized void clear() {
+        entries.clear();
+    }
+
+    synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Removes all entries with a deadline before or at the given time.
+     *
+     * @return The tasks of the removed entries, in deadline order.
+     */
+    synchronized List<Runnable> pollDue(long nowMillis) {
+        List<Runnable> due = new ArrayList<Runnable>();
+        while (!entries.isEmpty() && entries.first().deadlineMillis <= nowMillis) {
+            due.add(entries.pollFirst().task);
+        }
+        return due;
+    }
+
+    /**
+     * Blocks until the earliest deadline is reached, {@link #wakeup()} is called, or the
+     * maximum wait time elapsed.
+     */
+    synchronized void await(long maxWaitMillis) throws InterruptedException {
+        long until = ExpirationDetails.getCurrentTimestampMillis() + maxWaitMillis;
+        while (!wakeup) {
+            long now = ExpirationDetails.getCurrentTimestampMillis();
+            long next = entries.isEmpty() ? until : Math.min(until, entries.first().deadlineMillis);
+            if (next <= now) break;
+            wait(next - now);
+        }
+        wakeup = false;
+    }
+
+    /**
+     * Ends the current or next {@link #await(long)} immediately.
+     */
+    synchronized void wakeup() {
+        wakeup = true;
+        notifyAll();
+    }
+}
@@ -16,6 +16,7 @@
 package com.cling.registry;
 
 import com.cling.model.DiscoveryOptions;
+import com.cling.model.ExpirationDetails;
 import com.cling.model.gena.CancelReason;
 import com.cling.model.gena.LocalGENASubscription;
 import com.cling.model.meta.LocalDevice;
@@ -23,14 +24,12 @@ import com.cling.model.resource.Resource;
 import com.cling.model.types.UDN;
 import com.cling.protocol.SendingAsync;
 
-import java.util.Collection;
-import java.util.Collections;
-import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.Random;
-import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Logger;
 
 /**
@@ -42,8 +41,9 @@ class LocalItems extends RegistryItems<LocalDevice, LocalGENASubscription> {
 
     private static Logger log = Logger.getLogger(Registry.class.getName());
 
-    protected Map<UDN, DiscoveryOptions> discoveryOptions = new HashMap<UDN, DiscoveryOptions>();
+    protected Map<UDN, DiscoveryOptions> discoveryOptions = new ConcurrentHashMap<UDN, DiscoveryOptions>();
     protected long lastAliveIntervalTimestamp = 0;
+    protected ExpirationQueue.Entry aliveIntervalEntry;
     protected Random randomGenerator = new Random();
 
     LocalItems(RegistryImpl registry) {
@@ -51,6 +51,7 @@ class LocalItems extends RegistryItems<LocalDevice, LocalGENASubscription> {
     }
 
     protected void setDiscoveryOptions(UDN udn, DiscoveryOptions options) {
+        registry.getAdvertisementCache().invalidate(udn);
         if (options != null)
             this.discoveryOptions.put(udn, options);
         else
@@ -106,7 +107,9 @@ class LocalItems extends RegistryItems<LocalDevice, LocalGENASubscription> {
                 localDevice.getIdentity().getMaxAgeSeconds()
         );
 
-        getDeviceItems().add(localItem);
+        putDeviceItem(localItem);
+        registry.getAdvertisementCache().add(localDevice);
+        registry.getDescriptorCache().invalidate(localItem.getKey());
         log.fine("Registered local device: " + localItem);
 
         if (isByeByeBeforeFirstAlive(localItem.getKey()))
@@ -115,6 +118,8 @@ class LocalItems extends RegistryItems<LocalDevice, LocalGENASubscription> {
         if (isAdvertised(localItem.getKey()))
             advertiseAlive(localDevice);
 
+        scheduleAliveInterval();
+
         for (final RegistryListener listener : registry.getListeners()) {
             registry.getConfiguration().getRegistryListenerExecutor().execute(
                     new Runnable() {
@@ -127,14 +132,6 @@ class LocalItems extends RegistryItems<LocalDevice, LocalGENASubscription> {
 
     }
 
-    Collection<LocalDevice> get() {
-        Set<LocalDevice> c = new HashSet();
-        for (RegistryItem<UDN, LocalDevice> item : getDeviceItems()) {
-            c.add(item.getItem());
-        }
-        return Collections.unmodifiableCollection(c);
-    }
-
     boolean remove(final LocalDevice localDevice) throws RegistrationException {
         return remove(localDevice, false);
     }
@@ -147,7 +144,9 @@ class LocalItems extends RegistryItems<LocalDevice, LocalGENASubscription> {
             log.fine("Removing local device from registry: " + localDevice);
 
             setDiscoveryOptions(localDevice.getIdentity().getUdn(), null);
-            getDeviceItems().remove(new RegistryItem(localDevice.getIdentity().getUdn()));
+            removeDeviceItem(localDevice.getIdentity().getUdn());
+            registry.getAdvertisementCache().remove(localDevice.getIdentity().getUdn());
+            registry.getDescriptorCache().invalidate(localDevice.getIdentity().getUdn());
 
             for (Resource deviceResource : getResources(localDevice)) {
                 if (registry.removeResource(deviceResource)) {
@@ -166,6 +165,7 @@ class LocalItems extends RegistryItems<LocalDevice, LocalGENASubscription> {
                 if (subscriptionForUDN.equals(registeredDevice.getIdentity().getUdn())) {
                     log.fine("Removing incoming subscription: " + incomingSubscription.getKey());
                     it.remove();
+                    unscheduleSubscriptionExpiration(incomingSubscription.getKey());
                     if (!shuttingDown) {
                         registry.getConfiguration().getRegistryListenerExecutor().execute(
                                 new Runnable() {
@@ -215,88 +215,115 @@ class LocalItems extends RegistryItems<LocalDevice, LocalGENASubscription> {
     /* ############################################################################################################ */
 
     public void advertiseLocalDevices() {
-        for (RegistryItem<UDN, LocalDevice> localItem : deviceItems) {
+        for (RegistryItem<UDN, LocalDevice> localItem : getDeviceItems()) {
             if (isAdvertised(localItem.getKey()))
                 advertiseAlive(localItem.getItem());
         }
     }
 
-    void maintain() {
+    boolean isRefreshedAtHalfTime() {
+        return true;
+    }
+
+    boolean isSubscriptionRefreshedAtHalfTime() {
+        return false;
+    }
+
+    void expired(RegistryItem<UDN, LocalDevice> localItem) {
+        if (registry.getConfiguration().getAliveIntervalMillis() > 0) {
+            // "Flooding" is enabled, the alive interval refreshes all advertisements
+            scheduleAliveInterval();
+            return;
+        }
+        if (isAdvertised(localItem.getKey())) {
+            log.fine("Refreshing local device advertisement: " + localItem.getItem());
+            advertiseAlive(localItem.getItem());
+        }
+        localItem.getExpirationDetails().stampLastRefresh();
+        scheduleExpiration(localItem);
+    }
+
+    void subscriptionExpired(RegistryItem<String, LocalGENASubscription> subscription) {
+        log.fine("Removing expired: " + subscription);
+        removeSubscription(subscription.getItem());
+        subscription.getItem().end(CancelReason.EXPIRED);
+    }
 
-        if (getDeviceItems().isEmpty()) return;
+    /**
+     * Schedules the next advertisement of all devices if "flooding" is enabled with an alive interval.
+     */
+    protected void scheduleAliveInterval() {
+        final int aliveIntervalMillis = registry.getConfiguration().getAliveIntervalMillis();
+        if (aliveIntervalEntry != null || aliveIntervalMillis <= 0 || getDeviceItems().isEmpty()) return;
 
-        Set<RegistryItem<UDN, LocalDevice>> expiredLocalItems = new HashSet();
+        long deadline = lastAliveIntervalTimestamp == 0
+                ? ExpirationDetails.getCurrentTimestampMillis()
+                : lastAliveIntervalTimestamp + aliveIntervalMillis;
 
-        // "Flooding" is enabled, check if we need to send advertisements for all devices
-        int aliveIntervalMillis = registry.getConfiguration().getAliveIntervalMillis();
-        if (aliveIntervalMillis > 0) {
-            long now = System.currentTimeMillis();
-            if (now - lastAliveIntervalTimestamp > aliveIntervalMillis) {
-                lastAliveIntervalTimestamp = now;
+        aliveIntervalEntry = registry.expirationQueue.schedule(deadline, new Runnable() {
+            public void run() {
+                aliveIntervalEntry = null;
+                if (getDeviceItems().isEmpty()) return;
+
+                if (registry.getConfiguration().getAliveIntervalMillis() <= 0) {
+                    // Reset, the configuration might dynamically switch the alive interval,
+                    // continue with regular expiration of all devices
+                    lastAliveIntervalTimestamp = 0;
+                    for (RegistryItem<UDN, LocalDevice> localItem : getDeviceItems()) {
+                        scheduleExpiration(localItem);
+                    }
+                    return;
+                }
+
+                lastAliveIntervalTimestamp = ExpirationDetails.getCurrentTimestampMillis();
                 for (RegistryItem<UDN, LocalDevice> localItem : getDeviceItems()) {
                     if (isAdvertised(localItem.getKey())) {
                         log.finer("Flooding advertisement of local item: " + localItem);
-                        expiredLocalItems.add(localItem);
+                        advertiseAlive(localItem.getItem());
+                        localItem.getExpirationDetails().stampLastRefresh();
                     }
+                    scheduleExpiration(localItem);
                 }
+                scheduleAliveInterval();
             }
-        } else {
-            // Reset, the configuration might dynamically switch the alive interval
-            lastAliveIntervalTimestamp = 0;
-
-            // Alive interval is not enabled, regular expiration check of all devices
-            for (RegistryItem<UDN, LocalDevice> localItem : getDeviceItems()) {
-                if (isAdvertised(localItem.getKey()) && localItem.getExpirationDetails().hasExpired(true)) {
-                    log.finer("Local item has expired: " + localItem);
-                    expiredLocalItems.add(localItem);
-                }
-            }
-        }
-
-        // Now execute the advertisements
-        for (RegistryItem<UDN, LocalDevice> expiredLocalItem : expiredLocalItems) {
-            log.fine("Refreshing local device advertisement: " + expiredLocalItem.getItem());
-            advertiseAlive(expiredLocalItem.getItem());
-            expiredLocalItem.getExpirationDetails().stampLastRefresh();
-        }
-
-        // Expire incoming subscriptions
-        Set<RegistryItem<String, LocalGENASubscription>> expiredIncomingSubscriptions = new HashSet();
-        for (RegistryItem<String, LocalGENASubscription> item : getSubscriptionItems()) {
-            if (item.getExpirationDetails().hasExpired(false)) {
-                expiredIncomingSubscriptions.add(item);
-            }
-        }
-        for (RegistryItem<String, LocalGENASubscription> subscription : expiredIncomingSubscriptions) {
-            log.fine("Removing expired: " + subscription);
-            removeSubscription(subscription.getItem());
-            subscription.getItem().end(CancelReason.EXPIRED);
-        }
-
+        });
     }
 
     /* ############################################################################################################ */
 
     void shutdown() {
         log.fine("Clearing all registered subscriptions to local devices during shutdown");
-        getSubscriptionItems().clear();
+        for (RegistryItem<String, LocalGENASubscription> item : getSubscriptionItems()) {
+            removeSubscription(item.getItem());
+        }
+        registry.expirationQueue.cancel(aliveIntervalEntry);
+        aliveIntervalEntry = null;
 
         log.fine("Removing all local devices from registry during shutdown");
         removeAll(true);
     }
 
     protected void advertiseAlive(final LocalDevice localDevice) {
-        registry.executeAsyncProtocol(new Runnable() {
-            public void run() {
-                try {
-                    log.finer("Sleeping some milliseconds to avoid flooding the network with ALIVE msgs");
-                    Thread.sleep(randomGenerator.nextInt(100));
-                } catch (InterruptedException ex) {
-                    log.severe("Background execution interrupted: " + ex.getMessage());
-                }
-                registry.getProtocolFactory().createSendingNotificationAlive(localDevice).run();
-            }
-        });
+        log.finer("Delaying some milliseconds to avoid flooding the network with ALIVE msgs");
+        try {
+            registry.getConfiguration().getScheduledExecutorService().schedule(
+                    new Runnable() {
+                        public void run() {
+                            try {
+                                registry.getConfiguration().getAsyncProtocolExecutor().execute(
+                                        registry.getProtocolFactory().createSendingNotificationAlive(localDevice)
+                                );
+                            } catch (RejectedExecutionException ex) {
+                                log.warning("Protocol executor rejected alive advertisement: " + localDevice);
+                            }
+                        }
+                    },
+                    randomGenerator.nextInt(100),
+                    TimeUnit.MILLISECONDS
+            );
+        } catch (RejectedExecutionException ex) {
+            log.fine("Alive advertisement rejected (on shutdown?): " + localDevice);
+        }
     }
 
     protected void advertiseByebye(final LocalDevice localDevice, boolean asynchronous) {
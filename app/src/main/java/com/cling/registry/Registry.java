@@ -31,6 +31,8 @@ import com.cling.model.types.DeviceType;
 import com.cling.model.types.ServiceType;
 import com.cling.model.types.UDN;
 import com.cling.protocol.ProtocolFactory;
+import com.cling.protocol.async.AdvertisementCache;
+import com.cling.protocol.sync.DescriptorCache;
 
 import java.net.URI;
 import java.util.Collection;
@@ -66,6 +68,16 @@ public interface Registry {
 
     public ProtocolFactory getProtocolFactory();
 
+    /**
+     * @return The encoded advertisement messages of local devices, invalidated by this registry.
+     */
+    public AdvertisementCache getAdvertisementCache();
+
+    /**
+     * @return The encoded descriptors of local devices and services, invalidated by this registry.
+     */
+    public DescriptorCache getDescriptorCache();
+
     // #################################################################################################
 
     /**
@@ -227,6 +239,15 @@ public interface Registry {
      */
     public boolean update(RemoteDeviceIdentity rdIdentity);
 
+    /**
+     * Called internally by the UPnP discovery protocol, when the descriptors of a registered
+     * remote device changed. The device stays registered, listeners are notified of an update.
+     *
+     * @return <code>false</code> if no device with the same UDN is registered.
+     * @throws RegistrationException If a conflict with an already registered device was detected.
+     */
+    public boolean replaceDevice(RemoteDevice remoteDevice) throws RegistrationException;
+
     /**
      * Call this to remove your local device metadata.
      *
@@ -32,15 +32,18 @@ import com.cling.model.types.DeviceType;
 import com.cling.model.types.ServiceType;
 import com.cling.model.types.UDN;
 import com.cling.protocol.ProtocolFactory;
+import com.cling.protocol.async.AdvertisementCache;
+import com.cling.protocol.sync.DescriptorCache;
 
 import java.net.URI;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -57,11 +60,14 @@ import javax.inject.Inject;
 public class RegistryImpl implements Registry {
 
     private static Logger log = Logger.getLogger(Registry.class.getName());
-    protected final Set<RegistryListener> registryListeners = new HashSet();
-    protected final Set<RegistryItem<URI, Resource>> resourceItems = new HashSet();
+    protected final Set<RegistryListener> registryListeners = new CopyOnWriteArraySet<RegistryListener>();
+    protected final ExpirationQueue expirationQueue = new ExpirationQueue();
+    protected final ResourceItems resourceItems = new ResourceItems(this);
     protected final List<Runnable> pendingExecutions = new ArrayList();
     protected final RemoteItems remoteItems = new RemoteItems(this);
     protected final LocalItems localItems = new LocalItems(this);
+    protected final AdvertisementCache advertisementCache = new AdvertisementCache();
+    protected final DescriptorCache descriptorCache = new DescriptorCache();
     protected UpnpService upnpService;
     protected RegistryMaintainer registryMaintainer;
     protected ReentrantLock remoteSubscriptionsLock = new ReentrantLock(true);
@@ -99,6 +105,14 @@ public class RegistryImpl implements Registry {
         return getUpnpService().getProtocolFactory();
     }
 
+    public AdvertisementCache getAdvertisementCache() {
+        return advertisementCache;
+    }
+
+    public DescriptorCache getDescriptorCache() {
+        return descriptorCache;
+    }
+
     protected RegistryMaintainer createRegistryMaintainer() {
         return new RegistryMaintainer(
                 this,
@@ -176,6 +190,10 @@ public class RegistryImpl implements Registry {
         return remoteItems.update(rdIdentity);
     }
 
+    synchronized public boolean replaceDevice(RemoteDevice remoteDevice) {
+        return remoteItems.replace(remoteDevice);
+    }
+
     synchronized public boolean removeDevice(LocalDevice localDevice) {
         return localItems.remove(localDevice);
     }
@@ -259,59 +277,26 @@ public class RegistryImpl implements Registry {
 
     // #################################################################################################
 
-    synchronized public Resource getResource(URI pathQuery) throws IllegalArgumentException {
+    public Resource getResource(URI pathQuery) throws IllegalArgumentException {
         if (pathQuery.isAbsolute()) {
             throw new IllegalArgumentException("Resource URI can not be absolute, only path and query:" + pathQuery);
         }
-
-        // Note: Uses field access on resourceItems for performance reasons
-
-        for (RegistryItem<URI, Resource> resourceItem : resourceItems) {
-            Resource resource = resourceItem.getItem();
-            if (resource.matches(pathQuery)) {
-                return resource;
-            }
-        }
-
-        // TODO: UPNP VIOLATION: Fuppes on my ReadyNAS thinks it's a cool idea to add a slash at the end of the callback URI...
-        // It also cuts off any query parameters in the callback URL - nice!
-        if (pathQuery.getPath().endsWith("/")) {
-            URI pathQueryWithoutSlash = URI.create(pathQuery.toString().substring(0, pathQuery.toString().length() - 1));
-
-            for (RegistryItem<URI, Resource> resourceItem : resourceItems) {
-                Resource resource = resourceItem.getItem();
-                if (resource.matches(pathQueryWithoutSlash)) {
-                    return resource;
-                }
-            }
-        }
-
-        return null;
+        return resourceItems.get(pathQuery);
     }
 
-    synchronized public <T extends Resource> T getResource(Class<T> resourceType, URI pathQuery) throws IllegalArgumentException {
-        Resource resource = getResource(pathQuery);
-        if (resource != null && resourceType.isAssignableFrom(resource.getClass())) {
-            return (T) resource;
+    public <T extends Resource> T getResource(Class<T> resourceType, URI pathQuery) throws IllegalArgumentException {
+        if (pathQuery.isAbsolute()) {
+            throw new IllegalArgumentException("Resource URI can not be absolute, only path and query:" + pathQuery);
         }
-        return null;
+        return resourceItems.get(resourceType, pathQuery);
     }
 
-    synchronized public Collection<Resource> getResources() {
-        Collection<Resource> s = new HashSet();
-        for (RegistryItem<URI, Resource> resourceItem : resourceItems) {
-            s.add(resourceItem.getItem());
-        }
-        return s;
+    public Collection<Resource> getResources() {
+        return resourceItems.get();
     }
 
-    synchronized public <T extends Resource> Collection<T> getResources(Class<T> resourceType) {
-        Collection<T> s = new HashSet();
-        for (RegistryItem<URI, Resource> resourceItem : resourceItems) {
-            if (resourceType.isAssignableFrom(resourceItem.getItem().getClass()))
-                s.add((T) resourceItem.getItem());
-        }
-        return s;
+    public <T extends Resource> Collection<T> getResources(Class<T> resourceType) {
+        return resourceItems.get(resourceType);
     }
 
     synchronized public void addResource(Resource resource) {
@@ -319,13 +304,11 @@ public class RegistryImpl implements Registry {
     }
 
     synchronized public void addResource(Resource resource, int maxAgeSeconds) {
-        RegistryItem resourceItem = new RegistryItem(resource.getPathQuery(), resource, maxAgeSeconds);
-        resourceItems.remove(resourceItem);
-        resourceItems.add(resourceItem);
+        resourceItems.add(resource, maxAgeSeconds);
     }
 
     synchronized public boolean removeResource(Resource resource) {
-        return resourceItems.remove(new RegistryItem(resource.getPathQuery()));
+        return resourceItems.remove(resource);
     }
 
     // #################################################################################################
@@ -386,13 +369,14 @@ public class RegistryImpl implements Registry {
             listener.beforeShutdown(this);
         }
 
-        RegistryItem<URI, Resource>[] resources = resourceItems.toArray(new RegistryItem[resourceItems.size()]);
-        for (RegistryItem<URI, Resource> resourceItem : resources) {
+        for (RegistryItem<URI, Resource> resourceItem : resourceItems.getResourceItems()) {
             resourceItem.getItem().shutdown();
         }
 
         remoteItems.shutdown();
         localItems.shutdown();
+        resourceItems.shutdown();
+        expirationQueue.clear();
 
         for (RegistryListener listener : registryListeners) {
             listener.afterShutdown();
@@ -430,44 +414,43 @@ public class RegistryImpl implements Registry {
         if (log.isLoggable(Level.FINEST))
             log.finest("Maintaining registry...");
 
-        // Remove expired resources
-        Iterator<RegistryItem<URI, Resource>> it = resourceItems.iterator();
-        while (it.hasNext()) {
-            RegistryItem<URI, Resource> item = it.next();
-            if (item.getExpirationDetails().hasExpired()) {
-                if (log.isLoggable(Level.FINER))
-                    log.finer("Removing expired resource: " + item);
-                it.remove();
-            }
+        // Expire, renew, and re-advertise whatever is due, these add
+        // their operations to the pendingExecutions queue
+        for (Runnable task : expirationQueue.pollDue(ExpirationDetails.getCurrentTimestampMillis())) {
+            task.run();
         }
 
-        // Let each resource do its own maintenance
-        for (RegistryItem<URI, Resource> resourceItem : resourceItems) {
-            resourceItem.getItem().maintain(
-                    pendingExecutions,
-                    resourceItem.getExpirationDetails()
-            );
-        }
-
-        // These add all their operations to the pendingExecutions queue
-        remoteItems.maintain();
-        localItems.maintain();
+        // Let resources with their own maintenance run it
+        resourceItems.maintain(pendingExecutions);
 
         // We now run the queue asynchronously so the maintenance thread can continue its loop undisturbed
         runPendingExecutions(true);
     }
 
+    /**
+     * Blocks the calling maintenance thread until the next maintenance is due, must
+     * not be called while holding the registry lock.
+     */
+    void awaitMaintenance(long maxWaitMillis) throws InterruptedException {
+        expirationQueue.await(maxWaitMillis);
+    }
+
     synchronized void executeAsyncProtocol(Runnable runnable) {
         pendingExecutions.add(runnable);
+        expirationQueue.wakeup();
     }
 
     synchronized void runPendingExecutions(boolean async) {
         if (log.isLoggable(Level.FINEST))
             log.finest("Executing pending operations: " + pendingExecutions.size());
         for (Runnable pendingExecution : pendingExecutions) {
-            if (async)
-                getConfiguration().getAsyncProtocolExecutor().execute(pendingExecution);
-            else
+            if (async) {
+                try {
+                    getConfiguration().getAsyncProtocolExecutor().execute(pendingExecution);
+                } catch (RejectedExecutionException ex) {
+                    log.warning("Protocol executor rejected pending operation: " + pendingExecution);
+                }
+            } else
                 pendingExecution.run();
         }
         if (pendingExecutions.size() > 0) {
@@ -493,7 +476,7 @@ public class RegistryImpl implements Registry {
 
             log.fine("====================================  RESOURCES  ================================================");
 
-            for (RegistryItem<URI, Resource> resourceItem : resourceItems) {
+            for (RegistryItem<URI, Resource> resourceItem : resourceItems.getResourceItems()) {
                 log.fine(resourceItem.toString());
             }
 
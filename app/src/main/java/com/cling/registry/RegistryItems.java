@@ -15,6 +15,7 @@
 
 package com.cling.registry;
 
+import com.cling.model.ExpirationDetails;
 import com.cling.model.ValidationException;
 import com.cling.model.gena.GENASubscription;
 import com.cling.model.meta.Device;
@@ -25,11 +26,26 @@ import com.cling.model.types.UDN;
 
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Set;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Internal class, required by {@link RegistryImpl}.
+ * <p>
+ * Devices and subscriptions are stored in concurrent maps, keyed by UDN and subscription
+ * identifier. A secondary index maps the UDN of every root and embedded device to the
+ * device, so UDN lookups do not have to walk the device graphs. Writers are serialized
+ * by the registry, readers may access these maps and the copy-on-write device snapshot
+ * without holding the registry lock.
+ * </p>
+ * <p>
+ * The expiration of each device and subscription item is scheduled on the registry's
+ * {@link ExpirationQueue} when the item is stored, and cancelled when it is replaced or
+ * removed. Subclasses decide what happens when an item's deadline is reached.
+ * </p>
  *
  * @author Christian Bauer
  */
@@ -37,29 +53,165 @@ abstract class RegistryItems<D extends Device, S extends GENASubscription> {
 
     protected final RegistryImpl registry;
 
-    protected final Set<RegistryItem<UDN, D>> deviceItems = new HashSet();
-    protected final Set<RegistryItem<String, S>> subscriptionItems = new HashSet();
+    protected final Map<UDN, RegistryItem<UDN, D>> deviceItems =
+            new ConcurrentHashMap<UDN, RegistryItem<UDN, D>>();
+    protected final Map<String, RegistryItem<String, S>> subscriptionItems =
+            new ConcurrentHashMap<String, RegistryItem<String, S>>();
+
+    // Every registered root and embedded device, maintained together with the device items
+    protected final Map<UDN, D> udnIndex = new ConcurrentHashMap<UDN, D>();
+
+    // Replaced (never modified) whenever a root device is added or removed
+    protected volatile Collection<D> deviceSnapshot = Collections.emptySet();
+
+    protected final Map<UDN, ExpirationQueue.Entry> deviceExpirations =
+            new HashMap<UDN, ExpirationQueue.Entry>();
+    protected final Map<String, ExpirationQueue.Entry> subscriptionExpirations =
+            new HashMap<String, ExpirationQueue.Entry>();
 
     RegistryItems(RegistryImpl registry) {
         this.registry = registry;
     }
 
-    Set<RegistryItem<UDN, D>> getDeviceItems() {
-        return deviceItems;
+    Collection<RegistryItem<UDN, D>> getDeviceItems() {
+        return deviceItems.values();
+    }
+
+    Collection<RegistryItem<String, S>> getSubscriptionItems() {
+        return subscriptionItems.values();
+    }
+
+    /**
+     * Adds the item or replaces the item registered with the same UDN, and updates the device snapshot.
+     */
+    void putDeviceItem(RegistryItem<UDN, D> item) {
+        RegistryItem<UDN, D> previous = deviceItems.put(item.getKey(), item);
+        scheduleExpiration(item);
+        // Only an expiration update if it's the same device graph
+        if (previous != null && previous.getItem() == item.getItem()) return;
+        // Index the new graph first, lock-free lookups never miss a UDN registered in both graphs
+        index(item.getItem());
+        if (previous != null)
+            unindex(previous.getItem());
+        updateDevices();
+    }
+
+    RegistryItem<UDN, D> removeDeviceItem(UDN udn) {
+        RegistryItem<UDN, D> removed = deviceItems.remove(udn);
+        registry.expirationQueue.cancel(deviceExpirations.remove(udn));
+        if (removed != null) {
+            unindex(removed.getItem());
+            updateDevices();
+        }
+        return removed;
+    }
+
+    protected void index(D rootDevice) {
+        udnIndex.put(rootDevice.getIdentity().getUdn(), rootDevice);
+        for (D embeddedDevice : (D[]) rootDevice.findEmbeddedDevices()) {
+            udnIndex.put(embeddedDevice.getIdentity().getUdn(), embeddedDevice);
+        }
+    }
+
+    /**
+     * Removes the UDNs of the graph which are still mapped to its devices, not the UDNs
+     * already indexed for a replacing graph.
+     */
+    protected void unindex(D rootDevice) {
+        unindex(rootDevice.getIdentity().getUdn(), rootDevice);
+        for (D embeddedDevice : (D[]) rootDevice.findEmbeddedDevices()) {
+            unindex(embeddedDevice.getIdentity().getUdn(), embeddedDevice);
+        }
+    }
+
+    protected void unindex(UDN udn, D device) {
+        // Writers are serialized by the registry
+        if (udnIndex.get(udn) == device)
+            udnIndex.remove(udn);
     }
 
-    Set<RegistryItem<String, S>> getSubscriptionItems() {
-        return subscriptionItems;
+    protected void updateDevices() {
+        Collection<D> c = new HashSet();
+        for (RegistryItem<UDN, D> item : deviceItems.values()) {
+            c.add(item.getItem());
+        }
+        deviceSnapshot = Collections.unmodifiableCollection(c);
     }
 
+    /**
+     * Schedules the expiration of the given device item, replacing any scheduled expiration
+     * of an item with the same UDN.
+     */
+    protected void scheduleExpiration(final RegistryItem<UDN, D> item) {
+        final boolean halfTime = isRefreshedAtHalfTime();
+        registry.expirationQueue.cancel(deviceExpirations.remove(item.getKey()));
+        ExpirationQueue.Entry entry = registry.expirationQueue.schedule(
+                item.getExpirationDetails().getExpirationTimestampMillis(halfTime),
+                new Runnable() {
+                    public void run() {
+                        deviceExpirations.remove(item.getKey());
+                        if (deviceItems.get(item.getKey()) != item) return;
+                        if (item.getExpirationDetails().getExpirationTimestampMillis(halfTime)
+                                > ExpirationDetails.getCurrentTimestampMillis()) {
+                            // Refreshed since it was scheduled
+                            scheduleExpiration(item);
+                        } else {
+                            expired(item);
+                        }
+                    }
+                }
+        );
+        if (entry != null)
+            deviceExpirations.put(item.getKey(), entry);
+    }
+
+    protected void scheduleSubscriptionExpiration(final RegistryItem<String, S> item) {
+        final boolean halfTime = isSubscriptionRefreshedAtHalfTime();
+        registry.expirationQueue.cancel(subscriptionExpirations.remove(item.getKey()));
+        ExpirationQueue.Entry entry = registry.expirationQueue.schedule(
+                item.getExpirationDetails().getExpirationTimestampMillis(halfTime),
+                new Runnable() {
+                    public void run() {
+                        subscriptionExpirations.remove(item.getKey());
+                        if (subscriptionItems.get(item.getKey()) != item) return;
+                        subscriptionExpired(item);
+                    }
+                }
+        );
+        if (entry != null)
+            subscriptionExpirations.put(item.getKey(), entry);
+    }
+
+    protected void unscheduleSubscriptionExpiration(String subscriptionId) {
+        registry.expirationQueue.cancel(subscriptionExpirations.remove(subscriptionId));
+    }
+
+    /**
+     * @return <code>true</code> if {@link #expired(RegistryItem)} should be called at half the maximum age of a device.
+     */
+    abstract boolean isRefreshedAtHalfTime();
+
+    /**
+     * @return <code>true</code> if {@link #subscriptionExpired(RegistryItem)} should be called at half the maximum age of a subscription.
+     */
+    abstract boolean isSubscriptionRefreshedAtHalfTime();
+
+    /**
+     * Called by the registry maintenance when the deadline of a device item has been reached.
+     */
+    abstract void expired(RegistryItem<UDN, D> item);
+
+    /**
+     * Called by the registry maintenance when the deadline of a subscription item has been reached.
+     */
+    abstract void subscriptionExpired(RegistryItem<String, S> item);
+
     abstract void add(D device);
 
     abstract boolean remove(final D device);
 
     abstract void removeAll();
 
-    abstract void maintain();
-
     abstract void shutdown();
 
     /**
@@ -71,17 +223,11 @@ abstract class RegistryItems<D extends Device, S extends GENASubscription> {
      * no device with the given UDN has been registered.
      */
     D get(UDN udn, boolean rootOnly) {
-        for (RegistryItem<UDN, D> item : deviceItems) {
-            D device = item.getItem();
-            if (device.getIdentity().getUdn().equals(udn)) {
-                return device;
-            }
-            if (!rootOnly) {
-                D foundDevice = (D) item.getItem().findDevice(udn);
-                if (foundDevice != null) return foundDevice;
-            }
+        if (rootOnly) {
+            RegistryItem<UDN, D> rootItem = deviceItems.get(udn);
+            return rootItem != null ? rootItem.getItem() : null;
         }
-        return null;
+        return udnIndex.get(udn);
     }
 
     /**
@@ -95,8 +241,8 @@ abstract class RegistryItems<D extends Device, S extends GENASubscription> {
      */
     Collection<D> get(DeviceType deviceType) {
         Collection<D> devices = new HashSet();
-        for (RegistryItem<UDN, D> item : deviceItems) {
-            D[] d = (D[]) item.getItem().findDevices(deviceType);
+        for (D device : deviceSnapshot) {
+            D[] d = (D[]) device.findDevices(deviceType);
             if (d != null) {
                 devices.addAll(Arrays.asList(d));
             }
@@ -112,9 +258,8 @@ abstract class RegistryItems<D extends Device, S extends GENASubscription> {
      */
     Collection<D> get(ServiceType serviceType) {
         Collection<D> devices = new HashSet();
-        for (RegistryItem<UDN, D> item : deviceItems) {
-
-            D[] d = (D[]) item.getItem().findDevices(serviceType);
+        for (D device : deviceSnapshot) {
+            D[] d = (D[]) device.findDevices(serviceType);
             if (d != null) {
                 devices.addAll(Arrays.asList(d));
             }
@@ -122,12 +267,11 @@ abstract class RegistryItems<D extends Device, S extends GENASubscription> {
         return devices;
     }
 
+    /**
+     * @return An immutable snapshot of all registered root devices.
+     */
     Collection<D> get() {
-        Collection<D> devices = new HashSet();
-        for (RegistryItem<UDN, D> item : deviceItems) {
-            devices.add(item.getItem());
-        }
-        return devices;
+        return deviceSnapshot;
     }
 
     boolean contains(D device) {
@@ -135,40 +279,41 @@ abstract class RegistryItems<D extends Device, S extends GENASubscription> {
     }
 
     boolean contains(UDN udn) {
-        return deviceItems.contains(new RegistryItem<UDN, D>(udn));
+        return deviceItems.containsKey(udn);
     }
 
     void addSubscription(S subscription) {
-
-        RegistryItem<String, S> subscriptionItem =
-                new RegistryItem<String, S>(
-                        subscription.getSubscriptionId(),
-                        subscription,
-                        subscription.getActualDurationSeconds()
-                );
-
-        subscriptionItems.add(subscriptionItem);
+        RegistryItem<String, S> subscriptionItem = createSubscriptionItem(subscription);
+        subscriptionItems.put(subscriptionItem.getKey(), subscriptionItem);
+        scheduleSubscriptionExpiration(subscriptionItem);
     }
 
     boolean updateSubscription(S subscription) {
-        if (removeSubscription(subscription)) {
-            addSubscription(subscription);
-            return true;
-        }
-        return false;
+        if (!subscriptionItems.containsKey(subscription.getSubscriptionId()))
+            return false;
+        // Replaced in place, lock-free readers never miss a renewed subscription
+        RegistryItem<String, S> subscriptionItem = createSubscriptionItem(subscription);
+        subscriptionItems.put(subscriptionItem.getKey(), subscriptionItem);
+        scheduleSubscriptionExpiration(subscriptionItem);
+        return true;
+    }
+
+    protected RegistryItem<String, S> createSubscriptionItem(S subscription) {
+        return new RegistryItem<String, S>(
+                subscription.getSubscriptionId(),
+                subscription,
+                subscription.getActualDurationSeconds()
+        );
     }
 
     boolean removeSubscription(S subscription) {
-        return subscriptionItems.remove(new RegistryItem<String, S>(subscription.getSubscriptionId()));
+        unscheduleSubscriptionExpiration(subscription.getSubscriptionId());
+        return subscriptionItems.remove(subscription.getSubscriptionId()) != null;
     }
 
     S getSubscription(String subscriptionId) {
-        for (RegistryItem<String, S> registryItem : subscriptionItems) {
-            if (registryItem.getKey().equals(subscriptionId)) {
-                return registryItem.getItem();
-            }
-        }
-        return null;
+        RegistryItem<String, S> registryItem = subscriptionItems.get(subscriptionId);
+        return registryItem != null ? registryItem.getItem() : null;
     }
 
     Resource[] getResources(Device device) throws RegistrationException {
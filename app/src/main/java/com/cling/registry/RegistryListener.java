@@ -86,6 +86,10 @@ public interface RegistryListener {
      * This is a signal that a device is still alive and you typically don't have to react to this
      * event. You will be notified when a device disappears through timeout.
      * </p>
+     * <p>
+     * Also called when a device hydrated from stored descriptors was replaced because its
+     * descriptors changed, the given device is then a new metadata graph.
+     * </p>
      *
      * @param registry The Cling registry of all devices and services know to the local UPnP stack.
      * @param device   A validated and hydrated device metadata graph, with complete service metadata.
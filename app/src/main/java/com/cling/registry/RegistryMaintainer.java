@@ -19,7 +19,12 @@ import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
- * Runs periodically and calls {@link com.cling.registry.RegistryImpl#maintain()}.
+ * Calls {@link com.cling.registry.RegistryImpl#maintain()} when registered items expire
+ * or need to be refreshed, and when asynchronous operations are pending.
+ * <p>
+ * The thread sleeps until the earliest scheduled deadline, but at most for the
+ * configured maintenance interval.
+ * </p>
  *
  * @author Christian Bauer
  */
@@ -41,17 +46,18 @@ public class RegistryMaintainer implements Runnable {
         if (log.isLoggable(Level.FINE))
             log.fine("Setting stopped status on thread");
         stopped = true;
+        registry.expirationQueue.wakeup();
     }
 
     public void run() {
         stopped = false;
         if (log.isLoggable(Level.FINE))
-            log.fine("Running registry maintenance loop every milliseconds: " + sleepIntervalMillis);
+            log.fine("Running registry maintenance loop, at least every milliseconds: " + sleepIntervalMillis);
         while (!stopped) {
 
             try {
                 registry.maintain();
-                Thread.sleep(sleepIntervalMillis);
+                registry.awaitMaintenance(sleepIntervalMillis);
             } catch (InterruptedException ex) {
                 stopped = true;
             }
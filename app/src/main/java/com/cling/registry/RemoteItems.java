@@ -17,18 +17,16 @@ package com.cling.registry;
 
 import com.cling.model.gena.CancelReason;
 import com.cling.model.gena.RemoteGENASubscription;
-import com.cling.model.meta.LocalDevice;
 import com.cling.model.meta.RemoteDevice;
 import com.cling.model.meta.RemoteDeviceIdentity;
 import com.cling.model.resource.Resource;
 import com.cling.model.types.UDN;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -89,7 +87,7 @@ class RemoteItems extends RegistryItems<RemoteDevice, RemoteGENASubscription> {
         );
         log.fine("Adding hydrated remote device to registry with "
                 + item.getExpirationDetails().getMaxAgeSeconds() + " seconds expiration: " + device);
-        getDeviceItems().add(item);
+        putDeviceItem(item);
 
         if (log.isLoggable(Level.FINEST)) {
             StringBuilder sb = new StringBuilder();
@@ -118,11 +116,9 @@ class RemoteItems extends RegistryItems<RemoteDevice, RemoteGENASubscription> {
 
     boolean update(RemoteDeviceIdentity rdIdentity) {
 
-        for (LocalDevice localDevice : registry.getLocalDevices()) {
-            if (localDevice.findDevice(rdIdentity.getUdn()) != null) {
-                log.fine("Ignoring update, a local device graph contains UDN");
-                return true;
-            }
+        if (registry.getLocalDevice(rdIdentity.getUdn(), false) != null) {
+            log.fine("Ignoring update, a local device graph contains UDN");
+            return true;
         }
 
         RemoteDevice registeredRemoteDevice = get(rdIdentity.getUdn(), false);
@@ -143,8 +139,8 @@ class RemoteItems extends RegistryItems<RemoteDevice, RemoteGENASubscription> {
             );
 
             log.fine("Updating expiration of: " + registeredRemoteDevice);
-            getDeviceItems().remove(item);
-            getDeviceItems().add(item);
+            // Replaced in place, so readers always see the device and the snapshot isn't rebuilt
+            putDeviceItem(item);
 
             log.fine("Remote device updated, calling listeners: " + registeredRemoteDevice);
             for (final RegistryListener listener : registry.getListeners()) {
@@ -163,6 +159,66 @@ class RemoteItems extends RegistryItems<RemoteDevice, RemoteGENASubscription> {
         return false;
     }
 
+    /**
+     * Replaces a registered remote device with a new graph of the same root device.
+     * <p>
+     * The resources of the registered device are replaced, its outgoing subscriptions are kept.
+     * Registry listeners are notified that the device was updated, it isn't removed and added
+     * again.
+     * </p>
+     *
+     * @param device The new metadata of the device.
+     * @return <code>false</code> if no device with the same UDN is registered.
+     */
+    boolean replace(final RemoteDevice device) throws RegistrationException {
+        RemoteDevice registeredDevice = get(device.getIdentity().getUdn(), true);
+        if (registeredDevice == null)
+            return false;
+
+        Set<Resource> registeredResources = new HashSet<Resource>(Arrays.asList(getResources(registeredDevice)));
+        Set<Resource> resources = new HashSet<Resource>(Arrays.asList(getResources(device)));
+
+        for (Resource deviceResource : resources) {
+            log.fine("Validating remote device resource; " + deviceResource);
+            // Paths of the registered device are replaced, resources are equal by path
+            if (!registeredResources.contains(deviceResource)
+                    && registry.getResource(deviceResource.getPathQuery()) != null) {
+                throw new RegistrationException("URI namespace conflict with already registered resource: " + deviceResource);
+            }
+        }
+        // Add the new resources first, lock-free lookups never miss a path of both graphs
+        for (Resource validatedResource : resources) {
+            registry.addResource(validatedResource);
+            log.fine("Added remote device resource: " + validatedResource);
+        }
+        for (Resource registeredResource : registeredResources) {
+            if (!resources.contains(registeredResource) && registry.removeResource(registeredResource))
+                log.fine("Unregistered resource: " + registeredResource);
+        }
+
+        // Override the device's maximum age if configured (systems without multicast support)
+        final RegistryItem<UDN, RemoteDevice> item = new RegistryItem<UDN, RemoteDevice>(
+                device.getIdentity().getUdn(),
+                device,
+                registry.getConfiguration().getRemoteDeviceMaxAgeSeconds() != null
+                        ? registry.getConfiguration().getRemoteDeviceMaxAgeSeconds()
+                        : device.getIdentity().getMaxAgeSeconds()
+        );
+        log.fine("Replacing remote device in registry: " + device);
+        putDeviceItem(item);
+
+        for (final RegistryListener listener : registry.getListeners()) {
+            registry.getConfiguration().getRegistryListenerExecutor().execute(
+                    new Runnable() {
+                        public void run() {
+                            listener.remoteDeviceUpdated(registry, device);
+                        }
+                    }
+            );
+        }
+        return true;
+    }
+
     /**
      * Removes the given device from the registry and notifies registry listeners.
      *
@@ -197,6 +253,7 @@ class RemoteItems extends RegistryItems<RemoteDevice, RemoteGENASubscription> {
                 if (subscriptionForUDN.equals(registeredDevice.getIdentity().getUdn())) {
                     log.fine("Removing outgoing subscription: " + outgoingSubscription.getKey());
                     it.remove();
+                    unscheduleSubscriptionExpiration(outgoingSubscription.getKey());
                     if (!shuttingDown) {
                         registry.getConfiguration().getRegistryListenerExecutor().execute(
                                 new Runnable() {
@@ -223,7 +280,7 @@ class RemoteItems extends RegistryItems<RemoteDevice, RemoteGENASubscription> {
             }
 
             // Finally, remove the device from the registry
-            getDeviceItems().remove(new RegistryItem(registeredDevice.getIdentity().getUdn()));
+            removeDeviceItem(registeredDevice.getIdentity().getUdn());
 
             return true;
         }
@@ -248,38 +305,24 @@ class RemoteItems extends RegistryItems<RemoteDevice, RemoteGENASubscription> {
         // Noop
     }
 
-    void maintain() {
+    boolean isRefreshedAtHalfTime() {
+        return false;
+    }
 
-        if (getDeviceItems().isEmpty()) return;
+    boolean isSubscriptionRefreshedAtHalfTime() {
+        return true;
+    }
 
-        // Remove expired remote devices
-        Map<UDN, RemoteDevice> expiredRemoteDevices = new HashMap();
-        for (RegistryItem<UDN, RemoteDevice> remoteItem : getDeviceItems()) {
-            if (log.isLoggable(Level.FINEST))
-                log.finest("Device '" + remoteItem.getItem() + "' expires in seconds: "
-                        + remoteItem.getExpirationDetails().getSecondsUntilExpiration());
-            if (remoteItem.getExpirationDetails().hasExpired(false)) {
-                expiredRemoteDevices.put(remoteItem.getKey(), remoteItem.getItem());
-            }
-        }
-        for (RemoteDevice remoteDevice : expiredRemoteDevices.values()) {
-            if (log.isLoggable(Level.FINE))
-                log.fine("Removing expired: " + remoteDevice);
-            remove(remoteDevice);
-        }
+    void expired(RegistryItem<UDN, RemoteDevice> item) {
+        if (log.isLoggable(Level.FINE))
+            log.fine("Removing expired: " + item.getItem());
+        remove(item.getItem());
+    }
 
-        // Renew outgoing subscriptions
-        Set<RemoteGENASubscription> expiredOutgoingSubscriptions = new HashSet();
-        for (RegistryItem<String, RemoteGENASubscription> item : getSubscriptionItems()) {
-            if (item.getExpirationDetails().hasExpired(true)) {
-                expiredOutgoingSubscriptions.add(item.getItem());
-            }
-        }
-        for (RemoteGENASubscription subscription : expiredOutgoingSubscriptions) {
-            if (log.isLoggable(Level.FINEST))
-                log.fine("Renewing outgoing subscription: " + subscription);
-            renewOutgoingSubscription(subscription);
-        }
+    void subscriptionExpired(RegistryItem<String, RemoteGENASubscription> item) {
+        if (log.isLoggable(Level.FINEST))
+            log.fine("Renewing outgoing subscription: " + item.getItem());
+        renewOutgoingSubscription(item.getItem());
     }
 
     public void resume() {
@@ -0,0 +1,250 @@
+/*
+ * Copyright (C) 2013 4th Line GmbH, Switzerland
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * Lesser General Public License Version 2 or later ("LGPL") or the
+ * Common Development and Distribution License Version 1 or later
+ * ("CDDL") (collectively, the "License"). You may not use this file
+ * except in compliance with the License. See LICENSE.txt for more
+ * information.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+
+package com.cling.registry;
+
+import com.cling.model.ExpirationDetails;
+import com.cling.model.resource.Resource;
+import com.cling.model.resource.ServiceControlResource;
+import com.cling.model.resource.ServiceEventCallbackResource;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Internal class, required by {@link RegistryImpl}.
+ * <p>
+ * Resources are indexed by their path and query, lookups are hash lookups and do not
+ * need the registry lock. Control and event callback resources, which are resolved on
+ * every incoming action and GENA message, have their own index.
+ * </p>
+ * <p>
+ * Resources with a maximum age are removed when their deadline on the registry's
+ * {@link ExpirationQueue} is reached. Only resources which override
+ * {@link Resource#maintain(List, ExpirationDetails)} are called by the periodic maintenance.
+ * </p>
+ *
+ * @author Christian Bauer
+ */
+class ResourceItems {
+
+    private static Logger log = Logger.getLogger(Registry.class.getName());
+
+    // Whether a resource type overrides Resource#maintain()
+    private static final Map<Class, Boolean> maintainedTypes = new ConcurrentHashMap<Class, Boolean>();
+
+    protected final RegistryImpl registry;
+
+    protected final Map<URI, RegistryItem<URI, Resource>> resourceItems =
+            new ConcurrentHashMap<URI, RegistryItem<URI, Resource>>();
+
+    protected final Map<URI, ServiceControlResource> controlResources =
+            new ConcurrentHashMap<URI, ServiceControlResource>();
+
+    protected final Map<URI, ServiceEventCallbackResource> callbackResources =
+            new ConcurrentHashMap<URI, ServiceEventCallbackResource>();
+
+    protected final Map<URI, RegistryItem<URI, Resource>> maintainedItems =
+            new ConcurrentHashMap<URI, RegistryItem<URI, Resource>>();
+
+    protected final Map<URI, ExpirationQueue.Entry> expirations = new HashMap<URI, ExpirationQueue.Entry>();
+
+    ResourceItems(RegistryImpl registry) {
+        this.registry = registry;
+    }
+
+    void add(Resource resource, int maxAgeSeconds) {
+        RegistryItem<URI, Resource> resourceItem =
+                new RegistryItem<URI, Resource>(resource.getPathQuery(), resource, maxAgeSeconds);
+        RegistryItem<URI, Resource> previous = resourceItems.put(resourceItem.getKey(), resourceItem);
+        // Index the new resource before dropping the previous one, lookups never miss the path
+        if (resource instanceof ServiceControlResource) {
+            controlResources.put(resourceItem.getKey(), (ServiceControlResource) resource);
+        } else if (resource instanceof ServiceEventCallbackResource) {
+            callbackResources.put(resourceItem.getKey(), (ServiceEventCallbackResource) resource);
+        }
+        if (isMaintained(resource))
+            maintainedItems.put(resourceItem.getKey(), resourceItem);
+        removeIndexed(previous);
+        scheduleExpiration(resourceItem);
+    }
+
+    boolean remove(Resource resource) {
+        RegistryItem<URI, Resource> removed = resourceItems.remove(resource.getPathQuery());
+        removeIndexed(removed);
+        return removed != null;
+    }
+
+    /**
+     * @param pathQuery A relative URI, path and query only.
+     * @return The resource registered under the given path and query, or <code>null</code>.
+     */
+    Resource get(URI pathQuery) {
+        RegistryItem<URI, Resource> item = resourceItems.get(pathQuery);
+        if (item != null) return item.getItem();
+
+        URI normalized = normalize(pathQuery);
+        if (normalized != null && (item = resourceItems.get(normalized)) != null) return item.getItem();
+
+        return null;
+    }
+
+    <T extends Resource> T get(Class<T> resourceType, URI pathQuery) {
+        Resource resource;
+        if (resourceType == ServiceControlResource.class) {
+            resource = controlResources.get(pathQuery);
+        } else if (resourceType == ServiceEventCallbackResource.class) {
+            resource = callbackResources.get(pathQuery);
+        } else {
+            RegistryItem<URI, Resource> item = resourceItems.get(pathQuery);
+            resource = item != null ? item.getItem() : null;
+        }
+        if (resource == null) {
+            URI normalized = normalize(pathQuery);
+            if (normalized == null) return null;
+            RegistryItem<URI, Resource> item = resourceItems.get(normalized);
+            resource = item != null ? item.getItem() : null;
+        }
+        if (resource != null && resourceType.isAssignableFrom(resource.getClass())) {
+            return (T) resource;
+        }
+        return null;
+    }
+
+    Collection<Resource> get() {
+        Collection<Resource> s = new HashSet();
+        for (RegistryItem<URI, Resource> resourceItem : resourceItems.values()) {
+            s.add(resourceItem.getItem());
+        }
+        return s;
+    }
+
+    <T extends Resource> Collection<T> get(Class<T> resourceType) {
+        if (resourceType == ServiceControlResource.class)
+            return new HashSet(controlResources.values());
+        if (resourceType == ServiceEventCallbackResource.class)
+            return new HashSet(callbackResources.values());
+        Collection<T> s = new HashSet();
+        for (RegistryItem<URI, Resource> resourceItem : resourceItems.values()) {
+            if (resourceType.isAssignableFrom(resourceItem.getItem().getClass()))
+                s.add((T) resourceItem.getItem());
+        }
+        return s;
+    }
+
+    Collection<RegistryItem<URI, Resource>> getResourceItems() {
+        return new ArrayList(resourceItems.values());
+    }
+
+    void maintain(List<Runnable> pendingExecutions) {
+        // Let each resource do its own maintenance
+        for (RegistryItem<URI, Resource> resourceItem : maintainedItems.values()) {
+            resourceItem.getItem().maintain(
+                    pendingExecutions,
+                    resourceItem.getExpirationDetails()
+            );
+        }
+    }
+
+    void shutdown() {
+        for (ExpirationQueue.Entry entry : expirations.values()) {
+            registry.expirationQueue.cancel(entry);
+        }
+        expirations.clear();
+    }
+
+    protected void scheduleExpiration(final RegistryItem<URI, Resource> item) {
+        ExpirationQueue.Entry entry = registry.expirationQueue.schedule(
+                item.getExpirationDetails().getExpirationTimestampMillis(false),
+                new Runnable() {
+                    public void run() {
+                        expirations.remove(item.getKey());
+                        if (resourceItems.get(item.getKey()) != item) return;
+                        if (log.isLoggable(Level.FINER))
+                            log.finer("Removing expired resource: " + item);
+                        resourceItems.remove(item.getKey());
+                        removeIndexed(item);
+                    }
+                }
+        );
+        if (entry != null)
+            expirations.put(item.getKey(), entry);
+    }
+
+    protected void removeIndexed(RegistryItem<URI, Resource> item) {
+        if (item == null) return;
+        registry.expirationQueue.cancel(expirations.remove(item.getKey()));
+        // Only if not already indexed for a replacing resource, writers are serialized by the registry
+        if (maintainedItems.get(item.getKey()) == item)
+            maintainedItems.remove(item.getKey());
+        if (controlResources.get(item.getKey()) == item.getItem()) {
+            controlResources.remove(item.getKey());
+        } else if (callbackResources.get(item.getKey()) == item.getItem()) {
+            callbackResources.remove(item.getKey());
+        }
+    }
+
+    protected boolean isMaintained(Resource resource) {
+        Class type = resource.getClass();
+        Boolean maintained = maintainedTypes.get(type);
+        if (maintained == null) {
+            try {
+                maintained = type.getMethod("maintain", List.class, ExpirationDetails.class)
+                        .getDeclaringClass() != Resource.class;
+            } catch (NoSuchMethodException ex) {
+                maintained = false;
+            }
+            maintainedTypes.put(type, maintained);
+        }
+        return maintained;
+    }
+
+    /**
+     * Produces the key a resource would have been registered under, if the given URI doesn't
+     * already look like one.
+     *
+     * @return <code>null</code> if there is no other candidate key than the given URI.
+     */
+    protected URI normalize(URI pathQuery) {
+        String path = pathQuery.getPath();
+        if (path == null) return null;
+
+        // TODO: UPNP VIOLATION: Fuppes on my ReadyNAS thinks it's a cool idea to add a slash at the end of the callback URI...
+        // It also cuts off any query parameters in the callback URL - nice!
+        boolean trailingSlash = path.length() > 1 && path.endsWith("/");
+        if (!trailingSlash && pathQuery.getRawFragment() == null) return null;
+
+        try {
+            return new URI(
+                    null,
+                    null,
+                    trailingSlash ? path.substring(0, path.length() - 1) : path,
+                    pathQuery.getQuery(),
+                    null
+            );
+        } catch (URISyntaxException ex) {
+            return null;
+        }
+    }
+}
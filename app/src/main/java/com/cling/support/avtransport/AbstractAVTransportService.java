@@ -278,7 +278,7 @@ public abstract class AbstractAVTransportService implements LastChangeDelegator
                                                @UpnpInputArgument(name = "NextURIMetaData", stateVariable = "AVTransportURIMetaData") String nextURIMetaData)
             throws AVTransportException;
 
-    @UpnpAction(out = {
+    @UpnpAction(readOnly = true, out = {
             @UpnpOutputArgument(name = "NrTracks", stateVariable = "NumberOfTracks", getterName = "getNumberOfTracks"),
             @UpnpOutputArgument(name = "MediaDuration", stateVariable = "CurrentMediaDuration", getterName = "getMediaDuration"),
             @UpnpOutputArgument(name = "CurrentURI", stateVariable = "AVTransportURI", getterName = "getCurrentURI"),
@@ -292,7 +292,7 @@ public abstract class AbstractAVTransportService implements LastChangeDelegator
     public abstract MediaInfo getMediaInfo(@UpnpInputArgument(name = "InstanceID") UnsignedIntegerFourBytes instanceId)
             throws AVTransportException;
 
-    @UpnpAction(out = {
+    @UpnpAction(readOnly = true, out = {
             @UpnpOutputArgument(name = "CurrentTransportState", stateVariable = "TransportState", getterName = "getCurrentTransportState"),
             @UpnpOutputArgument(name = "CurrentTransportStatus", stateVariable = "TransportStatus", getterName = "getCurrentTransportStatus"),
             @UpnpOutputArgument(name = "CurrentSpeed", stateVariable = "TransportPlaySpeed", getterName = "getCurrentSpeed")
@@ -300,7 +300,7 @@ public abstract class AbstractAVTransportService implements LastChangeDelegator
     public abstract TransportInfo getTransportInfo(@UpnpInputArgument(name = "InstanceID") UnsignedIntegerFourBytes instanceId)
             throws AVTransportException;
 
-    @UpnpAction(out = {
+    @UpnpAction(readOnly = true, out = {
             @UpnpOutputArgument(name = "Track", stateVariable = "CurrentTrack", getterName = "getTrack"),
             @UpnpOutputArgument(name = "TrackDuration", stateVariable = "CurrentTrackDuration", getterName = "getTrackDuration"),
             @UpnpOutputArgument(name = "TrackMetaData", stateVariable = "CurrentTrackMetaData", getterName = "getTrackMetaData"),
@@ -313,7 +313,7 @@ public abstract class AbstractAVTransportService implements LastChangeDelegator
     public abstract PositionInfo getPositionInfo(@UpnpInputArgument(name = "InstanceID") UnsignedIntegerFourBytes instanceId)
             throws AVTransportException;
 
-    @UpnpAction(out = {
+    @UpnpAction(readOnly = true, out = {
             @UpnpOutputArgument(name = "PlayMedia", stateVariable = "PossiblePlaybackStorageMedia", getterName = "getPlayMediaString"),
             @UpnpOutputArgument(name = "RecMedia", stateVariable = "PossibleRecordStorageMedia", getterName = "getRecMediaString"),
             @UpnpOutputArgument(name = "RecQualityModes", stateVariable = "PossibleRecordQualityModes", getterName = "getRecQualityModesString")
@@ -321,7 +321,7 @@ public abstract class AbstractAVTransportService implements LastChangeDelegator
     public abstract DeviceCapabilities getDeviceCapabilities(@UpnpInputArgument(name = "InstanceID") UnsignedIntegerFourBytes instanceId)
             throws AVTransportException;
 
-    @UpnpAction(out = {
+    @UpnpAction(readOnly = true, out = {
             @UpnpOutputArgument(name = "PlayMode", stateVariable = "CurrentPlayMode", getterName = "getPlayMode"),
             @UpnpOutputArgument(name = "RecQualityMode", stateVariable = "CurrentRecordQualityMode", getterName = "getRecQualityMode")
     })
@@ -369,7 +369,7 @@ public abstract class AbstractAVTransportService implements LastChangeDelegator
                                               @UpnpInputArgument(name = "NewRecordQualityMode", stateVariable = "CurrentRecordQualityMode") String newRecordQualityMode)
             throws AVTransportException;
 
-    @UpnpAction(name = "GetCurrentTransportActions", out = @UpnpOutputArgument(name = "Actions", stateVariable = "CurrentTransportActions"))
+    @UpnpAction(name = "GetCurrentTransportActions", readOnly = true, out = @UpnpOutputArgument(name = "Actions", stateVariable = "CurrentTransportActions"))
     public String getCurrentTransportActionsString(@UpnpInputArgument(name = "InstanceID") UnsignedIntegerFourBytes instanceId)
             throws AVTransportException {
         try {
@@ -110,7 +110,7 @@ public class ConnectionManagerService {
         return propertyChangeSupport;
     }
 
-    @UpnpAction(out = {
+    @UpnpAction(readOnly = true, out = {
             @UpnpOutputArgument(name = "RcsID", getterName = "getRcsID"),
             @UpnpOutputArgument(name = "AVTransportID", getterName = "getAvTransportID"),
             @UpnpOutputArgument(name = "ProtocolInfo", getterName = "getProtocolInfo"),
@@ -132,7 +132,7 @@ public class ConnectionManagerService {
         return info;
     }
 
-    @UpnpAction(out = {
+    @UpnpAction(readOnly = true, out = {
             @UpnpOutputArgument(name = "ConnectionIDs")
     })
     synchronized public CSV<UnsignedIntegerFourBytes> getCurrentConnectionIDs() {
@@ -144,7 +144,7 @@ public class ConnectionManagerService {
         return csv;
     }
 
-    @UpnpAction(out = {
+    @UpnpAction(readOnly = true, out = {
             @UpnpOutputArgument(name = "Source", stateVariable = "SourceProtocolInfo", getterName = "getSourceProtocolInfo"),
             @UpnpOutputArgument(name = "Sink", stateVariable = "SinkProtocolInfo", getterName = "getSinkProtocolInfo")
     })
@@ -126,17 +126,17 @@ public abstract class AbstractContentDirectoryService {
         this.sortCapabilities.addAll(sortCapabilities);
     }
 
-    @UpnpAction(out = @UpnpOutputArgument(name = "SearchCaps"))
+    @UpnpAction(readOnly = true, out = @UpnpOutputArgument(name = "SearchCaps"))
     public CSV<String> getSearchCapabilities() {
         return searchCapabilities;
     }
 
-    @UpnpAction(out = @UpnpOutputArgument(name = "SortCaps"))
+    @UpnpAction(readOnly = true, out = @UpnpOutputArgument(name = "SortCaps"))
     public CSV<String> getSortCapabilities() {
         return sortCapabilities;
     }
 
-    @UpnpAction(out = @UpnpOutputArgument(name = "Id"))
+    @UpnpAction(readOnly = true, out = @UpnpOutputArgument(name = "Id"))
     synchronized public UnsignedIntegerFourBytes getSystemUpdateID() {
         return systemUpdateID;
     }
@@ -216,6 +216,10 @@ public abstract class AbstractContentDirectoryService {
      * You should wrap any exception into a {@link ContentDirectoryException}, so a propery
      * error message can be returned to control points.
      * </p>
+     * <p>
+     * Return a {@link StreamingBrowseResult} if the result is large, its DIDL content is then
+     * generated while the response is sent.
+     * </p>
      */
     public abstract BrowseResult browse(String objectID, BrowseFlag browseFlag,
                                         String filter,
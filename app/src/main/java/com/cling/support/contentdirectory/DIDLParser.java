@@ -18,6 +18,8 @@ package com.cling.support.contentdirectory;
 import static com.cling.model.XMLUtil.appendNewElement;
 import static com.cling.model.XMLUtil.appendNewElementIfNotNull;
 
+import com.cling.model.PooledSAXParser;
+import com.cling.model.XMLPool;
 import com.cling.model.types.Datatype;
 import com.cling.model.types.InvalidValueException;
 import com.cling.support.model.DIDLAttribute;
@@ -46,18 +48,12 @@ import org.xml.sax.SAXException;
 
 import java.io.InputStream;
 import java.io.StringReader;
-import java.io.StringWriter;
+import java.io.Writer;
 import java.net.URI;
+import java.util.Iterator;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.transform.OutputKeys;
-import javax.xml.transform.Transformer;
-import javax.xml.transform.TransformerFactory;
-import javax.xml.transform.dom.DOMSource;
-import javax.xml.transform.stream.StreamResult;
-
 /**
  * DIDL parser based on SAX for reading and DOM for writing.
  * <p>
@@ -73,13 +69,21 @@ import javax.xml.transform.stream.StreamResult;
  * etc. methods to register custom handlers for vendor-specific elements and attributes within items, containers,
  * and so on.
  * </p>
+ * <p>
+ * Large results can be written with {@link #generate(java.util.Iterator, boolean, java.io.Writer)},
+ * only a few objects at a time are then represented as a DOM.
+ * </p>
  *
  * @author Christian Bauer
  * @author Mario Franco
  */
-public class DIDLParser extends SAXParser {
+public class DIDLParser extends PooledSAXParser {
 
     public static final String UNKNOWN_TITLE = "Unknown Title";
+
+    // Objects represented as one DOM when generating from an iterator
+    protected static final int GENERATE_BATCH_SIZE = 50;
+
     final private static Logger log = Logger.getLogger(DIDLParser.class.getName());
 
     /**
@@ -288,38 +292,87 @@ public class DIDLParser extends SAXParser {
         return documentToString(buildDOM(content, nestedItems), true);
     }
 
-    // TODO: Yes, this only runs on Android 2.2
-
-    protected String documentToString(Document document, boolean omitProlog) throws Exception {
-        TransformerFactory transFactory = TransformerFactory.newInstance();
-
-        // Indentation not supported on Android 2.2
-        //transFactory.setAttribute("indent-number", 4);
+    /**
+     * Writes an XML representation of the objects while they are read from the iterator.
+     * <p>
+     * The document is not kept in memory, only {@link #GENERATE_BATCH_SIZE} objects at a time are
+     * represented as a DOM, transformed, and written. The XML is the same as generated for a
+     * {@link DIDLContent} with these objects, except that containers and items are written in the
+     * order of the iterator.
+     * </p>
+     *
+     * @param objects     The containers and items, <code>null</code> elements are skipped.
+     * @param nestedItems <code>true</code> if nested item elements should be rendered for containers.
+     * @param writer      Receives the XML representation.
+     * @throws Exception
+     */
+    public void generate(Iterator<? extends DIDLObject> objects, boolean nestedItems, Writer writer) throws Exception {
+        boolean started = false;
+        Document descriptor = null;
+        Element rootElement = null;
+        int batchSize = 0;
+        while (objects.hasNext()) {
+            DIDLObject object = objects.next();
+            if (object == null) continue;
+            if (rootElement == null) {
+                descriptor = XMLPool.newDocument();
+                rootElement = generateRootElement(descriptor);
+            }
+            generateObject(object, descriptor, rootElement, nestedItems);
+            if (++batchSize == GENERATE_BATCH_SIZE) {
+                writeBatch(descriptor, writer, !started);
+                started = true;
+                rootElement = null;
+                batchSize = 0;
+            }
+        }
+        if (rootElement != null) {
+            writeBatch(descriptor, writer, !started);
+            started = true;
+        }
+        if (started) {
+            writer.write("</DIDL-Lite>");
+        } else {
+            writer.write(generate(new DIDLContent(), nestedItems));
+        }
+    }
 
-        Transformer transformer = transFactory.newTransformer();
+    /**
+     * Writes the children of the root element, and the start tag of the root element if it is the first batch.
+     */
+    protected void writeBatch(Document descriptor, Writer writer, boolean first) throws Exception {
+        String xml = documentToString(descriptor, true);
+        // Namespace URIs of the root element don't contain a '>'
+        int start = first ? 0 : xml.indexOf('>') + 1;
+        int end = xml.lastIndexOf("</");
+        writer.write(xml, start, end - start);
+    }
 
-        if (omitProlog) {
-            // TODO: UPNP VIOLATION: Terratec Noxon Webradio fails when DIDL content has a prolog
-            // No XML prolog! This is allowed because it is UTF-8 encoded and required
-            // because broken devices will stumble on SOAP messages that contain (even
-            // encoded) XML prologs within a message body.
-            transformer.setOutputProperty(OutputKeys.OMIT_XML_DECLARATION, "yes");
+    protected void generateObject(DIDLObject object, Document descriptor, Element parent, boolean nestedItems) {
+        if (object instanceof Container) {
+            generateContainer((Container) object, descriptor, parent, nestedItems);
+        } else if (object instanceof Item) {
+            generateItem((Item) object, descriptor, parent);
+        } else {
+            throw new IllegalArgumentException("Not a container or item: " + object.getId());
         }
+    }
+
+    // TODO: Yes, this only runs on Android 2.2
 
-        // Again, Android 2.2 fails hard if you try this.
-        //transformer.setOutputProperty(OutputKeys.INDENT, "yes");
+    protected String documentToString(Document document, boolean omitProlog) throws Exception {
+        // Indentation not supported on Android 2.2, the pooled transformer never indents
 
-        StringWriter out = new StringWriter();
-        transformer.transform(new DOMSource(document), new StreamResult(out));
-        return out.toString();
+        // TODO: UPNP VIOLATION: Terratec Noxon Webradio fails when DIDL content has a prolog
+        // No XML prolog! This is allowed because it is UTF-8 encoded and required
+        // because broken devices will stumble on SOAP messages that contain (even
+        // encoded) XML prologs within a message body.
+        return XMLPool.transform(document, omitProlog);
     }
 
     protected Document buildDOM(DIDLContent content, boolean nestedItems) throws Exception {
 
-        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-        factory.setNamespaceAware(true);
-
-        Document d = factory.newDocumentBuilder().newDocument();
+        Document d = XMLPool.newDocument();
 
         generateRoot(content, d, nestedItems);
 
@@ -327,13 +380,7 @@ public class DIDLParser extends SAXParser {
     }
 
     protected void generateRoot(DIDLContent content, Document descriptor, boolean nestedItems) {
-        Element rootElement = descriptor.createElementNS(DIDLContent.NAMESPACE_URI, "DIDL-Lite");
-        descriptor.appendChild(rootElement);
-
-        // rootElement.setAttributeNS("http://www.w3.org/2000/xmlns/", "xmlns:didl", DIDLContent.NAMESPACE_URI);
-        rootElement.setAttributeNS("http://www.w3.org/2000/xmlns/", "xmlns:upnp", DIDLObject.Property.UPNP.NAMESPACE.URI);
-        rootElement.setAttributeNS("http://www.w3.org/2000/xmlns/", "xmlns:dc", DIDLObject.Property.DC.NAMESPACE.URI);
-        rootElement.setAttributeNS("http://www.w3.org/2000/xmlns/", "xmlns:sec", DIDLObject.Property.SEC.NAMESPACE.URI);
+        Element rootElement = generateRootElement(descriptor);
 
         for (Container container : content.getContainers()) {
             if (container == null) continue;
@@ -351,6 +398,17 @@ public class DIDLParser extends SAXParser {
         }
     }
 
+    protected Element generateRootElement(Document descriptor) {
+        Element rootElement = descriptor.createElementNS(DIDLContent.NAMESPACE_URI, "DIDL-Lite");
+        descriptor.appendChild(rootElement);
+
+        // rootElement.setAttributeNS("http://www.w3.org/2000/xmlns/", "xmlns:didl", DIDLContent.NAMESPACE_URI);
+        rootElement.setAttributeNS("http://www.w3.org/2000/xmlns/", "xmlns:upnp", DIDLObject.Property.UPNP.NAMESPACE.URI);
+        rootElement.setAttributeNS("http://www.w3.org/2000/xmlns/", "xmlns:dc", DIDLObject.Property.DC.NAMESPACE.URI);
+        rootElement.setAttributeNS("http://www.w3.org/2000/xmlns/", "xmlns:sec", DIDLObject.Property.SEC.NAMESPACE.URI);
+        return rootElement;
+    }
+
     protected void generateContainer(Container container, Document descriptor, Element parent, boolean nestedItems) {
 
         if (container.getClazz() == null) {
@@ -0,0 +1,125 @@
+/*
+ * Copyright (C) 2013 4th Line GmbH, Switzerland
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * Lesser General Public License Version 2 or later ("LGPL") or the
+ * Common Development and Distribution License Version 1 or later
+ * ("CDDL") (collectively, the "License"). You may not use this file
+ * except in compliance with the License. See LICENSE.txt for more
+ * information.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+
+package com.cling.support.contentdirectory;
+
+import com.cling.model.action.StreamedValue;
+import com.cling.model.types.UnsignedIntegerFourBytes;
+import com.cling.support.model.BrowseResult;
+import com.cling.support.model.DIDLObject;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.Iterator;
+
+/**
+ * A browse or search result with DIDL content which is generated while the response is sent.
+ * <p>
+ * Return this from {@link AbstractContentDirectoryService} for large results. The objects are read
+ * from the iterator after the action method returned, on the thread sending the response, and
+ * written as escaped DIDL-Lite XML into the SOAP response a few at a time. The response is sent
+ * with chunked transfer coding, the DIDL document is never kept in memory as a whole. The count
+ * and total matches therefore have to be known before the objects are read.
+ * </p>
+ * <p>
+ * If the SOAP processor or transport can't stream the response, or if {@link #getResult()} is called
+ * before the response is sent, all objects are read into one string, as for a {@link BrowseResult}.
+ * </p>
+ *
+ * @author Christian Bauer
+ */
+public class StreamingBrowseResult extends BrowseResult implements StreamedValue.Source {
+
+    final protected DIDLParser parser;
+    final protected boolean nestedItems;
+    protected Iterator<? extends DIDLObject> objects;
+
+    public StreamingBrowseResult(Iterator<? extends DIDLObject> objects, long count, long totalMatches) {
+        this(objects, count, totalMatches, 0);
+    }
+
+    public StreamingBrowseResult(Iterator<? extends DIDLObject> objects, long count, long totalMatches, long updatedId) {
+        this(
+                new DIDLParser(),
+                false,
+                objects,
+                new UnsignedIntegerFourBytes(count),
+                new UnsignedIntegerFourBytes(totalMatches),
+                new UnsignedIntegerFourBytes(updatedId)
+        );
+    }
+
+    /**
+     * @param parser      Generates the DIDL content, for example with vendor extensions.
+     * @param nestedItems <code>true</code> if nested item elements should be rendered for containers.
+     */
+    public StreamingBrowseResult(DIDLParser parser, boolean nestedItems,
+                                 Iterator<? extends DIDLObject> objects,
+                                 UnsignedIntegerFourBytes count,
+                                 UnsignedIntegerFourBytes totalMatches,
+                                 UnsignedIntegerFourBytes containerUpdateID) {
+        super(null, count, totalMatches, containerUpdateID);
+        this.parser = parser;
+        this.nestedItems = nestedItems;
+        this.objects = objects;
+    }
+
+    /**
+     * Reads all objects into a string, if they have not been streamed already.
+     *
+     * @return The DIDL content, or <code>null</code> if it has been streamed.
+     */
+    @Override
+    public synchronized String getResult() {
+        if (result == null && objects != null) {
+            StringWriter writer = new StringWriter();
+            try {
+                generate(takeObjects(), writer);
+            } catch (IOException ex) {
+                throw new RuntimeException(ex.getMessage(), ex);
+            }
+            result = writer.toString();
+        }
+        return result;
+    }
+
+    public synchronized StreamedValue getStreamedValue(String outputArgumentName) {
+        if (!"Result".equals(outputArgumentName) || objects == null)
+            return null;
+        final Iterator<? extends DIDLObject> streamedObjects = takeObjects();
+        return new StreamedValue() {
+            public void writeTo(Writer writer) throws IOException {
+                generate(streamedObjects, writer);
+            }
+        };
+    }
+
+    protected Iterator<? extends DIDLObject> takeObjects() {
+        Iterator<? extends DIDLObject> taken = objects;
+        objects = null;
+        return taken;
+    }
+
+    protected void generate(Iterator<? extends DIDLObject> objects, Writer writer) throws IOException {
+        try {
+            parser.generate(objects, nestedItems, writer);
+        } catch (IOException ex) {
+            throw ex;
+        } catch (Exception ex) {
+            throw new IOException("Can't generate DIDL content: " + ex, ex);
+        }
+    }
+}
@@ -29,7 +29,8 @@ import java.util.List;
  * sets evented values whenever its state changes, and periodically
  * (e.g. in a background loop) fires the "LastChange" XML content
  * through its PropertyChangeSupport. (Where the ServiceManager picks
- * it up and sends it to all subscribers.)
+ * it up and sends it to all subscribers.) Instead of a background loop,
+ * a {@link LastChangeScheduler} can fire the content after changes.
  * </p>
  * <p>
  * The event subscriber can use this class to marshall the "LastChange"
@@ -46,6 +47,7 @@ public class LastChange {
     final private Event event;
     final private LastChangeParser parser;
     private String previousValue;
+    private Runnable changeListener;
 
     public LastChange(String s) {
         throw new UnsupportedOperationException("This constructor is only for service binding detection");
@@ -69,6 +71,13 @@ public class LastChange {
         this.parser = parser;
     }
 
+    /**
+     * @param changeListener Called whenever evented values have been set, while holding the lock of this instance.
+     */
+    synchronized public void setChangeListener(Runnable changeListener) {
+        this.changeListener = changeListener;
+    }
+
     synchronized public void reset() {
         previousValue = toString();
         event.clear();
@@ -84,6 +93,8 @@ public class LastChange {
                 event.setEventedValue(instanceID, eventedValue);
 
         }
+        if (changeListener != null)
+            changeListener.run();
     }
 
     synchronized public UnsignedIntegerFourBytes[] getInstanceIDs() {
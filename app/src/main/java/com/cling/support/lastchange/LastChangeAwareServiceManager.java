@@ -16,11 +16,13 @@
 package com.cling.support.lastchange;
 
 import com.cling.model.DefaultServiceManager;
+import com.cling.model.gena.LocalGENASubscription;
 import com.cling.model.meta.LocalService;
 import com.cling.model.meta.StateVariable;
 import com.cling.model.state.StateVariableValue;
 import com.cling.model.types.UnsignedIntegerFourBytes;
 
+import java.beans.PropertyChangeListener;
 import java.util.ArrayList;
 import java.util.Collection;
 
@@ -37,23 +39,42 @@ import java.util.Collection;
  * Use this {@link com.cling.model.ServiceManager} instead of the default one for
  * these services.
  * </p>
+ * <p>
+ * If a {@link LastChangeScheduler} is given, changes of the service's {@link LastChange}
+ * are fired automatically, otherwise call {@link #fireLastChange()} yourself.
+ * </p>
  *
  * @author Christian Bauer
  */
 public class LastChangeAwareServiceManager<T extends LastChangeDelegator> extends DefaultServiceManager<T> {
 
     final protected LastChangeParser lastChangeParser;
+    final protected LastChangeScheduler lastChangeScheduler;
 
     public LastChangeAwareServiceManager(LocalService<T> localService,
                                          LastChangeParser lastChangeParser) {
         this(localService, null, lastChangeParser);
     }
 
+    public LastChangeAwareServiceManager(LocalService<T> localService,
+                                         LastChangeParser lastChangeParser,
+                                         LastChangeScheduler lastChangeScheduler) {
+        this(localService, null, lastChangeParser, lastChangeScheduler);
+    }
+
     public LastChangeAwareServiceManager(LocalService<T> localService,
                                          Class<T> serviceClass,
                                          LastChangeParser lastChangeParser) {
+        this(localService, serviceClass, lastChangeParser, null);
+    }
+
+    public LastChangeAwareServiceManager(LocalService<T> localService,
+                                         Class<T> serviceClass,
+                                         LastChangeParser lastChangeParser,
+                                         LastChangeScheduler lastChangeScheduler) {
         super(localService, serviceClass);
         this.lastChangeParser = lastChangeParser;
+        this.lastChangeScheduler = lastChangeScheduler;
     }
 
     protected LastChangeParser getLastChangeParser() {
@@ -77,6 +98,31 @@ public class LastChangeAwareServiceManager<T extends LastChangeDelegator> extend
         }
     }
 
+    /**
+     * @return <code>true</code> if any GENA subscription listens to events of this service.
+     */
+    public boolean hasSubscriptions() {
+        for (PropertyChangeListener listener : getPropertyChangeSupport().getPropertyChangeListeners()) {
+            if (listener instanceof LocalGENASubscription)
+                return true;
+        }
+        return false;
+    }
+
+    @Override
+    protected void init() {
+        super.init();
+        if (lastChangeScheduler != null) {
+            serviceImpl.getLastChange().setChangeListener(new Runnable() {
+                public void run() {
+                    lastChangeScheduler.changed(LastChangeAwareServiceManager.this);
+                }
+            });
+            // Values might have been set before the service was initialized
+            lastChangeScheduler.changed(this);
+        }
+    }
+
     @Override
     protected Collection<StateVariableValue> readInitialEventedStateVariableValues() throws Exception {
 
@@ -17,6 +17,8 @@ package com.cling.support.lastchange;
 
 import static com.cling.model.XMLUtil.appendNewElement;
 
+import com.cling.model.PooledSAXParser;
+import com.cling.model.XMLPool;
 import com.cling.model.XMLUtil;
 import com.cling.model.types.UnsignedIntegerFourBytes;
 import com.cling.support.shared.AbstractMap;
@@ -40,8 +42,6 @@ import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
-import javax.xml.parsers.DocumentBuilderFactory;
-
 /**
  * Reads and writes the "LastChange" XML content.
  * <p>
@@ -51,7 +51,7 @@ import javax.xml.parsers.DocumentBuilderFactory;
  *
  * @author Christian Bauer
  */
-public abstract class LastChangeParser extends SAXParser {
+public abstract class LastChangeParser extends PooledSAXParser {
 
     final private static Logger log = Logger.getLogger(LastChangeParser.class.getName());
 
@@ -124,10 +124,7 @@ public abstract class LastChangeParser extends SAXParser {
 
     protected Document buildDOM(Event event) throws Exception {
 
-        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-        factory.setNamespaceAware(true);
-
-        Document d = factory.newDocumentBuilder().newDocument();
+        Document d = XMLPool.newDocument();
         generateRoot(event, d);
 
         return d;
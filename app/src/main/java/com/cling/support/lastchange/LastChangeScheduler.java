@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) 2013 4th Line GmbH, Switzerland
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * Lesser General Public License Version 2 or later ("LGPL") or the
+ * Common Development and Distribution License Version 1 or later
+ * ("CDDL") (collectively, the "License"). You may not use this file
+ * except in compliance with the License. See LICENSE.txt for more
+ * information.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+
+package com.cling.support.lastchange;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Fires accumulated "LastChange" values of services some time after they changed.
+ * <p>
+ * A {@link LastChangeAwareServiceManager} created with a scheduler arms a single flush
+ * whenever an evented value is set on its {@link LastChange}. All further changes within
+ * the moderation window are merged into the same event. When the flush runs and no GENA
+ * subscription exists for the service, nothing is fired and the values keep accumulating.
+ * </p>
+ * <p>
+ * One instance, and its single background thread, can be shared by all services of a device.
+ * </p>
+ *
+ * @author Christian Bauer
+ */
+public class LastChangeScheduler {
+
+    final private static Logger log = Logger.getLogger(LastChangeScheduler.class.getName());
+
+    // The maximum event rate of LastChange state variables is 5 per second
+    public static final long DEFAULT_MODERATION_MILLIS = 200;
+
+    final protected long moderationMillis;
+    final protected ScheduledExecutorService executorService;
+    final protected Set<LastChangeAwareServiceManager> armed =
+            Collections.newSetFromMap(new ConcurrentHashMap<LastChangeAwareServiceManager, Boolean>());
+
+    public LastChangeScheduler() {
+        this(DEFAULT_MODERATION_MILLIS);
+    }
+
+    /**
+     * @param moderationMillis The delay between the first change and firing the event.
+     */
+    public LastChangeScheduler(long moderationMillis) {
+        this.moderationMillis = moderationMillis;
+        this.executorService = createExecutorService();
+    }
+
+    public long getModerationMillis() {
+        return moderationMillis;
+    }
+
+    protected ScheduledExecutorService createExecutorService() {
+        return Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "cling-lastchange");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Arms a flush of the service's "LastChange" values, if none is pending already.
+     */
+    public void changed(final LastChangeAwareServiceManager manager) {
+        if (!armed.add(manager))
+            return;
+        try {
+            executorService.schedule(new Runnable() {
+                public void run() {
+                    // Disarm first, changes made while firing arm the next flush
+                    armed.remove(manager);
+                    flush(manager);
+                }
+            }, moderationMillis, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException ex) {
+            armed.remove(manager);
+            log.fine("Scheduler has been shut down, not firing LastChange of: " + manager);
+        }
+    }
+
+    protected void flush(LastChangeAwareServiceManager manager) {
+        if (!manager.hasSubscriptions()) {
+            log.finer("No subscriptions, not firing LastChange of: " + manager);
+            return;
+        }
+        try {
+            manager.fireLastChange();
+        } catch (Exception ex) {
+            // Most likely the service lock timed out, try again later
+            log.log(Level.WARNING, "Firing LastChange failed, rescheduling: " + ex, ex);
+            changed(manager);
+        }
+    }
+
+    public void shutdown() {
+        executorService.shutdownNow();
+        armed.clear();
+    }
+}
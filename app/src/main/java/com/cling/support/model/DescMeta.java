@@ -15,14 +15,13 @@
 
 package com.cling.support.model;
 
+import com.cling.model.XMLPool;
+
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 
 import java.net.URI;
 
-import javax.xml.parsers.DocumentBuilderFactory;
-
-
 /**
  * Descriptor metadata about an item/resource.
  *
@@ -92,9 +91,7 @@ public class DescMeta<M> {
 
     public Document createMetadataDocument() {
         try {
-            DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-            factory.setNamespaceAware(true);
-            Document d = factory.newDocumentBuilder().newDocument();
+            Document d = XMLPool.newDocument();
             Element rootElement = d.createElementNS(DIDLContent.DESC_WRAPPER_NAMESPACE_URI, "desc-wrapper");
             d.appendChild(rootElement);
             return d;
@@ -141,7 +141,7 @@ public abstract class AbstractAudioRenderingControl implements LastChangeDelegat
         return propertyChangeSupport;
     }
 
-    @UpnpAction(out = @UpnpOutputArgument(name = "CurrentPresetNameList", stateVariable = "PresetNameList"))
+    @UpnpAction(readOnly = true, out = @UpnpOutputArgument(name = "CurrentPresetNameList", stateVariable = "PresetNameList"))
     public String listPresets(@UpnpInputArgument(name = "InstanceID") UnsignedIntegerFourBytes instanceId) throws RenderingControlException {
         return PresetName.FactoryDefaults.toString();
     }
@@ -151,7 +151,7 @@ public abstract class AbstractAudioRenderingControl implements LastChangeDelegat
                              @UpnpInputArgument(name = "PresetName") String presetName) throws RenderingControlException {
     }
 
-    @UpnpAction(out = @UpnpOutputArgument(name = "CurrentMute", stateVariable = "Mute"))
+    @UpnpAction(readOnly = true, out = @UpnpOutputArgument(name = "CurrentMute", stateVariable = "Mute"))
     public abstract boolean getMute(@UpnpInputArgument(name = "InstanceID") UnsignedIntegerFourBytes instanceId,
                                     @UpnpInputArgument(name = "Channel") String channelName) throws RenderingControlException;
 
@@ -160,7 +160,7 @@ public abstract class AbstractAudioRenderingControl implements LastChangeDelegat
                                  @UpnpInputArgument(name = "Channel") String channelName,
                                  @UpnpInputArgument(name = "DesiredMute", stateVariable = "Mute") boolean desiredMute) throws RenderingControlException;
 
-    @UpnpAction(out = @UpnpOutputArgument(name = "CurrentVolume", stateVariable = "Volume"))
+    @UpnpAction(readOnly = true, out = @UpnpOutputArgument(name = "CurrentVolume", stateVariable = "Volume"))
     public abstract UnsignedIntegerTwoBytes getVolume(@UpnpInputArgument(name = "InstanceID") UnsignedIntegerFourBytes instanceId,
                                                       @UpnpInputArgument(name = "Channel") String channelName) throws RenderingControlException;
 
@@ -169,7 +169,7 @@ public abstract class AbstractAudioRenderingControl implements LastChangeDelegat
                                    @UpnpInputArgument(name = "Channel") String channelName,
                                    @UpnpInputArgument(name = "DesiredVolume", stateVariable = "Volume") UnsignedIntegerTwoBytes desiredVolume) throws RenderingControlException;
 
-    @UpnpAction(out = @UpnpOutputArgument(name = "CurrentVolume", stateVariable = "VolumeDB"))
+    @UpnpAction(readOnly = true, out = @UpnpOutputArgument(name = "CurrentVolume", stateVariable = "VolumeDB"))
     public Integer getVolumeDB(@UpnpInputArgument(name = "InstanceID") UnsignedIntegerFourBytes instanceId,
                                @UpnpInputArgument(name = "Channel") String channelName) throws RenderingControlException {
         return 0;
@@ -186,7 +186,7 @@ public abstract class AbstractAudioRenderingControl implements LastChangeDelegat
         */
     }
 
-    @UpnpAction(out = {
+    @UpnpAction(readOnly = true, out = {
             @UpnpOutputArgument(name = "MinValue", stateVariable = "VolumeDB", getterName = "getMinValue"),
             @UpnpOutputArgument(name = "MaxValue", stateVariable = "VolumeDB", getterName = "getMaxValue")
     })
@@ -195,7 +195,7 @@ public abstract class AbstractAudioRenderingControl implements LastChangeDelegat
         return new VolumeDBRange(0, 0);
     }
 
-    @UpnpAction(out = @UpnpOutputArgument(name = "CurrentLoudness", stateVariable = "Loudness"))
+    @UpnpAction(readOnly = true, out = @UpnpOutputArgument(name = "CurrentLoudness", stateVariable = "Loudness"))
     public boolean getLoudness(@UpnpInputArgument(name = "InstanceID") UnsignedIntegerFourBytes instanceId,
                                @UpnpInputArgument(name = "Channel") String channelName) throws RenderingControlException {
         return false;
@@ -125,6 +125,10 @@ public interface Router {
      * should be free to process the next reception as soon as possible. Typically this means starting
      * a new thread of execution in this method.
      * </p>
+     * <p>
+     * If the protocol executor is saturated, a <code>RejectedExecutionException</code> is thrown and
+     * the stream server should answer the request with <em>503 Service Unavailable</em>.
+     * </p>
      *
      * @param stream
      */
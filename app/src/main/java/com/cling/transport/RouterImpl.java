@@ -21,6 +21,7 @@ import com.cling.model.message.IncomingDatagramMessage;
 import com.cling.model.message.OutgoingDatagramMessage;
 import com.cling.model.message.StreamRequestMessage;
 import com.cling.model.message.StreamResponseMessage;
+import com.cling.protocol.DatagramFilter;
 import com.cling.protocol.ProtocolCreationException;
 import com.cling.protocol.ProtocolFactory;
 import com.cling.protocol.ReceivingAsync;
@@ -46,6 +47,7 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.logging.Level;
@@ -61,6 +63,14 @@ import javax.inject.Inject;
  * <p>
  * Initializes and starts listening for data on the network when enabled.
  * </p>
+ * <p>
+ * The transports of an enabled router are published as an immutable {@link Transports}
+ * snapshot, which is replaced atomically when the router is enabled or disabled. Sending
+ * datagrams and stream requests only reads the current snapshot and never waits for a lock,
+ * so a blocking HTTP request doesn't delay a network switch, and a network switch doesn't
+ * stall messages in flight. The {@link StreamClient} is reference counted; it is stopped
+ * when the router has been disabled and the last request using it has completed.
+ * </p>
  *
  * @author Christian Bauer
  */
@@ -68,18 +78,71 @@ import javax.inject.Inject;
 public class RouterImpl implements Router {
 
     private static Logger log = Logger.getLogger(Router.class.getName());
-    protected final Map<NetworkInterface, MulticastReceiver> multicastReceivers = new HashMap();
-    protected final Map<InetAddress, DatagramIO> datagramIOs = new HashMap();
-    protected final Map<InetAddress, StreamServer> streamServers = new HashMap();
+
+    /**
+     * The transports of an enabled router, never modified after it has been published.
+     */
+    protected static class Transports {
+
+        final protected NetworkAddressFactory networkAddressFactory;
+        final protected Map<NetworkInterface, MulticastReceiver> multicastReceivers;
+        final protected Map<InetAddress, DatagramIO> datagramIOs;
+        final protected Map<InetAddress, StreamServer> streamServers;
+        final protected StreamClientReference streamClient;
+
+        public Transports(NetworkAddressFactory networkAddressFactory,
+                          Map<NetworkInterface, MulticastReceiver> multicastReceivers,
+                          Map<InetAddress, DatagramIO> datagramIOs,
+                          Map<InetAddress, StreamServer> streamServers,
+                          StreamClient streamClient) {
+            this.networkAddressFactory = networkAddressFactory;
+            this.multicastReceivers = Collections.unmodifiableMap(multicastReceivers);
+            this.datagramIOs = Collections.unmodifiableMap(datagramIOs);
+            this.streamServers = Collections.unmodifiableMap(streamServers);
+            this.streamClient = streamClient != null ? new StreamClientReference(streamClient) : null;
+        }
+    }
+
+    /**
+     * Counts the requests using a {@link StreamClient}, the router holds one reference while enabled.
+     */
+    protected static class StreamClientReference {
+
+        final protected StreamClient streamClient;
+        final protected AtomicInteger references = new AtomicInteger(1);
+
+        public StreamClientReference(StreamClient streamClient) {
+            this.streamClient = streamClient;
+        }
+
+        /**
+         * @return The stream client, or <code>null</code> if it has already been stopped.
+         */
+        public StreamClient acquire() {
+            int count;
+            do {
+                count = references.get();
+                if (count == 0)
+                    return null;
+            } while (!references.compareAndSet(count, count + 1));
+            return streamClient;
+        }
+
+        public void release() {
+            if (references.decrementAndGet() == 0) {
+                log.fine("Stopping stream client connection management/pool");
+                streamClient.stop();
+            }
+        }
+    }
+
     protected UpnpServiceConfiguration configuration;
     protected ProtocolFactory protocolFactory;
-    protected volatile boolean enabled;
+    // Only serializes enable() and disable(), sending messages doesn't lock
     protected ReentrantReadWriteLock routerLock = new ReentrantReadWriteLock(true);
-    protected Lock readLock = routerLock.readLock();
     protected Lock writeLock = routerLock.writeLock();
-    // These are created/destroyed when the router is enabled/disabled
-    protected NetworkAddressFactory networkAddressFactory;
-    protected StreamClient streamClient;
+    // Created/destroyed when the router is enabled/disabled, null while disabled
+    protected volatile Transports transports;
 
     protected RouterImpl() {
     }
@@ -122,13 +185,20 @@ public class RouterImpl implements Router {
     public boolean enable() throws RouterException {
         lock(writeLock);
         try {
-            if (!enabled) {
+            if (transports == null) {
+                Map<NetworkInterface, MulticastReceiver> multicastReceivers = new HashMap<NetworkInterface, MulticastReceiver>();
+                Map<InetAddress, DatagramIO> datagramIOs = new HashMap<InetAddress, DatagramIO>();
+                Map<InetAddress, StreamServer> streamServers = new HashMap<InetAddress, StreamServer>();
                 try {
                     log.fine("Starting networking services...");
-                    networkAddressFactory = getConfiguration().createNetworkAddressFactory();
+                    NetworkAddressFactory networkAddressFactory = getConfiguration().createNetworkAddressFactory();
 
-                    startInterfaceBasedTransports(networkAddressFactory.getNetworkInterfaces());
-                    startAddressBasedTransports(networkAddressFactory.getBindAddresses());
+                    startInterfaceBasedTransports(
+                            networkAddressFactory, networkAddressFactory.getNetworkInterfaces(), multicastReceivers
+                    );
+                    startAddressBasedTransports(
+                            networkAddressFactory, networkAddressFactory.getBindAddresses(), streamServers, datagramIOs
+                    );
 
                     // The transports possibly removed some unusable network interfaces/addresses
                     if (!networkAddressFactory.hasUsableNetwork()) {
@@ -138,11 +208,15 @@ public class RouterImpl implements Router {
                     }
 
                     // Start the HTTP client last, we don't even have to try if there is no network
-                    streamClient = getConfiguration().createStreamClient();
+                    StreamClient streamClient = getConfiguration().createStreamClient();
 
-                    enabled = true;
+                    transports = new Transports(
+                            networkAddressFactory, multicastReceivers, datagramIOs, streamServers, streamClient
+                    );
                     return true;
                 } catch (InitializationException ex) {
+                    // Don't leave sockets of a partially started router open
+                    stopTransports(multicastReceivers, datagramIOs, streamServers);
                     handleStartFailure(ex);
                 }
             }
@@ -156,35 +230,19 @@ public class RouterImpl implements Router {
     public boolean disable() throws RouterException {
         lock(writeLock);
         try {
-            if (enabled) {
+            Transports disabled = transports;
+            if (disabled != null) {
                 log.fine("Disabling network services...");
 
-                if (streamClient != null) {
-                    log.fine("Stopping stream client connection management/pool");
-                    streamClient.stop();
-                    streamClient = null;
-                }
-
-                for (Map.Entry<InetAddress, StreamServer> entry : streamServers.entrySet()) {
-                    log.fine("Stopping stream server on address: " + entry.getKey());
-                    entry.getValue().stop();
-                }
-                streamServers.clear();
-
-                for (Map.Entry<NetworkInterface, MulticastReceiver> entry : multicastReceivers.entrySet()) {
-                    log.fine("Stopping multicast receiver on interface: " + entry.getKey().getDisplayName());
-                    entry.getValue().stop();
-                }
-                multicastReceivers.clear();
+                // New messages are no longer sent from here on, messages in flight complete or fail
+                transports = null;
 
-                for (Map.Entry<InetAddress, DatagramIO> entry : datagramIOs.entrySet()) {
-                    log.fine("Stopping datagram I/O on address: " + entry.getKey());
-                    entry.getValue().stop();
+                if (disabled.streamClient != null) {
+                    // Stopped when the last request in flight has completed
+                    disabled.streamClient.release();
                 }
-                datagramIOs.clear();
 
-                networkAddressFactory = null;
-                enabled = false;
+                stopTransports(disabled.multicastReceivers, disabled.datagramIOs, disabled.streamServers);
                 return true;
             }
             return false;
@@ -193,6 +251,25 @@ public class RouterImpl implements Router {
         }
     }
 
+    protected void stopTransports(Map<NetworkInterface, MulticastReceiver> multicastReceivers,
+                                  Map<InetAddress, DatagramIO> datagramIOs,
+                                  Map<InetAddress, StreamServer> streamServers) {
+        for (Map.Entry<InetAddress, StreamServer> entry : streamServers.entrySet()) {
+            log.fine("Stopping stream server on address: " + entry.getKey());
+            entry.getValue().stop();
+        }
+
+        for (Map.Entry<NetworkInterface, MulticastReceiver> entry : multicastReceivers.entrySet()) {
+            log.fine("Stopping multicast receiver on interface: " + entry.getKey().getDisplayName());
+            entry.getValue().stop();
+        }
+
+        for (Map.Entry<InetAddress, DatagramIO> entry : datagramIOs.entrySet()) {
+            log.fine("Stopping datagram I/O on address: " + entry.getKey());
+            entry.getValue().stop();
+        }
+    }
+
     @Override
     public void shutdown() throws RouterException {
         disable();
@@ -200,7 +277,7 @@ public class RouterImpl implements Router {
 
     @Override
     public boolean isEnabled() {
-        return enabled;
+        return transports != null;
     }
 
     @Override
@@ -214,37 +291,33 @@ public class RouterImpl implements Router {
     }
 
     public List<NetworkAddress> getActiveStreamServers(InetAddress preferredAddress) throws RouterException {
-        lock(readLock);
-        try {
-            if (enabled && streamServers.size() > 0) {
-                List<NetworkAddress> streamServerAddresses = new ArrayList<NetworkAddress>();
-
-                StreamServer preferredServer;
-                if (preferredAddress != null &&
-                        (preferredServer = streamServers.get(preferredAddress)) != null) {
-                    streamServerAddresses.add(
-                            new NetworkAddress(
-                                    preferredAddress,
-                                    preferredServer.getPort(),
-                                    networkAddressFactory.getHardwareAddress(preferredAddress)
-
-                            )
-                    );
-                    return streamServerAddresses;
-                }
-
-                for (Map.Entry<InetAddress, StreamServer> entry : streamServers.entrySet()) {
-                    byte[] hardwareAddress = networkAddressFactory.getHardwareAddress(entry.getKey());
-                    streamServerAddresses.add(
-                            new NetworkAddress(entry.getKey(), entry.getValue().getPort(), hardwareAddress)
-                    );
-                }
+        Transports transports = this.transports;
+        if (transports != null && transports.streamServers.size() > 0) {
+            List<NetworkAddress> streamServerAddresses = new ArrayList<NetworkAddress>();
+
+            StreamServer preferredServer;
+            if (preferredAddress != null &&
+                    (preferredServer = transports.streamServers.get(preferredAddress)) != null) {
+                streamServerAddresses.add(
+                        new NetworkAddress(
+                                preferredAddress,
+                                preferredServer.getPort(),
+                                transports.networkAddressFactory.getHardwareAddress(preferredAddress)
+
+                        )
+                );
                 return streamServerAddresses;
-            } else {
-                return Collections.EMPTY_LIST;
             }
-        } finally {
-            unlock(readLock);
+
+            for (Map.Entry<InetAddress, StreamServer> entry : transports.streamServers.entrySet()) {
+                byte[] hardwareAddress = transports.networkAddressFactory.getHardwareAddress(entry.getKey());
+                streamServerAddresses.add(
+                        new NetworkAddress(entry.getKey(), entry.getValue().getPort(), hardwareAddress)
+                );
+            }
+            return streamServerAddresses;
+        } else {
+            return Collections.EMPTY_LIST;
         }
     }
 
@@ -261,10 +334,14 @@ public class RouterImpl implements Router {
      * @param msg The received datagram message.
      */
     public void received(IncomingDatagramMessage msg) {
-        if (!enabled) {
+        if (!isEnabled()) {
             log.fine("Router disabled, ignoring incoming message: " + msg);
             return;
         }
+        DatagramFilter filter = getConfiguration().getDatagramFilter();
+        if (filter != null && !filter.accept(getProtocolFactory().getUpnpService(), msg)) {
+            return;
+        }
         try {
             ReceivingAsync protocol = getProtocolFactory().createReceivingAsync(msg);
             if (protocol == null) {
@@ -287,7 +364,7 @@ public class RouterImpl implements Router {
      * @param stream The received {@link com.cling.transport.spi.UpnpStream}.
      */
     public void received(UpnpStream stream) {
-        if (!enabled) {
+        if (!isEnabled()) {
             log.fine("Router disabled, ignoring incoming: " + stream);
             return;
         }
@@ -301,17 +378,13 @@ public class RouterImpl implements Router {
      * @param msg The UDP datagram message to send.
      */
     public void send(OutgoingDatagramMessage msg) throws RouterException {
-        lock(readLock);
-        try {
-            if (enabled) {
-                for (DatagramIO datagramIO : datagramIOs.values()) {
-                    datagramIO.send(msg);
-                }
-            } else {
-                log.fine("Router disabled, not sending datagram: " + msg);
+        Transports transports = this.transports;
+        if (transports != null) {
+            for (DatagramIO datagramIO : transports.datagramIOs.values()) {
+                datagramIO.send(msg);
             }
-        } finally {
-            unlock(readLock);
+        } else {
+            log.fine("Router disabled, not sending datagram: " + msg);
         }
     }
 
@@ -323,25 +396,29 @@ public class RouterImpl implements Router {
      * method or <code>null</code> if no <code>StreamClient</code> is available.
      */
     public StreamResponseMessage send(StreamRequestMessage msg) throws RouterException {
-        lock(readLock);
+        Transports transports = this.transports;
+        if (transports == null) {
+            log.fine("Router disabled, not sending stream request: " + msg);
+            return null;
+        }
+        if (transports.streamClient == null) {
+            log.fine("No StreamClient available, not sending: " + msg);
+            return null;
+        }
+        StreamClient streamClient = transports.streamClient.acquire();
+        if (streamClient == null) {
+            // The router was disabled since we read the transports
+            log.fine("Router disabled, not sending stream request: " + msg);
+            return null;
+        }
         try {
-            if (enabled) {
-                if (streamClient == null) {
-                    log.fine("No StreamClient available, not sending: " + msg);
-                    return null;
-                }
+            if (log.isLoggable(Level.FINE))
                 log.fine("Sending via TCP unicast stream: " + msg);
-                try {
-                    return streamClient.sendRequest(msg);
-                } catch (InterruptedException ex) {
-                    throw new RouterException("Sending stream request was interrupted", ex);
-                }
-            } else {
-                log.fine("Router disabled, not sending stream request: " + msg);
-                return null;
-            }
+            return streamClient.sendRequest(msg);
+        } catch (InterruptedException ex) {
+            throw new RouterException("Sending stream request was interrupted", ex);
         } finally {
-            unlock(readLock);
+            transports.streamClient.release();
         }
     }
 
@@ -355,26 +432,25 @@ public class RouterImpl implements Router {
      * @param bytes The byte payload of the UDP datagram.
      */
     public void broadcast(byte[] bytes) throws RouterException {
-        lock(readLock);
-        try {
-            if (enabled) {
-                for (Map.Entry<InetAddress, DatagramIO> entry : datagramIOs.entrySet()) {
-                    InetAddress broadcast = networkAddressFactory.getBroadcastAddress(entry.getKey());
-                    if (broadcast != null) {
-                        log.fine("Sending UDP datagram to broadcast address: " + broadcast.getHostAddress());
-                        DatagramPacket packet = new DatagramPacket(bytes, bytes.length, broadcast, 9);
-                        entry.getValue().send(packet);
-                    }
+        Transports transports = this.transports;
+        if (transports != null) {
+            for (Map.Entry<InetAddress, DatagramIO> entry : transports.datagramIOs.entrySet()) {
+                InetAddress broadcast = transports.networkAddressFactory.getBroadcastAddress(entry.getKey());
+                if (broadcast != null) {
+                    log.fine("Sending UDP datagram to broadcast address: " + broadcast.getHostAddress());
+                    DatagramPacket packet = new DatagramPacket(bytes, bytes.length, broadcast, 9);
+                    entry.getValue().send(packet);
                 }
-            } else {
-                log.fine("Router disabled, not broadcasting bytes: " + bytes.length);
             }
-        } finally {
-            unlock(readLock);
+        } else {
+            log.fine("Router disabled, not broadcasting bytes: " + bytes.length);
         }
     }
 
-    protected void startInterfaceBasedTransports(Iterator<NetworkInterface> interfaces) throws InitializationException {
+    protected void startInterfaceBasedTransports(NetworkAddressFactory networkAddressFactory,
+                                                 Iterator<NetworkInterface> interfaces,
+                                                 Map<NetworkInterface, MulticastReceiver> multicastReceivers)
+            throws InitializationException {
         while (interfaces.hasNext()) {
             NetworkInterface networkInterface = interfaces.next();
 
@@ -422,7 +498,11 @@ public class RouterImpl implements Router {
         }
     }
 
-    protected void startAddressBasedTransports(Iterator<InetAddress> addresses) throws InitializationException {
+    protected void startAddressBasedTransports(NetworkAddressFactory networkAddressFactory,
+                                               Iterator<InetAddress> addresses,
+                                               Map<InetAddress, StreamServer> streamServers,
+                                               Map<InetAddress, DatagramIO> datagramIOs)
+            throws InitializationException {
         while (addresses.hasNext()) {
             InetAddress address = addresses.next();
 
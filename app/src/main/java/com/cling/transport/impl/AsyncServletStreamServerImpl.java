@@ -16,6 +16,7 @@
 package com.cling.transport.impl;
 
 import com.cling.model.message.Connection;
+import com.cling.model.message.UpnpResponse;
 import com.cling.transport.Router;
 import com.cling.transport.spi.InitializationException;
 import com.cling.transport.spi.StreamServer;
@@ -23,6 +24,7 @@ import com.cling.transport.spi.StreamServer;
 import java.io.IOException;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -106,7 +108,13 @@ public class AsyncServletStreamServerImpl implements StreamServer<AsyncServletSt
                             }
                         };
 
-                router.received(stream);
+                try {
+                    router.received(stream);
+                } catch (RejectedExecutionException ex) {
+                    log.warning("Protocol executor rejected HTTP request: " + req.getRequestURI());
+                    resp.setStatus(UpnpResponse.Status.SERVICE_UNAVAILABLE.getStatusCode());
+                    async.complete();
+                }
             }
         };
     }
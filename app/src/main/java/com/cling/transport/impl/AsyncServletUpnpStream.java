@@ -25,12 +25,12 @@ import com.cling.protocol.ProtocolFactory;
 import com.cling.transport.spi.UpnpStream;
 
 import org.seamless.util.Exceptions;
-import org.seamless.util.io.IO;
 
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.HttpURLConnection;
 import java.net.URI;
+import java.nio.ByteBuffer;
 import java.util.Enumeration;
 import java.util.List;
 import java.util.Map;
@@ -199,25 +199,25 @@ public abstract class AsyncServletUpnpStream extends UpnpStream implements Async
         requestMessage.setHeaders(headers);
 
         // Body
-        byte[] bodyBytes;
+        ByteBuffer bodyBytes;
         InputStream is = null;
         try {
             is = getRequest().getInputStream();
-            bodyBytes = IO.readBytes(is);
+            bodyBytes = BodyBuffers.read(is, getRequest().getContentLength());
         } finally {
             if (is != null)
                 is.close();
         }
         if (log.isLoggable(Level.FINER))
-            log.finer("Reading request body bytes: " + bodyBytes.length);
+            log.finer("Reading request body bytes: " + bodyBytes.remaining());
 
-        if (bodyBytes.length > 0 && requestMessage.isContentTypeMissingOrText()) {
+        if (bodyBytes.hasRemaining() && requestMessage.isContentTypeMissingOrText()) {
 
             if (log.isLoggable(Level.FINER))
-                log.finer("Request contains textual entity body, converting then setting string on message");
+                log.finer("Request contains textual entity body, setting characters on message");
             requestMessage.setBodyCharacters(bodyBytes);
 
-        } else if (bodyBytes.length > 0) {
+        } else if (bodyBytes.hasRemaining()) {
 
             if (log.isLoggable(Level.FINER))
                 log.finer("Request contains binary entity body, setting bytes on message");
@@ -246,14 +246,17 @@ public abstract class AsyncServletUpnpStream extends UpnpStream implements Async
         // The Date header is recommended in UDA
         getResponse().setDateHeader("Date", System.currentTimeMillis());
 
-        // Body
-        byte[] responseBodyBytes = responseMessage.hasBody() ? responseMessage.getBodyBytes() : null;
-        int contentLength = responseBodyBytes != null ? responseBodyBytes.length : -1;
+        // Body, encoded only once
+        int contentLength = responseMessage.hasBody() ? responseMessage.getBodyLength() : -1;
 
         if (contentLength > 0) {
             getResponse().setContentLength(contentLength);
             log.finer("Response message has body, writing bytes to stream...");
-            IO.writeBytes(getResponse().getOutputStream(), responseBodyBytes);
+            responseMessage.writeBody(getResponse().getOutputStream());
+        } else if (responseMessage.isBodyStreamed()) {
+            // Without a content length, the container uses chunked transfer coding
+            log.finer("Response message has streamed body, writing bytes to stream...");
+            responseMessage.writeBody(getResponse().getOutputStream());
         }
     }
 
@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2013 4th Line GmbH, Switzerland
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * Lesser General Public License Version 2 or later ("LGPL") or the
+ * Common Development and Distribution License Version 1 or later
+ * ("CDDL") (collectively, the "License"). You may not use this file
+ * except in compliance with the License. See LICENSE.txt for more
+ * information.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+
+package com.cling.transport.impl;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Reads message bodies of stream transports into buffers without copying them again.
+ * <p>
+ * The returned buffers are handed to {@link com.cling.model.message.UpnpMessage#setBodyCharacters(ByteBuffer)}
+ * or set as a <code>BYTES</code> body, their bytes are decoded only if a protocol reads the body
+ * as a string.
+ * </p>
+ *
+ * @author Christian Bauer
+ */
+public class BodyBuffers {
+
+    // Don't trust larger Content-Length values when allocating
+    public static final int MAX_PREALLOCATED_BYTES = 1024 * 1024;
+
+    /**
+     * A growing output buffer, its bytes are available as a buffer without a copy.
+     */
+    public static class Output extends ByteArrayOutputStream {
+
+        public Output() {
+        }
+
+        public Output(int size) {
+            super(size);
+        }
+
+        public ByteBuffer toByteBuffer() {
+            return ByteBuffer.wrap(buf, 0, count);
+        }
+    }
+
+    /**
+     * @return The value of a <code>Content-Length</code> header, or <code>-1</code> if it's missing or invalid.
+     */
+    public static int contentLength(String value) {
+        if (value == null) return -1;
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException ex) {
+            return -1;
+        }
+    }
+
+    /**
+     * Reads the stream until its end, but doesn't close it.
+     *
+     * @param contentLength The expected number of bytes, the buffer is allocated once if known,
+     *                      <code>-1</code> if unknown.
+     * @return The bytes read, possibly fewer than expected if the stream ended early.
+     */
+    public static ByteBuffer read(InputStream in, long contentLength) throws IOException {
+        if (in == null)
+            return ByteBuffer.allocate(0);
+
+        if (contentLength >= 0 && contentLength <= MAX_PREALLOCATED_BYTES) {
+            byte[] data = new byte[(int) contentLength];
+            int offset = 0;
+            int count;
+            while (offset < data.length && (count = in.read(data, offset, data.length - offset)) != -1) {
+                offset += count;
+            }
+            return ByteBuffer.wrap(data, 0, offset);
+        }
+
+        Output out = new Output(contentLength > 0 ? MAX_PREALLOCATED_BYTES : 4096);
+        byte[] chunk = new byte[4096];
+        int count;
+        while ((count = in.read(chunk)) != -1) {
+            out.write(chunk, 0, count);
+        }
+        return out.toByteBuffer();
+    }
+}
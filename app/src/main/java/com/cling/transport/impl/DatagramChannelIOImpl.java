@@ -0,0 +1,213 @@
+/*
+ * Copyright (C) 2013 4th Line GmbH, Switzerland
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * Lesser General Public License Version 2 or later ("LGPL") or the
+ * Common Development and Distribution License Version 1 or later
+ * ("CDDL") (collectively, the "License"). You may not use this file
+ * except in compliance with the License. See LICENSE.txt for more
+ * information.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+
+package com.cling.transport.impl;
+
+import static com.test.dlna.service.Config.UPNP_LOCAL_MULTICAST_PORT;
+
+import com.cling.model.UnsupportedDataException;
+import com.cling.model.message.IncomingDatagramMessage;
+import com.cling.model.message.OutgoingDatagramMessage;
+import com.cling.transport.Router;
+import com.cling.transport.spi.DatagramIO;
+import com.cling.transport.spi.DatagramProcessor;
+import com.cling.transport.spi.InitializationException;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.NetworkInterface;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Non-blocking implementation based on a <code>DatagramChannel</code>, served by a shared
+ * {@link DatagramChannelSelector}.
+ * <p>
+ * Datagrams are sent immediately by the calling thread if the socket send buffer has space,
+ * otherwise they are queued and sent by the selection loop when the channel is writable.
+ * Sending never blocks and this service has no synchronized methods.
+ * </p>
+ * <p>
+ * Use this implementation together with {@link DatagramChannelMulticastReceiverImpl} and
+ * the same selector instance, by overriding the <code>createDatagramIO()</code> and
+ * <code>createMulticastReceiver()</code> methods of your
+ * {@link com.cling.UpnpServiceConfiguration}.
+ * </p>
+ *
+ * @author Christian Bauer
+ */
+public class DatagramChannelIOImpl implements DatagramIO<DatagramIOConfigurationImpl>, DatagramChannelSelector.Handler {
+
+    private static Logger log = Logger.getLogger(DatagramIO.class.getName());
+
+    protected static class Outgoing {
+
+        final ByteBuffer buffer;
+        final SocketAddress target;
+
+        Outgoing(ByteBuffer buffer, SocketAddress target) {
+            this.buffer = buffer;
+            this.target = target;
+        }
+    }
+
+    final protected DatagramIOConfigurationImpl configuration;
+    final protected DatagramChannelSelector selector;
+    final protected Queue<Outgoing> outgoing = new ConcurrentLinkedQueue<Outgoing>();
+
+    protected Router router;
+    protected DatagramProcessor datagramProcessor;
+
+    protected InetSocketAddress localAddress;
+    protected DatagramChannel channel; // For sending unicast & multicast, and reveiving unicast
+
+    public DatagramChannelIOImpl(DatagramIOConfigurationImpl configuration, DatagramChannelSelector selector) {
+        this.configuration = configuration;
+        this.selector = selector;
+    }
+
+    public DatagramIOConfigurationImpl getConfiguration() {
+        return configuration;
+    }
+
+    synchronized public void init(InetAddress bindAddress, Router router, DatagramProcessor datagramProcessor) throws InitializationException {
+
+        this.router = router;
+        this.datagramProcessor = datagramProcessor;
+
+        try {
+
+            // See DatagramIOImpl, we don't use the 1900 port here
+            log.info("Creating bound channel (for datagram input/output) on: " + bindAddress);
+            localAddress = new InetSocketAddress(bindAddress, UPNP_LOCAL_MULTICAST_PORT);
+
+            channel = DatagramChannel.open(
+                    bindAddress instanceof Inet6Address ? StandardProtocolFamily.INET6 : StandardProtocolFamily.INET
+            );
+            channel.setOption(StandardSocketOptions.SO_REUSEADDR, true); // As a MulticastSocket does
+            channel.setOption(StandardSocketOptions.SO_RCVBUF, 262144); // Keep a backlog of incoming datagrams if we are not fast enough
+            channel.bind(localAddress);
+
+            channel.setOption(StandardSocketOptions.IP_MULTICAST_TTL, configuration.getTimeToLive());
+            NetworkInterface networkInterface = NetworkInterface.getByInetAddress(bindAddress);
+            if (networkInterface != null)
+                channel.setOption(StandardSocketOptions.IP_MULTICAST_IF, networkInterface);
+
+            selector.register(channel, this);
+
+        } catch (Exception ex) {
+            throw new InitializationException("Could not initialize " + getClass().getSimpleName() + ": " + ex);
+        }
+    }
+
+    public void stop() {
+        DatagramChannel channel = this.channel;
+        if (channel != null && channel.isOpen()) {
+            selector.unregister(channel);
+        }
+        Outgoing pending;
+        while ((pending = outgoing.poll()) != null) {
+            selector.releaseBuffer(pending.buffer);
+        }
+    }
+
+    /**
+     * Runs the shared selection loop, if no other service is running it already.
+     */
+    public void run() {
+        selector.run();
+    }
+
+    public int getMaxDatagramBytes() {
+        return getConfiguration().getMaxDatagramBytes();
+    }
+
+    public void received(DatagramPacket datagram) {
+        if (log.isLoggable(Level.FINE)) {
+            log.fine(
+                    "UDP datagram received from: "
+                            + datagram.getAddress().getHostAddress()
+                            + ":" + datagram.getPort()
+                            + " on: " + localAddress
+            );
+        }
+        try {
+            IncomingDatagramMessage message = datagramProcessor.read(localAddress.getAddress(), datagram);
+            if (message != null)
+                router.received(message);
+        } catch (UnsupportedDataException ex) {
+            log.info("Could not read datagram: " + ex.getMessage());
+        }
+    }
+
+    public void writable() {
+        Outgoing pending;
+        while ((pending = outgoing.peek()) != null) {
+            if (!send(pending)) return;
+            outgoing.poll();
+        }
+        selector.setWriteInterest(channel, false);
+        if (!outgoing.isEmpty())
+            selector.setWriteInterest(channel, true);
+    }
+
+    public void send(OutgoingDatagramMessage message) {
+        log.fine("Sending message from address: " + localAddress);
+        DatagramPacket packet = datagramProcessor.write(message);
+        log.fine("Sending UDP datagram packet to: " + message.getDestinationAddress() + ":" + message.getDestinationPort());
+        send(packet);
+    }
+
+    public void send(DatagramPacket datagram) {
+        log.fine("Sending message from address: " + localAddress);
+
+        ByteBuffer buffer = selector.acquireBuffer(datagram.getLength());
+        buffer.put(datagram.getData(), datagram.getOffset(), datagram.getLength());
+        buffer.flip();
+        Outgoing pending = new Outgoing(buffer, datagram.getSocketAddress());
+
+        if (outgoing.isEmpty() && send(pending)) return;
+
+        log.fine("Socket send buffer is full, queuing datagram to: " + datagram.getAddress());
+        outgoing.add(pending);
+        selector.setWriteInterest(channel, true);
+    }
+
+    /**
+     * @return <code>false</code> if the datagram couldn't be sent now and should be retried.
+     */
+    protected boolean send(Outgoing pending) {
+        try {
+            if (channel.send(pending.buffer, pending.target) == 0) return false;
+        } catch (ClosedChannelException ex) {
+            log.fine("Channel closed, aborting datagram send to: " + pending.target);
+        } catch (IOException ex) {
+            log.log(Level.SEVERE, "Exception sending datagram to: " + pending.target + ": " + ex, ex);
+        }
+        selector.releaseBuffer(pending.buffer);
+        return true;
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright (C) 2013 4th Line GmbH, Switzerland
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * Lesser General Public License Version 2 or later ("LGPL") or the
+ * Common Development and Distribution License Version 1 or later
+ * ("CDDL") (collectively, the "License"). You may not use this file
+ * except in compliance with the License. See LICENSE.txt for more
+ * information.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+
+package com.cling.transport.impl;
+
+import com.cling.model.UnsupportedDataException;
+import com.cling.model.message.IncomingDatagramMessage;
+import com.cling.transport.Router;
+import com.cling.transport.spi.DatagramProcessor;
+import com.cling.transport.spi.InitializationException;
+import com.cling.transport.spi.MulticastReceiver;
+import com.cling.transport.spi.NetworkAddressFactory;
+
+import java.net.DatagramPacket;
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.NetworkInterface;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.MembershipKey;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Non-blocking implementation based on a <code>DatagramChannel</code>, served by a shared
+ * {@link DatagramChannelSelector}.
+ * <p>
+ * The multicast group is joined on the given network interface with a <code>MembershipKey</code>,
+ * which is dropped before the channel is closed.
+ * </p>
+ *
+ * @author Christian Bauer
+ */
+public class DatagramChannelMulticastReceiverImpl
+        implements MulticastReceiver<MulticastReceiverConfigurationImpl>, DatagramChannelSelector.Handler {
+
+    private static Logger log = Logger.getLogger(MulticastReceiver.class.getName());
+
+    final protected MulticastReceiverConfigurationImpl configuration;
+    final protected DatagramChannelSelector selector;
+
+    protected Router router;
+    protected NetworkAddressFactory networkAddressFactory;
+    protected DatagramProcessor datagramProcessor;
+
+    protected NetworkInterface multicastInterface;
+    protected InetSocketAddress multicastAddress;
+    protected DatagramChannel channel;
+    protected MembershipKey membershipKey;
+
+    public DatagramChannelMulticastReceiverImpl(MulticastReceiverConfigurationImpl configuration,
+                                                DatagramChannelSelector selector) {
+        this.configuration = configuration;
+        this.selector = selector;
+    }
+
+    public MulticastReceiverConfigurationImpl getConfiguration() {
+        return configuration;
+    }
+
+    synchronized public void init(NetworkInterface networkInterface,
+                                  Router router,
+                                  NetworkAddressFactory networkAddressFactory,
+                                  DatagramProcessor datagramProcessor) throws InitializationException {
+
+        this.router = router;
+        this.networkAddressFactory = networkAddressFactory;
+        this.datagramProcessor = datagramProcessor;
+        this.multicastInterface = networkInterface;
+
+        try {
+
+            log.info("Creating wildcard channel (for receiving multicast datagrams) on port: " + configuration.getPort());
+            multicastAddress = new InetSocketAddress(configuration.getGroup(), configuration.getPort());
+
+            channel = DatagramChannel.open(
+                    configuration.getGroup() instanceof Inet6Address
+                            ? StandardProtocolFamily.INET6
+                            : StandardProtocolFamily.INET
+            );
+            channel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+            channel.setOption(StandardSocketOptions.SO_RCVBUF, 32768); // Keep a backlog of incoming datagrams if we are not fast enough
+            channel.bind(new InetSocketAddress(configuration.getPort()));
+
+            log.info("Joining multicast group: " + multicastAddress + " on network interface: " + multicastInterface.getDisplayName());
+            membershipKey = channel.join(configuration.getGroup(), multicastInterface);
+
+            selector.register(channel, this);
+
+        } catch (Exception ex) {
+            if (channel != null)
+                selector.unregister(channel);
+            throw new InitializationException("Could not initialize " + getClass().getSimpleName() + ": " + ex);
+        }
+    }
+
+    synchronized public void stop() {
+        if (membershipKey != null && membershipKey.isValid()) {
+            log.fine("Leaving multicast group");
+            membershipKey.drop();
+        }
+        if (channel != null && channel.isOpen()) {
+            selector.unregister(channel);
+        }
+    }
+
+    /**
+     * Runs the shared selection loop, if no other service is running it already.
+     */
+    public void run() {
+        selector.run();
+    }
+
+    public int getMaxDatagramBytes() {
+        return getConfiguration().getMaxDatagramBytes();
+    }
+
+    public void received(DatagramPacket datagram) {
+        InetAddress receivedOnLocalAddress =
+                networkAddressFactory.getLocalAddress(
+                        multicastInterface,
+                        multicastAddress.getAddress() instanceof Inet6Address,
+                        datagram.getAddress()
+                );
+
+        if (log.isLoggable(Level.FINE)) {
+            log.fine(
+                    "UDP datagram received from: " + datagram.getAddress().getHostAddress()
+                            + ":" + datagram.getPort()
+                            + " on local interface: " + multicastInterface.getDisplayName()
+                            + " and address: " + receivedOnLocalAddress.getHostAddress()
+            );
+        }
+
+        try {
+            IncomingDatagramMessage message = datagramProcessor.read(receivedOnLocalAddress, datagram);
+            if (message != null)
+                router.received(message);
+        } catch (UnsupportedDataException ex) {
+            log.info("Could not read datagram: " + ex.getMessage());
+        }
+    }
+
+    public void writable() {
+        // Nothing is sent on this channel
+    }
+}
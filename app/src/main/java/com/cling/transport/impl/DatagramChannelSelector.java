@@ -0,0 +1,263 @@
+/*
+ * Copyright (C) 2013 4th Line GmbH, Switzerland
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * Lesser General Public License Version 2 or later ("LGPL") or the
+ * Common Development and Distribution License Version 1 or later
+ * ("CDDL") (collectively, the "License"). You may not use this file
+ * except in compliance with the License. See LICENSE.txt for more
+ * information.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+
+package com.cling.transport.impl;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A single <code>Selector</code> serving the non-blocking datagram channels of
+ * {@link DatagramChannelIOImpl} and {@link DatagramChannelMulticastReceiverImpl}.
+ * <p>
+ * Share one instance between all datagram services of a UPnP stack. The first service
+ * executed by the {@link com.cling.transport.Router} runs the selection loop, the
+ * <code>run()</code> methods of all other services return immediately. The loop ends when
+ * all channels have been closed, and is started again by the next executed service.
+ * </p>
+ * <p>
+ * Received datagrams are read into a single direct buffer owned by the loop thread. Outgoing
+ * datagrams are copied into pooled direct buffers, so the channel doesn't have to copy them
+ * again before sending.
+ * </p>
+ *
+ * @author Christian Bauer
+ */
+public class DatagramChannelSelector implements Runnable {
+
+    private static Logger log = Logger.getLogger(DatagramChannelSelector.class.getName());
+
+    // The largest possible UDP payload
+    public static final int MAX_DATAGRAM_BYTES = 65507;
+
+    /**
+     * Callbacks of a registered channel, called on the thread of the selection loop.
+     */
+    public interface Handler {
+
+        /**
+         * @return The maximum number of bytes read of a datagram, the rest is discarded.
+         */
+        int getMaxDatagramBytes();
+
+        /**
+         * @param datagram Only valid for the duration of the call, its data is reused.
+         */
+        void received(DatagramPacket datagram);
+
+        /**
+         * Called when datagrams can be sent again after {@link #setWriteInterest(DatagramChannel, boolean)}.
+         */
+        void writable();
+    }
+
+    // Keep other channels from starving if one is flooded
+    protected static final int MAX_READS_PER_SELECTION = 64;
+
+    final protected int bufferBytes;
+    final protected BlockingQueue<ByteBuffer> bufferPool;
+    final protected Queue<Runnable> pendingOperations = new ConcurrentLinkedQueue<Runnable>();
+    final protected AtomicBoolean running = new AtomicBoolean();
+
+    protected Selector selector;
+
+    /**
+     * Defaults to 16 pooled buffers of 1024 bytes.
+     */
+    public DatagramChannelSelector() {
+        this(1024, 16);
+    }
+
+    /**
+     * @param bufferBytes The size of a pooled send buffer, larger datagrams are sent with a temporary buffer.
+     * @param pooledBuffers The maximum number of idle pooled send buffers.
+     */
+    public DatagramChannelSelector(int bufferBytes, int pooledBuffers) {
+        this.bufferBytes = bufferBytes;
+        this.bufferPool = new ArrayBlockingQueue<ByteBuffer>(pooledBuffers);
+    }
+
+    synchronized protected Selector getSelector() throws IOException {
+        if (selector == null)
+            selector = Selector.open();
+        return selector;
+    }
+
+    /**
+     * Switches the channel to non-blocking mode and registers it for reading.
+     */
+    public void register(final DatagramChannel channel, final Handler handler) throws IOException {
+        channel.configureBlocking(false);
+        final Selector selector = getSelector();
+        pendingOperations.add(new Runnable() {
+            public void run() {
+                try {
+                    channel.register(selector, SelectionKey.OP_READ, handler);
+                } catch (ClosedChannelException ex) {
+                    log.fine("Channel closed before registration: " + channel);
+                }
+            }
+        });
+        selector.wakeup();
+    }
+
+    /**
+     * Closes the channel, its registration is cancelled with the next selection.
+     */
+    public void unregister(DatagramChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException ex) {
+            log.fine("Could not close channel: " + ex);
+        }
+        if (selector != null)
+            selector.wakeup();
+    }
+
+    public void setWriteInterest(final DatagramChannel channel, final boolean writeInterest) {
+        if (selector == null) return;
+        pendingOperations.add(new Runnable() {
+            public void run() {
+                SelectionKey key = channel.keyFor(selector);
+                if (key != null && key.isValid()) {
+                    key.interestOps(writeInterest
+                            ? SelectionKey.OP_READ | SelectionKey.OP_WRITE
+                            : SelectionKey.OP_READ);
+                }
+            }
+        });
+        selector.wakeup();
+    }
+
+    /**
+     * @return A cleared buffer with at least the given capacity, return it with {@link #releaseBuffer(ByteBuffer)}.
+     */
+    public ByteBuffer acquireBuffer(int capacity) {
+        if (capacity > bufferBytes)
+            return ByteBuffer.allocateDirect(capacity);
+        ByteBuffer buffer = bufferPool.poll();
+        return buffer != null ? buffer : ByteBuffer.allocateDirect(bufferBytes);
+    }
+
+    public void releaseBuffer(ByteBuffer buffer) {
+        if (buffer.capacity() != bufferBytes) return;
+        buffer.clear();
+        bufferPool.offer(buffer);
+    }
+
+    /**
+     * Runs the selection loop until all registered channels have been closed, returns
+     * immediately if another thread is already running the loop.
+     */
+    public void run() {
+        if (!running.compareAndSet(false, true)) {
+            log.fine("Selection loop is already running in another thread");
+            return;
+        }
+
+        log.fine("Entering selection loop, listening for UDP datagrams on all registered channels");
+        ByteBuffer buffer = ByteBuffer.allocateDirect(MAX_DATAGRAM_BYTES);
+        byte[] data = new byte[MAX_DATAGRAM_BYTES];
+        DatagramPacket datagram = new DatagramPacket(data, data.length);
+
+        try {
+            Selector selector = getSelector();
+            while (true) {
+                runPendingOperations();
+
+                if (selector.keys().isEmpty()) {
+                    running.set(false);
+                    // A channel might have been registered after we checked the pending operations
+                    if (pendingOperations.isEmpty() || !running.compareAndSet(false, true))
+                        break;
+                    continue;
+                }
+
+                selector.select();
+
+                Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+                while (it.hasNext()) {
+                    SelectionKey key = it.next();
+                    it.remove();
+                    if (!key.isValid()) continue;
+
+                    Handler handler = (Handler) key.attachment();
+                    if (key.isWritable())
+                        handler.writable();
+                    if (key.isValid() && key.isReadable())
+                        read(key, handler, buffer, datagram);
+                }
+            }
+        } catch (IOException ex) {
+            running.set(false);
+            log.log(Level.SEVERE, "Selection loop failed: " + ex, ex);
+        }
+        log.fine("Selection loop ended, no channels registered");
+    }
+
+    protected void runPendingOperations() {
+        Runnable operation;
+        while ((operation = pendingOperations.poll()) != null) {
+            operation.run();
+        }
+    }
+
+    protected void read(SelectionKey key, Handler handler, ByteBuffer buffer, DatagramPacket datagram) {
+        DatagramChannel channel = (DatagramChannel) key.channel();
+        byte[] data = datagram.getData();
+        for (int i = 0; i < MAX_READS_PER_SELECTION; i++) {
+            SocketAddress source;
+            try {
+                buffer.clear();
+                buffer.limit(Math.min(handler.getMaxDatagramBytes(), buffer.capacity()));
+                if ((source = channel.receive(buffer)) == null) return;
+            } catch (ClosedChannelException ex) {
+                log.fine("Channel closed");
+                key.cancel();
+                return;
+            } catch (IOException ex) {
+                log.fine("Could not receive datagram: " + ex);
+                return;
+            }
+
+            buffer.flip();
+            int length = buffer.remaining();
+            buffer.get(data, 0, length);
+            datagram.setData(data, 0, length);
+            datagram.setSocketAddress(source);
+
+            try {
+                handler.received(datagram);
+            } catch (RuntimeException ex) {
+                log.log(Level.WARNING, "Handling received datagram failed: " + ex, ex);
+            }
+        }
+    }
+
+}
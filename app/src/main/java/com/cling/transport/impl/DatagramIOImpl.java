@@ -18,6 +18,7 @@ package com.cling.transport.impl;
 import static com.test.dlna.service.Config.UPNP_LOCAL_MULTICAST_PORT;
 
 import com.cling.model.UnsupportedDataException;
+import com.cling.model.message.IncomingDatagramMessage;
 import com.cling.model.message.OutgoingDatagramMessage;
 import com.cling.transport.Router;
 import com.cling.transport.spi.DatagramIO;
@@ -107,11 +108,14 @@ public class DatagramIOImpl implements DatagramIO<DatagramIOConfigurationImpl> {
     public void run() {
         log.fine("Entering blocking receiving loop, listening for UDP datagrams on: " + socket.getLocalAddress());
 
+        // The buffer is reused for every datagram, the processor only reads the received length
+        byte[] buf = new byte[getConfiguration().getMaxDatagramBytes()];
+        DatagramPacket datagram = new DatagramPacket(buf, buf.length);
+
         while (true) {
 
             try {
-                byte[] buf = new byte[getConfiguration().getMaxDatagramBytes()];
-                DatagramPacket datagram = new DatagramPacket(buf, buf.length);
+                datagram.setData(buf, 0, buf.length);
 
                 socket.receive(datagram);
 
@@ -123,7 +127,9 @@ public class DatagramIOImpl implements DatagramIO<DatagramIOConfigurationImpl> {
                 );
 
 
-                router.received(datagramProcessor.read(localAddress.getAddress(), datagram));
+                IncomingDatagramMessage message = datagramProcessor.read(localAddress.getAddress(), datagram);
+                if (message != null)
+                    router.received(message);
 
             } catch (SocketException ex) {
                 log.fine("Socket closed");
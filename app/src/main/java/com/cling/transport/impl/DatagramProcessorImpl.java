@@ -18,6 +18,7 @@ package com.cling.transport.impl;
 import com.cling.model.UnsupportedDataException;
 import com.cling.model.message.IncomingDatagramMessage;
 import com.cling.model.message.OutgoingDatagramMessage;
+import com.cling.model.message.PreparedDatagramMessage;
 import com.cling.model.message.UpnpHeaders;
 import com.cling.model.message.UpnpOperation;
 import com.cling.model.message.UpnpRequest;
@@ -49,11 +50,13 @@ public class DatagramProcessorImpl implements DatagramProcessor {
 
             if (log.isLoggable(Level.FINER)) {
                 log.finer("===================================== DATAGRAM BEGIN ============================================");
-                log.finer(new String(datagram.getData()));
+                log.finer(new String(datagram.getData(), datagram.getOffset(), datagram.getLength()));
                 log.finer("-===================================== DATAGRAM END =============================================");
             }
 
-            ByteArrayInputStream is = new ByteArrayInputStream(datagram.getData());
+            // Only read the received bytes, the receiver might reuse a larger buffer
+            ByteArrayInputStream is =
+                    new ByteArrayInputStream(datagram.getData(), datagram.getOffset(), datagram.getLength());
 
             String[] startLine = Headers.readLine(is).split(" ");
             if (startLine[0].startsWith("HTTP/1.")) {
@@ -69,6 +72,12 @@ public class DatagramProcessorImpl implements DatagramProcessor {
 
     public DatagramPacket write(OutgoingDatagramMessage message) throws UnsupportedDataException {
 
+        if (message instanceof PreparedDatagramMessage) {
+            byte[] data = ((PreparedDatagramMessage) message).getData();
+            log.fine("Writing prepared datagram packet with " + data.length + " bytes for: " + message);
+            return new DatagramPacket(data, data.length, message.getDestinationAddress(), message.getDestinationPort());
+        }
+
         StringBuilder statusLine = new StringBuilder();
 
         UpnpOperation operation = message.getOperation();
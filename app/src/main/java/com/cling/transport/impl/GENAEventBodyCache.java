@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2013 4th Line GmbH, Switzerland
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * Lesser General Public License Version 2 or later ("LGPL") or the
+ * Common Development and Distribution License Version 1 or later
+ * ("CDDL") (collectively, the "License"). You may not use this file
+ * except in compliance with the License. See LICENSE.txt for more
+ * information.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+
+package com.cling.transport.impl;
+
+import com.cling.model.state.StateVariableValue;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Encoded GENA event message bodies of the most recent state changes.
+ * <p>
+ * A {@link com.cling.model.ServiceManager} fires a state change with new {@link StateVariableValue}
+ * instances to all {@link com.cling.model.gena.LocalGENASubscription}s of a service, and each
+ * subscription sends the same values to its subscriber. The body is keyed by the identity of these
+ * value instances, independent of their order, so it is only encoded once and then shared by the
+ * event messages of all subscribers. Subscriptions which moderated a different set of values get
+ * their own body.
+ * </p>
+ *
+ * @author Christian Bauer
+ */
+public class GENAEventBodyCache {
+
+    protected static final int MAX_ENTRIES = 32;
+
+    protected static class Key {
+
+        final StateVariableValue[] values;
+        final int hashCode;
+
+        Key(Collection<StateVariableValue> values) {
+            this.values = values.toArray(new StateVariableValue[values.size()]);
+            int hash = 0;
+            for (StateVariableValue value : this.values) {
+                hash += System.identityHashCode(value);
+            }
+            this.hashCode = hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key that = (Key) o;
+            if (hashCode != that.hashCode || values.length != that.values.length) return false;
+            for (StateVariableValue value : values) {
+                if (!that.contains(value)) return false;
+            }
+            return true;
+        }
+
+        boolean contains(StateVariableValue value) {
+            for (StateVariableValue v : values) {
+                if (v == value) return true;
+            }
+            return false;
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+
+    final protected Map<Key, byte[]> bodies = new LinkedHashMap<Key, byte[]>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, byte[]> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+
+    /**
+     * @return The encoded body of an event with exactly these value instances, or <code>null</code>.
+     */
+    synchronized public byte[] get(Collection<StateVariableValue> values) {
+        return bodies.get(new Key(values));
+    }
+
+    /**
+     * @param body The encoded body, must not be modified afterwards.
+     */
+    synchronized public void put(Collection<StateVariableValue> values, byte[] body) {
+        bodies.put(new Key(values), body);
+    }
+
+    synchronized public void clear() {
+        bodies.clear();
+    }
+}
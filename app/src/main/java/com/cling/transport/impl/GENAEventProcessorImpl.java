@@ -17,6 +17,7 @@ package com.cling.transport.impl;
 
 import com.cling.model.Constants;
 import com.cling.model.UnsupportedDataException;
+import com.cling.model.XMLPool;
 import com.cling.model.XMLUtil;
 import com.cling.model.message.UpnpMessage;
 import com.cling.model.message.gena.IncomingEventRequestMessage;
@@ -30,20 +31,18 @@ import org.w3c.dom.Element;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
 import org.xml.sax.ErrorHandler;
-import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
 import org.xml.sax.SAXParseException;
 
-import java.io.StringReader;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.FactoryConfigurationError;
-
 /**
  * Default implementation based on the <em>W3C DOM</em> XML processing API.
+ * <p>
+ * Written event bodies are shared through a {@link GENAEventBodyCache}, all subscribers of a
+ * state change receive the same encoded bytes.
+ * </p>
  *
  * @author Christian Bauer
  */
@@ -51,27 +50,32 @@ public class GENAEventProcessorImpl implements GENAEventProcessor, ErrorHandler
 
     private static Logger log = Logger.getLogger(GENAEventProcessor.class.getName());
 
-    protected DocumentBuilderFactory createDocumentBuilderFactory() throws FactoryConfigurationError {
-        return DocumentBuilderFactory.newInstance();
-    }
+    final protected GENAEventBodyCache eventBodyCache = new GENAEventBodyCache();
 
     public void writeBody(OutgoingEventRequestMessage requestMessage) throws UnsupportedDataException {
         log.fine("Writing body of: " + requestMessage);
 
+        byte[] body = eventBodyCache.get(requestMessage.getStateVariableValues());
+        if (body != null) {
+            log.fine("Reusing body written for another subscriber of the same event");
+            requestMessage.setBody(UpnpMessage.BodyType.BYTES, body);
+            return;
+        }
+
         try {
 
-            DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-            factory.setNamespaceAware(true);
-            Document d = factory.newDocumentBuilder().newDocument();
+            Document d = XMLPool.newDocument();
             Element propertysetElement = writePropertysetElement(d);
 
             writeProperties(d, propertysetElement, requestMessage);
 
-            requestMessage.setBody(UpnpMessage.BodyType.STRING, toString(d));
+            body = toString(d).getBytes("UTF-8");
+            eventBodyCache.put(requestMessage.getStateVariableValues(), body);
+            requestMessage.setBody(UpnpMessage.BodyType.BYTES, body);
 
             if (log.isLoggable(Level.FINER)) {
                 log.finer("===================================== GENA BODY BEGIN ============================================");
-                log.finer(requestMessage.getBody().toString());
+                log.finer(requestMessage.getBodyString());
                 log.finer("====================================== GENA BODY END =============================================");
             }
 
@@ -92,14 +96,7 @@ public class GENAEventProcessorImpl implements GENAEventProcessor, ErrorHandler
         String body = getMessageBody(requestMessage);
         try {
 
-            DocumentBuilderFactory factory = createDocumentBuilderFactory();
-            factory.setNamespaceAware(true);
-            DocumentBuilder documentBuilder = factory.newDocumentBuilder();
-            documentBuilder.setErrorHandler(this);
-
-            Document d = documentBuilder.parse(
-                    new InputSource(new StringReader(body))
-            );
+            Document d = XMLPool.parse(body, this);
 
             Element propertysetElement = readPropertysetElement(d);
 
@@ -26,12 +26,12 @@ import com.cling.transport.spi.UpnpStream;
 import com.sun.net.httpserver.HttpExchange;
 
 import org.seamless.util.Exceptions;
-import org.seamless.util.io.IO;
 
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.HttpURLConnection;
+import java.nio.ByteBuffer;
 import java.util.Locale;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -90,24 +90,27 @@ public abstract class HttpExchangeUpnpStream extends UpnpStream {
             requestMessage.setHeaders(new UpnpHeaders(getHttpExchange().getRequestHeaders()));
 
             // Body
-            byte[] bodyBytes;
+            ByteBuffer bodyBytes;
             InputStream is = null;
             try {
                 is = getHttpExchange().getRequestBody();
-                bodyBytes = IO.readBytes(is);
+                bodyBytes = BodyBuffers.read(
+                        is,
+                        BodyBuffers.contentLength(getHttpExchange().getRequestHeaders().getFirst("Content-Length"))
+                );
             } finally {
                 if (is != null)
                     is.close();
             }
 
-            log.fine("Reading request body bytes: " + bodyBytes.length);
+            log.fine("Reading request body bytes: " + bodyBytes.remaining());
 
-            if (bodyBytes.length > 0 && requestMessage.isContentTypeMissingOrText()) {
+            if (bodyBytes.hasRemaining() && requestMessage.isContentTypeMissingOrText()) {
 
-                log.fine("Request contains textual entity body, converting then setting string on message");
+                log.fine("Request contains textual entity body, setting characters on message");
                 requestMessage.setBodyCharacters(bodyBytes);
 
-            } else if (bodyBytes.length > 0) {
+            } else if (bodyBytes.hasRemaining()) {
 
                 log.fine("Request contains binary entity body, setting bytes on message");
                 requestMessage.setBody(UpnpMessage.BodyType.BYTES, bodyBytes);
@@ -128,19 +131,19 @@ public abstract class HttpExchangeUpnpStream extends UpnpStream {
                         responseMessage.getHeaders()
                 );
 
-                // Body
-                byte[] responseBodyBytes = responseMessage.hasBody() ? responseMessage.getBodyBytes() : null;
-                int contentLength = responseBodyBytes != null ? responseBodyBytes.length : -1;
+                // Body, encoded only once, a streamed body is sent with chunked transfer coding (length 0)
+                boolean streamed = responseMessage.isBodyStreamed();
+                int contentLength = streamed ? 0 : responseMessage.hasBody() ? responseMessage.getBodyLength() : -1;
 
                 log.fine("Sending HTTP response message: " + responseMessage + " with content length: " + contentLength);
                 getHttpExchange().sendResponseHeaders(responseMessage.getOperation().getStatusCode(), contentLength);
 
-                if (contentLength > 0) {
+                if (contentLength > 0 || streamed) {
                     log.fine("Response message has body, writing bytes to stream...");
                     OutputStream os = null;
                     try {
                         os = getHttpExchange().getResponseBody();
-                        IO.writeBytes(os, responseBodyBytes);
+                        responseMessage.writeBody(os);
                         os.flush();
                     } finally {
                         if (os != null)
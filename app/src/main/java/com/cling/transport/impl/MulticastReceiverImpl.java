@@ -16,6 +16,7 @@
 package com.cling.transport.impl;
 
 import com.cling.model.UnsupportedDataException;
+import com.cling.model.message.IncomingDatagramMessage;
 import com.cling.transport.Router;
 import com.cling.transport.spi.DatagramProcessor;
 import com.cling.transport.spi.InitializationException;
@@ -113,11 +114,14 @@ public class MulticastReceiverImpl implements MulticastReceiver<MulticastReceive
     public void run() {
 
         log.fine("Entering blocking receiving loop, listening for UDP datagrams on: " + socket.getLocalAddress());
+        // The buffer is reused for every datagram, the processor only reads the received length
+        byte[] buf = new byte[getConfiguration().getMaxDatagramBytes()];
+        DatagramPacket datagram = new DatagramPacket(buf, buf.length);
+
         while (true) {
 
             try {
-                byte[] buf = new byte[getConfiguration().getMaxDatagramBytes()];
-                DatagramPacket datagram = new DatagramPacket(buf, buf.length);
+                datagram.setData(buf, 0, buf.length);
 
                 socket.receive(datagram);
 
@@ -135,7 +139,9 @@ public class MulticastReceiverImpl implements MulticastReceiver<MulticastReceive
                                 + " and address: " + receivedOnLocalAddress.getHostAddress()
                 );
 
-                router.received(datagramProcessor.read(receivedOnLocalAddress, datagram));
+                IncomingDatagramMessage message = datagramProcessor.read(receivedOnLocalAddress, datagram);
+                if (message != null)
+                    router.received(message);
 
             } catch (SocketException ex) {
                 log.fine("Socket closed");
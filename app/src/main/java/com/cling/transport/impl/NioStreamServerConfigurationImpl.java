@@ -0,0 +1,85 @@
+/*
+ * Copyright (C) 2013 4th Line GmbH, Switzerland
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * Lesser General Public License Version 2 or later ("LGPL") or the
+ * Common Development and Distribution License Version 1 or later
+ * ("CDDL") (collectively, the "License"). You may not use this file
+ * except in compliance with the License. See LICENSE.txt for more
+ * information.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+
+package com.cling.transport.impl;
+
+/**
+ * Settings for the selector-based {@link NioStreamServerImpl}.
+ *
+ * @author Christian Bauer
+ */
+public class NioStreamServerConfigurationImpl extends StreamServerConfigurationImpl {
+
+    private int ioThreads = 1;
+    private int idleTimeoutMillis = 30000;
+    private int maxHeaderBytes = 16384;
+    private int maxBodyBytes = 1024 * 1024;
+
+    /**
+     * Defaults to port '0', ephemeral.
+     */
+    public NioStreamServerConfigurationImpl() {
+    }
+
+    public NioStreamServerConfigurationImpl(int listenPort) {
+        super(listenPort);
+    }
+
+    /**
+     * @return The number of threads reading and writing connections, default is 1. The first
+     *         runs in the thread executing the server, any others are started by the server.
+     */
+    public int getIoThreads() {
+        return ioThreads;
+    }
+
+    public void setIoThreads(int ioThreads) {
+        this.ioThreads = ioThreads;
+    }
+
+    /**
+     * @return Milliseconds after which a connection without a request in progress is closed,
+     *         default is 30 seconds.
+     */
+    public int getIdleTimeoutMillis() {
+        return idleTimeoutMillis;
+    }
+
+    public void setIdleTimeoutMillis(int idleTimeoutMillis) {
+        this.idleTimeoutMillis = idleTimeoutMillis;
+    }
+
+    /**
+     * @return The maximum size of a request line and its headers, default is 16 kilobytes.
+     */
+    public int getMaxHeaderBytes() {
+        return maxHeaderBytes;
+    }
+
+    public void setMaxHeaderBytes(int maxHeaderBytes) {
+        this.maxHeaderBytes = maxHeaderBytes;
+    }
+
+    /**
+     * @return The maximum size of a request body, default is 1 megabyte.
+     */
+    public int getMaxBodyBytes() {
+        return maxBodyBytes;
+    }
+
+    public void setMaxBodyBytes(int maxBodyBytes) {
+        this.maxBodyBytes = maxBodyBytes;
+    }
+}
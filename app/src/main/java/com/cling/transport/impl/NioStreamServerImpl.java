@@ -0,0 +1,1199 @@
+/*
+ * Copyright (C) 2013 4th Line GmbH, Switzerland
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * Lesser General Public License Version 2 or later ("LGPL") or the
+ * Common Development and Distribution License Version 1 or later
+ * ("CDDL") (collectively, the "License"). You may not use this file
+ * except in compliance with the License. See LICENSE.txt for more
+ * information.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+
+package com.cling.transport.impl;
+
+import com.cling.model.message.Connection;
+import com.cling.model.message.StreamRequestMessage;
+import com.cling.model.message.StreamResponseMessage;
+import com.cling.model.message.UpnpHeaders;
+import com.cling.model.message.UpnpMessage;
+import com.cling.model.message.UpnpRequest;
+import com.cling.model.message.UpnpResponse;
+import com.cling.protocol.ProtocolFactory;
+import com.cling.transport.Router;
+import com.cling.transport.spi.InitializationException;
+import com.cling.transport.spi.StreamServer;
+import com.cling.transport.spi.UpnpStream;
+
+import org.seamless.util.Exceptions;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A selector-based HTTP/1.1 server, serving many persistent connections on a few threads.
+ * <p>
+ * Requests are parsed incrementally as bytes arrive, on the I/O threads of
+ * {@link NioStreamServerConfigurationImpl#getIoThreads()}. Only a complete request, with its
+ * body, is handed to the {@link com.cling.transport.Router} as a {@link UpnpStream} and runs
+ * on the protocol executor. Any request method is accepted, including the UPnP methods
+ * <code>SUBSCRIBE</code>, <code>UNSUBSCRIBE</code>, and <code>NOTIFY</code>.
+ * </p>
+ * <p>
+ * Connections are kept alive according to HTTP/1.1 rules. Pipelined requests of a connection
+ * are processed one after another, so responses are written in request order; reading from the
+ * connection pauses while its buffer is full. A connection without a request in progress is
+ * closed after {@link NioStreamServerConfigurationImpl#getIdleTimeoutMillis()}.
+ * </p>
+ * <p>
+ * The protocol is notified that its response was sent when all bytes have been written to the
+ * connection. Unlike the JDK webserver, the connection state of a request is available with
+ * {@link com.cling.model.message.StreamRequestMessage#getConnection()}.
+ * </p>
+ * <p>
+ * A streamed response body, see {@link UpnpMessage#isBodyStreamed()}, is sent with chunked
+ * transfer coding to HTTP/1.1 clients. The worker thread waits until a chunk has been written
+ * before it queues the next one, so only two chunks of the response are in memory.
+ * </p>
+ *
+ * @author Christian Bauer
+ */
+public class NioStreamServerImpl implements StreamServer<NioStreamServerConfigurationImpl> {
+
+    private static Logger log = Logger.getLogger(StreamServer.class.getName());
+
+    final static protected String CRLF = "\r\n";
+
+    // How often idle connections are closed
+    final static protected int IDLE_CHECK_MILLIS = 1000;
+
+    final static protected int INITIAL_BUFFER_BYTES = 4096;
+
+    // Data bytes of a chunk of a streamed response body
+    final static protected int CHUNK_BYTES = 8192;
+
+    final static protected byte[] CONTINUE;
+
+    final static protected byte[] LAST_CHUNK;
+
+    static {
+        try {
+            CONTINUE = ("HTTP/1.1 100 Continue" + CRLF + CRLF).getBytes("ISO-8859-1");
+            LAST_CHUNK = ("0" + CRLF + CRLF).getBytes("ISO-8859-1");
+        } catch (UnsupportedEncodingException ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+    final protected NioStreamServerConfigurationImpl configuration;
+    final protected AtomicInteger nextLoop = new AtomicInteger();
+
+    protected Router router;
+    protected ServerSocketChannel serverChannel;
+    protected IoLoop[] loops;
+    protected volatile boolean stopped;
+
+    public NioStreamServerImpl(NioStreamServerConfigurationImpl configuration) {
+        this.configuration = configuration;
+    }
+
+    synchronized public void init(InetAddress bindAddress, Router router) throws InitializationException {
+        try {
+            this.router = router;
+
+            serverChannel = ServerSocketChannel.open();
+            serverChannel.socket().setReuseAddress(true);
+            serverChannel.socket().bind(
+                    new InetSocketAddress(bindAddress, configuration.getListenPort()),
+                    configuration.getTcpConnectionBacklog()
+            );
+            serverChannel.configureBlocking(false);
+
+            loops = new IoLoop[Math.max(1, configuration.getIoThreads())];
+            for (int i = 0; i < loops.length; i++) {
+                loops[i] = new IoLoop(Selector.open());
+            }
+            // The first loop also accepts connections
+            serverChannel.register(loops[0].selector, SelectionKey.OP_ACCEPT);
+
+            log.info("Created server (for receiving TCP streams) on: " + serverChannel.socket().getLocalSocketAddress());
+
+        } catch (Exception ex) {
+            throw new InitializationException("Could not initialize " + getClass().getSimpleName() + ": " + ex.toString(), ex);
+        }
+    }
+
+    synchronized public int getPort() {
+        return serverChannel.socket().getLocalPort();
+    }
+
+    public NioStreamServerConfigurationImpl getConfiguration() {
+        return configuration;
+    }
+
+    public void run() {
+        log.fine("Starting StreamServer...");
+        for (int i = 1; i < loops.length; i++) {
+            Thread thread = new Thread(loops[i], "cling-http-io-" + i);
+            thread.setDaemon(true);
+            thread.start();
+        }
+        loops[0].run();
+    }
+
+    synchronized public void stop() {
+        log.fine("Stopping StreamServer...");
+        stopped = true;
+        if (serverChannel != null) {
+            try {
+                serverChannel.close();
+            } catch (IOException ex) {
+                log.fine("Could not close server channel: " + ex);
+            }
+        }
+        if (loops != null) {
+            for (IoLoop loop : loops) {
+                loop.selector.wakeup();
+            }
+        }
+    }
+
+    protected void accept(IoLoop acceptingLoop) {
+        while (true) {
+            SocketChannel channel;
+            try {
+                if ((channel = serverChannel.accept()) == null)
+                    return;
+                channel.configureBlocking(false);
+                channel.socket().setTcpNoDelay(true);
+            } catch (IOException ex) {
+                log.fine("Could not accept connection: " + ex);
+                return;
+            }
+
+            IoLoop loop = loops[(nextLoop.getAndIncrement() & Integer.MAX_VALUE) % loops.length];
+            if (loop == acceptingLoop) {
+                register(loop, channel);
+            } else {
+                loop.execute(new Registration(loop, channel));
+            }
+        }
+    }
+
+    /**
+     * Registers an accepted channel on the thread of its loop, or closes it if the loop ended first.
+     */
+    protected class Registration implements Runnable {
+
+        final protected IoLoop loop;
+        final protected SocketChannel channel;
+
+        protected Registration(IoLoop loop, SocketChannel channel) {
+            this.loop = loop;
+            this.channel = channel;
+        }
+
+        public void run() {
+            register(loop, channel);
+        }
+
+        protected void cancel() {
+            try {
+                channel.close();
+            } catch (IOException ex) {
+                // Ignore
+            }
+        }
+    }
+
+    protected void register(IoLoop loop, SocketChannel channel) {
+        try {
+            HttpConnection connection = new HttpConnection(loop, channel);
+            connection.key = channel.register(loop.selector, SelectionKey.OP_READ, connection);
+            if (log.isLoggable(Level.FINE))
+                log.fine("Accepted connection: " + connection);
+        } catch (IOException ex) {
+            log.fine("Could not register connection: " + ex);
+            try {
+                channel.close();
+            } catch (IOException closeEx) {
+                // Ignore
+            }
+        }
+    }
+
+    /**
+     * Creates the response bytes, an HTTP 404 if the given message is <code>null</code>.
+     */
+    protected ByteBuffer[] createResponse(StreamResponseMessage responseMessage, Request request)
+            throws UnsupportedEncodingException {
+
+        if (responseMessage == null) {
+            return createResponse(
+                    UpnpResponse.Status.NOT_FOUND.getStatusCode(),
+                    UpnpResponse.Status.NOT_FOUND.getStatusMsg(),
+                    null, null, request.keepAlive, request.minorVersion
+            );
+        }
+        return createResponse(
+                responseMessage.getOperation().getStatusCode(),
+                responseMessage.getOperation().getStatusMessage(),
+                responseMessage.getHeaders(),
+                responseMessage.getBodyBuffer(),
+                request.keepAlive,
+                request.minorVersion
+        );
+    }
+
+    protected ByteBuffer[] createResponse(int statusCode, String statusMessage,
+                                          Map<String, List<String>> headers, ByteBuffer body,
+                                          boolean keepAlive, int minorVersion)
+            throws UnsupportedEncodingException {
+
+        ByteBuffer headBuffer = createResponseHead(
+                statusCode, statusMessage, headers, body != null ? body.remaining() : 0, keepAlive, minorVersion
+        );
+        // The body is written from the message's buffer, without a copy
+        return body != null && body.hasRemaining()
+                ? new ByteBuffer[]{headBuffer, body}
+                : new ByteBuffer[]{headBuffer};
+    }
+
+    /**
+     * @param contentLength The length of the body, or <code>-1</code> if it is sent with chunked transfer coding.
+     */
+    protected ByteBuffer createResponseHead(int statusCode, String statusMessage,
+                                            Map<String, List<String>> headers, int contentLength,
+                                            boolean keepAlive, int minorVersion)
+            throws UnsupportedEncodingException {
+
+        StringBuilder head = new StringBuilder(256);
+        head.append("HTTP/1.1 ").append(statusCode).append(' ').append(statusMessage).append(CRLF);
+        if (headers != null) {
+            for (Map.Entry<String, List<String>> entry : headers.entrySet()) {
+                // We write the framing headers
+                if (entry.getKey().equalsIgnoreCase("Content-Length")
+                        || entry.getKey().equalsIgnoreCase("Transfer-Encoding")
+                        || entry.getKey().equalsIgnoreCase("Connection"))
+                    continue;
+                for (String value : entry.getValue()) {
+                    head.append(entry.getKey()).append(": ").append(value).append(CRLF);
+                }
+            }
+        }
+        if (contentLength >= 0)
+            head.append("Content-Length: ").append(contentLength).append(CRLF);
+        else
+            head.append("Transfer-Encoding: chunked").append(CRLF);
+        if (!keepAlive)
+            head.append("Connection: close").append(CRLF);
+        else if (minorVersion == 0)
+            head.append("Connection: keep-alive").append(CRLF);
+        head.append(CRLF);
+
+        return ByteBuffer.wrap(head.toString().getBytes("ISO-8859-1"));
+    }
+
+    protected ByteBuffer[] createErrorResponse(UpnpResponse.Status status) {
+        try {
+            return createResponse(status.getStatusCode(), status.getStatusMsg(), null, null, false, 1);
+        } catch (UnsupportedEncodingException ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+    /**
+     * A selector and the connections registered with it, all state is accessed on its thread.
+     */
+    protected class IoLoop implements Runnable {
+
+        final protected Selector selector;
+        final protected Queue<Runnable> pendingOperations = new ConcurrentLinkedQueue<Runnable>();
+        protected volatile Thread thread;
+
+        protected IoLoop(Selector selector) {
+            this.selector = selector;
+        }
+
+        public void execute(Runnable operation) {
+            pendingOperations.add(operation);
+            selector.wakeup();
+        }
+
+        public boolean isLoopThread() {
+            return Thread.currentThread() == thread;
+        }
+
+        public void run() {
+            thread = Thread.currentThread();
+            log.fine("Entering I/O loop, serving HTTP connections");
+            long lastIdleCheck = System.currentTimeMillis();
+            try {
+                while (!stopped) {
+                    Runnable operation;
+                    while ((operation = pendingOperations.poll()) != null) {
+                        operation.run();
+                    }
+
+                    selector.select(IDLE_CHECK_MILLIS);
+                    if (stopped) break;
+
+                    Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+                    while (it.hasNext()) {
+                        SelectionKey key = it.next();
+                        it.remove();
+                        if (!key.isValid()) continue;
+
+                        if (key.isAcceptable()) {
+                            accept(this);
+                            continue;
+                        }
+                        HttpConnection connection = (HttpConnection) key.attachment();
+                        try {
+                            if (key.isWritable())
+                                connection.write();
+                            if (key.isValid() && key.isReadable())
+                                connection.read();
+                        } catch (RuntimeException ex) {
+                            log.log(Level.WARNING, "Handling connection failed, closing: " + connection, ex);
+                            connection.close();
+                        }
+                    }
+
+                    long now = System.currentTimeMillis();
+                    if (now - lastIdleCheck >= IDLE_CHECK_MILLIS) {
+                        lastIdleCheck = now;
+                        closeIdleConnections(now);
+                    }
+                }
+            } catch (IOException ex) {
+                if (!stopped)
+                    log.log(Level.SEVERE, "I/O loop failed: " + ex, ex);
+            } finally {
+                for (SelectionKey key : selector.keys()) {
+                    if (key.attachment() instanceof HttpConnection)
+                        ((HttpConnection) key.attachment()).close();
+                }
+                try {
+                    selector.close();
+                } catch (IOException ex) {
+                    // Ignore
+                }
+                // Responses only fail their writes, but channels can't be registered on a closed selector
+                Runnable operation;
+                while ((operation = pendingOperations.poll()) != null) {
+                    if (operation instanceof Registration)
+                        ((Registration) operation).cancel();
+                    else
+                        operation.run();
+                }
+            }
+            log.fine("I/O loop ended");
+        }
+
+        protected void closeIdleConnections(long now) {
+            for (SelectionKey key : selector.keys()) {
+                if (!(key.attachment() instanceof HttpConnection)) continue;
+                HttpConnection connection = (HttpConnection) key.attachment();
+                if (connection.isIdle(now, configuration.getIdleTimeoutMillis())) {
+                    if (log.isLoggable(Level.FINE))
+                        log.fine("Closing idle connection: " + connection);
+                    connection.close();
+                }
+            }
+        }
+    }
+
+    /**
+     * A request parsed by an I/O thread.
+     */
+    static protected class Request {
+
+        protected String method;
+        protected String target;
+        protected int minorVersion;
+        protected UpnpHeaders headers = new UpnpHeaders();
+        protected int headLength;
+        protected int contentLength = -1;
+        protected boolean chunked;
+        protected boolean keepAlive;
+        protected boolean expectContinue;
+        protected ByteBuffer body;
+
+        @Override
+        public String toString() {
+            return method + " " + target + " HTTP/1." + minorVersion;
+        }
+    }
+
+    static protected class HttpParseException extends Exception {
+
+        private static final long serialVersionUID = 3846571902714860931L;
+
+        final protected UpnpResponse.Status status;
+
+        public HttpParseException(UpnpResponse.Status status, String message) {
+            super(message);
+            this.status = status;
+        }
+    }
+
+    /**
+     * Signals the worker thread when its response has been written, or could not be written.
+     */
+    static protected class ResponseWrite {
+
+        final protected CountDownLatch done = new CountDownLatch(1);
+        protected volatile IOException failure;
+
+        protected void completed() {
+            done.countDown();
+        }
+
+        protected void failed(IOException ex) {
+            failure = ex;
+            done.countDown();
+        }
+
+        /**
+         * @return The reason the response was not written, or <code>null</code>.
+         */
+        protected IOException await(long timeoutMillis) throws InterruptedException {
+            if (!done.await(timeoutMillis, TimeUnit.MILLISECONDS))
+                return new IOException("Timeout writing response after " + timeoutMillis + "ms");
+            return failure;
+        }
+    }
+
+    /**
+     * The state of a client connection, only accessed on the thread of its {@link IoLoop},
+     * except for the methods of {@link Connection}.
+     */
+    protected class HttpConnection implements Connection {
+
+        final protected IoLoop loop;
+        final protected SocketChannel channel;
+        final protected Deque<ByteBuffer> output = new ArrayDeque<ByteBuffer>();
+        protected SelectionKey key;
+
+        // Received bytes in write mode, starting with the request being parsed
+        protected ByteBuffer in = ByteBuffer.allocate(INITIAL_BUFFER_BYTES);
+        protected int headerScanned;
+        protected Request request;
+
+        protected boolean inFlight;
+        protected HttpUpnpStream stream;
+        protected ResponseWrite responseWrite;
+        // A chunk of a streamed response, written before the response is complete
+        protected ResponseWrite partWrite;
+        protected boolean closeAfterResponse;
+        protected boolean inputClosed;
+        protected long lastActivity = System.currentTimeMillis();
+        protected volatile boolean closed;
+
+        protected HttpConnection(IoLoop loop, SocketChannel channel) {
+            this.loop = loop;
+            this.channel = channel;
+        }
+
+        public boolean isOpen() {
+            return !closed && channel.isOpen();
+        }
+
+        public InetAddress getRemoteAddress() {
+            return channel.socket().getInetAddress();
+        }
+
+        public InetAddress getLocalAddress() {
+            return channel.socket().getLocalAddress();
+        }
+
+        protected int getMaxRequestBytes() {
+            return configuration.getMaxHeaderBytes() + configuration.getMaxBodyBytes();
+        }
+
+        protected boolean isIdle(long now, int idleTimeoutMillis) {
+            if (now - lastActivity < idleTimeoutMillis)
+                return false;
+            // A stream which never started was dropped by a disabled router or the executor
+            return !inFlight || (stream != null && !stream.started);
+        }
+
+        protected void read() {
+            if (!in.hasRemaining()) {
+                if (inFlight || !grow()) {
+                    // Wait until the current response has been written
+                    updateInterest();
+                    return;
+                }
+            }
+            int count;
+            try {
+                count = channel.read(in);
+            } catch (IOException ex) {
+                if (log.isLoggable(Level.FINE))
+                    log.fine("Could not read from connection, closing: " + this + " - " + ex);
+                close();
+                return;
+            }
+            if (count == -1) {
+                inputClosed = true;
+            } else {
+                lastActivity = System.currentTimeMillis();
+            }
+            processInput();
+        }
+
+        /**
+         * Parses and dispatches requests while no other request of this connection is in progress.
+         */
+        protected void processInput() {
+            while (!inFlight && !closed) {
+                Request complete;
+                try {
+                    complete = parseRequest();
+                } catch (HttpParseException ex) {
+                    if (log.isLoggable(Level.FINE))
+                        log.fine("Invalid HTTP request on connection: " + this + " - " + ex.getMessage());
+                    sendError(ex.status);
+                    return;
+                }
+                if (complete == null) {
+                    if (inputClosed) {
+                        // The client won't send the rest
+                        close();
+                        return;
+                    }
+                    break;
+                }
+                dispatch(complete);
+            }
+            updateInterest();
+        }
+
+        protected Request parseRequest() throws HttpParseException {
+            byte[] data = in.array();
+            int length = in.position();
+
+            if (request == null) {
+                int headEnd = findHeadEnd(data, length);
+                if (headEnd == -1) {
+                    if (length >= configuration.getMaxHeaderBytes())
+                        throw new HttpParseException(UpnpResponse.Status.BAD_REQUEST, "Request head too large");
+                    return null;
+                }
+                request = parseHead(data, headEnd);
+                if (request.contentLength > configuration.getMaxBodyBytes())
+                    throw new HttpParseException(UpnpResponse.Status.BAD_REQUEST, "Request body too large");
+
+                if (request.expectContinue && (request.chunked || request.contentLength > 0)) {
+                    // Don't send this to pipelined clients which already sent the body
+                    if (length == request.headLength)
+                        queueOutput(new ByteBuffer[]{ByteBuffer.wrap(CONTINUE)});
+                }
+            }
+
+            int requestEnd;
+            if (request.chunked) {
+                requestEnd = decodeChunked(data, request.headLength, length);
+                if (requestEnd == -1)
+                    return null;
+            } else {
+                requestEnd = request.headLength + Math.max(0, request.contentLength);
+                if (length < requestEnd) {
+                    ensureCapacity(requestEnd);
+                    return null;
+                }
+                // The connection buffer is reused, the message gets a copy of the body
+                byte[] body = new byte[requestEnd - request.headLength];
+                System.arraycopy(data, request.headLength, body, 0, body.length);
+                request.body = ByteBuffer.wrap(body);
+            }
+
+            // Keep any pipelined bytes of the next request
+            Request complete = request;
+            in.flip();
+            in.position(requestEnd);
+            in.compact();
+            request = null;
+            headerScanned = 0;
+            return complete;
+        }
+
+        /**
+         * @return The offset after the empty line ending the request head, or <code>-1</code>.
+         */
+        protected int findHeadEnd(byte[] data, int length) {
+            for (int i = Math.max(0, headerScanned - 3); i + 3 < length; i++) {
+                if (data[i] == '\r' && data[i + 1] == '\n' && data[i + 2] == '\r' && data[i + 3] == '\n')
+                    return i + 4;
+            }
+            headerScanned = length;
+            return -1;
+        }
+
+        protected Request parseHead(byte[] data, int headEnd) throws HttpParseException {
+            String head;
+            try {
+                head = new String(data, 0, headEnd - 4, "ISO-8859-1");
+            } catch (UnsupportedEncodingException ex) {
+                throw new RuntimeException(ex);
+            }
+            String[] lines = head.split(CRLF);
+
+            Request request = new Request();
+            request.headLength = headEnd;
+
+            // Request line
+            String[] requestLine = lines[0].split(" ");
+            if (requestLine.length != 3)
+                throw new HttpParseException(UpnpResponse.Status.BAD_REQUEST, "Invalid request line: " + lines[0]);
+            request.method = requestLine[0];
+            request.target = requestLine[1];
+            if (requestLine[2].equals("HTTP/1.1")) {
+                request.minorVersion = 1;
+            } else if (requestLine[2].equals("HTTP/1.0")) {
+                request.minorVersion = 0;
+            } else {
+                throw new HttpParseException(UpnpResponse.Status.BAD_REQUEST, "Unsupported protocol: " + requestLine[2]);
+            }
+
+            // Headers, folded lines are appended to the previous header
+            String name = null;
+            StringBuilder value = null;
+            for (int i = 1; i <= lines.length; i++) {
+                String line = i < lines.length ? lines[i] : null;
+                if (line != null && name != null && line.length() > 0
+                        && (line.charAt(0) == ' ' || line.charAt(0) == '\t')) {
+                    value.append(' ').append(line.trim());
+                    continue;
+                }
+                if (name != null)
+                    request.headers.add(name, value.toString());
+                if (line == null)
+                    break;
+                int colon = line.indexOf(':');
+                if (colon <= 0)
+                    throw new HttpParseException(UpnpResponse.Status.BAD_REQUEST, "Invalid header: " + line);
+                name = line.substring(0, colon).trim();
+                value = new StringBuilder(line.substring(colon + 1).trim());
+            }
+
+            String transferEncoding = request.headers.getFirstHeader("Transfer-Encoding");
+            String contentLength = request.headers.getFirstHeader("Content-Length");
+            if (transferEncoding != null && !transferEncoding.equalsIgnoreCase("identity")) {
+                if (!transferEncoding.equalsIgnoreCase("chunked"))
+                    throw new HttpParseException(UpnpResponse.Status.NOT_IMPLEMENTED, "Unsupported transfer coding: " + transferEncoding);
+                request.chunked = true;
+            } else if (contentLength != null) {
+                try {
+                    request.contentLength = Integer.parseInt(contentLength.trim());
+                } catch (NumberFormatException ex) {
+                    throw new HttpParseException(UpnpResponse.Status.BAD_REQUEST, "Invalid Content-Length: " + contentLength);
+                }
+                if (request.contentLength < 0)
+                    throw new HttpParseException(UpnpResponse.Status.BAD_REQUEST, "Invalid Content-Length: " + contentLength);
+            }
+
+            String connection = request.headers.getFirstHeader("Connection");
+            request.keepAlive = request.minorVersion == 1
+                    ? !"close".equalsIgnoreCase(connection)
+                    : "keep-alive".equalsIgnoreCase(connection);
+
+            request.expectContinue = "100-continue".equalsIgnoreCase(request.headers.getFirstHeader("Expect"));
+            return request;
+        }
+
+        /**
+         * Decodes the chunked body into the request once all of it has been received.
+         *
+         * @return The offset after the body and its trailers, or <code>-1</code> if incomplete.
+         */
+        protected int decodeChunked(byte[] data, int offset, int length) throws HttpParseException {
+            BodyBuffers.Output body = new BodyBuffers.Output();
+            int position = offset;
+            while (true) {
+                int lineEnd = findLineEnd(data, position, length);
+                if (lineEnd == -1)
+                    return -1;
+                String sizeLine = new String(data, position, lineEnd - position);
+                int extension = sizeLine.indexOf(';');
+                int size;
+                try {
+                    size = Integer.parseInt((extension != -1 ? sizeLine.substring(0, extension) : sizeLine).trim(), 16);
+                } catch (NumberFormatException ex) {
+                    throw new HttpParseException(UpnpResponse.Status.BAD_REQUEST, "Invalid chunk size: " + sizeLine);
+                }
+                if (size < 0 || body.size() + size > configuration.getMaxBodyBytes())
+                    throw new HttpParseException(UpnpResponse.Status.BAD_REQUEST, "Request body too large");
+                position = lineEnd + 2;
+
+                if (size == 0) {
+                    // Skip trailers until the empty line
+                    while (true) {
+                        lineEnd = findLineEnd(data, position, length);
+                        if (lineEnd == -1)
+                            return -1;
+                        boolean empty = lineEnd == position;
+                        position = lineEnd + 2;
+                        if (empty) {
+                            request.body = body.toByteBuffer();
+                            return position;
+                        }
+                    }
+                }
+
+                if (length < position + size + 2)
+                    return -1;
+                body.write(data, position, size);
+                position += size + 2;
+            }
+        }
+
+        protected int findLineEnd(byte[] data, int offset, int length) {
+            for (int i = offset; i + 1 < length; i++) {
+                if (data[i] == '\r' && data[i + 1] == '\n')
+                    return i;
+            }
+            return -1;
+        }
+
+        protected boolean grow() {
+            if (in.capacity() >= getMaxRequestBytes())
+                return false;
+            ensureCapacity(Math.min(getMaxRequestBytes(), in.capacity() * 2));
+            return true;
+        }
+
+        protected void ensureCapacity(int capacity) {
+            if (in.capacity() >= capacity)
+                return;
+            ByteBuffer larger = ByteBuffer.allocate(capacity);
+            in.flip();
+            larger.put(in);
+            in = larger;
+        }
+
+        protected void dispatch(Request complete) {
+            inFlight = true;
+            if (!complete.keepAlive)
+                closeAfterResponse = true;
+
+            if (log.isLoggable(Level.FINE))
+                log.fine("Received HTTP request: " + complete + " on: " + this);
+
+            UpnpRequest.Method method = UpnpRequest.Method.getByHttpName(complete.method);
+            if (method.equals(UpnpRequest.Method.UNKNOWN)) {
+                log.fine("Method not supported by UPnP stack: " + complete.method);
+                sendError(UpnpResponse.Status.NOT_IMPLEMENTED);
+                return;
+            }
+
+            URI uri;
+            try {
+                uri = URI.create(complete.target);
+            } catch (IllegalArgumentException ex) {
+                log.fine("Invalid request URI: " + complete.target);
+                sendError(UpnpResponse.Status.BAD_REQUEST);
+                return;
+            }
+
+            stream = new HttpUpnpStream(router.getProtocolFactory(), this, complete, method, uri);
+            try {
+                router.received(stream);
+            } catch (RejectedExecutionException ex) {
+                log.warning("Protocol executor rejected HTTP request: " + complete);
+                stream = null;
+                sendError(UpnpResponse.Status.SERVICE_UNAVAILABLE);
+            }
+        }
+
+        /**
+         * Called by the worker thread with the response of the request in progress.
+         */
+        protected ResponseWrite respond(final ByteBuffer[] response, final boolean keepAlive) {
+            final ResponseWrite write = new ResponseWrite();
+            loop.execute(new Runnable() {
+                public void run() {
+                    if (closed) {
+                        write.failed(new ClosedChannelException());
+                        return;
+                    }
+                    if (!keepAlive)
+                        closeAfterResponse = true;
+                    responseWrite = write;
+                    queueOutput(response);
+                }
+            });
+            return write;
+        }
+
+        /**
+         * Called by the worker thread with a part of the response of the request in progress.
+         */
+        protected ResponseWrite respondPart(final ByteBuffer[] part) {
+            final ResponseWrite write = new ResponseWrite();
+            loop.execute(new Runnable() {
+                public void run() {
+                    if (closed) {
+                        write.failed(new ClosedChannelException());
+                        return;
+                    }
+                    partWrite = write;
+                    queueOutput(part);
+                }
+            });
+            return write;
+        }
+
+        /**
+         * Called by the worker thread if a response can't be completed after parts of it have been sent.
+         */
+        protected void abort() {
+            loop.execute(new Runnable() {
+                public void run() {
+                    close();
+                }
+            });
+        }
+
+        protected void sendError(UpnpResponse.Status status) {
+            inFlight = true;
+            closeAfterResponse = true;
+            responseWrite = new ResponseWrite();
+            queueOutput(createErrorResponse(status));
+        }
+
+        protected void queueOutput(ByteBuffer[] buffers) {
+            for (ByteBuffer buffer : buffers) {
+                output.addLast(buffer);
+            }
+            write();
+        }
+
+        protected void write() {
+            try {
+                while (!output.isEmpty()) {
+                    ByteBuffer buffer = output.peekFirst();
+                    channel.write(buffer);
+                    if (buffer.hasRemaining())
+                        break;
+                    output.pollFirst();
+                }
+            } catch (IOException ex) {
+                if (log.isLoggable(Level.FINE))
+                    log.fine("Could not write to connection, closing: " + this + " - " + ex);
+                ResponseWrite failedWrite = responseWrite;
+                ResponseWrite failedPartWrite = partWrite;
+                responseWrite = null;
+                partWrite = null;
+                close();
+                if (failedWrite != null)
+                    failedWrite.failed(ex);
+                if (failedPartWrite != null)
+                    failedPartWrite.failed(ex);
+                return;
+            }
+
+            if (!output.isEmpty()) {
+                updateInterest();
+                return;
+            }
+
+            lastActivity = System.currentTimeMillis();
+            if (partWrite != null) {
+                ResponseWrite completedPartWrite = partWrite;
+                partWrite = null;
+                completedPartWrite.completed();
+            }
+            if (responseWrite != null) {
+                ResponseWrite completedWrite = responseWrite;
+                responseWrite = null;
+                stream = null;
+                inFlight = false;
+                completedWrite.completed();
+                if (closeAfterResponse) {
+                    close();
+                    return;
+                }
+                // Continue with pipelined requests
+                processInput();
+                return;
+            }
+            updateInterest();
+        }
+
+        protected void updateInterest() {
+            if (closed || !key.isValid())
+                return;
+            int ops = 0;
+            if (!output.isEmpty())
+                ops |= SelectionKey.OP_WRITE;
+            if (!inputClosed && (in.hasRemaining() || (!inFlight && in.capacity() < getMaxRequestBytes())))
+                ops |= SelectionKey.OP_READ;
+            key.interestOps(ops);
+        }
+
+        protected void close() {
+            if (closed)
+                return;
+            closed = true;
+            if (key != null)
+                key.cancel();
+            try {
+                channel.close();
+            } catch (IOException ex) {
+                // Ignore
+            }
+            if (responseWrite != null) {
+                responseWrite.failed(new ClosedChannelException());
+                responseWrite = null;
+            }
+            if (partWrite != null) {
+                partWrite.failed(new ClosedChannelException());
+                partWrite = null;
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "(" + getClass().getSimpleName() + ") " + channel.socket().getRemoteSocketAddress();
+        }
+    }
+
+    /**
+     * Runs the protocol for a complete request on the protocol executor.
+     */
+    protected class HttpUpnpStream extends UpnpStream {
+
+        final protected HttpConnection connection;
+        final protected Request request;
+        final protected UpnpRequest.Method method;
+        final protected URI uri;
+        protected volatile boolean started;
+
+        public HttpUpnpStream(ProtocolFactory protocolFactory, HttpConnection connection,
+                              Request request, UpnpRequest.Method method, URI uri) {
+            super(protocolFactory);
+            this.connection = connection;
+            this.request = request;
+            this.method = method;
+            this.uri = uri;
+        }
+
+        public void run() {
+            started = true;
+            StreamResponseMessage responseMessage;
+            ByteBuffer[] response;
+            boolean chunked;
+            try {
+                StreamRequestMessage requestMessage = new StreamRequestMessage(method, uri);
+                requestMessage.getOperation().setHttpMinorVersion(request.minorVersion);
+                requestMessage.setConnection(connection);
+                requestMessage.setHeaders(request.headers);
+
+                ByteBuffer bodyBytes = request.body;
+                if (bodyBytes.hasRemaining() && requestMessage.isContentTypeMissingOrText()) {
+                    log.fine("Request contains textual entity body, setting characters on message");
+                    requestMessage.setBodyCharacters(bodyBytes);
+                } else if (bodyBytes.hasRemaining()) {
+                    log.fine("Request contains binary entity body, setting bytes on message");
+                    requestMessage.setBody(UpnpMessage.BodyType.BYTES, bodyBytes);
+                }
+
+                // Process it
+                responseMessage = process(requestMessage);
+                // An HTTP/1.0 client gets a streamed body with a Content-Length, read into memory
+                chunked = responseMessage != null && responseMessage.isBodyStreamed() && request.minorVersion > 0;
+                response = chunked ? null : createResponse(responseMessage, request);
+
+            } catch (Throwable t) {
+                log.fine("Exception occured during UPnP stream processing: " + t);
+                if (log.isLoggable(Level.FINE)) {
+                    log.log(Level.FINE, "Cause: " + Exceptions.unwrap(t), Exceptions.unwrap(t));
+                }
+                connection.respond(createErrorResponse(UpnpResponse.Status.INTERNAL_SERVER_ERROR), false);
+                responseException(t);
+                return;
+            }
+
+            if (chunked) {
+                respondChunked(responseMessage);
+                return;
+            }
+
+            if (log.isLoggable(Level.FINE))
+                log.fine("Sending HTTP response message: " + responseMessage);
+            awaitResponse(connection.respond(response, request.keepAlive), responseMessage);
+        }
+
+        protected void respondChunked(StreamResponseMessage responseMessage) {
+            if (log.isLoggable(Level.FINE))
+                log.fine("Sending HTTP response message with chunked body: " + responseMessage);
+            ChunkedOutput out = null;
+            ResponseWrite write;
+            try {
+                out = new ChunkedOutput(createResponseHead(
+                        responseMessage.getOperation().getStatusCode(),
+                        responseMessage.getOperation().getStatusMessage(),
+                        responseMessage.getHeaders(),
+                        -1,
+                        request.keepAlive,
+                        request.minorVersion
+                ));
+                responseMessage.writeBody(out);
+                write = out.finish(request.keepAlive);
+            } catch (Throwable t) {
+                log.fine("Exception occured while writing chunked response body: " + t);
+                if (log.isLoggable(Level.FINE)) {
+                    log.log(Level.FINE, "Cause: " + Exceptions.unwrap(t), Exceptions.unwrap(t));
+                }
+                if (out == null || !out.isCommitted()) {
+                    connection.respond(createErrorResponse(UpnpResponse.Status.INTERNAL_SERVER_ERROR), false);
+                } else {
+                    // The client will see an incomplete body
+                    connection.abort();
+                }
+                responseException(t);
+                return;
+            }
+            awaitResponse(write, responseMessage);
+        }
+
+        protected void awaitResponse(ResponseWrite write, StreamResponseMessage responseMessage) {
+            IOException failure = null;
+            if (!connection.loop.isLoopThread()) {
+                // The executor ran this in the I/O thread, we can't wait for it
+                try {
+                    failure = write.await(configuration.getIdleTimeoutMillis());
+                } catch (InterruptedException ex) {
+                    failure = new IOException("Interrupted while writing response");
+                }
+            }
+            if (failure == null) {
+                responseSent(responseMessage);
+            } else {
+                log.fine("Response was not delivered: " + failure);
+                responseException(failure);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "(" + getClass().getSimpleName() + ") " + request;
+        }
+
+        /**
+         * Buffers a streamed body and queues it on the connection in chunks.
+         */
+        protected class ChunkedOutput extends OutputStream {
+
+            final protected byte[] buffer = new byte[CHUNK_BYTES];
+            protected int count;
+            // Sent with the first chunk
+            protected ByteBuffer head;
+            protected ResponseWrite previousWrite;
+
+            protected ChunkedOutput(ByteBuffer head) {
+                this.head = head;
+            }
+
+            /**
+             * @return <code>true</code> if the response head has been queued on the connection.
+             */
+            protected boolean isCommitted() {
+                return head == null;
+            }
+
+            @Override
+            public void write(int b) throws IOException {
+                if (count == buffer.length)
+                    writeChunk();
+                buffer[count++] = (byte) b;
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                while (len > 0) {
+                    if (count == buffer.length)
+                        writeChunk();
+                    int length = Math.min(len, buffer.length - count);
+                    System.arraycopy(b, off, buffer, count, length);
+                    count += length;
+                    off += length;
+                    len -= length;
+                }
+            }
+
+            protected void writeChunk() throws IOException {
+                if (count == 0)
+                    return;
+                byte[] size = (Integer.toHexString(count) + CRLF).getBytes("ISO-8859-1");
+                ByteBuffer chunk = ByteBuffer.allocate(size.length + count + 2);
+                chunk.put(size).put(buffer, 0, count).put((byte) '\r').put((byte) '\n');
+                chunk.flip();
+                count = 0;
+                awaitPreviousWrite();
+                previousWrite = connection.respondPart(head != null ? new ByteBuffer[]{head, chunk} : new ByteBuffer[]{chunk});
+                head = null;
+            }
+
+            protected void awaitPreviousWrite() throws IOException {
+                // The executor ran this in the I/O thread, we can't wait for it
+                if (previousWrite == null || connection.loop.isLoopThread())
+                    return;
+                IOException failure;
+                try {
+                    failure = previousWrite.await(configuration.getIdleTimeoutMillis());
+                } catch (InterruptedException ex) {
+                    failure = new InterruptedIOException("Interrupted while writing response");
+                }
+                previousWrite = null;
+                if (failure != null)
+                    throw failure;
+            }
+
+            /**
+             * Queues the last chunk, this completes the response.
+             */
+            protected ResponseWrite finish(boolean keepAlive) throws IOException {
+                writeChunk();
+                awaitPreviousWrite();
+                ByteBuffer lastChunk = ByteBuffer.wrap(LAST_CHUNK);
+                ResponseWrite write = connection.respond(
+                        head != null ? new ByteBuffer[]{head, lastChunk} : new ByteBuffer[]{lastChunk},
+                        keepAlive
+                );
+                head = null;
+                return write;
+            }
+        }
+    }
+}
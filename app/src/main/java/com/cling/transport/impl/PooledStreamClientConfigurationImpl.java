@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) 2013 4th Line GmbH, Switzerland
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * Lesser General Public License Version 2 or later ("LGPL") or the
+ * Common Development and Distribution License Version 1 or later
+ * ("CDDL") (collectively, the "License"). You may not use this file
+ * except in compliance with the License. See LICENSE.txt for more
+ * information.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+
+package com.cling.transport.impl;
+
+import com.cling.transport.spi.AbstractStreamClientConfiguration;
+
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Settings for the {@link PooledStreamClientImpl}.
+ *
+ * @author Christian Bauer
+ */
+public class PooledStreamClientConfigurationImpl extends AbstractStreamClientConfiguration {
+
+    protected int connectTimeoutMillis = 5000;
+    protected int maxIdleConnectionsPerHost = 4;
+    protected int keepAliveMillis = 10000;
+    protected int bufferSize = 8192;
+    protected int maxBodyBytes = 16 * 1024 * 1024;
+
+    public PooledStreamClientConfigurationImpl(ExecutorService timeoutExecutorService) {
+        super(timeoutExecutorService);
+    }
+
+    public PooledStreamClientConfigurationImpl(ExecutorService timeoutExecutorService, int timeoutSeconds) {
+        super(timeoutExecutorService, timeoutSeconds);
+    }
+
+    /**
+     * @return Configured value or default of 5 seconds, limited by {@link #getTimeoutSeconds()}.
+     */
+    public int getConnectTimeoutMillis() {
+        return Math.min(connectTimeoutMillis, getTimeoutSeconds() * 1000);
+    }
+
+    public void setConnectTimeoutMillis(int connectTimeoutMillis) {
+        this.connectTimeoutMillis = connectTimeoutMillis;
+    }
+
+    /**
+     * @return The maximum number of idle connections kept open to a single host and port, default 4;
+     * <code>0</code> disables persistent connections.
+     */
+    public int getMaxIdleConnectionsPerHost() {
+        return maxIdleConnectionsPerHost;
+    }
+
+    public void setMaxIdleConnectionsPerHost(int maxIdleConnectionsPerHost) {
+        this.maxIdleConnectionsPerHost = maxIdleConnectionsPerHost;
+    }
+
+    /**
+     * @return The time an idle connection is kept open, default 10 seconds. This should be shorter
+     * than the idle timeout of the servers, as a connection they closed is only detected on reuse.
+     */
+    public int getKeepAliveMillis() {
+        return keepAliveMillis;
+    }
+
+    public void setKeepAliveMillis(int keepAliveMillis) {
+        this.keepAliveMillis = keepAliveMillis;
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    public void setBufferSize(int bufferSize) {
+        this.bufferSize = bufferSize;
+    }
+
+    /**
+     * @return The maximum size of a <code>Content-Length</code> or chunked response body, default 16 MB;
+     * larger responses fail with an <code>IOException</code>.
+     */
+    public int getMaxBodyBytes() {
+        return maxBodyBytes;
+    }
+
+    public void setMaxBodyBytes(int maxBodyBytes) {
+        this.maxBodyBytes = maxBodyBytes;
+    }
+
+}
@@ -0,0 +1,597 @@
+/*
+ * Copyright (C) 2013 4th Line GmbH, Switzerland
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * Lesser General Public License Version 2 or later ("LGPL") or the
+ * Common Development and Distribution License Version 1 or later
+ * ("CDDL") (collectively, the "License"). You may not use this file
+ * except in compliance with the License. See LICENSE.txt for more
+ * information.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+
+package com.cling.transport.impl;
+
+import com.cling.model.message.StreamRequestMessage;
+import com.cling.model.message.StreamResponseMessage;
+import com.cling.model.message.UpnpHeaders;
+import com.cling.model.message.UpnpMessage;
+import com.cling.model.message.UpnpRequest;
+import com.cling.model.message.UpnpResponse;
+import com.cling.model.message.header.UpnpHeader;
+import com.cling.transport.spi.AbstractStreamClient;
+import com.cling.transport.spi.StreamClient;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A small HTTP/1.1 client on plain sockets, with persistent connections pooled per host and port.
+ * <p>
+ * Unlike <code>HttpURLConnection</code>, this client sends any request method, including the UPnP
+ * methods <code>SUBSCRIBE</code>, <code>UNSUBSCRIBE</code>, and <code>NOTIFY</code>, and it only
+ * depends on <code>java.net.Socket</code>. It therefore works on Android and on any JVM.
+ * </p>
+ * <p>
+ * Idle connections are reused for {@link PooledStreamClientConfigurationImpl#getKeepAliveMillis()},
+ * expired connections to any host are closed whenever a connection is acquired or released.
+ * If a reused connection fails before any response byte was read, the server closed it in the
+ * meantime and the request is sent once more on a new connection. Expired or interrupted requests
+ * are aborted by closing their socket, see {@link AbstractStreamClient}.
+ * </p>
+ * <p>
+ * Response bodies are read with <code>Content-Length</code>, <code>chunked</code> transfer coding,
+ * or until the server closes the connection.
+ * </p>
+ *
+ * @author Christian Bauer
+ */
+public class PooledStreamClientImpl extends AbstractStreamClient<PooledStreamClientConfigurationImpl, PooledStreamClientImpl.Exchange> {
+
+    final private static Logger log = Logger.getLogger(StreamClient.class.getName());
+
+    final static protected String CRLF = "\r\n";
+
+    /**
+     * A request in progress, aborted by closing the connection it is using.
+     */
+    static public class Exchange {
+
+        final protected StreamRequestMessage requestMessage;
+        final protected String hostKey;
+        final protected InetSocketAddress address;
+        final protected byte[] head;
+
+        protected volatile Connection connection;
+        protected volatile boolean aborted;
+
+        public Exchange(StreamRequestMessage requestMessage, String hostKey, InetSocketAddress address,
+                        byte[] head) {
+            this.requestMessage = requestMessage;
+            this.hostKey = hostKey;
+            this.address = address;
+            this.head = head;
+        }
+
+        public void abort() {
+            aborted = true;
+            Connection c = connection;
+            if (c != null) c.close();
+        }
+
+        public boolean isAborted() {
+            return aborted;
+        }
+    }
+
+    static protected class Connection {
+
+        final protected String hostKey;
+        final protected Socket socket;
+        final protected InputStream in;
+        final protected OutputStream out;
+        protected boolean reused;
+        protected long idleSinceMillis;
+
+        protected Connection(String hostKey, Socket socket, int bufferSize) throws IOException {
+            this.hostKey = hostKey;
+            this.socket = socket;
+            this.in = new BufferedInputStream(socket.getInputStream(), bufferSize);
+            this.out = new BufferedOutputStream(socket.getOutputStream(), bufferSize);
+        }
+
+        protected void close() {
+            try {
+                socket.close();
+            } catch (IOException ex) {
+                // Ignore
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "(Connection) " + socket;
+        }
+    }
+
+    final protected PooledStreamClientConfigurationImpl configuration;
+
+    // Locking! All access synchronized on the map
+    final protected Map<String, Deque<Connection>> idleConnections = new HashMap<String, Deque<Connection>>();
+    protected boolean stopped;
+
+    final protected AtomicLong requestCount = new AtomicLong();
+    final protected AtomicLong connectionsOpened = new AtomicLong();
+    final protected AtomicLong connectionsReused = new AtomicLong();
+    final protected AtomicLong staleConnections = new AtomicLong();
+
+    public PooledStreamClientImpl(PooledStreamClientConfigurationImpl configuration) {
+        this.configuration = configuration;
+    }
+
+    @Override
+    public PooledStreamClientConfigurationImpl getConfiguration() {
+        return configuration;
+    }
+
+    /**
+     * @return The number of requests sent.
+     */
+    public long getRequestCount() {
+        return requestCount.get();
+    }
+
+    public long getConnectionsOpened() {
+        return connectionsOpened.get();
+    }
+
+    /**
+     * @return The number of requests sent on an idle connection of an earlier request.
+     */
+    public long getConnectionsReused() {
+        return connectionsReused.get();
+    }
+
+    /**
+     * @return The number of reused connections the server had already closed.
+     */
+    public long getStaleConnections() {
+        return staleConnections.get();
+    }
+
+    public int getIdleConnectionCount() {
+        synchronized (idleConnections) {
+            int count = 0;
+            for (Deque<Connection> connections : idleConnections.values()) {
+                count += connections.size();
+            }
+            return count;
+        }
+    }
+
+    @Override
+    protected Exchange createRequest(StreamRequestMessage requestMessage) {
+        UpnpRequest requestOperation = requestMessage.getOperation();
+        URI uri = requestOperation.getURI();
+        if (uri == null || uri.getHost() == null || !"http".equalsIgnoreCase(uri.getScheme())) {
+            log.warning("Can't send HTTP request, URI is not an absolute HTTP URI: " + uri);
+            return null;
+        }
+        int port = uri.getPort() != -1 ? uri.getPort() : 80;
+        String hostKey = uri.getHost() + ":" + port;
+
+        try {
+            StringBuilder head = new StringBuilder(256);
+            String path = uri.getRawPath() != null && uri.getRawPath().length() > 0 ? uri.getRawPath() : "/";
+            head.append(requestOperation.getHttpMethodName()).append(' ').append(path);
+            if (uri.getRawQuery() != null)
+                head.append('?').append(uri.getRawQuery());
+            head.append(" HTTP/1.").append(requestOperation.getHttpMinorVersion()).append(CRLF);
+
+            // The Host header is required, even if the message doesn't have one
+            if (!requestMessage.hasHostHeader())
+                appendHeader(head, UpnpHeader.Type.HOST.getHttpName(), uri.getPort() != -1 ? hostKey : uri.getHost());
+
+            // Add the default user agent if not already set on the message
+            if (!requestMessage.getHeaders().containsKey(UpnpHeader.Type.USER_AGENT)) {
+                appendHeader(
+                        head,
+                        UpnpHeader.Type.USER_AGENT.getHttpName(),
+                        getConfiguration().getUserAgentValue(requestMessage.getUdaMajorVersion(), requestMessage.getUdaMinorVersion())
+                );
+            }
+
+            for (Map.Entry<String, List<String>> entry : requestMessage.getHeaders().entrySet()) {
+                // We write the framing headers
+                if (entry.getKey().equalsIgnoreCase("Content-Length")
+                        || entry.getKey().equalsIgnoreCase("Transfer-Encoding")
+                        || entry.getKey().equalsIgnoreCase("Connection"))
+                    continue;
+                for (String value : entry.getValue()) {
+                    appendHeader(head, entry.getKey(), value);
+                }
+            }
+
+            // A string body is encoded once, in the charset of the Content-Type header or UTF-8
+            if (requestMessage.hasBody())
+                appendHeader(head, "Content-Length", Integer.toString(requestMessage.getBodyLength()));
+            if (getConfiguration().getMaxIdleConnectionsPerHost() <= 0)
+                appendHeader(head, "Connection", "close");
+            else if (requestOperation.getHttpMinorVersion() == 0)
+                appendHeader(head, "Connection", "keep-alive");
+            head.append(CRLF);
+
+            return new Exchange(
+                    requestMessage,
+                    hostKey,
+                    new InetSocketAddress(uri.getHost(), port),
+                    head.toString().getBytes("ISO-8859-1")
+            );
+        } catch (IOException ex) {
+            log.warning("Can't prepare HTTP request: " + requestMessage + " - " + ex);
+            return null;
+        }
+    }
+
+    @Override
+    protected Callable<StreamResponseMessage> createCallable(final StreamRequestMessage requestMessage,
+                                                             final Exchange exchange) {
+        return new Callable<StreamResponseMessage>() {
+            public StreamResponseMessage call() throws Exception {
+
+                if (log.isLoggable(Level.FINE))
+                    log.fine("Sending HTTP request: " + requestMessage);
+
+                return execute(exchange);
+            }
+        };
+    }
+
+    @Override
+    protected void abort(Exchange exchange) {
+        exchange.abort();
+    }
+
+    @Override
+    protected boolean logExecutionException(Throwable t) {
+        if (t instanceof SocketException || t instanceof EOFException) {
+            // Also thrown when the request was aborted, or when the remote host is unreachable
+            log.info("HTTP request failed: " + t);
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public void stop() {
+        if (log.isLoggable(Level.FINE))
+            log.fine("Shutting down HTTP client connection pool");
+        synchronized (idleConnections) {
+            stopped = true;
+            for (Deque<Connection> connections : idleConnections.values()) {
+                for (Connection connection : connections) {
+                    connection.close();
+                }
+            }
+            idleConnections.clear();
+        }
+    }
+
+    protected StreamResponseMessage execute(Exchange exchange) throws IOException {
+        requestCount.incrementAndGet();
+        while (true) {
+            Connection connection = acquire(exchange);
+            exchange.connection = connection;
+            if (exchange.isAborted()) {
+                connection.close();
+                throw new SocketException("HTTP request aborted");
+            }
+
+            ResponseReader reader = new ResponseReader(connection.in);
+            try {
+                connection.out.write(exchange.head);
+                exchange.requestMessage.writeBody(connection.out);
+                connection.out.flush();
+
+                StreamResponseMessage responseMessage = reader.read(exchange.requestMessage);
+                exchange.connection = null;
+                if (reader.keepAlive) {
+                    release(connection);
+                } else {
+                    connection.close();
+                }
+                return responseMessage;
+
+            } catch (IOException ex) {
+                exchange.connection = null;
+                connection.close();
+                if (connection.reused && !reader.started && !exchange.isAborted()
+                        && !(ex instanceof SocketTimeoutException)) {
+                    // The server closed the idle connection, try again on a new one
+                    staleConnections.incrementAndGet();
+                    if (log.isLoggable(Level.FINE))
+                        log.fine("Reused connection was closed by server, retrying: " + connection);
+                    continue;
+                }
+                throw ex;
+            }
+        }
+    }
+
+    protected Connection acquire(Exchange exchange) throws IOException {
+        // There is no timer, idle connections to other hosts are closed whenever the pool is used
+        closeExpiredConnections();
+        long now = System.currentTimeMillis();
+        synchronized (idleConnections) {
+            Deque<Connection> connections = idleConnections.get(exchange.hostKey);
+            if (connections != null) {
+                Connection connection;
+                while ((connection = connections.pollLast()) != null) {
+                    if (now - connection.idleSinceMillis < getConfiguration().getKeepAliveMillis()
+                            && !connection.socket.isClosed()) {
+                        connection.reused = true;
+                        connectionsReused.incrementAndGet();
+                        return connection;
+                    }
+                    connection.close();
+                }
+            }
+        }
+
+        Socket socket = new Socket();
+        try {
+            socket.setTcpNoDelay(true);
+            socket.setSoTimeout(getConfiguration().getTimeoutSeconds() * 1000);
+            socket.connect(exchange.address, getConfiguration().getConnectTimeoutMillis());
+            connectionsOpened.incrementAndGet();
+            return new Connection(exchange.hostKey, socket, getConfiguration().getBufferSize());
+        } catch (IOException ex) {
+            socket.close();
+            throw ex;
+        }
+    }
+
+    protected void release(Connection connection) {
+        closeExpiredConnections();
+        synchronized (idleConnections) {
+            if (!stopped) {
+                Deque<Connection> connections = idleConnections.get(connection.hostKey);
+                if (connections == null) {
+                    connections = new ArrayDeque<Connection>();
+                    idleConnections.put(connection.hostKey, connections);
+                }
+                if (connections.size() < getConfiguration().getMaxIdleConnectionsPerHost()) {
+                    connection.idleSinceMillis = System.currentTimeMillis();
+                    connections.addLast(connection);
+                    return;
+                }
+            }
+        }
+        connection.close();
+    }
+
+    /**
+     * Removes idle connections which have exceeded the keep-alive time.
+     */
+    public void closeExpiredConnections() {
+        long now = System.currentTimeMillis();
+        synchronized (idleConnections) {
+            for (Iterator<Deque<Connection>> it = idleConnections.values().iterator(); it.hasNext(); ) {
+                Deque<Connection> connections = it.next();
+                for (Iterator<Connection> cit = connections.iterator(); cit.hasNext(); ) {
+                    Connection connection = cit.next();
+                    if (now - connection.idleSinceMillis >= getConfiguration().getKeepAliveMillis()) {
+                        connection.close();
+                        cit.remove();
+                    }
+                }
+                if (connections.isEmpty()) it.remove();
+            }
+        }
+    }
+
+    protected void appendHeader(StringBuilder head, String name, String value) {
+        head.append(name).append(": ").append(value).append(CRLF);
+    }
+
+    /**
+     * Reads one HTTP response from a connection.
+     */
+    protected class ResponseReader {
+
+        final protected InputStream in;
+        protected boolean started;
+        protected boolean keepAlive;
+
+        protected ResponseReader(InputStream in) {
+            this.in = in;
+        }
+
+        protected StreamResponseMessage read(StreamRequestMessage requestMessage) throws IOException {
+
+            String statusLine;
+            int statusCode;
+            do {
+                // Skip interim 1xx responses
+                statusLine = readLine(true);
+                if (statusLine == null)
+                    throw new EOFException("Connection closed before HTTP response");
+                started = true;
+                statusCode = parseStatusCode(statusLine);
+                if (statusCode >= 200)
+                    break;
+                while (readLine(false).length() > 0) ;
+            } while (true);
+
+            int minorVersion = statusLine.startsWith("HTTP/1.0") ? 0 : 1;
+            int reasonStart = statusLine.indexOf(' ', statusLine.indexOf(' ') + 1);
+            String reason = reasonStart != -1 ? statusLine.substring(reasonStart + 1) : "";
+
+            if (log.isLoggable(Level.FINE))
+                log.fine("Received HTTP response: " + statusLine);
+
+            // Message
+            StreamResponseMessage responseMessage =
+                    new StreamResponseMessage(new UpnpResponse(statusCode, reason));
+
+            // Headers
+            UpnpHeaders headers = new UpnpHeaders();
+            String line;
+            while ((line = readLine(false)).length() > 0) {
+                int colon = line.indexOf(':');
+                if (colon <= 0) continue;
+                headers.add(line.substring(0, colon).trim(), line.substring(colon + 1).trim());
+            }
+            responseMessage.setHeaders(headers);
+
+            String connectionHeader = headers.getFirstHeader("Connection");
+            keepAlive = minorVersion == 1
+                    ? !"close".equalsIgnoreCase(connectionHeader)
+                    : "keep-alive".equalsIgnoreCase(connectionHeader);
+
+            // Body
+            ByteBuffer body;
+            String transferEncoding = headers.getFirstHeader("Transfer-Encoding");
+            String contentLength = headers.getFirstHeader("Content-Length");
+            if (statusCode == 204 || statusCode == 304) {
+                body = null;
+            } else if (transferEncoding != null && !"identity".equalsIgnoreCase(transferEncoding)) {
+                body = readChunked();
+            } else if (contentLength != null) {
+                int length;
+                try {
+                    length = Integer.parseInt(contentLength.trim());
+                } catch (NumberFormatException ex) {
+                    throw new IOException("Invalid Content-Length: " + contentLength);
+                }
+                // Don't let the server make us allocate an arbitrary array
+                if (length < 0 || length > getConfiguration().getMaxBodyBytes())
+                    throw new IOException("Invalid or too large Content-Length: " + contentLength);
+                body = ByteBuffer.wrap(readFully(length));
+            } else {
+                body = BodyBuffers.read(in, -1);
+                keepAlive = false;
+            }
+
+            // The body is decoded only if a protocol reads it as a string
+            if (body != null && body.hasRemaining() && responseMessage.isContentTypeMissingOrText()) {
+                if (log.isLoggable(Level.FINE))
+                    log.fine("HTTP response message contains text entity");
+                responseMessage.setBodyCharacters(body);
+            } else if (body != null && body.hasRemaining()) {
+                if (log.isLoggable(Level.FINE))
+                    log.fine("HTTP response message contains binary entity");
+                responseMessage.setBody(UpnpMessage.BodyType.BYTES, body);
+            }
+
+            return responseMessage;
+        }
+
+        protected int parseStatusCode(String statusLine) throws IOException {
+            int start = statusLine.indexOf(' ');
+            if (!statusLine.startsWith("HTTP/") || start == -1)
+                throw new IOException("Invalid HTTP status line: " + statusLine);
+            int end = statusLine.indexOf(' ', start + 1);
+            try {
+                return Integer.parseInt(statusLine.substring(start + 1, end != -1 ? end : statusLine.length()));
+            } catch (NumberFormatException ex) {
+                throw new IOException("Invalid HTTP status line: " + statusLine);
+            }
+        }
+
+        /**
+         * @return The line without CRLF, or <code>null</code> if the stream ended before the first byte.
+         */
+        protected String readLine(boolean firstLine) throws IOException {
+            StringBuilder sb = new StringBuilder(64);
+            int b;
+            while ((b = in.read()) != -1) {
+                if (b == '\n') {
+                    int length = sb.length();
+                    if (length > 0 && sb.charAt(length - 1) == '\r')
+                        sb.setLength(length - 1);
+                    return sb.toString();
+                }
+                sb.append((char) b);
+            }
+            if (firstLine && sb.length() == 0)
+                return null;
+            throw new EOFException("Connection closed in HTTP response head");
+        }
+
+        protected byte[] readFully(int length) throws IOException {
+            byte[] data = new byte[length];
+            int offset = 0;
+            while (offset < length) {
+                int n = in.read(data, offset, length - offset);
+                if (n == -1)
+                    throw new EOFException("Connection closed after " + offset + " of " + length + " bytes");
+                offset += n;
+            }
+            return data;
+        }
+
+        protected ByteBuffer readChunked() throws IOException {
+            BodyBuffers.Output out = new BodyBuffers.Output();
+            byte[] buffer = new byte[4096];
+            while (true) {
+                String sizeLine = readLine(false);
+                int extension = sizeLine.indexOf(';');
+                int size;
+                try {
+                    size = Integer.parseInt((extension != -1 ? sizeLine.substring(0, extension) : sizeLine).trim(), 16);
+                } catch (NumberFormatException ex) {
+                    throw new IOException("Invalid chunk size: " + sizeLine);
+                }
+                if (size < 0 || size > getConfiguration().getMaxBodyBytes() - out.size())
+                    throw new IOException("Invalid or too large chunk size: " + sizeLine);
+                if (size == 0) {
+                    // Trailers
+                    while (readLine(false).length() > 0) ;
+                    return out.toByteBuffer();
+                }
+                while (size > 0) {
+                    int n = in.read(buffer, 0, Math.min(buffer.length, size));
+                    if (n == -1)
+                        throw new EOFException("Connection closed in chunk");
+                    out.write(buffer, 0, n);
+                    size -= n;
+                }
+                readLine(false);
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "(" + getClass().getSimpleName() + ")"
+                + " Requests: " + getRequestCount()
+                + " Connections opened: " + getConnectionsOpened()
+                + " Reused: " + getConnectionsReused()
+                + " Stale: " + getStaleConnections()
+                + " Idle: " + getIdleConnectionCount();
+    }
+}
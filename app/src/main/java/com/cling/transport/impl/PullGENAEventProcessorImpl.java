@@ -16,12 +16,12 @@
 package com.cling.transport.impl;
 
 import com.cling.model.UnsupportedDataException;
+import com.cling.model.XMLPool;
 import com.cling.model.message.gena.IncomingEventRequestMessage;
 import com.cling.model.meta.StateVariable;
 import com.cling.model.state.StateVariableValue;
 import com.cling.transport.spi.GENAEventProcessor;
 
-import org.seamless.xml.XmlPullParserUtils;
 import org.xmlpull.v1.XmlPullParser;
 
 import java.util.logging.Logger;
@@ -48,8 +48,12 @@ public class PullGENAEventProcessorImpl extends GENAEventProcessorImpl {
     public void readBody(IncomingEventRequestMessage requestMessage) throws UnsupportedDataException {
         String body = getMessageBody(requestMessage);
         try {
-            XmlPullParser xpp = XmlPullParserUtils.createParser(body);
-            readProperties(xpp, requestMessage);
+            XmlPullParser xpp = XMLPool.acquirePullParser(body);
+            try {
+                readProperties(xpp, requestMessage);
+            } finally {
+                XMLPool.releasePullParser(xpp);
+            }
         } catch (Exception ex) {
             throw new UnsupportedDataException("Can't transform message payload: " + ex.getMessage(), ex, body);
         }
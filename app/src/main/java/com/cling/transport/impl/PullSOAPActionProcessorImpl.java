@@ -16,23 +16,25 @@
 package com.cling.transport.impl;
 
 import com.cling.model.UnsupportedDataException;
+import com.cling.model.XMLPool;
 import com.cling.model.action.ActionArgumentValue;
 import com.cling.model.action.ActionException;
 import com.cling.model.action.ActionInvocation;
 import com.cling.model.message.control.ActionRequestMessage;
 import com.cling.model.message.control.ActionResponseMessage;
 import com.cling.model.meta.ActionArgument;
+import com.cling.model.types.Datatype;
 import com.cling.model.types.ErrorCode;
+import com.cling.model.types.InvalidValueException;
 import com.cling.transport.spi.SOAPActionProcessor;
 
 import org.seamless.xml.XmlPullParserUtils;
 import org.xmlpull.v1.XmlPullParser;
 
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.HashMap;
-import java.util.List;
+import java.util.Collections;
 import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import javax.enterprise.inject.Alternative;
@@ -41,6 +43,7 @@ import javax.enterprise.inject.Alternative;
  * Implementation based on the <em>Xml Pull Parser</em> XML processing API.
  * <p>
  * This processor is more lenient with parsing, looking only for the required XML tags.
+ * Argument values are read in a single pass over the parser events, see {@link ArgumentSlots}.
  * </p>
  * <p>
  * To use this parser you need to install an implementation of the
@@ -54,11 +57,83 @@ public class PullSOAPActionProcessorImpl extends SOAPActionProcessorImpl {
 
     protected static Logger log = Logger.getLogger(SOAPActionProcessor.class.getName());
 
+    /**
+     * Maps the element names of the input or output arguments of an action to their index.
+     * <p>
+     * Names and aliases are kept in an open addressing table, built once per action, so
+     * reading an argument element doesn't allocate. Names not found in the table are
+     * compared case-insensitive, as before.
+     * </p>
+     */
+    protected static class ArgumentSlots {
+
+        final ActionArgument[] arguments;
+        final Datatype[] datatypes;
+        final String[] names;
+        final int[] slots;
+        final int mask;
+
+        ArgumentSlots(ActionArgument[] arguments) {
+            this.arguments = arguments;
+            this.datatypes = new Datatype[arguments.length];
+            int count = 0;
+            for (int i = 0; i < arguments.length; i++) {
+                datatypes[i] = arguments[i].getDatatype();
+                count += 1 + arguments[i].getAliases().length;
+            }
+
+            // At most half full, so probe sequences stay short
+            int size = 4;
+            while (size < count * 2) size <<= 1;
+            this.names = new String[size];
+            this.slots = new int[size];
+            this.mask = size - 1;
+
+            for (int i = 0; i < arguments.length; i++) {
+                put(arguments[i].getName(), i);
+                for (String alias : arguments[i].getAliases()) {
+                    put(alias, i);
+                }
+            }
+        }
+
+        void put(String name, int slot) {
+            int i = name.hashCode() & mask;
+            while (names[i] != null) {
+                if (names[i].equals(name)) return;
+                i = (i + 1) & mask;
+            }
+            names[i] = name;
+            slots[i] = slot;
+        }
+
+        /**
+         * @return The index of the argument with the given name or alias, or <code>-1</code>.
+         */
+        int getSlot(String name) {
+            for (int i = name.hashCode() & mask; names[i] != null; i = (i + 1) & mask) {
+                if (names[i].equals(name)) return slots[i];
+            }
+            for (int i = 0; i < arguments.length; i++) {
+                if (arguments[i].isNameOrAlias(name)) return i;
+            }
+            return -1;
+        }
+    }
+
+    // Keyed by the argument arrays of actions, weak so removed remote devices are not kept
+    final protected Map<ActionArgument[], ArgumentSlots> argumentSlots =
+            Collections.synchronizedMap(new WeakHashMap<ActionArgument[], ArgumentSlots>());
+
     public void readBody(ActionRequestMessage requestMessage, ActionInvocation actionInvocation) throws UnsupportedDataException {
         String body = getMessageBody(requestMessage);
         try {
-            XmlPullParser xpp = XmlPullParserUtils.createParser(body);
-            readBodyRequest(xpp, requestMessage, actionInvocation);
+            XmlPullParser xpp = XMLPool.acquirePullParser(body);
+            try {
+                readBodyRequest(xpp, requestMessage, actionInvocation);
+            } finally {
+                XMLPool.releasePullParser(xpp);
+            }
         } catch (Exception ex) {
             throw new UnsupportedDataException("Can't transform message payload: " + ex, ex, body);
         }
@@ -67,9 +142,13 @@ public class PullSOAPActionProcessorImpl extends SOAPActionProcessorImpl {
     public void readBody(ActionResponseMessage responseMsg, ActionInvocation actionInvocation) throws UnsupportedDataException {
         String body = getMessageBody(responseMsg);
         try {
-            XmlPullParser xpp = XmlPullParserUtils.createParser(body);
-            readBodyElement(xpp);
-            readBodyResponse(xpp, actionInvocation);
+            XmlPullParser xpp = XMLPool.acquirePullParser(body);
+            try {
+                readBodyElement(xpp);
+                readBodyResponse(xpp, actionInvocation);
+            } finally {
+                XMLPool.releasePullParser(xpp);
+            }
         } catch (Exception ex) {
             throw new UnsupportedDataException("Can't transform message payload: " + ex, ex, body);
         }
@@ -119,68 +198,60 @@ public class PullSOAPActionProcessorImpl extends SOAPActionProcessorImpl {
         actionInvocation.setOutput(readArgumentValues(xpp, actionInvocation.getAction().getOutputArguments()));
     }
 
-    protected Map<String, String> getMatchingNodes(XmlPullParser xpp, ActionArgument[] args) throws Exception {
-
-        // This is a case-insensitive search!
-        List<String> names = new ArrayList<String>();
-        for (ActionArgument argument : args) {
-            names.add(argument.getName().toUpperCase());
-            for (String alias : Arrays.asList(argument.getAliases())) {
-                names.add(alias.toUpperCase());
-            }
-        }
-
-        Map<String, String> matches = new HashMap<String, String>();
+    protected ActionArgumentValue[] readArgumentValues(XmlPullParser xpp, ActionArgument[] args) throws Exception {
+        // We're in the <ActionName> or <ActionName>Response tag
+        ArgumentSlots argumentSlots = getArgumentSlots(args);
+        ActionArgumentValue[] values = new ActionArgumentValue[args.length];
+        int found = 0;
 
         String enclosingTag = xpp.getName();
 
         int event;
         do {
             event = xpp.next();
-            if (event == XmlPullParser.START_TAG && names.contains(xpp.getName().toUpperCase())) {
-                matches.put(xpp.getName(), xpp.nextText());
+            if (event == XmlPullParser.START_TAG) {
+                int slot = argumentSlots.getSlot(xpp.getName());
+                if (slot == -1) continue;
+
+                ActionArgument arg = args[slot];
+                if (log.isLoggable(Level.FINE))
+                    log.fine("Reading action argument: " + arg.getName());
+                if (values[slot] == null) found++;
+                values[slot] = createValue(arg, argumentSlots.datatypes[slot], xpp.nextText());
             }
 
         }
         while (event != XmlPullParser.END_DOCUMENT && (event != XmlPullParser.END_TAG || !xpp.getName().equals(enclosingTag)));
 
-        if (matches.size() < args.length) {
+        if (found < args.length) {
             throw new ActionException(
                     ErrorCode.ARGUMENT_VALUE_INVALID,
                     "Invalid number of input or output arguments in XML message, expected "
-                            + args.length + " but found " + matches.size()
+                            + args.length + " but found " + found
             );
         }
-        return matches;
+        return values;
     }
 
-    protected ActionArgumentValue[] readArgumentValues(XmlPullParser xpp, ActionArgument[] args) throws Exception {
-        // We're in the <ActionName>Response tag
-        Map<String, String> matches = getMatchingNodes(xpp, args);
-
-        ActionArgumentValue[] values = new ActionArgumentValue[args.length];
-
-        for (int i = 0; i < args.length; i++) {
-
-            ActionArgument arg = args[i];
-            String value = findActionArgumentValue(matches, arg);
-            if (value == null) {
-                throw new ActionException(
-                        ErrorCode.ARGUMENT_VALUE_INVALID,
-                        "Could not find argument '" + arg.getName() + "' node");
-            }
-
-            log.fine("Reading action argument: " + arg.getName());
-            values[i] = createValue(arg, value);
+    protected ArgumentSlots getArgumentSlots(ActionArgument[] args) {
+        ArgumentSlots slots = argumentSlots.get(args);
+        if (slots == null) {
+            slots = new ArgumentSlots(args);
+            argumentSlots.put(args, slots);
         }
-        return values;
+        return slots;
     }
 
-    protected String findActionArgumentValue(Map<String, String> entries, ActionArgument arg) {
-        for (Map.Entry<String, String> entry : entries.entrySet()) {
-            if (arg.isNameOrAlias(entry.getKey())) return entry.getValue();
+    protected ActionArgumentValue createValue(ActionArgument arg, Datatype datatype, String value) throws ActionException {
+        try {
+            return new ActionArgumentValue(arg, datatype, value);
+        } catch (InvalidValueException ex) {
+            throw new ActionException(
+                    ErrorCode.ARGUMENT_VALUE_INVALID,
+                    "Wrong type or invalid value for '" + arg.getName() + "': " + ex.getMessage(),
+                    ex
+            );
         }
-        return null;
     }
 
     protected ActionException readFaultElement(XmlPullParser xpp) throws Exception {
@@ -32,7 +32,8 @@ import javax.enterprise.inject.Alternative;
  * <p>
  * This processor extends {@link PullSOAPActionProcessorImpl}, it will always
  * first try to read messages regularly with the superclass' methods before
- * trying to recover from a failure.
+ * trying to recover from a failure. Messages are written without a DOM, see
+ * {@link StreamingSOAPActionProcessorImpl}.
  * </p>
  * <p>
  * When the superclass can't read the message, this processor will try to
@@ -51,7 +52,7 @@ import javax.enterprise.inject.Alternative;
  * @author Michael Pujos
  */
 @Alternative
-public class RecoveringSOAPActionProcessorImpl extends PullSOAPActionProcessorImpl {
+public class RecoveringSOAPActionProcessorImpl extends StreamingSOAPActionProcessorImpl {
 
     private static Logger log = Logger.getLogger(SOAPActionProcessor.class.getName());
 
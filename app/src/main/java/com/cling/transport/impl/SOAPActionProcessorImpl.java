@@ -17,6 +17,7 @@ package com.cling.transport.impl;
 
 import com.cling.model.Constants;
 import com.cling.model.UnsupportedDataException;
+import com.cling.model.XMLPool;
 import com.cling.model.XMLUtil;
 import com.cling.model.action.ActionArgumentValue;
 import com.cling.model.action.ActionException;
@@ -35,21 +36,15 @@ import org.w3c.dom.Element;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
 import org.xml.sax.ErrorHandler;
-import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
 import org.xml.sax.SAXParseException;
 
-import java.io.StringReader;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.FactoryConfigurationError;
-
 /**
  * Default implementation based on the <em>W3C DOM</em> XML processing API.
  *
@@ -59,19 +54,13 @@ public class SOAPActionProcessorImpl implements SOAPActionProcessor, ErrorHandle
 
     private static Logger log = Logger.getLogger(SOAPActionProcessor.class.getName());
 
-    protected DocumentBuilderFactory createDocumentBuilderFactory() throws FactoryConfigurationError {
-        return DocumentBuilderFactory.newInstance();
-    }
-
     public void writeBody(ActionRequestMessage requestMessage, ActionInvocation actionInvocation) throws UnsupportedDataException {
 
         log.fine("Writing body of " + requestMessage + " for: " + actionInvocation);
 
         try {
 
-            DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-            factory.setNamespaceAware(true);
-            Document d = factory.newDocumentBuilder().newDocument();
+            Document d = XMLPool.newDocument();
             Element body = writeBodyElement(d);
 
             writeBodyRequest(d, body, requestMessage, actionInvocation);
@@ -93,9 +82,7 @@ public class SOAPActionProcessorImpl implements SOAPActionProcessor, ErrorHandle
 
         try {
 
-            DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-            factory.setNamespaceAware(true);
-            Document d = factory.newDocumentBuilder().newDocument();
+            Document d = XMLPool.newDocument();
             Element body = writeBodyElement(d);
 
             if (actionInvocation.getFailure() != null) {
@@ -127,12 +114,7 @@ public class SOAPActionProcessorImpl implements SOAPActionProcessor, ErrorHandle
         String body = getMessageBody(requestMessage);
         try {
 
-            DocumentBuilderFactory factory = createDocumentBuilderFactory();
-            factory.setNamespaceAware(true);
-            DocumentBuilder documentBuilder = factory.newDocumentBuilder();
-            documentBuilder.setErrorHandler(this);
-
-            Document d = documentBuilder.parse(new InputSource(new StringReader(body)));
+            Document d = XMLPool.parse(body, this);
 
             Element bodyElement = readBodyElement(d);
 
@@ -155,12 +137,7 @@ public class SOAPActionProcessorImpl implements SOAPActionProcessor, ErrorHandle
         String body = getMessageBody(responseMsg);
         try {
 
-            DocumentBuilderFactory factory = createDocumentBuilderFactory();
-            factory.setNamespaceAware(true);
-            DocumentBuilder documentBuilder = factory.newDocumentBuilder();
-            documentBuilder.setErrorHandler(this);
-
-            Document d = documentBuilder.parse(new InputSource(new StringReader(body)));
+            Document d = XMLPool.parse(body, this);
 
             Element bodyElement = readBodyElement(d);
 
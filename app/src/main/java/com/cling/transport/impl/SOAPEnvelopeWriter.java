@@ -0,0 +1,268 @@
+/*
+ * Copyright (C) 2013 4th Line GmbH, Switzerland
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * Lesser General Public License Version 2 or later ("LGPL") or the
+ * Common Development and Distribution License Version 1 or later
+ * ("CDDL") (collectively, the "License"). You may not use this file
+ * except in compliance with the License. See LICENSE.txt for more
+ * information.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+
+package com.cling.transport.impl;
+
+import com.cling.model.Constants;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.io.Writer;
+import java.util.Arrays;
+
+/**
+ * Writes UTF-8 encoded SOAP envelopes into a growing byte buffer, without building a DOM.
+ * <p>
+ * Markup is appended as precomputed byte fragments, only text content is encoded and escaped
+ * while writing. Characters which are not allowed in XML 1.0 documents are dropped, unpaired
+ * surrogates are replaced. An instance is not thread-safe; {@link #get()} returns the current
+ * thread's writer, its buffer is reused for the next envelope.
+ * </p>
+ * <p>
+ * Large text content can be escaped with a {@link TextWriter}, it passes the encoded bytes on
+ * to a stream in small pieces.
+ * </p>
+ *
+ * @author Christian Bauer
+ */
+public class SOAPEnvelopeWriter {
+
+    public static final byte[] ENVELOPE_START = bytes(
+            "<?xml version=\"1.0\" encoding=\"utf-8\" standalone=\"yes\"?>" +
+                    "<s:Envelope s:encodingStyle=\"" + Constants.SOAP_URI_ENCODING_STYLE + "\" " +
+                    "xmlns:s=\"" + Constants.SOAP_NS_ENVELOPE + "\">" +
+                    "<s:Body>"
+    );
+
+    public static final byte[] ENVELOPE_END = bytes("</s:Body></s:Envelope>");
+
+    public static final byte[] FAULT_START = bytes(
+            "<s:Fault>" +
+                    "<faultcode>s:Client</faultcode>" +
+                    "<faultstring>UPnPError</faultstring>" +
+                    "<detail>" +
+                    "<UPnPError xmlns=\"" + Constants.NS_UPNP_CONTROL_10 + "\">" +
+                    "<errorCode>"
+    );
+
+    public static final byte[] FAULT_DESCRIPTION = bytes("</errorCode><errorDescription>");
+
+    public static final byte[] FAULT_END = bytes("</errorDescription></UPnPError></detail></s:Fault>");
+
+    // Buffers which grew larger than this are not kept for the next envelope
+    protected static final int MAX_RETAINED_BYTES = 64 * 1024;
+
+    static final protected ThreadLocal<SOAPEnvelopeWriter> writers = new ThreadLocal<SOAPEnvelopeWriter>() {
+        @Override
+        protected SOAPEnvelopeWriter initialValue() {
+            return new SOAPEnvelopeWriter();
+        }
+    };
+
+    /**
+     * @return The current thread's writer, reset and ready for a new envelope.
+     */
+    public static SOAPEnvelopeWriter get() {
+        SOAPEnvelopeWriter writer = writers.get();
+        writer.reset();
+        return writer;
+    }
+
+    public static byte[] bytes(String markup) {
+        try {
+            return markup.getBytes("UTF-8");
+        } catch (UnsupportedEncodingException ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+    protected byte[] buffer = new byte[1024];
+    protected int length;
+
+    public void reset() {
+        if (buffer.length > MAX_RETAINED_BYTES)
+            buffer = new byte[1024];
+        length = 0;
+    }
+
+    public SOAPEnvelopeWriter write(byte[] markup) {
+        ensureCapacity(markup.length);
+        System.arraycopy(markup, 0, buffer, length, markup.length);
+        length += markup.length;
+        return this;
+    }
+
+    /**
+     * Appends the text as escaped character data, <code>null</code> is written as an empty string.
+     */
+    public SOAPEnvelopeWriter writeText(String text) {
+        if (text == null) return this;
+        int count = text.length();
+        // Worst case is a six byte entity for every character
+        ensureCapacity(count * 6);
+        byte[] b = buffer;
+        int pos = length;
+        for (int i = 0; i < count; i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                switch (c) {
+                    case '&':
+                        pos = put(b, pos, "&amp;");
+                        break;
+                    case '<':
+                        pos = put(b, pos, "&lt;");
+                        break;
+                    case '>':
+                        pos = put(b, pos, "&gt;");
+                        break;
+                    case '\'':
+                        pos = put(b, pos, "&apos;");
+                        break;
+                    case '"':
+                        pos = put(b, pos, "&quot;");
+                        break;
+                    case '\r':
+                        // Would be normalized to a line feed by the parser otherwise
+                        pos = put(b, pos, "&#13;");
+                        break;
+                    default:
+                        if (c >= 0x20 || c == '\t' || c == '\n')
+                            b[pos++] = (byte) c;
+                }
+            } else if (c < 0x800) {
+                b[pos++] = (byte) (0xC0 | (c >> 6));
+                b[pos++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < count && Character.isLowSurrogate(text.charAt(i + 1))) {
+                int cp = Character.toCodePoint(c, text.charAt(++i));
+                b[pos++] = (byte) (0xF0 | (cp >> 18));
+                b[pos++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+                b[pos++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+                b[pos++] = (byte) (0x80 | (cp & 0x3F));
+            } else if (c == 0xFFFE || c == 0xFFFF) {
+                // Not allowed in XML documents
+            } else {
+                if (c >= '\uD800' && c <= '\uDFFF')
+                    c = '\uFFFD';
+                b[pos++] = (byte) (0xE0 | (c >> 12));
+                b[pos++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                b[pos++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        length = pos;
+        return this;
+    }
+
+    /**
+     * @return A copy of the written bytes.
+     */
+    public byte[] toByteArray() {
+        return Arrays.copyOf(buffer, length);
+    }
+
+    public int length() {
+        return length;
+    }
+
+    protected void ensureCapacity(int additional) {
+        if (length + additional > buffer.length)
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, length + additional));
+    }
+
+    static protected int put(byte[] b, int pos, String entity) {
+        for (int i = 0; i < entity.length(); i++) {
+            b[pos++] = (byte) entity.charAt(i);
+        }
+        return pos;
+    }
+
+    /**
+     * Escapes and encodes text like {@link #writeText(String)}, the bytes are written to a stream
+     * whenever enough have been buffered.
+     * <p>
+     * Call {@link #close()} after the last character of the text, this writes the remaining bytes
+     * but does not close the stream.
+     * </p>
+     */
+    public static class TextWriter extends Writer {
+
+        // Characters escaped at once, so the buffer doesn't grow with the size of a write
+        protected static final int MAX_ESCAPED_CHARS = 2048;
+
+        final protected OutputStream out;
+        final protected int flushBytes;
+        final protected SOAPEnvelopeWriter buffer = new SOAPEnvelopeWriter();
+        // A high surrogate at the end of a write, its pair follows in the next write
+        protected String pendingHighSurrogate;
+
+        public TextWriter(OutputStream out, int flushBytes) {
+            this.out = out;
+            this.flushBytes = flushBytes;
+        }
+
+        @Override
+        public void write(char[] cbuf, int off, int len) throws IOException {
+            write(new String(cbuf, off, len));
+        }
+
+        @Override
+        public void write(String str, int off, int len) throws IOException {
+            if (len == 0)
+                return;
+            String text = str.substring(off, off + len);
+            if (pendingHighSurrogate != null) {
+                text = pendingHighSurrogate + text;
+                pendingHighSurrogate = null;
+            }
+            int end = text.length();
+            if (Character.isHighSurrogate(text.charAt(end - 1))) {
+                pendingHighSurrogate = text.substring(end - 1);
+                end--;
+            }
+            int start = 0;
+            while (start < end) {
+                int sliceEnd = Math.min(end, start + MAX_ESCAPED_CHARS);
+                if (sliceEnd < end && Character.isHighSurrogate(text.charAt(sliceEnd - 1)))
+                    sliceEnd--;
+                buffer.writeText(text.substring(start, sliceEnd));
+                if (buffer.length >= flushBytes)
+                    flush();
+                start = sliceEnd;
+            }
+        }
+
+        /**
+         * Writes the buffered bytes, the stream is not flushed.
+         */
+        @Override
+        public void flush() throws IOException {
+            if (buffer.length > 0) {
+                out.write(buffer.buffer, 0, buffer.length);
+                buffer.length = 0;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (pendingHighSurrogate != null) {
+                // Unpaired, replaced while escaping
+                buffer.writeText(pendingHighSurrogate);
+                pendingHighSurrogate = null;
+            }
+            flush();
+        }
+    }
+
+}
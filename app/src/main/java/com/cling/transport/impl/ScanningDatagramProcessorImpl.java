@@ -0,0 +1,313 @@
+/*
+ * Copyright (C) 2013 4th Line GmbH, Switzerland
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * Lesser General Public License Version 2 or later ("LGPL") or the
+ * Common Development and Distribution License Version 1 or later
+ * ("CDDL") (collectively, the "License"). You may not use this file
+ * except in compliance with the License. See LICENSE.txt for more
+ * information.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+
+package com.cling.transport.impl;
+
+import com.cling.model.UnsupportedDataException;
+import com.cling.model.message.IncomingDatagramMessage;
+import com.cling.model.message.UpnpHeaders;
+import com.cling.model.message.UpnpRequest;
+import com.cling.model.message.UpnpResponse;
+import com.cling.model.message.header.UpnpHeader;
+import com.cling.model.types.NotificationSubtype;
+import com.cling.transport.spi.DatagramProcessor;
+
+import java.net.DatagramPacket;
+import java.net.InetAddress;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Reads SSDP datagrams by scanning the received bytes in place.
+ * <p>
+ * The start line and headers are located in the datagram's buffer without copying it,
+ * and only the headers required by the discovery protocols (NT, NTS, ST, USN, LOCATION,
+ * CACHE-CONTROL, MAN, MX, EXT, and the Cling interface MAC) are retained, all others
+ * are skipped. Datagrams which are not a <code>NOTIFY</code> with an SSDP subtype, an
+ * <code>M-SEARCH</code> request, or a search response are rejected before any object is
+ * created, {@link #read(java.net.InetAddress, java.net.DatagramPacket)} then returns
+ * <code>null</code>.
+ * </p>
+ * <p>
+ * Because only the datagram's offset and length are read, receivers can reuse their
+ * receive buffer for every datagram.
+ * </p>
+ *
+ * @author Christian Bauer
+ */
+public class ScanningDatagramProcessorImpl extends DatagramProcessorImpl {
+
+    private static Logger log = Logger.getLogger(DatagramProcessor.class.getName());
+
+    protected static final Charset US_ASCII = Charset.forName("US-ASCII");
+
+    protected static final byte[] METHOD_NOTIFY = ascii(UpnpRequest.Method.NOTIFY.getHttpName());
+    protected static final byte[] METHOD_MSEARCH = ascii(UpnpRequest.Method.MSEARCH.getHttpName());
+    protected static final byte[] HTTP_VERSION = ascii("HTTP/1.");
+
+    protected static final byte[][] NOTIFICATION_SUBTYPES = {
+            ascii(NotificationSubtype.ALIVE.getHeaderString()),
+            ascii(NotificationSubtype.BYEBYE.getHeaderString()),
+            ascii(NotificationSubtype.UPDATE.getHeaderString())
+    };
+
+    protected static final UpnpHeader.Type[] RETAINED_HEADERS = {
+            UpnpHeader.Type.NT,
+            UpnpHeader.Type.NTS,
+            UpnpHeader.Type.ST,
+            UpnpHeader.Type.USN,
+            UpnpHeader.Type.LOCATION,
+            UpnpHeader.Type.MAX_AGE,
+            UpnpHeader.Type.MAN,
+            UpnpHeader.Type.MX,
+            UpnpHeader.Type.EXT,
+            UpnpHeader.Type.EXT_IFACE_MAC
+    };
+
+    protected static final int NT = 0, NTS = 1, ST = 2, USN = 3, LOCATION = 4, MAN = 6;
+
+    protected static final byte[][] RETAINED_HEADER_NAMES = new byte[RETAINED_HEADERS.length][];
+
+    static {
+        for (int i = 0; i < RETAINED_HEADERS.length; i++) {
+            RETAINED_HEADER_NAMES[i] = ascii(RETAINED_HEADERS[i].getHttpName());
+        }
+    }
+
+    // Start and end offsets of each retained header value, reused by the receiving thread
+    protected final ThreadLocal<int[]> headerSlices = new ThreadLocal<int[]>() {
+        @Override
+        protected int[] initialValue() {
+            return new int[RETAINED_HEADERS.length * 2];
+        }
+    };
+
+    @Override
+    public IncomingDatagramMessage read(InetAddress receivedOnAddress, DatagramPacket datagram) throws UnsupportedDataException {
+
+        byte[] data = datagram.getData();
+        int start = datagram.getOffset();
+        int end = start + datagram.getLength();
+
+        if (log.isLoggable(Level.FINER)) {
+            log.finer("===================================== DATAGRAM BEGIN ============================================");
+            log.finer(new String(data, start, datagram.getLength(), US_ASCII));
+            log.finer("-===================================== DATAGRAM END =============================================");
+        }
+
+        try {
+            int lineEnd = indexOfLineEnd(data, start, end);
+            if (lineEnd < 0)
+                return reject("No start line");
+
+            int[] slices = headerSlices.get();
+            Arrays.fill(slices, -1);
+            scanHeaders(data, nextLine(data, lineEnd, end), end, slices);
+
+            IncomingDatagramMessage message;
+            if (startsWith(data, start, lineEnd, HTTP_VERSION)) {
+                message = readResponseMessage(receivedOnAddress, datagram, data, start, lineEnd, slices);
+            } else if (startsWith(data, start, lineEnd, METHOD_NOTIFY)) {
+                message = readNotifyMessage(receivedOnAddress, datagram, data, start, lineEnd, slices);
+            } else if (startsWith(data, start, lineEnd, METHOD_MSEARCH)) {
+                message = readSearchMessage(receivedOnAddress, datagram, data, start, lineEnd, slices);
+            } else {
+                return reject("Unsupported start line");
+            }
+            if (message == null)
+                return null;
+
+            UpnpHeaders headers = new UpnpHeaders();
+            for (int i = 0; i < RETAINED_HEADERS.length; i++) {
+                if (slices[i * 2] >= 0) {
+                    headers.add(
+                            RETAINED_HEADERS[i].getHttpName(),
+                            new String(data, slices[i * 2], slices[i * 2 + 1] - slices[i * 2], US_ASCII)
+                    );
+                }
+            }
+            message.setHeaders(headers);
+            return message;
+
+        } catch (Exception ex) {
+            throw new UnsupportedDataException(
+                    "Could not parse headers: " + ex, ex, Arrays.copyOfRange(data, start, end)
+            );
+        }
+    }
+
+    protected IncomingDatagramMessage readNotifyMessage(InetAddress receivedOnAddress,
+                                                        DatagramPacket datagram,
+                                                        byte[] data, int start, int lineEnd,
+                                                        int[] slices) {
+        if (!isPresent(slices, NT) || !isPresent(slices, USN) || !isPresent(slices, NTS))
+            return reject("NOTIFY without NT, NTS, or USN header");
+
+        boolean supportedSubtype = false;
+        for (byte[] subtype : NOTIFICATION_SUBTYPES) {
+            if (equalsIgnoreCase(data, slices[NTS * 2], slices[NTS * 2 + 1], subtype)) {
+                supportedSubtype = true;
+                break;
+            }
+        }
+        if (!supportedSubtype)
+            return reject("NOTIFY with unsupported NTS header");
+
+        UpnpRequest upnpRequest = new UpnpRequest(UpnpRequest.Method.NOTIFY);
+        upnpRequest.setHttpMinorVersion(readRequestMinorVersion(data, start, lineEnd));
+        return new IncomingDatagramMessage(upnpRequest, datagram.getAddress(), datagram.getPort(), receivedOnAddress);
+    }
+
+    protected IncomingDatagramMessage readSearchMessage(InetAddress receivedOnAddress,
+                                                        DatagramPacket datagram,
+                                                        byte[] data, int start, int lineEnd,
+                                                        int[] slices) {
+        if (!isPresent(slices, ST) || !isPresent(slices, MAN))
+            return reject("M-SEARCH without ST or MAN header");
+
+        UpnpRequest upnpRequest = new UpnpRequest(UpnpRequest.Method.MSEARCH);
+        upnpRequest.setHttpMinorVersion(readRequestMinorVersion(data, start, lineEnd));
+        return new IncomingDatagramMessage(upnpRequest, datagram.getAddress(), datagram.getPort(), receivedOnAddress);
+    }
+
+    protected IncomingDatagramMessage readResponseMessage(InetAddress receivedOnAddress,
+                                                          DatagramPacket datagram,
+                                                          byte[] data, int start, int lineEnd,
+                                                          int[] slices) {
+        if (!isPresent(slices, ST) || !isPresent(slices, USN) || !isPresent(slices, LOCATION))
+            return reject("Search response without ST, USN, or LOCATION header");
+
+        // HTTP/1.x SP status-code SP reason-phrase
+        int pos = start + HTTP_VERSION.length;
+        if (pos >= lineEnd) return reject("Invalid status line");
+        int minorVersion = data[pos] == '1' ? 1 : 0;
+
+        pos = skip(data, indexOf(data, pos, lineEnd, (byte) ' '), lineEnd, (byte) ' ');
+        int statusCode = 0;
+        int digits = 0;
+        while (pos < lineEnd && data[pos] >= '0' && data[pos] <= '9') {
+            statusCode = statusCode * 10 + (data[pos++] - '0');
+            digits++;
+        }
+        if (digits != 3) return reject("Invalid status code");
+
+        pos = skip(data, pos, lineEnd, (byte) ' ');
+        String statusMessage = new String(data, pos, lineEnd - pos, US_ASCII);
+
+        UpnpResponse upnpResponse = new UpnpResponse(statusCode, statusMessage);
+        upnpResponse.setHttpMinorVersion(minorVersion);
+        return new IncomingDatagramMessage(upnpResponse, datagram.getAddress(), datagram.getPort(), receivedOnAddress);
+    }
+
+    /**
+     * Records the start and end offset of the first occurrence of each retained header's value.
+     */
+    protected void scanHeaders(byte[] data, int pos, int end, int[] slices) {
+        while (pos < end) {
+            int lineEnd = indexOfLineEnd(data, pos, end);
+            if (lineEnd < 0) lineEnd = end;
+            if (lineEnd == pos) break; // Blank line, end of headers
+
+            int colon = indexOf(data, pos, lineEnd, (byte) ':');
+            if (colon > 0) {
+                int nameEnd = trimEnd(data, pos, colon);
+                for (int i = 0; i < RETAINED_HEADER_NAMES.length; i++) {
+                    if (slices[i * 2] < 0 && equalsIgnoreCase(data, pos, nameEnd, RETAINED_HEADER_NAMES[i])) {
+                        slices[i * 2] = skip(data, colon + 1, lineEnd, (byte) ' ');
+                        slices[i * 2 + 1] = trimEnd(data, slices[i * 2], lineEnd);
+                        break;
+                    }
+                }
+            }
+            pos = nextLine(data, lineEnd, end);
+        }
+    }
+
+    protected int readRequestMinorVersion(byte[] data, int start, int lineEnd) {
+        // METHOD SP * SP HTTP/1.x
+        int end = trimEnd(data, start, lineEnd);
+        return end > start && data[end - 1] == '1' ? 1 : 0;
+    }
+
+    protected IncomingDatagramMessage reject(String reason) {
+        if (log.isLoggable(Level.FINEST))
+            log.finest("Ignoring datagram: " + reason);
+        return null;
+    }
+
+    protected static boolean isPresent(int[] slices, int header) {
+        return slices[header * 2] >= 0;
+    }
+
+    /**
+     * @return The offset of the CR or LF ending the line starting at <code>pos</code>, or -1.
+     */
+    protected static int indexOfLineEnd(byte[] data, int pos, int end) {
+        for (int i = pos; i < end; i++) {
+            if (data[i] == '\r' || data[i] == '\n') return i;
+        }
+        return -1;
+    }
+
+    protected static int nextLine(byte[] data, int lineEnd, int end) {
+        if (lineEnd < end && data[lineEnd] == '\r') lineEnd++;
+        if (lineEnd < end && data[lineEnd] == '\n') lineEnd++;
+        return lineEnd;
+    }
+
+    protected static int indexOf(byte[] data, int pos, int end, byte b) {
+        for (int i = pos; i < end; i++) {
+            if (data[i] == b) return i;
+        }
+        return end;
+    }
+
+    protected static int skip(byte[] data, int pos, int end, byte b) {
+        while (pos < end && (data[pos] == b || data[pos] == '\t')) pos++;
+        return pos;
+    }
+
+    protected static int trimEnd(byte[] data, int start, int end) {
+        while (end > start && (data[end - 1] == ' ' || data[end - 1] == '\t')) end--;
+        return end;
+    }
+
+    protected static boolean startsWith(byte[] data, int start, int end, byte[] prefix) {
+        if (end - start < prefix.length) return false;
+        for (int i = 0; i < prefix.length; i++) {
+            if (data[start + i] != prefix[i]) return false;
+        }
+        return true;
+    }
+
+    protected static boolean equalsIgnoreCase(byte[] data, int start, int end, byte[] upperOrLowerCase) {
+        if (end - start != upperOrLowerCase.length) return false;
+        for (int i = 0; i < upperOrLowerCase.length; i++) {
+            int a = data[start + i];
+            int b = upperOrLowerCase[i];
+            if (a == b) continue;
+            if (a >= 'a' && a <= 'z') a -= 32;
+            if (b >= 'a' && b <= 'z') b -= 32;
+            if (a != b) return false;
+        }
+        return true;
+    }
+
+    protected static byte[] ascii(String s) {
+        return s.getBytes(US_ASCII);
+    }
+}
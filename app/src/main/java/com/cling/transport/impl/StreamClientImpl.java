@@ -29,7 +29,6 @@ import com.cling.transport.spi.StreamClient;
 import org.seamless.http.Headers;
 import org.seamless.util.Exceptions;
 import org.seamless.util.URIUtil;
-import org.seamless.util.io.IO;
 
 import java.io.IOException;
 import java.io.InputStream;
@@ -38,6 +37,7 @@ import java.net.ProtocolException;
 import java.net.SocketTimeoutException;
 import java.net.URL;
 import java.net.URLStreamHandlerFactory;
+import java.nio.ByteBuffer;
 import java.util.List;
 import java.util.Map;
 import java.util.logging.Level;
@@ -238,11 +238,9 @@ public class StreamClientImpl implements StreamClient {
             return;
         }
 
-        if (requestMessage.getBodyType().equals(UpnpMessage.BodyType.STRING)) {
-            IO.writeUTF8(urlConnection.getOutputStream(), requestMessage.getBodyString());
-        } else if (requestMessage.getBodyType().equals(UpnpMessage.BodyType.BYTES)) {
-            IO.writeBytes(urlConnection.getOutputStream(), requestMessage.getBodyBytes());
-        }
+        // Strings are encoded in the charset of the Content-Type header or UTF-8
+        urlConnection.setFixedLengthStreamingMode(requestMessage.getBodyLength());
+        requestMessage.writeBody(urlConnection.getOutputStream());
         urlConnection.getOutputStream().flush();
     }
 
@@ -268,22 +266,22 @@ public class StreamClientImpl implements StreamClient {
         responseMessage.setHeaders(new UpnpHeaders(urlConnection.getHeaderFields()));
 
         // Body
-        byte[] bodyBytes = null;
+        ByteBuffer bodyBytes = null;
         InputStream is = null;
         try {
             is = inputStream;
-            if (inputStream != null) bodyBytes = IO.readBytes(is);
+            if (inputStream != null) bodyBytes = BodyBuffers.read(is, urlConnection.getContentLength());
         } finally {
             if (is != null)
                 is.close();
         }
 
-        if (bodyBytes != null && bodyBytes.length > 0 && responseMessage.isContentTypeMissingOrText()) {
+        if (bodyBytes != null && bodyBytes.hasRemaining() && responseMessage.isContentTypeMissingOrText()) {
 
-            log.fine("Response contains textual entity body, converting then setting string on message");
+            log.fine("Response contains textual entity body, setting characters on message");
             responseMessage.setBodyCharacters(bodyBytes);
 
-        } else if (bodyBytes != null && bodyBytes.length > 0) {
+        } else if (bodyBytes != null && bodyBytes.hasRemaining()) {
 
             log.fine("Response contains binary entity body, setting bytes on message");
             responseMessage.setBody(UpnpMessage.BodyType.BYTES, bodyBytes);
@@ -16,6 +16,7 @@
 package com.cling.transport.impl;
 
 import com.cling.model.message.Connection;
+import com.cling.model.message.UpnpResponse;
 import com.cling.transport.Router;
 import com.cling.transport.spi.InitializationException;
 import com.cling.transport.spi.StreamServer;
@@ -26,6 +27,7 @@ import com.sun.net.httpserver.HttpServer;
 import java.io.IOException;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.logging.Logger;
 
 /**
@@ -113,14 +115,20 @@ public class StreamServerImpl implements StreamServer<StreamServerConfigurationI
             // And we pass control to the service, which will (hopefully) start a new thread immediately so we can
             // continue the receiving thread ASAP
             log.fine("Received HTTP exchange: " + httpExchange.getRequestMethod() + " " + httpExchange.getRequestURI());
-            router.received(
-                    new HttpExchangeUpnpStream(router.getProtocolFactory(), httpExchange) {
-                        @Override
-                        protected Connection createConnection() {
-                            return new HttpServerConnection(httpExchange);
+            try {
+                router.received(
+                        new HttpExchangeUpnpStream(router.getProtocolFactory(), httpExchange) {
+                            @Override
+                            protected Connection createConnection() {
+                                return new HttpServerConnection(httpExchange);
+                            }
                         }
-                    }
-            );
+                );
+            } catch (RejectedExecutionException ex) {
+                log.warning("Protocol executor rejected HTTP request: " + httpExchange.getRequestURI());
+                httpExchange.sendResponseHeaders(UpnpResponse.Status.SERVICE_UNAVAILABLE.getStatusCode(), -1);
+                httpExchange.close();
+            }
         }
     }
 
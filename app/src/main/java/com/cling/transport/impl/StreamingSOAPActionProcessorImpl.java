@@ -0,0 +1,275 @@
+/*
+ * Copyright (C) 2013 4th Line GmbH, Switzerland
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * Lesser General Public License Version 2 or later ("LGPL") or the
+ * Common Development and Distribution License Version 1 or later
+ * ("CDDL") (collectively, the "License"). You may not use this file
+ * except in compliance with the License. See LICENSE.txt for more
+ * information.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+
+package com.cling.transport.impl;
+
+import com.cling.model.UnsupportedDataException;
+import com.cling.model.action.ActionArgumentValue;
+import com.cling.model.action.ActionException;
+import com.cling.model.action.ActionInvocation;
+import com.cling.model.action.StreamedArgumentValue;
+import com.cling.model.message.UpnpMessage;
+import com.cling.model.message.control.ActionMessage;
+import com.cling.model.message.control.ActionRequestMessage;
+import com.cling.model.message.control.ActionResponseMessage;
+import com.cling.model.meta.Action;
+import com.cling.model.meta.ActionArgument;
+import com.cling.transport.spi.SOAPActionProcessor;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.enterprise.inject.Alternative;
+
+/**
+ * Writes SOAP messages directly as bytes, reads them with the <em>Xml Pull Parser</em> API.
+ * <p>
+ * No DOM is built for outgoing action requests and responses. The envelope is written with
+ * a {@link SOAPEnvelopeWriter}; the markup of the action element and its argument elements is
+ * encoded once per {@link Action} and then reused, only argument values are escaped for each
+ * message. The written document is the same as the one produced by the DOM-based superclass.
+ * </p>
+ * <p>
+ * The value of a {@link StreamedArgumentValue} output argument is not written into the buffer,
+ * the response then gets a {@link UpnpMessage.StreamedBody} which escapes the value while the
+ * transport sends it. A large <code>Browse</code> result, for example, never exists in memory
+ * as one document.
+ * </p>
+ * <p>
+ * Reading is inherited from {@link PullSOAPActionProcessorImpl}, so the same requirements
+ * for an installed XMLPull implementation apply.
+ * </p>
+ *
+ * @author Christian Bauer
+ */
+@Alternative
+public class StreamingSOAPActionProcessorImpl extends PullSOAPActionProcessorImpl {
+
+    private static Logger log = Logger.getLogger(SOAPActionProcessor.class.getName());
+
+    // Escaped bytes of a streamed value passed on to the transport at once
+    protected static final int STREAMED_VALUE_FLUSH_BYTES = 8192;
+
+    /**
+     * The encoded markup of an action's elements, in a namespace.
+     */
+    protected static class ActionFragments {
+
+        final String namespace;
+        final byte[] requestStart;
+        final byte[] requestEnd;
+        final byte[] responseStart;
+        final byte[] responseEnd;
+        final byte[][] inputStart;
+        final byte[][] inputEnd;
+        final byte[][] outputStart;
+        final byte[][] outputEnd;
+
+        ActionFragments(Action action, String namespace) {
+            this.namespace = namespace;
+            String name = action.getName();
+            requestStart = SOAPEnvelopeWriter.bytes("<u:" + name + " xmlns:u=\"" + namespace + "\">");
+            requestEnd = SOAPEnvelopeWriter.bytes("</u:" + name + ">");
+            responseStart = SOAPEnvelopeWriter.bytes("<u:" + name + "Response xmlns:u=\"" + namespace + "\">");
+            responseEnd = SOAPEnvelopeWriter.bytes("</u:" + name + "Response>");
+
+            ActionArgument[] inputArguments = action.getInputArguments();
+            inputStart = new byte[inputArguments.length][];
+            inputEnd = new byte[inputArguments.length][];
+            for (int i = 0; i < inputArguments.length; i++) {
+                inputStart[i] = SOAPEnvelopeWriter.bytes("<" + inputArguments[i].getName() + ">");
+                inputEnd[i] = SOAPEnvelopeWriter.bytes("</" + inputArguments[i].getName() + ">");
+            }
+
+            ActionArgument[] outputArguments = action.getOutputArguments();
+            outputStart = new byte[outputArguments.length][];
+            outputEnd = new byte[outputArguments.length][];
+            for (int i = 0; i < outputArguments.length; i++) {
+                outputStart[i] = SOAPEnvelopeWriter.bytes("<" + outputArguments[i].getName() + ">");
+                outputEnd[i] = SOAPEnvelopeWriter.bytes("</" + outputArguments[i].getName() + ">");
+            }
+        }
+    }
+
+    // Weak keys, so the fragments of removed remote devices are not kept
+    final protected Map<Action, ActionFragments> actionFragments =
+            Collections.synchronizedMap(new WeakHashMap<Action, ActionFragments>());
+
+    @Override
+    public void writeBody(ActionRequestMessage requestMessage, ActionInvocation actionInvocation) throws UnsupportedDataException {
+
+        log.fine("Writing body of " + requestMessage + " for: " + actionInvocation);
+
+        try {
+
+            ActionFragments fragments = getActionFragments(actionInvocation.getAction(), requestMessage);
+            SOAPEnvelopeWriter writer = SOAPEnvelopeWriter.get();
+            writer.write(SOAPEnvelopeWriter.ENVELOPE_START);
+            writer.write(fragments.requestStart);
+            writeArguments(
+                    writer,
+                    actionInvocation.getAction().getInputArguments(),
+                    fragments.inputStart,
+                    fragments.inputEnd,
+                    actionInvocation,
+                    false,
+                    null
+            );
+            writer.write(fragments.requestEnd);
+            writer.write(SOAPEnvelopeWriter.ENVELOPE_END);
+            setBody(requestMessage, writer);
+
+            if (log.isLoggable(Level.FINER)) {
+                log.finer("===================================== SOAP BODY BEGIN ============================================");
+                log.finer(requestMessage.getBodyString());
+                log.finer("-===================================== SOAP BODY END ============================================");
+            }
+
+        } catch (Exception ex) {
+            throw new UnsupportedDataException("Can't transform message payload: " + ex, ex);
+        }
+    }
+
+    @Override
+    public void writeBody(ActionResponseMessage responseMessage, ActionInvocation actionInvocation) throws UnsupportedDataException {
+
+        log.fine("Writing body of " + responseMessage + " for: " + actionInvocation);
+
+        try {
+
+            SOAPEnvelopeWriter writer = SOAPEnvelopeWriter.get();
+            writer.write(SOAPEnvelopeWriter.ENVELOPE_START);
+            List<Object> streamedParts = new ArrayList<Object>();
+
+            ActionException failure = actionInvocation.getFailure();
+            if (failure != null) {
+                log.fine("Writing fault element: " + failure.getErrorCode() + " - " + failure.getMessage());
+                writer.write(SOAPEnvelopeWriter.FAULT_START);
+                writer.writeText(Integer.toString(failure.getErrorCode()));
+                writer.write(SOAPEnvelopeWriter.FAULT_DESCRIPTION);
+                writer.writeText(failure.getMessage());
+                writer.write(SOAPEnvelopeWriter.FAULT_END);
+            } else {
+                ActionFragments fragments = getActionFragments(actionInvocation.getAction(), responseMessage);
+                writer.write(fragments.responseStart);
+                writeArguments(
+                        writer,
+                        actionInvocation.getAction().getOutputArguments(),
+                        fragments.outputStart,
+                        fragments.outputEnd,
+                        actionInvocation,
+                        true,
+                        streamedParts
+                );
+                writer.write(fragments.responseEnd);
+            }
+
+            writer.write(SOAPEnvelopeWriter.ENVELOPE_END);
+            if (streamedParts.isEmpty()) {
+                setBody(responseMessage, writer);
+            } else {
+                streamedParts.add(writer.toByteArray());
+                responseMessage.setBody(UpnpMessage.BodyType.BYTES, new StreamedEnvelope(streamedParts));
+            }
+
+            if (responseMessage.isBodyStreamed()) {
+                log.finer("Response body is streamed, not logging it");
+            } else if (log.isLoggable(Level.FINER)) {
+                log.finer("===================================== SOAP BODY BEGIN ============================================");
+                log.finer(responseMessage.getBodyString());
+                log.finer("-===================================== SOAP BODY END ============================================");
+            }
+
+        } catch (Exception ex) {
+            throw new UnsupportedDataException("Can't transform message payload: " + ex, ex);
+        }
+    }
+
+    protected ActionFragments getActionFragments(Action action, ActionMessage message) {
+        String namespace = message.getActionNamespace();
+        ActionFragments fragments = actionFragments.get(action);
+        if (fragments == null || !fragments.namespace.equals(namespace)) {
+            fragments = new ActionFragments(action, namespace);
+            actionFragments.put(action, fragments);
+        }
+        return fragments;
+    }
+
+    /**
+     * @param streamedParts If not <code>null</code>, streamed values are not written, the bytes written
+     *                      so far and the value are added to this list and the writer is reset.
+     */
+    protected void writeArguments(SOAPEnvelopeWriter writer,
+                                  ActionArgument[] arguments,
+                                  byte[][] start,
+                                  byte[][] end,
+                                  ActionInvocation actionInvocation,
+                                  boolean output,
+                                  List<Object> streamedParts) {
+        for (int i = 0; i < arguments.length; i++) {
+            writer.write(start[i]);
+            ActionArgumentValue value = output
+                    ? actionInvocation.getOutput(arguments[i])
+                    : actionInvocation.getInput(arguments[i]);
+            if (streamedParts != null
+                    && value instanceof StreamedArgumentValue
+                    && ((StreamedArgumentValue) value).isStreamed()) {
+                streamedParts.add(writer.toByteArray());
+                streamedParts.add(value);
+                writer.reset();
+            } else if (value != null) {
+                writer.writeText(value.toString());
+            }
+            writer.write(end[i]);
+        }
+    }
+
+    protected void setBody(ActionMessage message, SOAPEnvelopeWriter writer) {
+        message.setBody(UpnpMessage.BodyType.BYTES, writer.toByteArray());
+    }
+
+    /**
+     * The encoded parts of an envelope, and the streamed argument values between them.
+     */
+    protected static class StreamedEnvelope implements UpnpMessage.StreamedBody {
+
+        final protected List<Object> parts;
+
+        protected StreamedEnvelope(List<Object> parts) {
+            this.parts = parts;
+        }
+
+        public void writeTo(OutputStream out) throws IOException {
+            for (Object part : parts) {
+                if (part instanceof byte[]) {
+                    out.write((byte[]) part);
+                } else {
+                    SOAPEnvelopeWriter.TextWriter writer =
+                            new SOAPEnvelopeWriter.TextWriter(out, STREAMED_VALUE_FLUSH_BYTES);
+                    ((StreamedArgumentValue) part).writeTo(writer);
+                    writer.close();
+                }
+            }
+        }
+    }
+
+}
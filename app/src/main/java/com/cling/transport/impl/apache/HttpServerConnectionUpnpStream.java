@@ -24,6 +24,7 @@ import com.cling.model.message.UpnpMessage;
 import com.cling.model.message.UpnpOperation;
 import com.cling.model.message.UpnpRequest;
 import com.cling.protocol.ProtocolFactory;
+import com.cling.transport.impl.BodyBuffers;
 import com.cling.transport.spi.UpnpStream;
 
 import org.apache.http.ConnectionClosedException;
@@ -39,7 +40,8 @@ import org.apache.http.HttpStatus;
 import org.apache.http.MethodNotSupportedException;
 import org.apache.http.ProtocolVersion;
 import org.apache.http.entity.ByteArrayEntity;
-import org.apache.http.entity.StringEntity;
+import org.apache.http.entity.ContentProducer;
+import org.apache.http.entity.EntityTemplate;
 import org.apache.http.impl.DefaultConnectionReuseStrategy;
 import org.apache.http.impl.DefaultHttpResponseFactory;
 import org.apache.http.message.BasicStatusLine;
@@ -54,12 +56,14 @@ import org.apache.http.protocol.HttpService;
 import org.apache.http.protocol.ResponseConnControl;
 import org.apache.http.protocol.ResponseContent;
 import org.apache.http.protocol.ResponseDate;
-import org.apache.http.util.EntityUtils;
 import org.seamless.util.Exceptions;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.SocketTimeoutException;
 import java.net.URI;
+import java.nio.ByteBuffer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -194,12 +198,21 @@ public abstract class HttpServerConnectionUpnpStream extends UpnpStream {
 
                 HttpEntity entity = entityEnclosingHttpRequest.getEntity();
 
+                ByteBuffer body;
+                InputStream is = entity.getContent();
+                try {
+                    body = BodyBuffers.read(is, entity.getContentLength());
+                } finally {
+                    if (is != null)
+                        is.close();
+                }
+
                 if (requestMessage.isContentTypeMissingOrText()) {
                     log.fine("HTTP request message contains text entity");
-                    requestMessage.setBody(UpnpMessage.BodyType.STRING, EntityUtils.toString(entity));
+                    requestMessage.setBodyCharacters(body);
                 } else {
                     log.fine("HTTP request message contains binary entity");
-                    requestMessage.setBody(UpnpMessage.BodyType.BYTES, EntityUtils.toByteArray(entity));
+                    requestMessage.setBody(UpnpMessage.BodyType.BYTES, body);
                 }
 
 
@@ -243,11 +256,17 @@ public abstract class HttpServerConnectionUpnpStream extends UpnpStream {
                 HeaderUtil.add(httpResponse, responseMsg.getHeaders());
 
                 // Entity
-                if (responseMsg.hasBody() && responseMsg.getBodyType().equals(UpnpMessage.BodyType.BYTES)) {
+                // Strings are encoded once, in the charset of the Content-Type header or UTF-8
+                if (responseMsg.isBodyStreamed()) {
+                    // Unknown length, sent with chunked transfer coding
+                    final StreamResponseMessage streamedMsg = responseMsg;
+                    httpResponse.setEntity(new EntityTemplate(new ContentProducer() {
+                        public void writeTo(OutputStream out) throws IOException {
+                            streamedMsg.writeBody(out);
+                        }
+                    }));
+                } else if (responseMsg.hasBody()) {
                     httpResponse.setEntity(new ByteArrayEntity(responseMsg.getBodyBytes()));
-                } else if (responseMsg.hasBody() && responseMsg.getBodyType().equals(UpnpMessage.BodyType.STRING)) {
-                    StringEntity responseEntity = new StringEntity(responseMsg.getBodyString(), "UTF-8");
-                    httpResponse.setEntity(responseEntity);
                 }
 
             } else {
@@ -22,6 +22,7 @@ import com.cling.model.message.UpnpMessage;
 import com.cling.model.message.UpnpRequest;
 import com.cling.model.message.UpnpResponse;
 import com.cling.model.message.header.UpnpHeader;
+import com.cling.transport.impl.BodyBuffers;
 import com.cling.transport.spi.AbstractStreamClient;
 import com.cling.transport.spi.InitializationException;
 import com.cling.transport.spi.StreamClient;
@@ -39,7 +40,6 @@ import org.apache.http.conn.scheme.PlainSocketFactory;
 import org.apache.http.conn.scheme.Scheme;
 import org.apache.http.conn.scheme.SchemeRegistry;
 import org.apache.http.entity.ByteArrayEntity;
-import org.apache.http.entity.StringEntity;
 import org.apache.http.impl.client.DefaultHttpClient;
 import org.apache.http.impl.client.DefaultHttpRequestRetryHandler;
 import org.apache.http.impl.conn.PoolingClientConnectionManager;
@@ -49,9 +49,10 @@ import org.apache.http.params.DefaultedHttpParams;
 import org.apache.http.params.HttpConnectionParams;
 import org.apache.http.params.HttpParams;
 import org.apache.http.params.HttpProtocolParams;
-import org.apache.http.util.EntityUtils;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.util.concurrent.Callable;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -200,21 +201,10 @@ public class StreamClientImpl extends AbstractStreamClient<StreamClientConfigura
     }
 
     protected HttpEntity createHttpRequestEntity(UpnpMessage upnpMessage) {
-        if (upnpMessage.getBodyType().equals(UpnpMessage.BodyType.BYTES)) {
-            if (log.isLoggable(Level.FINE))
-                log.fine("Preparing HTTP request entity as byte[]");
-            return new ByteArrayEntity(upnpMessage.getBodyBytes());
-        } else {
-            if (log.isLoggable(Level.FINE))
-                log.fine("Preparing HTTP request entity as string");
-            try {
-                String charset = upnpMessage.getContentTypeCharset();
-                return new StringEntity(upnpMessage.getBodyString(), charset != null ? charset : "UTF-8");
-            } catch (Exception ex) {
-                // WTF else am I supposed to do with this exception?
-                throw new RuntimeException(ex);
-            }
-        }
+        // Strings are encoded once, in the charset of the Content-Type header or UTF-8
+        if (log.isLoggable(Level.FINE))
+            log.fine("Preparing HTTP request entity as " + upnpMessage.getBodyType());
+        return new ByteArrayEntity(upnpMessage.getBodyBytes());
     }
 
     protected ResponseHandler<StreamResponseMessage> createResponseHandler() {
@@ -239,14 +229,23 @@ public class StreamClientImpl extends AbstractStreamClient<StreamClientConfigura
                 HttpEntity entity = httpResponse.getEntity();
                 if (entity == null || entity.getContentLength() == 0) return responseMessage;
 
+                ByteBuffer body;
+                InputStream is = entity.getContent();
+                try {
+                    body = BodyBuffers.read(is, entity.getContentLength());
+                } finally {
+                    if (is != null)
+                        is.close();
+                }
+
                 if (responseMessage.isContentTypeMissingOrText()) {
                     if (log.isLoggable(Level.FINE))
                         log.fine("HTTP response message contains text entity");
-                    responseMessage.setBody(UpnpMessage.BodyType.STRING, EntityUtils.toString(entity));
+                    responseMessage.setBodyCharacters(body);
                 } else {
                     if (log.isLoggable(Level.FINE))
                         log.fine("HTTP response message contains binary entity");
-                    responseMessage.setBody(UpnpMessage.BodyType.BYTES, EntityUtils.toByteArray(entity));
+                    responseMessage.setBody(UpnpMessage.BodyType.BYTES, body);
                 }
 
                 return responseMessage;
@@ -16,13 +16,16 @@
 package com.cling.transport.impl.apache;
 
 import com.cling.model.message.Connection;
+import com.cling.model.message.UpnpResponse;
 import com.cling.transport.Router;
 import com.cling.transport.spi.InitializationException;
 import com.cling.transport.spi.StreamServer;
 import com.cling.transport.spi.UpnpStream;
 
 import org.apache.http.HttpRequestFactory;
+import org.apache.http.HttpVersion;
 import org.apache.http.impl.DefaultHttpServerConnection;
+import org.apache.http.message.BasicHttpResponse;
 import org.apache.http.params.BasicHttpParams;
 import org.apache.http.params.CoreConnectionPNames;
 import org.apache.http.params.HttpParams;
@@ -33,6 +36,7 @@ import java.net.InetAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.net.SocketException;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -141,7 +145,12 @@ public class StreamServerImpl implements StreamServer<StreamServerConfigurationI
                             }
                         };
 
-                router.received(connectionStream);
+                try {
+                    router.received(connectionStream);
+                } catch (RejectedExecutionException ex) {
+                    log.warning("Protocol executor rejected HTTP request from: " + clientSocket.getInetAddress());
+                    rejectConnection(httpServerConnection);
+                }
 
             } catch (InterruptedIOException ex) {
                 log.fine("I/O has been interrupted, stopping receiving loop, bytes transfered: " + ex.bytesTransferred);
@@ -172,6 +181,30 @@ public class StreamServerImpl implements StreamServer<StreamServerConfigurationI
 
     }
 
+    /**
+     * Answers a connection the protocol executor couldn't accept with <em>503 Service Unavailable</em>.
+     */
+    protected void rejectConnection(DefaultHttpServerConnection connection) {
+        try {
+            BasicHttpResponse response = new BasicHttpResponse(
+                    HttpVersion.HTTP_1_1,
+                    UpnpResponse.Status.SERVICE_UNAVAILABLE.getStatusCode(),
+                    UpnpResponse.Status.SERVICE_UNAVAILABLE.getStatusMsg()
+            );
+            response.setHeader("Content-Length", "0");
+            connection.sendResponseHeader(response);
+            connection.flush();
+        } catch (Exception ex) {
+            log.fine("Exception rejecting HTTP connection: " + ex);
+        } finally {
+            try {
+                connection.shutdown();
+            } catch (IOException ex) {
+                log.fine("Exception closing rejected HTTP connection: " + ex);
+            }
+        }
+    }
+
     /**
      * Writes a space character to the output stream of the socket.
      * <p>
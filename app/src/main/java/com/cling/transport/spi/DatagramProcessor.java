@@ -42,7 +42,7 @@ public interface DatagramProcessor {
      *
      * @param receivedOnAddress The address of the socket on which this datagram was received.
      * @param datagram          The received UDP datagram.
-     * @return The populated instance.
+     * @return The populated instance, or <code>null</code> if the datagram is not a supported message and should be ignored.
      * @throws com.cling.model.UnsupportedDataException If the datagram could not be read, or didn't contain required data.
      */
     public IncomingDatagramMessage read(InetAddress receivedOnAddress, DatagramPacket datagram) throws UnsupportedDataException;
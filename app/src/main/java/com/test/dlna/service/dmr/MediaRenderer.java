@@ -22,6 +22,7 @@ import com.cling.model.types.UnsignedIntegerFourBytes;
 import com.cling.support.avtransport.lastchange.AVTransportLastChangeParser;
 import com.cling.support.lastchange.LastChange;
 import com.cling.support.lastchange.LastChangeAwareServiceManager;
+import com.cling.support.lastchange.LastChangeScheduler;
 import com.cling.support.model.TransportState;
 import com.cling.support.renderingcontrol.lastchange.RenderingControlLastChangeParser;
 import com.test.dlna.DLNAApplication;
@@ -42,6 +43,7 @@ public class MediaRenderer {
     // These are shared between all "logical" player instances of a single service
     final protected LastChange avTransportLastChange = new LastChange(new AVTransportLastChangeParser());
     final protected LastChange renderingControlLastChange = new LastChange(new RenderingControlLastChangeParser());
+    final protected LastChangeScheduler lastChangeScheduler = new LastChangeScheduler(LAST_CHANGE_FIRING_INTERVAL_MILLISECONDS);
 
     final protected Map<UnsignedIntegerFourBytes, DLNAPlayer> mediaPlayers;
 
@@ -84,7 +86,8 @@ public class MediaRenderer {
         avTransport =
                 new LastChangeAwareServiceManager<AVTransportService>(
                         avTransportService,
-                        new AVTransportLastChangeParser()
+                        new AVTransportLastChangeParser(),
+                        lastChangeScheduler
                 ) {
                     @Override
                     protected AVTransportService createServiceInstance() throws Exception {
@@ -98,7 +101,8 @@ public class MediaRenderer {
         renderingControl =
                 new LastChangeAwareServiceManager<AudioRenderingControl>(
                         renderingControlService,
-                        new RenderingControlLastChangeParser()
+                        new RenderingControlLastChangeParser(),
+                        lastChangeScheduler
                 ) {
                     @Override
                     protected AudioRenderingControl createServiceInstance() throws Exception {
@@ -131,27 +135,6 @@ public class MediaRenderer {
         } catch (ValidationException ex) {
             throw new RuntimeException(ex);
         }
-
-        runLastChangePushThread();
-    }
-
-    protected void runLastChangePushThread() {
-        // TODO: We should only run this if we actually have event subscribers
-        new Thread() {
-            @Override
-            public void run() {
-                try {
-                    while (true) {
-                        // These operations will NOT block and wait for network responses
-                        avTransport.fireLastChange();
-                        renderingControl.fireLastChange();
-                        Thread.sleep(LAST_CHANGE_FIRING_INTERVAL_MILLISECONDS);
-                    }
-                } catch (Exception ex) {
-                    Log.e(TAG, "runLastChangePushThread ex", ex);
-                }
-            }
-        }.start();
     }
 
     public LocalDevice getDevice() {